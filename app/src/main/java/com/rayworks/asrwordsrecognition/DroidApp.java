@@ -1,6 +1,30 @@
 package com.rayworks.asrwordsrecognition;
 
+import android.Manifest;
 import android.app.Application;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.ContextCompat;
+
+import com.rayworks.asrwordsrecognition.audio.PreRollPcmSource;
+import com.rayworks.asrwordsrecognition.audio.capture.RawAudioCapture;
+import com.rayworks.asrwordsrecognition.engine.RecognizerHolder;
+import com.rayworks.asrwordsrecognition.engine.SphinxEngineFactory;
+import com.rayworks.asrwordsrecognition.journal.SessionJournal;
+import com.rayworks.asrwordsrecognition.metrics.Metrics;
+import com.rayworks.asrwordsrecognition.metrics.MetricsReporter;
+import com.rayworks.asrwordsrecognition.metrics.RollingFileSink;
+import com.rayworks.asrwordsrecognition.metrics.TimberSink;
+import com.rayworks.asrwordsrecognition.pool.DecoderPool;
+import com.rayworks.asrwordsrecognition.search.LanguageModelUpdater;
+import com.rayworks.asrwordsrecognition.search.SearchRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import timber.log.Timber;
 
@@ -9,10 +33,128 @@ import timber.log.Timber;
  */
 
 public class DroidApp extends Application {
+
+    private static final long METRICS_PERIOD_SECONDS = 60;
+    // searches left unused this long are dropped once memory runs low
+    private static final long SEARCH_IDLE_MINUTES = 5;
+    /** The results the user saw, in the app's private files. */
+    public static final String JOURNAL_DIR = "journal";
+
+    private SphinxEngineFactory engineFactory;
+    private RecognizerHolder recognizerHolder;
+    private MetricsReporter metricsReporter;
+    private DecoderPool decoderPool;
+    private SessionJournal sessionJournal;
+
     @Override
     public void onCreate() {
         super.onCreate();
 
         Timber.plant(new Timber.DebugTree());
+
+        // metrics/metrics.log in the app's private files, plus logcat
+        metricsReporter = new MetricsReporter(Metrics.REGISTRY, new TimberSink(),
+                new RollingFileSink(new File(getFilesDir(), "metrics/metrics.log")));
+        metricsReporter.start(METRICS_PERIOD_SECONDS, TimeUnit.SECONDS);
+
+        // opened off the main thread by the activity; results queue up until then
+        sessionJournal = new SessionJournal(new File(getFilesDir(), JOURNAL_DIR));
+
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        engineFactory = new SphinxEngineFactory(this);
+        recognizerHolder = new RecognizerHolder(
+                engineFactory,
+                Executors.newSingleThreadExecutor(),
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        mainHandler.post(command);
+                    }
+                });
+
+        // The recorder cannot be created before the permission is granted, the activity
+        // triggers the loading in that case.
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
+                == PackageManager.PERMISSION_GRANTED) {
+            recognizerHolder.warmUp();
+        }
+    }
+
+    public RecognizerHolder getRecognizerHolder() {
+        return recognizerHolder;
+    }
+
+    /** @return null until the recognizer is loaded */
+    public LanguageModelUpdater getModelUpdater() {
+        return engineFactory.getModelUpdater();
+    }
+
+    /** @return null until the recognizer is loaded */
+    public PreRollPcmSource getMicrophone() {
+        return engineFactory.getMicrophone();
+    }
+
+    /** @return null until the recognizer is loaded */
+    public RawAudioCapture getAudioCapture() {
+        return engineFactory.getAudioCapture();
+    }
+
+    /** The history of results, for analytics and the backend. */
+    public SessionJournal getSessionJournal() {
+        return sessionJournal;
+    }
+
+    /** Decoders for recognizing recordings in the background, created on first use. */
+    public synchronized DecoderPool getDecoderPool() throws IOException {
+        if (decoderPool == null) {
+            decoderPool = engineFactory.createDecoderPool();
+        }
+        return decoderPool;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            releaseRecognizer();
+        }
+        // the recognizer may be in use; at least drop the searches nobody is using
+        if (level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictSearches(0);
+        } else if (level == TRIM_MEMORY_RUNNING_LOW || level >= TRIM_MEMORY_BACKGROUND) {
+            evictSearches(TimeUnit.MINUTES.toNanos(SEARCH_IDLE_MINUTES));
+        }
+        // idle pooled decoders are cheap to create again
+        if (level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= TRIM_MEMORY_BACKGROUND) {
+            trimDecoderPool();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+
+        releaseRecognizer();
+    }
+
+    private void evictSearches(long maxIdleNanos) {
+        SearchRegistry searches = engineFactory.getSearchRegistry();
+        if (searches != null) {
+            searches.evictIdle(maxIdleNanos);
+        }
+    }
+
+    private synchronized void trimDecoderPool() {
+        if (decoderPool != null) {
+            decoderPool.trim(0);
+        }
+    }
+
+    private void releaseRecognizer() {
+        if (recognizerHolder.releaseIfIdle()) {
+            Timber.i("Recognizer released to free memory");
+        }
     }
 }
@@ -11,6 +11,10 @@ import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.view.Choreographer;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -19,6 +23,24 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.rayworks.asrwordsrecognition.audio.FrameListener;
+import com.rayworks.asrwordsrecognition.audio.LevelMeter;
+import com.rayworks.asrwordsrecognition.audio.PreRollPcmSource;
+import com.rayworks.asrwordsrecognition.audio.capture.RawAudioCapture;
+import com.rayworks.asrwordsrecognition.engine.RecognitionEngine;
+import com.rayworks.asrwordsrecognition.engine.RecognizerHolder;
+import com.rayworks.asrwordsrecognition.engine.SphinxEngineFactory;
+import com.rayworks.asrwordsrecognition.engine.WakeUpController;
+import com.rayworks.asrwordsrecognition.journal.SessionJournal;
+import com.rayworks.asrwordsrecognition.journal.SessionRecord;
+import com.rayworks.asrwordsrecognition.lm.NgramModel;
+import com.rayworks.asrwordsrecognition.match.SentenceIndex;
+import com.rayworks.asrwordsrecognition.match.SentenceMatcher;
+import com.rayworks.asrwordsrecognition.metrics.Metrics;
+import com.rayworks.asrwordsrecognition.partial.PartialResultPipeline;
+import com.rayworks.asrwordsrecognition.partial.PartialUpdate;
+import com.rayworks.asrwordsrecognition.rescore.NbestRescorer;
+import com.rayworks.asrwordsrecognition.search.LanguageModelUpdater;
 import com.rayworks.asrwordsrecognition.view.ButtonRecorder;
 import com.rayworks.asrwordsrecognition.view.MicrophoneVolumeView;
 
@@ -27,11 +49,10 @@ import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-import edu.cmu.pocketsphinx.Assets;
 import edu.cmu.pocketsphinx.Hypothesis;
 import edu.cmu.pocketsphinx.RecognitionListener;
-import edu.cmu.pocketsphinx.SpeechRecognizer;
-import edu.cmu.pocketsphinx.SpeechRecognizerSetup;
+
+import timber.log.Timber;
 
 public class WordsRecognitionActivity extends AppCompatActivity implements RecognitionListener {
 
@@ -39,16 +60,84 @@ public class WordsRecognitionActivity extends AppCompatActivity implements Recog
     private static final int PERMISSIONS_REQUEST_RECORD_AUDIO = 1;
 
     /* Named searches allow to quickly reconfigure the decoder */
-    private static final String KWS_SEARCH = "wakeup";
-    private static final String NGRAM_SEARCH = "ngram_search";
+    private static final String KWS_SEARCH = SphinxEngineFactory.KWS_SEARCH;
+    private static final String NGRAM_SEARCH = SphinxEngineFactory.NGRAM_SEARCH;
+
+    private RecognizerHolder.Lease recognizerLease;
+    private RecognitionEngine recognizer;
+    // hands-free mode, switched from the options menu
+    private WakeUpController wakeUp;
+    private boolean handsFree;
+    private volatile NgramModel languageModel;
+    // the lesson sentences results are graded against; built in the background, queried on the
+    // main thread only
+    private volatile SentenceMatcher targets;
+    // follows the versions of the n-gram search built with sentences added at run time
+    private final LanguageModelUpdater.Listener modelListener =
+            new LanguageModelUpdater.Listener() {
+                @Override
+                public void onSwapped(int version, File model) {
+                    Timber.i("Language model version %d is in use", version);
+                    loadLanguageModel(recognizer, model);
+                }
+
+                @Override
+                public void onUpdateFailed(Exception error) {
+                    Timber.e(error, "Failed to update the language model");
+                    showMsg("Failed to add the sentences: " + error.getMessage());
+                }
+            };
+    private final LevelMeter levelMeter = new LevelMeter();
+    // when the finger that started the utterance landed, until its first audio is decoded
+    private volatile long touchDownNanos = -1;
+    // samples of the utterance in progress, and of the last one for its journal record
+    private volatile long utteranceSamples;
+    private volatile long lastUtteranceSamples;
+    private final FrameListener utteranceAudio = new FrameListener() {
+        @Override
+        public void onUtteranceStart(String searchName) {
+        }
+
+        @Override
+        public void onFrame(short[] frame, int length) {
+            long touchDown = touchDownNanos;
+            if (touchDown >= 0) {
+                touchDownNanos = -1;
+                Metrics.TOUCH_TO_AUDIO.recordSince(touchDown);
+            }
+            utteranceSamples += length;
+        }
 
-    private SpeechRecognizer recognizer;
+        @Override
+        public void onUtteranceEnd() {
+            lastUtteranceSamples = utteranceSamples;
+            utteranceSamples = 0;
+        }
+    };
+    private boolean resumed;
 
     private ButtonRecorder recordBtn;
     private MicrophoneVolumeView microphoneView;
     private TextView resultView;
 
     private ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final PartialResultPipeline partials = new PartialResultPipeline(executorService);
+    private boolean showingPartials;
+    private final Choreographer.FrameCallback partialFrame = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!showingPartials) {
+                return;
+            }
+            PartialUpdate update = partials.poll();
+            if (update != null && !update.isFinal()) {
+                long start = System.nanoTime();
+                showPartial(update);
+                Metrics.UI_UPDATE.recordSince(start);
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
     private Handler handler = new Handler();
     private ProgressBar loadingView;
     private RelativeLayout asrParent;
@@ -70,13 +159,14 @@ public class WordsRecognitionActivity extends AppCompatActivity implements Recog
         });
 
         microphoneView = (MicrophoneVolumeView) findViewById(R.id.record_volume);
+        microphoneView.setLevelMeter(levelMeter);
 
         recordBtn = (ButtonRecorder) findViewById(R.id.recorder_button);
         recordBtn.setRecordActionListener(
                 new ButtonRecorder.RecordActionListener() {
                     @Override
                     public boolean preparedForRecording() {
-                        return true;
+                        return recognizer != null;
                     }
 
                     @Override
@@ -88,6 +178,11 @@ public class WordsRecognitionActivity extends AppCompatActivity implements Recog
                     public void onRecordComplete() {
                         onRecordDone();
                     }
+
+                    @Override
+                    public void onRecordCancelled() {
+                        onRecordCancel();
+                    }
                 });
 
         resultView = (TextView) findViewById(R.id.result);
@@ -111,81 +206,265 @@ public class WordsRecognitionActivity extends AppCompatActivity implements Recog
     }
 
     private void onRecordStart() {
+        // the button takes over from hands-free mode
+        setHandsFree(false);
         microphoneView.setVisibility(View.VISIBLE);
 
+        partials.startUtterance();
+        showPartials(true);
+        touchDownNanos = recordBtn.getTouchDownNanos();
         recognizer.startListening(NGRAM_SEARCH, TIMEOUT);
     }
 
     private void onRecordDone() {
         microphoneView.setVisibility(View.INVISIBLE);
-        microphoneView.setProportion(0);
 
         stopRecognition();
     }
 
-    private void runRecognizerSetup() {
+    /**
+     * The touch that started the recording was a double tap or a drag; drop what was heard. The
+     * engine does not wait for its decoding thread, which may still be waiting for a search build,
+     * so this is cheap enough for every mis-classified touch.
+     */
+    private void onRecordCancel() {
+        microphoneView.setVisibility(View.INVISIBLE);
+        showPartials(false);
+        touchDownNanos = -1;
+        recognizer.cancel();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        resumed = true;
+        warmUpMicrophone();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        resumed = false;
+        // the microphone only records ahead of the button while the user can see it
+        final PreRollPcmSource microphone = ((DroidApp) getApplication()).getMicrophone();
+        if (microphone != null) {
+            executorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    microphone.coolDown();
+                }
+            });
+        }
+    }
+
+    /** Keeps the microphone recording so that a touch of the button starts with its pre-roll. */
+    private void warmUpMicrophone() {
+        final PreRollPcmSource microphone = ((DroidApp) getApplication()).getMicrophone();
+        if (microphone == null) {
+            return;
+        }
+        // starting the device may take a while; the executor keeps it in order with onPause
         executorService.submit(new Runnable() {
             @Override
             public void run() {
-                showMsg("Preparing the recognizer...");
-
                 try {
-                    Assets assets = new Assets(WordsRecognitionActivity.this);
-                    File assetDir = assets.syncAssets();
-                    setupRecognizer(assetDir);
+                    microphone.warmUp();
+                } catch (IOException e) {
+                    Timber.e(e, "Failed to warm up the microphone");
+                }
+            }
+        });
+    }
 
-                    showMsg("Recognizer is ready");
+    private void setHandsFree(boolean on) {
+        if (wakeUp == null || on == handsFree) {
+            return;
+        }
+        handsFree = on;
+        if (on) {
+            wakeUp.start();
+            showMsg("Say \"" + SphinxEngineFactory.KEYPHRASE + "\" to start");
+        } else {
+            wakeUp.stop();
+        }
+        invalidateOptionsMenu();
+    }
 
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            loadingView.setVisibility(View.GONE);
-                            asrParent.setVisibility(View.VISIBLE);
-                        }
-                    });
+    /** The engine is listening for the wake-up phrase; its results are not the user's words. */
+    private boolean isSpottingKeyword() {
+        return wakeUp != null && wakeUp.getState() == WakeUpController.State.WAITING;
+    }
 
-                } catch (IOException e) {
-                    e.printStackTrace();
+    private void showPartials(boolean show) {
+        Choreographer.getInstance().removeFrameCallback(partialFrame);
+        showingPartials = show;
+        if (show) {
+            Choreographer.getInstance().postFrameCallback(partialFrame);
+        }
+    }
+
+    /** Shows the words still being revised in grey after the stable ones. */
+    private void showPartial(PartialUpdate update) {
+        SpannableStringBuilder text = new SpannableStringBuilder(update.getText());
+        text.setSpan(new ForegroundColorSpan(ContextCompat.getColor(this, R.color.sp_grey)),
+                update.getStableLength(), text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        resultView.setText(text);
+    }
+
+    private void runRecognizerSetup() {
+        RecognizerHolder holder = ((DroidApp) getApplication()).getRecognizerHolder();
+        if (!holder.isReady()) {
+            showMsg("Preparing the recognizer...");
+        }
 
-                    handler.post(new Runnable() {
+        recognizerLease = holder.acquire(this, new RecognizerHolder.ReadyCallback() {
+            @Override
+            public void onReady(final RecognitionEngine engine) {
+                recognizer = engine;
+                recognizer.addFrameListener(levelMeter);
+                recognizer.addFrameListener(utteranceAudio);
+                if (resumed) {
+                    warmUpMicrophone();
+                }
+                wakeUp = new WakeUpController(recognizer, KWS_SEARCH, NGRAM_SEARCH,
+                        new WakeUpController.Callback() {
+                            @Override
+                            public void onWakeUp() {
+                                microphoneView.setVisibility(View.VISIBLE);
+                                partials.startUtterance();
+                                showPartials(true);
+                            }
+
+                            @Override
+                            public void onUtteranceEnd() {
+                                // onResult has shown the result already
+                            }
+
+                            @Override
+                            public void onStopped(Exception error) {
+                                handsFree = false;
+                                invalidateOptionsMenu();
+                                showMsg("Hands-free mode stopped: " + error.getMessage());
+                            }
+                        }).setUtteranceTimeout(TIMEOUT);
+                LanguageModelUpdater updater = ((DroidApp) getApplication()).getModelUpdater();
+                if (updater != null) {
+                    updater.setListener(modelListener);
+                }
+                executorService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        openJournal();
+                    }
+                });
+                if (languageModel == null) {
+                    executorService.submit(new Runnable() {
                         @Override
                         public void run() {
-                            resultView.setText("Failed to setup recognizer!");
+                            loadTargets();
+                            loadLanguageModel(engine, null);
                         }
                     });
                 }
+
+                showMsg("Recognizer is ready");
+                loadingView.setVisibility(View.GONE);
+                asrParent.setVisibility(View.VISIBLE);
             }
-        });
-    }
 
-    private void showMsg(final String msg) {
-        handler.post(new Runnable() {
             @Override
-            public void run() {
-                Toast.makeText(WordsRecognitionActivity.this, msg, Toast.LENGTH_SHORT).show();
+            public void onError(Exception e) {
+                Timber.e(e, "Failed to setup recognizer");
+                resultView.setText("Failed to setup recognizer!");
             }
         });
     }
 
-    private void setupRecognizer(File assetsDir) throws IOException {
-        // The recognizer can be configured to perform multiple searches
-        // of different kind and switch between them
-
-        recognizer = SpeechRecognizerSetup.defaultSetup()
-                .setAcousticModel(new File(assetsDir, "en-us-ptm"))
-                .setDictionary(new File(assetsDir, "cmudict-en-us.dict"))
+    /**
+     * Loads the Java-side copy of the decoder's model, used to validate and rescore the
+     * hypotheses; {@code model} null for the version in use. Runs in the background.
+     */
+    private void loadLanguageModel(RecognitionEngine engine, File model) {
+        try {
+            if (model == null) {
+                LanguageModelUpdater updater = ((DroidApp) getApplication()).getModelUpdater();
+                File syncDir = SphinxEngineFactory.getSyncDir(this);
+                model = updater != null
+                        ? updater.getActiveModel()
+                        : new File(syncDir, SphinxEngineFactory.LANGUAGE_MODEL);
+            }
+            languageModel = NgramModel.load(model);
+            // candidates close to a lesson sentence get a bonus
+            SentenceMatcher matcher = targets;
+            engine.setRescorer(NGRAM_SEARCH, new NbestRescorer(languageModel)
+                    .setExpectedSentences(matcher != null ? matcher.getIndex() : null));
+        } catch (IOException e) {
+            Timber.e(e, "Failed to load the language model");
+        }
+    }
 
-                .setRawLogDir(assetsDir) // To disable logging of raw audio comment out this call (takes a lot of space on the device)
-                .setKeywordThreshold(1e-45f) // Threshold to tune for keyphrase to balance between false alarms and misses
-                .setBoolean("-allphone_ci", true)  // Use context-independent phonetic search, context-dependent is too slow for mobile
+    /**
+     * Indexes the sentences the bundled model is compiled from, for grading and rescoring. Runs
+     * in the background, before the language model is loaded.
+     */
+    private void loadTargets() {
+        try {
+            File corpus = new File(SphinxEngineFactory.getSyncDir(this), SphinxEngineFactory.CORPUS);
+            SentenceIndex index = SentenceIndex.load(corpus);
+            targets = new SentenceMatcher(index);
+            Timber.i("%d target sentences indexed", index.size());
+        } catch (IOException e) {
+            Timber.e(e, "Failed to index the target sentences");
+        }
+    }
 
+    /** Starts writing the results queued so far. Runs in the background. */
+    private void openJournal() {
+        try {
+            ((DroidApp) getApplication()).getSessionJournal().open();
+        } catch (IOException e) {
+            Timber.e(e, "Failed to open the session journal");
+        }
+    }
 
-                .getRecognizer();
-        recognizer.addListener(this);
+    /** Keeps the result in the history; the journal writes it in the background. */
+    private void journal(Hypothesis hypothesis, SentenceMatcher.Match match) {
+        SessionRecord record = new SessionRecord(System.currentTimeMillis(),
+                hypothesis == null ? null : hypothesis.getHypstr());
+        if (hypothesis != null) {
+            record.setScore(hypothesis.getBestScore());
+        }
+        if (match != null) {
+            record.setTarget(match.getIndex(), match.getSentence(), match.getDistance());
+        }
+        PreRollPcmSource microphone = ((DroidApp) getApplication()).getMicrophone();
+        record.setTimings(
+                microphone == null
+                        ? SessionRecord.NONE
+                        : (int) (lastUtteranceSamples * 1000 / microphone.getSampleRate()),
+                millis(partials.getTimeToFirstPartialNanos()),
+                millis(partials.getPartialToFinalNanos()));
+        RawAudioCapture capture = ((DroidApp) getApplication()).getAudioCapture();
+        if (capture != null) {
+            record.setAudio(capture.getLastCaptureName());
+        }
+        SessionJournal journal = ((DroidApp) getApplication()).getSessionJournal();
+        if (!journal.append(record)) {
+            Timber.w("Session journal is behind, result dropped");
+        }
+    }
 
-        // Create keyword-activation search with the specified language model.
-        recognizer.addNgramSearch(NGRAM_SEARCH, new File(assetsDir, "6805.lm"));
+    private static int millis(long nanos) {
+        return nanos < 0 ? SessionRecord.NONE : (int) (nanos / 1000000);
+    }
 
+    private void showMsg(final String msg) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(WordsRecognitionActivity.this, msg, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     @Override
@@ -206,9 +485,22 @@ public class WordsRecognitionActivity extends AppCompatActivity implements Recog
     public void onDestroy() {
         super.onDestroy();
 
+        showPartials(false);
+        // The recognizer stays warm in DroidApp for the next activity
+        if (wakeUp != null) {
+            wakeUp.stop();
+        }
         if (recognizer != null) {
+            recognizer.removeFrameListener(levelMeter);
+            recognizer.removeFrameListener(utteranceAudio);
             recognizer.cancel();
-            recognizer.shutdown();
+        }
+        LanguageModelUpdater updater = ((DroidApp) getApplication()).getModelUpdater();
+        if (updater != null) {
+            updater.setListener(null);
+        }
+        if (recognizerLease != null) {
+            recognizerLease.release();
         }
     }
 
@@ -219,6 +511,14 @@ public class WordsRecognitionActivity extends AppCompatActivity implements Recog
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem item = menu.findItem(R.id.action_hands_free);
+        item.setEnabled(wakeUp != null);
+        item.setChecked(handsFree);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // Handle action bar item clicks here. The action bar will
@@ -230,6 +530,10 @@ public class WordsRecognitionActivity extends AppCompatActivity implements Recog
         if (id == R.id.action_settings) {
             return true;
         }
+        if (id == R.id.action_hands_free) {
+            setHandsFree(!handsFree);
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
@@ -241,7 +545,7 @@ public class WordsRecognitionActivity extends AppCompatActivity implements Recog
 
     @Override
     public void onEndOfSpeech() {
-        //stopRecognition();
+        // The engine's endpointer stops the recognition once the speech is over
     }
 
     /**
@@ -253,27 +557,64 @@ public class WordsRecognitionActivity extends AppCompatActivity implements Recog
 
     @Override
     public void onPartialResult(Hypothesis hypothesis) {
-
+        if (isSpottingKeyword()) {
+            return;
+        }
+        partials.submitPartial(hypothesis == null ? null : hypothesis.getHypstr());
     }
 
     @Override
     public void onResult(Hypothesis hypothesis) {
+        if (isSpottingKeyword()) {
+            return;
+        }
+        long start = System.nanoTime();
+        // The utterance may have ended on silence, before the user's closing gesture
+        recordBtn.resetRecording();
+        microphoneView.setVisibility(View.INVISIBLE);
+
+        showPartials(false);
+        partials.submitFinal(hypothesis == null ? null : hypothesis.getHypstr());
+        if (partials.getTimeToFirstPartialNanos() >= 0) {
+            Metrics.FIRST_PARTIAL.recordNanos(partials.getTimeToFirstPartialNanos());
+        }
+        if (partials.getPartialToFinalNanos() >= 0) {
+            Metrics.PARTIAL_TO_FINAL.recordNanos(partials.getPartialToFinalNanos());
+        }
+
+        SentenceMatcher.Match match = null;
         if (hypothesis != null) {
             int score = hypothesis.getBestScore();
             String text = "<<< result :" + hypothesis.getHypstr() + " score : " + score;
+            if (languageModel != null) {
+                text += String.format(" perplexity : %.2f", languageModel.perplexity(hypothesis.getHypstr()));
+            }
+            SentenceMatcher matcher = targets;
+            if (matcher != null) {
+                match = matcher.match(hypothesis.getHypstr());
+                text += match == null
+                        ? "\nno matching sentence"
+                        : "\nclosest : " + match.getSentence() + " errors : " + match.getDistance();
+            }
             resultView.setText(text);
         } else {
             resultView.setText("<<< Sentence UnRecognized.");
         }
+        Metrics.UI_UPDATE.recordSince(start);
+        journal(hypothesis, match);
     }
 
     @Override
     public void onError(Exception e) {
+        showPartials(false);
         resultView.setText(e.getMessage());
     }
 
     @Override
     public void onTimeout() {
+        if (isSpottingKeyword()) {
+            return;
+        }
         showMsg("<<< timed out!!");
         stopRecognition();
     }
@@ -0,0 +1,93 @@
+package com.rayworks.asrwordsrecognition.asset;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the {@code sync} folder of the APK assets, laid out by {@code assets.xml}.
+ *
+ * <p>Assets stored uncompressed are opened through their file descriptor so that the copy is a
+ * channel transfer straight out of the APK; compressed ones fall back to a stream.
+ */
+public class AndroidAssetSource implements AssetSource {
+
+    public static final String SYNC_DIR = "sync";
+    public static final String ASSET_LIST_NAME = "assets.lst";
+    public static final String HASH_EXT = ".md5";
+
+    private final AssetManager assetManager;
+
+    public AndroidAssetSource(AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    @Override
+    public List<String> list() throws IOException {
+        List<String> items = new ArrayList<>();
+        BufferedReader in = open(ASSET_LIST_NAME);
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    items.add(line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return items;
+    }
+
+    @Override
+    public String checksum(String item) throws IOException {
+        BufferedReader in = open(item + HASH_EXT);
+        try {
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("Empty checksum for asset " + item);
+            }
+            return line.trim();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public Content open(String item) throws IOException {
+        String path = SYNC_DIR + "/" + item;
+        try {
+            final AssetFileDescriptor fd = assetManager.openFd(path);
+            FileInputStream in = fd.createInputStream();
+            // AssetFileDescriptor only implements Closeable from API 19 on
+            Closeable owner =
+                    new Closeable() {
+                        @Override
+                        public void close() throws IOException {
+                            fd.close();
+                        }
+                    };
+            return new Content(in.getChannel(), fd.getStartOffset(), fd.getLength(), owner);
+        } catch (FileNotFoundException e) {
+            // compressed in the APK, no descriptor available
+            InputStream in = assetManager.open(path, AssetManager.ACCESS_STREAMING);
+            return new Content(Channels.newChannel(in));
+        }
+    }
+
+    private BufferedReader open(String name) throws IOException {
+        InputStream in = assetManager.open(SYNC_DIR + "/" + name);
+        return new BufferedReader(new InputStreamReader(in));
+    }
+}
@@ -0,0 +1,84 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+import java.io.IOException;
+
+/** {@link PcmSource} recording from the microphone, tuned for speech recognition. */
+public class MicrophoneSource implements PcmSource {
+
+    private static final float BUFFER_SECONDS = 0.4f;
+
+    private final int sampleRate;
+    private final short[] discard;
+    private AudioRecord recorder;
+
+    public MicrophoneSource(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.discard = new short[sampleRate / 100];
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (recorder == null) {
+            int bufferBytes =
+                    Math.max(
+                            AudioRecord.getMinBufferSize(
+                                    sampleRate,
+                                    AudioFormat.CHANNEL_IN_MONO,
+                                    AudioFormat.ENCODING_PCM_16BIT),
+                            Math.round(sampleRate * BUFFER_SECONDS) * 2);
+            AudioRecord created =
+                    new AudioRecord(
+                            MediaRecorder.AudioSource.VOICE_RECOGNITION,
+                            sampleRate,
+                            AudioFormat.CHANNEL_IN_MONO,
+                            AudioFormat.ENCODING_PCM_16BIT,
+                            bufferBytes);
+            if (created.getState() != AudioRecord.STATE_INITIALIZED) {
+                created.release();
+                throw new IOException("Failed to initialize the microphone");
+            }
+            recorder = created;
+        }
+
+        recorder.startRecording();
+        if (recorder.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+            recorder.stop();
+            throw new IOException("Failed to start recording. Microphone might be already in use.");
+        }
+        // the first samples after starting are usually zeroes
+        recorder.read(discard, 0, discard.length);
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        int read = recorder.read(buffer, offset, length);
+        if (read < 0) {
+            throw new IOException("Failed to read the microphone: " + read);
+        }
+        return read;
+    }
+
+    @Override
+    public void stop() {
+        if (recorder != null) {
+            recorder.stop();
+        }
+    }
+
+    @Override
+    public void release() {
+        if (recorder != null) {
+            recorder.release();
+            recorder = null;
+        }
+    }
+}
@@ -0,0 +1,582 @@
+package com.rayworks.asrwordsrecognition.engine;
+
+import com.rayworks.asrwordsrecognition.audio.EnergyGate;
+import com.rayworks.asrwordsrecognition.audio.FrameListener;
+import com.rayworks.asrwordsrecognition.audio.PcmSource;
+import com.rayworks.asrwordsrecognition.audio.VoiceActivityDetector;
+import com.rayworks.asrwordsrecognition.metrics.Metrics;
+import com.rayworks.asrwordsrecognition.metrics.RealTimeFactor;
+import com.rayworks.asrwordsrecognition.rescore.NbestRescorer;
+import com.rayworks.asrwordsrecognition.search.SearchRegistry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.NBest;
+import edu.cmu.pocketsphinx.NBestList;
+import edu.cmu.pocketsphinx.RecognitionListener;
+import edu.cmu.pocketsphinx.SpeechRecognizer;
+
+/**
+ * {@link RecognitionEngine} on the decoder and searches of a pocketsphinx {@link
+ * SpeechRecognizer}, with its own audio loop in place of the recognizer's.
+ *
+ * <p>The loop behaves like pocketsphinx's, with two additions: every chunk read from the {@link
+ * PcmSource} is handed to the {@link FrameListener}s, and an optional {@link
+ * VoiceActivityDetector} ends the utterance as soon as the speech does, delivering the final
+ * result without waiting for {@link #stop()}. Partial results are only posted when their text
+ * changes. With a {@link SearchRegistry} the searches are built on demand and every utterance
+ * holds the registry's decoder lock, so background builds never touch the decoder mid-utterance.
+ * Searches with an {@link EnergyGate} only decode the chunks the gate lets through, and those
+ * with an {@link NbestRescorer} deliver the candidate it picks from the N-best list.
+ * Listener events are delivered on the callback executor; events of an utterance that
+ * was stopped or cancelled in the meantime are dropped. A file or a stream goes through the same
+ * loop as the microphone when passed to {@link #startListening(String, PcmSource)}.
+ *
+ * <p>None of the calls wait for the decoding thread, which may be stuck behind a search build for
+ * seconds: {@link #stop()} and {@link #cancel()} only tell it to end, the final result follows
+ * on the callback executor, and {@link #shutdown()} frees the decoder on a thread of its own. The
+ * next utterance waits for the previous one to let go of the decoder, on its own thread.
+ */
+public class PocketSphinxEngine implements RecognitionEngine {
+
+    private static final int NO_TIMEOUT = -1;
+    private static final float CHUNK_SECONDS = 0.04f;
+    private static final int NBEST_SIZE = 10;
+
+    private final SpeechRecognizer recognizer;
+    private final Decoder decoder;
+    private final PcmSource source;
+    private final Executor callbacks;
+    private final int chunkSamples;
+
+    private final CopyOnWriteArrayList<RecognitionListener> listeners =
+            new CopyOnWriteArrayList<>();
+    private volatile FrameListener[] frameListeners = new FrameListener[0];
+    private volatile VoiceActivityDetector endpointer;
+    private volatile SearchRegistry searches;
+    private final Map<String, EnergyGate> gates = new ConcurrentHashMap<>();
+    private final Map<String, NbestRescorer> rescorers = new ConcurrentHashMap<>();
+    private volatile String searchName;
+
+    // the utterance in progress
+    private DecodingThread thread;
+    // the newest decoding thread, which may still be ending after a stop or cancel
+    private DecodingThread last;
+    private boolean closed;
+    // bumped whenever an utterance is finished, invalidating its pending events
+    private volatile int generation;
+
+    public PocketSphinxEngine(SpeechRecognizer recognizer, PcmSource source, Executor callbacks) {
+        this(recognizer, recognizer.getDecoder(), source, callbacks);
+    }
+
+    // for tests, which have no native decoder behind a recognizer
+    PocketSphinxEngine(SpeechRecognizer recognizer, Decoder decoder, PcmSource source,
+            Executor callbacks) {
+        this.recognizer = recognizer;
+        this.decoder = decoder;
+        this.source = source;
+        this.callbacks = callbacks;
+        this.chunkSamples = Math.round(source.getSampleRate() * CHUNK_SECONDS);
+    }
+
+    /** For registering searches; listening goes through this engine, not the recognizer. */
+    public SpeechRecognizer getRecognizer() {
+        return recognizer;
+    }
+
+    /** Ends utterances on trailing silence; null leaves it to {@link #stop()} and timeouts. */
+    public void setEndpointer(VoiceActivityDetector endpointer) {
+        this.endpointer = endpointer;
+    }
+
+    /** Builds and guards the searches; null uses the searches already added to the recognizer. */
+    public void setSearchRegistry(SearchRegistry searches) {
+        this.searches = searches;
+    }
+
+    public SearchRegistry getSearchRegistry() {
+        return searches;
+    }
+
+    /**
+     * Skips the silence instead of decoding it whenever the named search listens; null decodes
+     * everything again. Takes effect from the next utterance.
+     */
+    public void setEnergyGate(String searchName, EnergyGate gate) {
+        if (gate == null) {
+            gates.remove(searchName);
+        } else {
+            gates.put(searchName, gate);
+        }
+    }
+
+    @Override
+    public void setRescorer(String searchName, NbestRescorer rescorer) {
+        if (rescorer == null) {
+            rescorers.remove(searchName);
+        } else {
+            rescorers.put(searchName, rescorer);
+        }
+    }
+
+    @Override
+    public synchronized void addFrameListener(FrameListener listener) {
+        FrameListener[] current = frameListeners;
+        FrameListener[] updated = new FrameListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        frameListeners = updated;
+    }
+
+    @Override
+    public synchronized void removeFrameListener(FrameListener listener) {
+        FrameListener[] current = frameListeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                FrameListener[] updated = new FrameListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                frameListeners = updated;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void addListener(RecognitionListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    @Override
+    public void removeListener(RecognitionListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public boolean startListening(String searchName) {
+        return startListening(searchName, NO_TIMEOUT);
+    }
+
+    @Override
+    public synchronized boolean startListening(String searchName, int timeout) {
+        return start(searchName, source, timeout);
+    }
+
+    @Override
+    public synchronized boolean startListening(String searchName, PcmSource source) {
+        if (source.getSampleRate() != this.source.getSampleRate()) {
+            throw new IllegalArgumentException("Audio at " + source.getSampleRate()
+                    + " Hz, decoder expects " + this.source.getSampleRate() + " Hz");
+        }
+        return start(searchName, source, NO_TIMEOUT);
+    }
+
+    private boolean start(String searchName, PcmSource source, int timeout) {
+        if (thread != null || closed) {
+            return false;
+        }
+        SearchRegistry registry = searches;
+        if (registry != null && !registry.isDeclared(searchName)) {
+            throw new IllegalArgumentException("Unknown search " + searchName);
+        }
+        this.searchName = searchName;
+        int timeoutSamples =
+                timeout == NO_TIMEOUT
+                        ? NO_TIMEOUT
+                        : (int) ((long) timeout * source.getSampleRate() / 1000);
+        thread = new DecodingThread(
+                generation, searchName, source, registry, timeoutSamples, last);
+        last = thread;
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean stop() {
+        long stopStart = System.nanoTime();
+        DecodingThread finished = detachThread();
+        if (finished == null) {
+            return false;
+        }
+        finished.requestResult(stopStart, generation);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean cancel() {
+        DecodingThread cancelled = thread;
+        if (cancelled == null) {
+            return false;
+        }
+        // nobody waits for its result; end it as cheaply as possible
+        cancelled.discarded = true;
+        detachThread();
+        return true;
+    }
+
+    @Override
+    public String getSearchName() {
+        String name = searchName;
+        return name != null ? name : decoder.getSearch();
+    }
+
+    /** Cancels the utterance in progress and frees the decoder once it has ended. */
+    @Override
+    public synchronized void shutdown() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancel();
+        final DecodingThread ending = last;
+        final SearchRegistry registry = searches;
+        new Thread("pocketsphinx-shutdown") {
+            @Override
+            public void run() {
+                if (ending != null) {
+                    joinUninterruptibly(ending);
+                }
+                source.release();
+                if (registry != null) {
+                    registry.shutdown();
+                }
+                if (recognizer != null) {
+                    recognizer.shutdown();
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * Tells the decoding thread, if any, to end and invalidates its pending events. Does not wait
+     * for it.
+     *
+     * @return the thread, null if there was none
+     */
+    private DecodingThread detachThread() {
+        DecodingThread detached = thread;
+        if (detached == null) {
+            return null;
+        }
+        detached.interrupt();
+        thread = null;
+        generation++;
+        return detached;
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void postResult(final Hypothesis hypothesis, final long stopStart, final int current) {
+        callbacks.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (current == generation) {
+                            Metrics.STOP_TO_RESULT.recordSince(stopStart);
+                            for (RecognitionListener listener : listeners) {
+                                listener.onResult(hypothesis);
+                            }
+                        }
+                    }
+                });
+    }
+
+    private void post(final int utterance, final Event event, final Object payload) {
+        callbacks.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (utterance != generation) {
+                            return;
+                        }
+                        switch (event) {
+                            case SPEECH_START:
+                                for (RecognitionListener listener : listeners) {
+                                    listener.onBeginningOfSpeech();
+                                }
+                                break;
+                            case SPEECH_END:
+                                for (RecognitionListener listener : listeners) {
+                                    listener.onEndOfSpeech();
+                                }
+                                break;
+                            case PARTIAL:
+                                for (RecognitionListener listener : listeners) {
+                                    listener.onPartialResult((Hypothesis) payload);
+                                }
+                                break;
+                            case TIMEOUT:
+                                for (RecognitionListener listener : listeners) {
+                                    listener.onTimeout();
+                                }
+                                break;
+                            case ERROR:
+                                for (RecognitionListener listener : listeners) {
+                                    listener.onError((Exception) payload);
+                                }
+                                break;
+                            case ENDPOINT:
+                                // the thread has finished; collect its final result
+                                stop();
+                                break;
+                        }
+                    }
+                });
+    }
+
+    private enum Event {
+        SPEECH_START,
+        SPEECH_END,
+        PARTIAL,
+        TIMEOUT,
+        ERROR,
+        ENDPOINT
+    }
+
+    private final class DecodingThread extends Thread {
+        private final int utterance;
+        private final String searchName;
+        private final PcmSource source;
+        private final SearchRegistry registry;
+        private final int timeoutSamples;
+        // still ending, perhaps; it has the decoder until it does
+        private DecodingThread previous;
+
+        // taken before the decoder is released
+        private Hypothesis result;
+        // cancelled: the result is not rescored
+        volatile boolean discarded;
+
+        // guarded by this; set once stop() wants the result
+        private boolean ended;
+        private boolean resultRequested;
+        private long stopStart;
+        private int resultGeneration;
+
+        DecodingThread(int utterance, String searchName, PcmSource source,
+                SearchRegistry registry, int timeoutSamples, DecodingThread previous) {
+            super("pocketsphinx-decoder");
+            this.utterance = utterance;
+            this.searchName = searchName;
+            this.source = source;
+            this.registry = registry;
+            this.timeoutSamples = timeoutSamples;
+            this.previous = previous;
+        }
+
+        /** Posts the final result now if the thread has ended, or as soon as it does. */
+        synchronized void requestResult(long stopStart, int generation) {
+            if (ended) {
+                postResult(result, stopStart, generation);
+                return;
+            }
+            resultRequested = true;
+            this.stopStart = stopStart;
+            this.resultGeneration = generation;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (previous != null) {
+                    previous.join();
+                    previous = null;
+                }
+                if (registry != null) {
+                    decodeWithRegistry();
+                } else if (selectSearch()) {
+                    decode();
+                }
+            } catch (InterruptedException e) {
+                // stopped or cancelled while the previous utterance was ending
+            } finally {
+                synchronized (this) {
+                    ended = true;
+                    if (resultRequested) {
+                        postResult(result, stopStart, resultGeneration);
+                    }
+                }
+            }
+        }
+
+        private boolean selectSearch() {
+            try {
+                decoder.setSearch(searchName);
+                return true;
+            } catch (RuntimeException e) {
+                // not a search of the recognizer
+                post(utterance, Event.ERROR, e);
+                return false;
+            }
+        }
+
+        private void decodeWithRegistry() {
+            String search;
+            try {
+                // a redirected search decodes with its current version
+                search = registry.acquire(searchName);
+            } catch (InterruptedException e) {
+                // stopped or cancelled while a search was being built
+                return;
+            } catch (Exception e) {
+                post(utterance, Event.ERROR, e);
+                return;
+            }
+            try {
+                decoder.setSearch(search);
+                decode();
+            } finally {
+                registry.release();
+            }
+        }
+
+        private void decode() {
+            try {
+                source.start();
+            } catch (IOException e) {
+                post(utterance, Event.ERROR, e);
+                return;
+            }
+
+            VoiceActivityDetector vad = endpointer;
+            if (vad != null) {
+                vad.reset();
+            }
+            EnergyGate gate = gates.get(searchName);
+            short[] preRoll = null;
+            if (gate != null) {
+                gate.reset();
+                preRoll = new short[gate.getPreRollCapacity()];
+            }
+            RealTimeFactor searchRtf = Metrics.decode(searchName);
+            short[] buffer = new short[chunkSamples];
+            for (FrameListener listener : frameListeners) {
+                listener.onUtteranceStart(searchName);
+            }
+            int remaining = timeoutSamples;
+            boolean inSpeech = false;
+            boolean endpointed = false;
+            String lastPartial = null;
+
+            decoder.startUtt();
+            try {
+                while (!isInterrupted() && (timeoutSamples == NO_TIMEOUT || remaining > 0)) {
+                    int read = source.read(buffer, 0, buffer.length);
+                    if (read < 0) {
+                        endpointed = true;
+                        break;
+                    }
+                    if (read == 0) {
+                        continue;
+                    }
+
+                    for (FrameListener listener : frameListeners) {
+                        listener.onFrame(buffer, read);
+                    }
+                    long decodeStart = System.nanoTime();
+                    if (gate == null || gate.process(buffer, 0, read)) {
+                        if (gate != null) {
+                            int held = gate.drainPreRoll(preRoll);
+                            if (held > 0) {
+                                decoder.processRaw(preRoll, held, false, false);
+                            }
+                        }
+                        decoder.processRaw(buffer, read, false, false);
+                        if (decoder.getInSpeech() != inSpeech) {
+                            inSpeech = !inSpeech;
+                            post(utterance,
+                                    inSpeech ? Event.SPEECH_START : Event.SPEECH_END, null);
+                        }
+                        // most chunks leave the hypothesis as it was; spare the callback thread
+                        Hypothesis partial = decoder.hyp();
+                        String text = partial == null ? null : partial.getHypstr();
+                        if (text == null ? lastPartial != null : !text.equals(lastPartial)) {
+                            lastPartial = text;
+                            post(utterance, Event.PARTIAL, partial);
+                        }
+                    }
+                    // skipped chunks count as audio too: the gate's savings show in the RTF
+                    long decodeNanos = System.nanoTime() - decodeStart;
+                    Metrics.DECODE.record(read, source.getSampleRate(), decodeNanos);
+                    searchRtf.record(read, source.getSampleRate(), decodeNanos);
+
+                    boolean speaking = inSpeech;
+                    if (vad != null) {
+                        if (vad.process(buffer, 0, read)
+                                == VoiceActivityDetector.Event.UTTERANCE_ENDED) {
+                            endpointed = true;
+                            break;
+                        }
+                        speaking |= vad.isSpeech();
+                    }
+                    remaining = speaking ? timeoutSamples : remaining - read;
+                }
+            } catch (IOException e) {
+                post(utterance, Event.ERROR, e);
+            } finally {
+                source.stop();
+                decoder.endUtt();
+                result = decoder.hyp();
+                NbestRescorer rescorer = rescorers.get(searchName);
+                if (rescorer != null && result != null && !discarded) {
+                    result = rescore(rescorer, result);
+                }
+                for (FrameListener listener : frameListeners) {
+                    listener.onUtteranceEnd();
+                }
+            }
+
+            if (endpointed) {
+                post(utterance, Event.ENDPOINT, null);
+            } else if (timeoutSamples != NO_TIMEOUT && remaining <= 0) {
+                post(utterance, Event.TIMEOUT, null);
+            }
+        }
+
+        /** @return the rescorer's pick from the N-best list, or {@code best} */
+        private Hypothesis rescore(NbestRescorer rescorer, Hypothesis best) {
+            long start = System.nanoTime();
+            List<NbestRescorer.Candidate> candidates = new ArrayList<>(NBEST_SIZE);
+            NBestList nbest = decoder.nbest();
+            try {
+                for (NBest entry : nbest) {
+                    candidates.add(
+                            new NbestRescorer.Candidate(entry.getHypstr(), entry.getScore()));
+                    if (candidates.size() == NBEST_SIZE) {
+                        break;
+                    }
+                }
+            } finally {
+                nbest.delete();
+            }
+            NbestRescorer.Result rescored = rescorer.rescore(candidates);
+            Metrics.RESCORE.recordSince(start);
+            if (rescored == null || rescored.isFallBack() || rescored.getIndex() == 0) {
+                return best;
+            }
+            return new Hypothesis(rescored.getText(), best.getBestScore(), best.getProb());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.rayworks.asrwordsrecognition.engine;
+
+import com.rayworks.asrwordsrecognition.audio.FrameListener;
+import com.rayworks.asrwordsrecognition.audio.PcmSource;
+import com.rayworks.asrwordsrecognition.rescore.NbestRescorer;
+
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+/**
+ * The live recognizer as the app uses it, mirroring {@link edu.cmu.pocketsphinx.SpeechRecognizer}
+ * so the lifecycle around it can be exercised on the JVM with a fake.
+ */
+public interface RecognitionEngine {
+
+    void addListener(RecognitionListener listener);
+
+    void removeListener(RecognitionListener listener);
+
+    /** Registers a listener for the raw audio, called on the audio thread for every chunk. */
+    void addFrameListener(FrameListener listener);
+
+    void removeFrameListener(FrameListener listener);
+
+    /**
+     * Picks the results of the named search from its N-best list with {@code rescorer}; null
+     * delivers the decoder's best again.
+     */
+    void setRescorer(String searchName, NbestRescorer rescorer);
+
+    /** Starts listening with the named search, see {@link #startListening(String, int)}. */
+    boolean startListening(String searchName);
+
+    /**
+     * Starts listening with the named search.
+     *
+     * @param timeout milliseconds after which listening stops with {@code onTimeout()}
+     * @return false if the engine is already listening or shut down
+     */
+    boolean startListening(String searchName, int timeout);
+
+    /**
+     * Decodes {@code source} with the named search, the way the microphone is decoded, until the
+     * source or the speech ends or {@link #stop()}; a file is decoded as fast as the decoder
+     * goes. The engine starts and stops the source but does not release it.
+     *
+     * @throws IllegalArgumentException if the source's sample rate is not the decoder's
+     * @return false if the engine is already listening
+     */
+    boolean startListening(String searchName, PcmSource source);
+
+    /**
+     * Stops listening and delivers the final result once the decoder has finished with it.
+     * Returns at once, so it can be called on the main thread.
+     */
+    boolean stop();
+
+    /** Stops listening without delivering a result. Returns at once, like {@link #stop()}. */
+    boolean cancel();
+
+    String getSearchName();
+
+    /**
+     * Releases the decoder and its models, in the background if an utterance is still ending; the
+     * engine cannot be used afterwards.
+     */
+    void shutdown();
+}
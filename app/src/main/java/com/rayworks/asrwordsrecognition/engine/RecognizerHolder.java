@@ -0,0 +1,201 @@
+package com.rayworks.asrwordsrecognition.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+/**
+ * Process-wide owner of the single {@link RecognitionEngine}.
+ *
+ * <p>The engine is built once on the loader executor, either eagerly through {@link #warmUp()}
+ * or on the first {@link #acquire(RecognitionListener, ReadyCallback)}, and then handed to every
+ * client. Each client holds a {@link Lease} that keeps its listener attached; releasing the
+ * last lease leaves the engine loaded so that rotations and re-entries start instantly. Only
+ * {@link #releaseIfIdle()}, called from the memory-trim callbacks, shuts it down.
+ */
+public class RecognizerHolder {
+
+    /** Builds a fully configured engine; runs on the loader executor. */
+    public interface EngineFactory {
+        RecognitionEngine create() throws Exception;
+    }
+
+    /** Delivered on the callback executor once the engine is usable, or failed to load. */
+    public interface ReadyCallback {
+        void onReady(RecognitionEngine engine);
+
+        void onError(Exception e);
+    }
+
+    private enum State {
+        IDLE,
+        LOADING,
+        READY
+    }
+
+    private final EngineFactory factory;
+    private final Executor loader;
+    private final Executor callbacks;
+
+    private final List<Lease> leases = new ArrayList<>();
+    private State state = State.IDLE;
+    private RecognitionEngine engine;
+    private int loads;
+
+    public RecognizerHolder(EngineFactory factory, Executor loader, Executor callbacks) {
+        this.factory = factory;
+        this.loader = loader;
+        this.callbacks = callbacks;
+    }
+
+    /** Starts loading the engine in the background unless it is loaded or loading already. */
+    public synchronized void warmUp() {
+        if (state != State.IDLE) {
+            return;
+        }
+        state = State.LOADING;
+        loads++;
+        loader.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        load();
+                    }
+                });
+    }
+
+    /**
+     * Attaches {@code listener} to the shared engine and reports it through {@code callback},
+     * immediately if the engine is warm.
+     */
+    public synchronized Lease acquire(RecognitionListener listener, ReadyCallback callback) {
+        Lease lease = new Lease(listener, callback);
+        leases.add(lease);
+        if (state == State.READY) {
+            engine.addListener(listener);
+            deliverReady(lease, engine);
+        } else {
+            warmUp();
+        }
+        return lease;
+    }
+
+    /**
+     * Shuts the engine down if no lease holds it.
+     *
+     * @return true if the engine was released
+     */
+    public synchronized boolean releaseIfIdle() {
+        if (state != State.READY || !leases.isEmpty()) {
+            return false;
+        }
+        RecognitionEngine released = engine;
+        engine = null;
+        state = State.IDLE;
+        released.cancel();
+        released.shutdown();
+        return true;
+    }
+
+    public synchronized boolean isReady() {
+        return state == State.READY;
+    }
+
+    public synchronized int getLeaseCount() {
+        return leases.size();
+    }
+
+    /** @return how many times the engine has been (re)loaded */
+    public synchronized int getLoadCount() {
+        return loads;
+    }
+
+    private void load() {
+        RecognitionEngine created = null;
+        Exception failure = null;
+        try {
+            created = factory.create();
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        List<Lease> waiting;
+        synchronized (this) {
+            waiting = new ArrayList<>(leases);
+            if (failure != null) {
+                state = State.IDLE;
+            } else {
+                engine = created;
+                state = State.READY;
+                for (Lease lease : waiting) {
+                    engine.addListener(lease.listener);
+                }
+            }
+        }
+
+        for (Lease lease : waiting) {
+            if (failure != null) {
+                deliverError(lease, failure);
+            } else {
+                deliverReady(lease, created);
+            }
+        }
+    }
+
+    private synchronized void release(Lease lease) {
+        if (!leases.remove(lease)) {
+            return;
+        }
+        if (state == State.READY) {
+            engine.removeListener(lease.listener);
+        }
+    }
+
+    private void deliverReady(final Lease lease, final RecognitionEngine ready) {
+        callbacks.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (lease.isActive()) {
+                            lease.callback.onReady(ready);
+                        }
+                    }
+                });
+    }
+
+    private void deliverError(final Lease lease, final Exception e) {
+        callbacks.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (lease.isActive()) {
+                            lease.callback.onError(e);
+                        }
+                    }
+                });
+    }
+
+    /** A client's hold on the engine; release it when the client goes away. */
+    public final class Lease {
+        private final RecognitionListener listener;
+        private final ReadyCallback callback;
+
+        Lease(RecognitionListener listener, ReadyCallback callback) {
+            this.listener = listener;
+            this.callback = callback;
+        }
+
+        /** Detaches the listener. Pending callbacks are dropped; calling twice is harmless. */
+        public void release() {
+            RecognizerHolder.this.release(this);
+        }
+
+        boolean isActive() {
+            synchronized (RecognizerHolder.this) {
+                return leases.contains(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.rayworks.asrwordsrecognition.engine;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.rayworks.asrwordsrecognition.BuildConfig;
+import com.rayworks.asrwordsrecognition.asset.AndroidAssetSource;
+import com.rayworks.asrwordsrecognition.asset.AssetSync;
+import com.rayworks.asrwordsrecognition.asset.SyncResult;
+import com.rayworks.asrwordsrecognition.audio.EnergyGate;
+import com.rayworks.asrwordsrecognition.audio.MicrophoneSource;
+import com.rayworks.asrwordsrecognition.audio.PreRollPcmSource;
+import com.rayworks.asrwordsrecognition.audio.VoiceActivityDetector;
+import com.rayworks.asrwordsrecognition.audio.capture.RawAudioCapture;
+import com.rayworks.asrwordsrecognition.dict.BinaryDictionary;
+import com.rayworks.asrwordsrecognition.eval.SphinxBatchRecognizer;
+import com.rayworks.asrwordsrecognition.metrics.Metrics;
+import com.rayworks.asrwordsrecognition.metrics.MetricsRegistry;
+import com.rayworks.asrwordsrecognition.pool.DecoderPool;
+import com.rayworks.asrwordsrecognition.search.LanguageModelUpdater;
+import com.rayworks.asrwordsrecognition.search.SearchRegistry;
+import com.rayworks.asrwordsrecognition.search.SearchSpec;
+import com.rayworks.asrwordsrecognition.tuning.DecoderProfile;
+import com.rayworks.asrwordsrecognition.tuning.DeviceBenchmark;
+import com.rayworks.asrwordsrecognition.tuning.ProfileSet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import edu.cmu.pocketsphinx.SpeechRecognizer;
+import edu.cmu.pocketsphinx.SpeechRecognizerSetup;
+
+import timber.log.Timber;
+
+/** Syncs the bundled models and builds the pocketsphinx recognizer on top of them. */
+public class SphinxEngineFactory implements RecognizerHolder.EngineFactory {
+
+    /* Named searches allow to quickly reconfigure the decoder */
+    public static final String KWS_SEARCH = "wakeup";
+    public static final String NGRAM_SEARCH = "ngram_search";
+
+    /** Wakes up hands-free mode; set as wakeUpPhrase in build.gradle, see dictionary.gradle. */
+    public static final String KEYPHRASE = BuildConfig.KEYPHRASE;
+    /** Detection threshold of {@link #KEYPHRASE}: raise it on false alarms, lower it on misses. */
+    public static final float KEYWORD_THRESHOLD = 1e-45f;
+
+    public static final String ACOUSTIC_MODEL = "en-us-ptm";
+    /** Only the pronunciations of the LM vocabulary, see dictionary.gradle. */
+    public static final String DICTIONARY = "pruned-en-us.dict";
+    public static final String LANGUAGE_MODEL = "6805.lm";
+    /** The sentences {@link #LANGUAGE_MODEL} is compiled from. */
+    public static final String CORPUS = "lm_based_corpus.txt";
+    // pronunciations of the words added at run time
+    private static final String FULL_DICTIONARY = "cmudict-en-us.bdic";
+    /** Versions of the language model with sentences added at run time, and their journal. */
+    public static final String MODEL_DIR = "lm";
+    // lesson models synced next to the default one are declared as searches named by file
+    private static final String LM_SUFFIX = ".lm";
+    // stands in for evicted searches; it must be in the pruned dictionary, i.e. the LM vocabulary
+    private static final String PLACEHOLDER_WORD = "a";
+
+    /**
+     * Decoder options by device class, written by the offline {@code ParameterSweep}; without
+     * them every device gets the defaults.
+     */
+    public static final String PROFILES = "decoder-profiles.properties";
+    // long enough for the JIT, short enough not to be noticed next to loading the models
+    private static final long BENCHMARK_MILLIS = 200;
+
+    /** Recent utterances are kept here for QA, see {@link RawAudioCapture}. */
+    public static final String CAPTURE_DIR = "captures";
+
+    private static final int SAMPLE_RATE = 16000;
+    // audio from before the record button was pressed, for the first syllable
+    private static final int PRE_ROLL_MILLIS = 300;
+    // how far the capture writer may fall behind the microphone
+    private static final int CAPTURE_BUFFER_SAMPLES = 30 * SAMPLE_RATE;
+
+    private final Context context;
+    private final Executor mainExecutor;
+    private final ExecutorService searchCompiler;
+    private RawAudioCapture capture;
+    private float keywordThreshold = KEYWORD_THRESHOLD;
+    // benchmark score of this device, measured once
+    private double deviceScore = Double.NaN;
+    private volatile SearchRegistry searches;
+    private volatile LanguageModelUpdater modelUpdater;
+    private volatile PreRollPcmSource microphone;
+    private volatile DecoderProfile profile;
+
+    public SphinxEngineFactory(Context context) {
+        this.context = context.getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        this.mainExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        };
+        this.searchCompiler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "search-compiler");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /** The directory the assets are synced to, holding the models once the engine is ready. */
+    public static File getSyncDir(Context context) throws IOException {
+        File externalDir = context.getExternalFilesDir(null);
+        if (externalDir == null) {
+            throw new IOException("cannot get external files dir, external storage state is "
+                    + Environment.getExternalStorageState());
+        }
+        return new File(externalDir, AndroidAssetSource.SYNC_DIR);
+    }
+
+    @Override
+    public RecognitionEngine create() throws IOException {
+        long syncStart = System.nanoTime();
+        SyncResult sync = new AssetSync(new AndroidAssetSource(context.getAssets()), getSyncDir(context)).sync();
+        Metrics.ASSET_SYNC.recordSince(syncStart);
+        Timber.i("Asset sync: %s", sync);
+
+        Metrics.REGISTRY.recordMemory(Metrics.MEMORY_BEFORE_MODELS,
+                MetricsRegistry.javaHeapBytes(), Debug.getNativeHeapAllocatedSize());
+        profile = selectProfile(sync.getDirectory());
+        SpeechRecognizer recognizer = setupRecognizer(sync.getDirectory());
+        Metrics.REGISTRY.recordMemory(Metrics.MEMORY_AFTER_MODELS,
+                MetricsRegistry.javaHeapBytes(), Debug.getNativeHeapAllocatedSize());
+
+        // the microphone is read on a thread of its own, ahead of a decoder that falls behind,
+        // and can be kept recording so that an utterance starts with what was just said
+        PreRollPcmSource source =
+                new PreRollPcmSource(new MicrophoneSource(SAMPLE_RATE), PRE_ROLL_MILLIS);
+        PocketSphinxEngine engine = new PocketSphinxEngine(recognizer, source, mainExecutor);
+        microphone = source;
+        // Searches are built in the background from here on, instead of all of them up front
+        searches = declareSearches(recognizer, sync.getDirectory());
+        engine.setSearchRegistry(searches);
+        // Sentences added at run time go into new versions of the n-gram search
+        File assetsDir = sync.getDirectory();
+        LanguageModelUpdater updater = new LanguageModelUpdater(NGRAM_SEARCH,
+                new File(assetsDir, LANGUAGE_MODEL),
+                new File(getSyncDir(context).getParentFile(), MODEL_DIR),
+                BinaryDictionary.open(new File(assetsDir, FULL_DICTIONARY)),
+                searches, searchCompiler);
+        updater.restore(new File(assetsDir, CORPUS));
+        modelUpdater = updater;
+        // Waiting for the keyphrase, silence is not worth decoding
+        engine.setEnergyGate(KWS_SEARCH, new EnergyGate(SAMPLE_RATE));
+        // Results arrive as soon as the speech ends instead of on the second tap
+        engine.setEndpointer(new VoiceActivityDetector(SAMPLE_RATE));
+        // QA wants what was said to the n-gram search, not hours of waiting for the keyphrase
+        engine.addFrameListener(getCapture().setSearch(NGRAM_SEARCH));
+        return engine;
+    }
+
+    /** Keyphrase detection threshold of the engines created from now on. */
+    public SphinxEngineFactory setKeywordThreshold(float keywordThreshold) {
+        this.keywordThreshold = keywordThreshold;
+        return this;
+    }
+
+    /**
+     * Decoders on the models synced by {@link #create()}, for recognizing recordings next to the
+     * live engine; one core is left to the live engine. Decoders are only created for jobs, so
+     * the pool can be built before the models are synced, though only a pool built after gets
+     * the live engine's decoder profile.
+     */
+    public DecoderPool createDecoderPool() throws IOException {
+        File assetsDir = getSyncDir(context);
+        SphinxBatchRecognizer.Factory decoders = new SphinxBatchRecognizer.Factory(
+                new File(assetsDir, ACOUSTIC_MODEL), new File(assetsDir, DICTIONARY),
+                new File(assetsDir, LANGUAGE_MODEL));
+        DecoderProfile selected = profile;
+        if (selected != null) {
+            for (Map.Entry<String, String> option : selected.getOptions().entrySet()) {
+                decoders.setOption(option.getKey(), option.getValue());
+            }
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new DecoderPool(decoders, Math.max(1, cores - 1));
+    }
+
+    /** The searches of the last engine created, null before the first; for trimming memory. */
+    public SearchRegistry getSearchRegistry() {
+        return searches;
+    }
+
+    /** Adds sentences to the n-gram search of the last engine created, null before the first. */
+    public LanguageModelUpdater getModelUpdater() {
+        return modelUpdater;
+    }
+
+    /** The decoder options of the last engine created, null before the first. */
+    public DecoderProfile getProfile() {
+        return profile;
+    }
+
+    /** The microphone of the last engine created, null before the first; for warming it up. */
+    public PreRollPcmSource getMicrophone() {
+        return microphone;
+    }
+
+    private SearchRegistry declareSearches(SpeechRecognizer recognizer, File assetsDir) {
+        SearchRegistry registry = new SearchRegistry(
+                new SphinxSearchBackend(recognizer, PLACEHOLDER_WORD), searchCompiler);
+        registry.declare(SearchSpec.ngram(NGRAM_SEARCH, new File(assetsDir, LANGUAGE_MODEL))
+                .setPinned(true));
+        registry.declare(SearchSpec.keyphrase(KWS_SEARCH, KEYPHRASE)
+                .setPriority(SearchSpec.PRIORITY_LOW)
+                .setPinned(true));
+
+        File[] models = assetsDir.listFiles();
+        if (models != null) {
+            for (File model : models) {
+                String name = model.getName();
+                if (name.endsWith(LM_SUFFIX) && !name.equals(LANGUAGE_MODEL)) {
+                    registry.declare(SearchSpec.ngram(
+                            name.substring(0, name.length() - LM_SUFFIX.length()), model)
+                            .setPriority(SearchSpec.PRIORITY_LOW)
+                            .setLazy(true));
+                }
+            }
+        }
+        return registry;
+    }
+
+    /** The capture writer, null before the first engine is created. */
+    public synchronized RawAudioCapture getAudioCapture() {
+        return capture;
+    }
+
+    /** One capture writer for the process, shared by every engine this factory creates. */
+    private synchronized RawAudioCapture getCapture() throws IOException {
+        if (capture == null) {
+            File dir = new File(getSyncDir(context).getParentFile(), CAPTURE_DIR);
+            capture = new RawAudioCapture(dir, SAMPLE_RATE, CAPTURE_BUFFER_SAMPLES);
+            capture.start();
+        }
+        return capture;
+    }
+
+    /**
+     * Picks the profile of this device's class from {@link #PROFILES}, timing the device the
+     * first time; null if there are no profiles or they cannot be read.
+     */
+    private DecoderProfile selectProfile(File assetsDir) {
+        File file = new File(assetsDir, PROFILES);
+        if (!file.isFile()) {
+            return null;
+        }
+        ProfileSet profiles;
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                profiles = ProfileSet.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Timber.e(e, "Cannot read %s, using the default decoder options", file);
+            return null;
+        }
+        if (Double.isNaN(deviceScore)) {
+            deviceScore = new DeviceBenchmark().measure(BENCHMARK_MILLIS);
+        }
+        DecoderProfile selected = profiles.select(deviceScore);
+        Timber.i("Device score %.0f of the tuning host's %.0f, decoder profile %s",
+                deviceScore, profiles.getReferenceScore(), selected);
+        return selected;
+    }
+
+    private SpeechRecognizer setupRecognizer(File assetsDir) throws IOException {
+        // The recognizer can be configured to perform multiple searches
+        // of different kind and switch between them
+
+        long setupStart = System.nanoTime();
+        SpeechRecognizerSetup setup = SpeechRecognizerSetup.defaultSetup()
+                .setAcousticModel(new File(assetsDir, ACOUSTIC_MODEL))
+                .setDictionary(new File(assetsDir, DICTIONARY))
+
+                // Raw audio goes to the bounded, compressed capture instead of setRawLogDir
+                .setKeywordThreshold(keywordThreshold)
+                .setBoolean("-allphone_ci", true);  // Use context-independent phonetic search, context-dependent is too slow for mobile
+        // Beams, frame skipping and the like for this class of device, over the defaults above
+        if (profile != null) {
+            for (Map.Entry<String, String> option : profile.getOptions().entrySet()) {
+                setOption(setup, option.getKey(), option.getValue());
+            }
+        }
+        SpeechRecognizer recognizer = setup.getRecognizer();
+        Metrics.RECOGNIZER_SETUP.recordSince(setupStart);
+
+        return recognizer;
+    }
+
+    private static void setOption(SpeechRecognizerSetup setup, String name, String text) {
+        Object value = SphinxBatchRecognizer.parseOption(text);
+        if (value instanceof Boolean) {
+            setup.setBoolean(name, (Boolean) value);
+        } else if (value instanceof Integer) {
+            setup.setInteger(name, (Integer) value);
+        } else if (value instanceof Double) {
+            setup.setFloat(name, (Double) value);
+        } else {
+            setup.setString(name, (String) value);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.rayworks.asrwordsrecognition.engine;
+
+import com.rayworks.asrwordsrecognition.dict.DictionaryParser;
+import com.rayworks.asrwordsrecognition.metrics.Metrics;
+import com.rayworks.asrwordsrecognition.search.SearchBackend;
+import com.rayworks.asrwordsrecognition.search.SearchSpec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.SpeechRecognizer;
+
+/**
+ * Builds searches with the {@code add*Search} methods of a {@link SpeechRecognizer}.
+ *
+ * <p>pocketsphinx cannot remove a search, but registering a name again frees the search it
+ * replaces. An evicted search is therefore replaced by a keyphrase search for a single word,
+ * which costs next to nothing; the word must be in the dictionary. Words of a search's own
+ * {@link SearchSpec#getDictionary() dictionary} are added to the decoder's before it is built.
+ */
+public class SphinxSearchBackend implements SearchBackend {
+
+    private final SpeechRecognizer recognizer;
+    private final Decoder decoder;
+    private final String placeholderWord;
+
+    public SphinxSearchBackend(SpeechRecognizer recognizer, String placeholderWord) {
+        this.recognizer = recognizer;
+        this.decoder = recognizer.getDecoder();
+        this.placeholderWord = placeholderWord;
+    }
+
+    @Override
+    public void compile(SearchSpec spec) throws IOException {
+        if (spec.getDictionary() != null) {
+            addMissingWords(spec.getDictionary());
+        }
+        switch (spec.getType()) {
+            case NGRAM:
+                long start = System.nanoTime();
+                recognizer.addNgramSearch(spec.getName(), spec.getFile());
+                Metrics.NGRAM_SEARCH.recordSince(start);
+                break;
+            case GRAMMAR:
+                recognizer.addGrammarSearch(spec.getName(), spec.getFile());
+                break;
+            case KEYPHRASE:
+                recognizer.addKeyphraseSearch(spec.getName(), spec.getPhrase());
+                break;
+            case KEYWORDS:
+                recognizer.addKeywordSearch(spec.getName(), spec.getFile());
+                break;
+        }
+    }
+
+    @Override
+    public void release(SearchSpec spec) {
+        decoder.setKeyphrase(spec.getName(), placeholderWord);
+    }
+
+    private void addMissingWords(File dictionary) throws IOException {
+        Map<String, List<String>> entries = DictionaryParser.parse(dictionary);
+        for (Map.Entry<String, List<String>> entry : entries.entrySet()) {
+            String word = entry.getKey();
+            if (decoder.lookupWord(word) != null) {
+                continue;
+            }
+            List<String> pronunciations = entry.getValue();
+            for (int i = 0; i < pronunciations.size(); i++) {
+                // the search about to be built picks the words up, no need to update the others
+                String key = i == 0 ? word : word + "(" + (i + 1) + ")";
+                decoder.addWord(key, pronunciations.get(i), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.rayworks.asrwordsrecognition.engine;
+
+import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+/**
+ * Hands-free recognition: the engine listens with a cheap keyword search until the wake-up
+ * phrase is heard, then with the full search for one utterance, then for the phrase again.
+ *
+ * <pre>
+ * OFF --start()--> WAITING --keyword--> LISTENING --result, timeout--> WAITING ...
+ *  ^                                                                     |
+ *  +------------------------------ stop(), error ------------------------+
+ * </pre>
+ *
+ * <p>A keyword search only ever hypothesizes the phrases it spots, so any partial result while
+ * waiting counts as the wake-up. The controller registers itself as a listener of the engine;
+ * listeners registered before it see an utterance's result before it switches searches, so they
+ * can tell utterances from keyword spotting with {@link #getState()}. Runs on the engine's
+ * callback thread.
+ */
+public class WakeUpController implements RecognitionListener {
+
+    public enum State {
+        OFF,
+        /** Listening for the wake-up phrase. */
+        WAITING,
+        /** Listening to an utterance after the wake-up phrase. */
+        LISTENING
+    }
+
+    public interface Callback {
+        /** The wake-up phrase was heard; the utterance search is listening now. */
+        void onWakeUp();
+
+        /** The utterance has ended, its result delivered; waiting for the phrase again. */
+        void onUtteranceEnd();
+
+        /** Listening failed and hands-free mode is off. */
+        void onStopped(Exception error);
+    }
+
+    private final RecognitionEngine engine;
+    private final String keywordSearch;
+    private final String utteranceSearch;
+    private final Callback callback;
+    private int utteranceTimeout = 10000;
+
+    private State state = State.OFF;
+
+    public WakeUpController(RecognitionEngine engine, String keywordSearch,
+                            String utteranceSearch, Callback callback) {
+        this.engine = engine;
+        this.keywordSearch = keywordSearch;
+        this.utteranceSearch = utteranceSearch;
+        this.callback = callback;
+    }
+
+    /** Milliseconds of silence after which an utterance ends; 10 s by default. */
+    public WakeUpController setUtteranceTimeout(int millis) {
+        this.utteranceTimeout = millis;
+        return this;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** Starts waiting for the wake-up phrase, abandoning anything the engine was listening to. */
+    public void start() {
+        if (state != State.OFF) {
+            return;
+        }
+        engine.addListener(this);
+        waitForKeyword();
+    }
+
+    /** Stops listening altogether. */
+    public void stop() {
+        if (state == State.OFF) {
+            return;
+        }
+        state = State.OFF;
+        engine.removeListener(this);
+        engine.cancel();
+    }
+
+    @Override
+    public void onBeginningOfSpeech() {
+    }
+
+    @Override
+    public void onEndOfSpeech() {
+    }
+
+    @Override
+    public void onPartialResult(Hypothesis hypothesis) {
+        onPartial(hypothesis == null ? null : hypothesis.getHypstr());
+    }
+
+    @Override
+    public void onResult(Hypothesis hypothesis) {
+        switch (state) {
+            case WAITING:
+                // the endpointer ended a noise that was no keyword
+                waitForKeyword();
+                break;
+            case LISTENING:
+                waitForKeyword();
+                callback.onUtteranceEnd();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onError(Exception e) {
+        if (state != State.OFF) {
+            stop();
+            callback.onStopped(e);
+        }
+    }
+
+    @Override
+    public void onTimeout() {
+        if (state == State.LISTENING) {
+            // the result follows and takes us back to waiting
+            engine.stop();
+        }
+    }
+
+    /** {@link #onPartialResult(Hypothesis)} with the hypothesis text. */
+    void onPartial(String text) {
+        if (state == State.WAITING && text != null && !text.trim().isEmpty()) {
+            engine.cancel();
+            state = State.LISTENING;
+            engine.startListening(utteranceSearch, utteranceTimeout);
+            callback.onWakeUp();
+        }
+    }
+
+    private void waitForKeyword() {
+        engine.cancel();
+        state = State.WAITING;
+        engine.startListening(keywordSearch);
+    }
+}
@@ -0,0 +1,16 @@
+package com.rayworks.asrwordsrecognition.metrics;
+
+import java.util.List;
+
+import timber.log.Timber;
+
+/** Logs each report line through Timber. */
+public class TimberSink implements MetricsSink {
+
+    @Override
+    public void write(List<String> lines) {
+        for (String line : lines) {
+            Timber.tag("Metrics").i("%s", line);
+        }
+    }
+}
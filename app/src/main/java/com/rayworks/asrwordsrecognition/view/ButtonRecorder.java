@@ -4,10 +4,11 @@ import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
-import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.widget.Button;
 
 
@@ -18,14 +19,26 @@ import timber.log.Timber;
 /**
  * Created by Sean on 3/1/17.
  *
- * <p>A button for recording user's voice. It handles motion events such as simple tap, long press,
- * action up and down.
+ * <p>A button for recording user's voice. A tap starts recording and the next tap completes it,
+ * a long press records until the finger is lifted, see {@link RecordGesture}. Recording starts
+ * as the finger lands, and is cancelled if the touch turns out to be a double tap or a drag.
  */
 @SuppressLint("AppCompatCustomView")
 public class ButtonRecorder extends Button {
 
-    private TouchListener listener;
+    private RecordGesture gesture;
     private boolean inActivated = false;
+    // System.nanoTime() of the touch that started the recording in progress
+    private long touchDownNanos;
+    private final Runnable timeout = new Runnable() {
+        @Override
+        public void run() {
+            if (gesture != null) {
+                gesture.advance(SystemClock.uptimeMillis());
+                scheduleTimeout();
+            }
+        }
+    };
 
     public ButtonRecorder(Context context) {
         this(context, null);
@@ -47,8 +60,12 @@ public class ButtonRecorder extends Button {
     }
 
     private void init() {
-        listener = new TouchListener(getContext());
-        setOnTouchListener(listener);
+        setOnTouchListener(new OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                return onRecordTouch(event);
+            }
+        });
     }
 
     /**
@@ -56,192 +73,128 @@ public class ButtonRecorder extends Button {
      *
      * @param actionListener
      */
-    public void setRecordActionListener(RecordActionListener actionListener) {
-        listener.setTabRecordListener(new TouchGuard(actionListener));
-    }
-
-    public ButtonRecorder setInActivated(boolean inActivated) {
-        this.inActivated = inActivated;
-        if (inActivated) {
-            setBackgroundDrawable(getResources().getDrawable(R.drawable.ic_mic_tapping));
-        } else {
-            setBackgroundDrawable(getResources().getDrawable(R.drawable.ic_mic));
-        }
-
-        invalidate();
-        return this;
-    }
-
-    private interface TabListener {
-        void onSingleTap();
-
-        void onActionUp();
-
-        void onLongPress();
-    }
-
-    public interface RecordActionListener {
-        /**
-         * * Whether the callee is ready to process the recording action.
-         *
-         * @return true if ready for recording, otherwise false.
-         */
-        boolean preparedForRecording();
-
-        /** * Starts recording */
-        void onRecordStarted();
-
-        /** * Completes recording */
-        void onRecordComplete();
-    }
-
-    public static class TouchListener extends GestureDetector.SimpleOnGestureListener
-            implements OnTouchListener {
-
-        private final Context context;
-        private final GestureDetector gestureDetector;
-        private TabListener tabRecordListener;
-
-        public TouchListener(Context context) {
-            this.context = context;
-            gestureDetector = new GestureDetector(context, this);
-        }
-
-        public TouchListener setTabRecordListener(TabListener tabRecordListener) {
-            this.tabRecordListener = tabRecordListener;
-            return this;
-        }
-
-        @Override
-        public boolean onTouch(View v, MotionEvent event) {
-            if (event.getAction() == MotionEvent.ACTION_UP) {
-                if (tabRecordListener != null) {
-                    tabRecordListener.onActionUp();
+    public void setRecordActionListener(final RecordActionListener actionListener) {
+        ViewConfiguration configuration = ViewConfiguration.get(getContext());
+        gesture = new RecordGesture(new RecordGesture.Listener() {
+            @Override
+            public boolean preparedForRecording() {
+                if (!actionListener.preparedForRecording()) {
+                    Timber.i(">>> callee is not ready.");
+                    return false;
                 }
+                return true;
             }
-            gestureDetector.onTouchEvent(event);
-            return true;
-        }
-
-        @Override
-        public boolean onDoubleTap(MotionEvent e) {
-            return super.onDoubleTap(e);
-        }
 
-        @Override
-        public boolean onDown(MotionEvent e) {
-            return true;
-        }
+            @Override
+            public void onRecordStarted() {
+                Timber.i(">>> onRecordStarted()");
+                setInActivated(true);
+                actionListener.onRecordStarted();
+            }
 
-        @Override
-        public void onLongPress(MotionEvent e) {
-            super.onLongPress(e);
-            if (tabRecordListener != null) {
-                tabRecordListener.onLongPress();
+            @Override
+            public void onRecordComplete() {
+                Timber.i(">>> onRecordComplete()");
+                setInActivated(false);
+                actionListener.onRecordComplete();
             }
-        }
 
-        @Override
-        public boolean onSingleTapConfirmed(MotionEvent e) {
-            if (tabRecordListener != null) {
-                tabRecordListener.onSingleTap();
+            @Override
+            public void onRecordCancelled() {
+                Timber.i(">>> onRecordCancelled()");
+                setInActivated(false);
+                actionListener.onRecordCancelled();
             }
-            return true;
-        }
+        }, ViewConfiguration.getLongPressTimeout(), ViewConfiguration.getDoubleTapTimeout(),
+                configuration.getScaledTouchSlop());
     }
 
     /**
-     * * The touch event filter used to identify and triggered the recording start and recording
-     * complete events. Tap action and long pressed action will both activate the recording.
+     * Whether to start recording as the finger lands, true by default, or once the gesture is
+     * certain: after the double-tap timeout for a tap, the long-press timeout for a long press.
      */
-    class TouchGuard implements TabListener {
-        private final RecordActionListener listener;
-        private int tapCounter;
-        private boolean longPressed;
-
-        public TouchGuard(RecordActionListener listener) {
-            this.listener = listener;
+    public void setSpeculative(boolean speculative) {
+        if (gesture != null) {
+            gesture.setSpeculative(speculative);
         }
+    }
 
-        @Override
-        public void onSingleTap() {
-            ++tapCounter;
-
-            Timber.i(">>> onSingleTap(), tapCnt: %d", tapCounter);
-
-            if (tapCounter == 1) {
-                Timber.i(">>> %s : about to call onRecordStart()", "onSingleTap()");
-
-                if (listener != null) {
-                    if (!readyToRecord()) {
-                        return;
-                    }
-
-                    setInActivated(true);
-                    listener.onRecordStarted();
-                }
-            } else if (tapCounter == 2) {
-                Timber.i(">>> onRecordComplete()");
-                tapCounter = 0;
-                setInActivated(false);
-
-                if (listener != null) {
-                    listener.onRecordComplete();
-                }
+    /**
+     * The {@link System#nanoTime()} at which the finger that started the recording in progress
+     * landed, for measuring how long the audio takes to follow.
+     */
+    public long getTouchDownNanos() {
+        return touchDownNanos;
+    }
 
-            } else {
-                tapCounter = 0;
-                Timber.i(">>> tapCounter reset to 0");
-            }
+    /**
+     * Returns to the idle state when the recording ended by itself, e.g. on trailing silence,
+     * without calling {@link RecordActionListener#onRecordComplete()}.
+     */
+    public void resetRecording() {
+        if (gesture != null) {
+            gesture.reset();
+            scheduleTimeout();
         }
+        setInActivated(false);
+    }
 
-        private boolean readyToRecord() {
-            if (!listener.preparedForRecording()) {
-                Timber.i(">>> callee is not ready.");
-                tapCounter = 0;
-                return false;
-            }
-
-            return true;
+    public ButtonRecorder setInActivated(boolean inActivated) {
+        this.inActivated = inActivated;
+        if (inActivated) {
+            setBackgroundDrawable(getResources().getDrawable(R.drawable.ic_mic_tapping));
+        } else {
+            setBackgroundDrawable(getResources().getDrawable(R.drawable.ic_mic));
         }
 
-        @Override
-        public void onActionUp() {
-            Timber.i(">>> onActionUp() with long pressed %b, tapCnt: %d ", longPressed, tapCounter);
-
-            if (longPressed) {
-                tapCounter = 0;
-                longPressed = false;
-
-                Timber.i(">>> onRecordComplete()");
+        invalidate();
+        return this;
+    }
 
-                setInActivated(false);
-                if (listener != null) {
-                    listener.onRecordComplete();
-                }
-            }
+    private boolean onRecordTouch(MotionEvent event) {
+        if (gesture == null) {
+            return false;
+        }
+        long time = event.getEventTime();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                // the event may have waited in the queue; date the touch from when it happened
+                touchDownNanos = System.nanoTime()
+                        - (SystemClock.uptimeMillis() - time) * 1000000L;
+                gesture.onDown(event.getX(), event.getY(), time);
+                break;
+            case MotionEvent.ACTION_MOVE:
+                gesture.onMove(event.getX(), event.getY(), time);
+                break;
+            case MotionEvent.ACTION_UP:
+                gesture.onUp(time);
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                gesture.onCancel(time);
+                break;
+            default:
+                break;
         }
+        scheduleTimeout();
+        return true;
+    }
 
-        @Override
-        public void onLongPress() {
-            if (tapCounter > 0) {
-                Timber.i(
-                        ">>> %s aborted : Tap action is activated, waiting for the end tap.",
-                        "onLongPress()");
-                return;
-            }
+    /** Wakes the gesture up at its next timeout, if it has one. */
+    private void scheduleTimeout() {
+        removeCallbacks(timeout);
+        long deadline = gesture.getDeadline();
+        if (deadline != RecordGesture.NO_DEADLINE) {
+            postDelayed(timeout, Math.max(0, deadline - SystemClock.uptimeMillis()));
+        }
+    }
 
-            Timber.i(">>> %s : about to call onRecordStart()", "onLongPress()");
-            if (listener != null) {
-                if (!readyToRecord()) {
-                    return;
-                }
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(timeout);
+        super.onDetachedFromWindow();
+    }
 
-                setInActivated(true);
-                longPressed = true;
-                listener.onRecordStarted();
-            }
-            Timber.i(">>> onLongPress(), tapCnt: %d", tapCounter);
-        }
+    /** Follows the recordings of the button; called on the main thread. */
+    public interface RecordActionListener extends RecordGesture.Listener {
     }
 }
@@ -4,31 +4,53 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.os.Handler;
-import android.os.Message;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
 import com.rayworks.asrwordsrecognition.R;
-
-import java.lang.ref.WeakReference;
+import com.rayworks.asrwordsrecognition.audio.LevelMeter;
 
 /**
  * Created by Michael on 2016-05-31.
  *
  * <p>Customized view to show microphone volume when recording
+ *
+ * <p>While visible it samples its {@link LevelMeter} once per display frame, so however often the
+ * audio thread publishes, at most one redraw happens per vsync.
  */
 public class MicrophoneVolumeView extends View {
 
-    public static final int ASR_SAMPLE_RATE = 1600;
-    public static final int MSG_REDRAW = 0xFF;
+    private static final float FLOOR_DB = -60f;
+    private static final float CEILING_DB = -10f;
+    private static final int ATTACK_MILLIS = 40;
+    private static final int DECAY_MILLIS = 250;
+
     final Paint paint = new Paint();
     private float minDiameter;
     private float diameter;
     private float maxDiameter;
     private float centreX;
     private float centreY;
-    private UpdateHandler handler;
+
+    private final LevelMeter.Smoother smoother =
+            new LevelMeter.Smoother(FLOOR_DB, CEILING_DB, ATTACK_MILLIS, DECAY_MILLIS);
+    private LevelMeter meter;
+    private boolean frameScheduled;
+
+    private final Choreographer.FrameCallback frameCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    frameScheduled = false;
+                    if (meter == null || !isShown()) {
+                        return;
+                    }
+                    float proportion = smoother.update(meter.getRmsDb(), frameTimeNanos);
+                    updateDiameter(proportion);
+                    scheduleFrame();
+                }
+            };
 
     public MicrophoneVolumeView(Context context) {
         this(context, null, 0);
@@ -56,8 +78,14 @@ public class MicrophoneVolumeView extends View {
             }
         }
         paint.setColor(roundColor);
+    }
 
-        handler = new UpdateHandler(this);
+    /** Sets the meter to display; null stops the animation. */
+    public void setLevelMeter(LevelMeter meter) {
+        this.meter = meter;
+        smoother.reset();
+        updateDiameter(0);
+        scheduleFrame();
     }
 
     @Override
@@ -80,59 +108,57 @@ public class MicrophoneVolumeView extends View {
         canvas.drawCircle(centreX, centreY, diameter / 2, paint);
     }
 
-    public void setProportion(float proportion) {
-        if (getVisibility() == VISIBLE) {
-            System.out.println(">>> level : " + proportion);
-
-            Message msg = Message.obtain();
-            msg.what = MSG_REDRAW;
-            msg.obj = proportion;
-            handler.sendMessage(msg);
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
 
+        if (isShown()) {
+            scheduleFrame();
         } else {
-            handler.removeMessages(MSG_REDRAW);
+            // start from the floor next time rather than from the last utterance
+            smoother.reset();
+            updateDiameter(0);
+            cancelFrame();
         }
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        scheduleFrame();
+    }
+
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
 
-        handler.removeMessages(MSG_REDRAW);
+        cancelFrame();
     }
 
-    static class UpdateHandler extends Handler {
-        private WeakReference<MicrophoneVolumeView> viewRef;
-
-        public UpdateHandler(MicrophoneVolumeView view) {
-            viewRef = new WeakReference<MicrophoneVolumeView>(view);
+    private void updateDiameter(float proportion) {
+        // keep the radius inside the view
+        float updated =
+                Math.min(
+                        minDiameter + proportion * (maxDiameter - minDiameter),
+                        maxDiameter - 2);
+        if (updated != diameter) {
+            diameter = updated;
+            invalidate();
         }
+    }
 
-        @Override
-        public void handleMessage(Message msg) {
-            switch (msg.what) {
-                case MSG_REDRAW:
-                    if (viewRef.get() != null) {
-                        MicrophoneVolumeView volumeView = viewRef.get();
-
-                        float proportion = (float) msg.obj;
-
-                        // keep the radius inside the view
-                        volumeView.diameter =
-                                Math.min(
-                                        volumeView.minDiameter
-                                                + proportion
-                                                        * 1.0f
-                                                        / ASR_SAMPLE_RATE
-                                                        * (volumeView.maxDiameter
-                                                                - volumeView.minDiameter),
-                                        volumeView.maxDiameter - 2);
-
-                        volumeView.invalidate();
-                    }
+    private void scheduleFrame() {
+        if (!frameScheduled && meter != null && isShown()) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
 
-                    break;
-            }
+    private void cancelFrame() {
+        if (frameScheduled) {
+            frameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
         }
     }
 }
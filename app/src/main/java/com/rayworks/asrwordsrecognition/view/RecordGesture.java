@@ -0,0 +1,238 @@
+package com.rayworks.asrwordsrecognition.view;
+
+/**
+ * The gestures of the record button, over plain touch events so that they can be replayed in
+ * tests. A tap starts recording and the next tap completes it; a long press records until the
+ * finger is lifted; a double tap or a drag does nothing.
+ *
+ * <p>Telling a tap from a double tap takes the double-tap timeout, and a long press the
+ * long-press timeout, hundreds of milliseconds in which the user has started speaking. When
+ * {@link #setSpeculative(boolean) speculative}, the default, recording starts as the finger
+ * lands and is cancelled if the gesture turns out to be neither: a second tap within the
+ * double-tap timeout, a drag beyond the touch slop, or a cancelled touch. Otherwise it starts
+ * once the gesture is certain.
+ *
+ * <p>Times are in milliseconds of one clock. The owner calls {@link #advance(long)} at {@link
+ * #getDeadline()}, when a timeout may have decided the gesture.
+ */
+public class RecordGesture {
+
+    public interface Listener {
+        /** @return whether the callee is ready to record */
+        boolean preparedForRecording();
+
+        void onRecordStarted();
+
+        void onRecordComplete();
+
+        /** A recording started on a touch that turned out not to be a recording gesture. */
+        void onRecordCancelled();
+    }
+
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    enum State {
+        IDLE,
+        // finger down, not yet a tap or a long press
+        PRESSED,
+        // finger lifted, a second tap would make it a double tap
+        RELEASED,
+        // recording after a tap, until the next tap
+        TAPPED,
+        // finger down on the tap that completes the recording
+        STOPPING,
+        // recording while the finger is held down
+        HELD,
+        // the rest of a touch that is not a gesture of the button
+        IGNORING
+    }
+
+    private final Listener listener;
+    private final long longPressTimeout;
+    private final long doubleTapTimeout;
+    private final float touchSlop;
+    private boolean speculative = true;
+
+    private State state = State.IDLE;
+    private long deadline = NO_DEADLINE;
+    private float downX;
+    private float downY;
+    private boolean recording;
+
+    public RecordGesture(Listener listener, long longPressTimeout, long doubleTapTimeout,
+                         float touchSlop) {
+        this.listener = listener;
+        this.longPressTimeout = longPressTimeout;
+        this.doubleTapTimeout = doubleTapTimeout;
+        this.touchSlop = touchSlop;
+    }
+
+    /** Whether to start recording as the finger lands; true by default. */
+    public RecordGesture setSpeculative(boolean speculative) {
+        this.speculative = speculative;
+        return this;
+    }
+
+    public boolean isSpeculative() {
+        return speculative;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /** @return when to call {@link #advance(long)}, {@link #NO_DEADLINE} if there is no need */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void onDown(float x, float y, long time) {
+        // a tap whose timeout has passed is confirmed even if advance() is late
+        advance(time);
+        downX = x;
+        downY = y;
+        switch (state) {
+            case IDLE:
+                if (speculative && !startRecording()) {
+                    enter(State.IGNORING, NO_DEADLINE);
+                    return;
+                }
+                enter(State.PRESSED, time + longPressTimeout);
+                break;
+            case RELEASED:
+                // a double tap
+                cancelRecording();
+                enter(State.IGNORING, NO_DEADLINE);
+                break;
+            case TAPPED:
+                enter(State.STOPPING, NO_DEADLINE);
+                break;
+            default:
+                break;
+        }
+    }
+
+    public void onMove(float x, float y, long time) {
+        if (state == State.PRESSED && beyondSlop(x, y)) {
+            // a drag across the button
+            cancelRecording();
+            enter(State.IGNORING, NO_DEADLINE);
+        }
+    }
+
+    public void onUp(long time) {
+        advance(time);
+        switch (state) {
+            case PRESSED:
+                enter(State.RELEASED, time + doubleTapTimeout);
+                break;
+            case STOPPING:
+            case HELD:
+                completeRecording();
+                break;
+            case IGNORING:
+                enter(State.IDLE, NO_DEADLINE);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** The touch was taken away, e.g. by a scrolling parent. */
+    public void onCancel(long time) {
+        switch (state) {
+            case PRESSED:
+                cancelRecording();
+                enter(State.IDLE, NO_DEADLINE);
+                break;
+            case STOPPING:
+                enter(State.TAPPED, NO_DEADLINE);
+                break;
+            case HELD:
+                completeRecording();
+                break;
+            case IGNORING:
+                enter(State.IDLE, NO_DEADLINE);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** Applies the timeouts that have passed by {@code time}. */
+    public void advance(long time) {
+        if (time < deadline) {
+            return;
+        }
+        switch (state) {
+            case PRESSED:
+                // a long press
+                if (speculative || startRecording()) {
+                    enter(State.HELD, NO_DEADLINE);
+                } else {
+                    enter(State.IGNORING, NO_DEADLINE);
+                }
+                break;
+            case RELEASED:
+                // a single tap
+                if (speculative || startRecording()) {
+                    enter(State.TAPPED, NO_DEADLINE);
+                } else {
+                    enter(State.IDLE, NO_DEADLINE);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns to the idle state when the recording ended by itself, e.g. on trailing silence,
+     * without calling the listener. The rest of a touch in progress is ignored.
+     */
+    public void reset() {
+        recording = false;
+        boolean touching = state == State.PRESSED || state == State.STOPPING
+                || state == State.HELD || state == State.IGNORING;
+        enter(touching ? State.IGNORING : State.IDLE, NO_DEADLINE);
+    }
+
+    private boolean beyondSlop(float x, float y) {
+        float dx = x - downX;
+        float dy = y - downY;
+        return dx * dx + dy * dy > touchSlop * touchSlop;
+    }
+
+    private void enter(State next, long nextDeadline) {
+        state = next;
+        deadline = nextDeadline;
+    }
+
+    private boolean startRecording() {
+        if (!listener.preparedForRecording()) {
+            return false;
+        }
+        recording = true;
+        listener.onRecordStarted();
+        return true;
+    }
+
+    private void completeRecording() {
+        enter(State.IDLE, NO_DEADLINE);
+        if (recording) {
+            recording = false;
+            listener.onRecordComplete();
+        }
+    }
+
+    private void cancelRecording() {
+        if (recording) {
+            recording = false;
+            listener.onRecordCancelled();
+        }
+    }
+}
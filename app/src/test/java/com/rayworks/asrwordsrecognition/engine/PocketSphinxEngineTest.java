@@ -0,0 +1,291 @@
+package com.rayworks.asrwordsrecognition.engine;
+
+import com.rayworks.asrwordsrecognition.audio.PcmSource;
+import com.rayworks.asrwordsrecognition.search.SearchBackend;
+import com.rayworks.asrwordsrecognition.search.SearchRegistry;
+import com.rayworks.asrwordsrecognition.search.SearchSpec;
+import com.rayworks.asrwordsrecognition.view.RecordGesture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PocketSphinxEngineTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private static final Executor THREADS = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            new Thread(command).start();
+        }
+    };
+
+    private final SlowBackend backend = new SlowBackend();
+    private final SearchRegistry registry = new SearchRegistry(backend, THREADS);
+    private final SilentSource source = new SilentSource();
+    private final Results results = new Results();
+    private final PocketSphinxEngine engine =
+            new PocketSphinxEngine(null, new FakeDecoder(), source, DIRECT);
+
+    @Before
+    public void setUp() throws Exception {
+        registry.declare(SearchSpec.ngram("default", new File("6805.lm")).setLazy(true));
+        registry.compileNow("default");
+        engine.setSearchRegistry(registry);
+        engine.addListener(results);
+
+        // a search declared later takes the decoder for its build
+        backend.blocking = true;
+        registry.declare(SearchSpec.ngram("lesson1", new File("lesson1.lm")));
+        assertTrue(backend.building.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        backend.finishBuild.countDown();
+    }
+
+    @Test
+    public void cancelDoesNotWaitForABuild() throws Exception {
+        assertTrue(engine.startListening("default"));
+        // the decoding thread is stuck behind the build
+        assertFalse(source.started.await(100, TimeUnit.MILLISECONDS));
+
+        assertTrue(engine.cancel());
+        // and listening again does not wait for it either
+        assertTrue(engine.startListening("default"));
+        assertTrue(engine.cancel());
+        assertEquals(1, backend.finishBuild.getCount());
+
+        backend.finishBuild.countDown();
+        assertTrue(engine.startListening("default"));
+        assertTrue(source.started.await(5, TimeUnit.SECONDS));
+        assertTrue(engine.stop());
+        assertTrue(results.delivered.await(5, TimeUnit.SECONDS));
+        // the cancelled utterances never got the decoder, let alone a result
+        assertEquals(1, source.starts);
+        assertEquals(1, results.count);
+        assertTrue(results.errors.isEmpty());
+    }
+
+    @Test
+    public void doubleTapCancelsTheRecordingWithoutWaitingForABuild() throws Exception {
+        final RecordGesture gesture = new RecordGesture(new RecordGesture.Listener() {
+            @Override
+            public boolean preparedForRecording() {
+                return true;
+            }
+
+            @Override
+            public void onRecordStarted() {
+                engine.startListening("default");
+            }
+
+            @Override
+            public void onRecordComplete() {
+                engine.stop();
+            }
+
+            @Override
+            public void onRecordCancelled() {
+                engine.cancel();
+            }
+        }, 500, 300, 8);
+        // the touches arrive on the main thread
+        Thread main = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                gesture.onDown(0, 0, 0);
+                gesture.onUp(80);
+                gesture.onDown(0, 0, 160);
+                gesture.onUp(240);
+            }
+        });
+        main.start();
+        main.join(5000);
+        assertFalse(main.isAlive());
+        assertFalse(gesture.isRecording());
+        assertEquals(1, backend.finishBuild.getCount());
+
+        // the decoder is fine for the next touch once the build is done
+        backend.finishBuild.countDown();
+        gesture.onDown(0, 0, 1000);
+        assertTrue(source.started.await(5, TimeUnit.SECONDS));
+        gesture.onUp(1600);
+        assertTrue(results.delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, source.starts);
+        assertEquals(1, results.count);
+    }
+
+    @Test
+    public void stopDeliversTheResultOnceTheThreadHasEnded() throws Exception {
+        assertTrue(engine.startListening("default"));
+        assertFalse(source.started.await(100, TimeUnit.MILLISECONDS));
+
+        assertTrue(engine.stop());
+        // interrupted while waiting for the decoder: ends without decoding
+        assertTrue(results.delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, backend.finishBuild.getCount());
+        assertEquals(0, source.starts);
+        assertTrue(results.errors.isEmpty());
+    }
+
+    @Test
+    public void shutdownDoesNotWaitForABuild() throws Exception {
+        assertTrue(engine.startListening("default"));
+
+        engine.shutdown();
+        assertFalse(engine.startListening("default"));
+        // the utterance gives up waiting for the decoder, so the microphone goes at once
+        assertTrue(source.released.await(5, TimeUnit.SECONDS));
+        assertEquals(1, backend.finishBuild.getCount());
+    }
+
+    private static final class FakeDecoder extends Decoder {
+        FakeDecoder() {
+            // no native decoder behind it
+            super(0, false);
+        }
+
+        @Override
+        public void setSearch(String name) {
+        }
+
+        @Override
+        public String getSearch() {
+            return null;
+        }
+
+        @Override
+        public void startUtt() {
+        }
+
+        @Override
+        public int processRaw(short[] data, long size, boolean noSearch, boolean fullUtt) {
+            return (int) size;
+        }
+
+        @Override
+        public boolean getInSpeech() {
+            return false;
+        }
+
+        @Override
+        public Hypothesis hyp() {
+            return null;
+        }
+
+        @Override
+        public void endUtt() {
+        }
+    }
+
+    private static final class SlowBackend implements SearchBackend {
+        final CountDownLatch building = new CountDownLatch(1);
+        final CountDownLatch finishBuild = new CountDownLatch(1);
+        volatile boolean blocking;
+
+        @Override
+        public void compile(SearchSpec spec) throws Exception {
+            if (blocking) {
+                building.countDown();
+                finishBuild.await();
+            }
+        }
+
+        @Override
+        public void release(SearchSpec spec) {
+        }
+    }
+
+    private static final class SilentSource implements PcmSource {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        volatile int starts;
+
+        @Override
+        public int getSampleRate() {
+            return 16000;
+        }
+
+        @Override
+        public void start() {
+            starts++;
+            started.countDown();
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int length) {
+            try {
+                // as slow as a microphone
+                Thread.sleep(length / 16);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+            return length;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+            released.countDown();
+        }
+    }
+
+    private static final class Results implements RecognitionListener {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final List<Exception> errors = new ArrayList<>();
+        volatile int count;
+
+        @Override
+        public void onBeginningOfSpeech() {
+        }
+
+        @Override
+        public void onEndOfSpeech() {
+        }
+
+        @Override
+        public void onPartialResult(Hypothesis hypothesis) {
+        }
+
+        @Override
+        public synchronized void onResult(Hypothesis hypothesis) {
+            count++;
+            delivered.countDown();
+        }
+
+        @Override
+        public synchronized void onError(Exception e) {
+            errors.add(e);
+        }
+
+        @Override
+        public void onTimeout() {
+        }
+    }
+}
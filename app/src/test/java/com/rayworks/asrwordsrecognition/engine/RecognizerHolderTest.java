@@ -0,0 +1,267 @@
+package com.rayworks.asrwordsrecognition.engine;
+
+import com.rayworks.asrwordsrecognition.audio.FrameListener;
+import com.rayworks.asrwordsrecognition.audio.PcmSource;
+import com.rayworks.asrwordsrecognition.rescore.NbestRescorer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RecognizerHolderTest {
+
+    private final QueueExecutor loader = new QueueExecutor();
+    private final QueueExecutor main = new QueueExecutor();
+    private final List<FakeEngine> created = new ArrayList<>();
+    private boolean failNextLoad;
+
+    private RecognizerHolder holder;
+
+    @Before
+    public void setUp() {
+        holder = new RecognizerHolder(
+                new RecognizerHolder.EngineFactory() {
+                    @Override
+                    public RecognitionEngine create() throws Exception {
+                        if (failNextLoad) {
+                            failNextLoad = false;
+                            throw new IOException("no external storage");
+                        }
+                        FakeEngine engine = new FakeEngine();
+                        created.add(engine);
+                        return engine;
+                    }
+                },
+                loader,
+                main);
+    }
+
+    @Test
+    public void warmUpLoadsOnceInTheBackground() {
+        holder.warmUp();
+        holder.warmUp();
+
+        assertTrue(created.isEmpty());
+        assertFalse(holder.isReady());
+        loader.runAll();
+
+        assertEquals(1, created.size());
+        assertTrue(holder.isReady());
+        assertEquals(1, holder.getLoadCount());
+    }
+
+    @Test
+    public void acquireBeforeReadyIsServedOnceLoaded() {
+        Client client = new Client();
+        holder.acquire(client, client);
+        main.runAll();
+        assertNull(client.engine);
+
+        loader.runAll();
+        main.runAll();
+
+        assertSame(created.get(0), client.engine);
+        assertTrue(created.get(0).listeners.contains(client));
+    }
+
+    @Test
+    public void warmEngineIsSharedAcrossClients() {
+        holder.warmUp();
+        loader.runAll();
+
+        // e.g. the activity before and after a rotation
+        Client first = new Client();
+        RecognizerHolder.Lease firstLease = holder.acquire(first, first);
+        Client second = new Client();
+        holder.acquire(second, second);
+        firstLease.release();
+        main.runAll();
+
+        FakeEngine engine = created.get(0);
+        assertEquals(1, created.size());
+        assertNull("released before delivery", first.engine);
+        assertSame(engine, second.engine);
+        assertEquals(1, engine.listeners.size());
+        assertTrue(engine.listeners.contains(second));
+        assertEquals(1, holder.getLeaseCount());
+    }
+
+    @Test
+    public void engineSurvivesLastReleaseUntilMemoryTrim() {
+        Client client = new Client();
+        RecognizerHolder.Lease lease = holder.acquire(client, client);
+        loader.runAll();
+        main.runAll();
+
+        assertFalse("still in use", holder.releaseIfIdle());
+        lease.release();
+        lease.release();
+
+        FakeEngine engine = created.get(0);
+        assertTrue(holder.isReady());
+        assertFalse(engine.shutdown);
+        assertTrue(engine.listeners.isEmpty());
+
+        assertTrue(holder.releaseIfIdle());
+        assertTrue(engine.shutdown);
+        assertFalse(holder.isReady());
+
+        Client next = new Client();
+        holder.acquire(next, next);
+        loader.runAll();
+        main.runAll();
+        assertEquals(2, created.size());
+        assertSame(created.get(1), next.engine);
+    }
+
+    @Test
+    public void failedLoadIsReportedAndRetried() {
+        failNextLoad = true;
+        Client client = new Client();
+        RecognizerHolder.Lease lease = holder.acquire(client, client);
+        loader.runAll();
+        main.runAll();
+
+        assertTrue(client.error instanceof IOException);
+        assertFalse(holder.isReady());
+
+        lease.release();
+        Client retry = new Client();
+        holder.acquire(retry, retry);
+        loader.runAll();
+        main.runAll();
+        assertSame(created.get(0), retry.engine);
+    }
+
+    private static final class QueueExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static final class Client implements RecognitionListener, RecognizerHolder.ReadyCallback {
+        RecognitionEngine engine;
+        Exception error;
+
+        @Override
+        public void onReady(RecognitionEngine engine) {
+            this.engine = engine;
+        }
+
+        @Override
+        public void onError(Exception e) {
+            error = e;
+        }
+
+        @Override
+        public void onBeginningOfSpeech() {
+        }
+
+        @Override
+        public void onEndOfSpeech() {
+        }
+
+        @Override
+        public void onPartialResult(Hypothesis hypothesis) {
+        }
+
+        @Override
+        public void onResult(Hypothesis hypothesis) {
+        }
+
+        @Override
+        public void onTimeout() {
+        }
+    }
+
+    private static final class FakeEngine implements RecognitionEngine {
+        final List<RecognitionListener> listeners = new ArrayList<>();
+        String search;
+        boolean shutdown;
+
+        @Override
+        public void addListener(RecognitionListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeListener(RecognitionListener listener) {
+            listeners.remove(listener);
+        }
+
+        @Override
+        public void addFrameListener(FrameListener listener) {}
+
+        @Override
+        public void removeFrameListener(FrameListener listener) {}
+
+        @Override
+        public void setRescorer(String searchName, NbestRescorer rescorer) {}
+
+        @Override
+        public boolean startListening(String searchName) {
+            return startListening(searchName, -1);
+        }
+
+        @Override
+        public boolean startListening(String searchName, PcmSource source) {
+            return startListening(searchName, -1);
+        }
+
+        @Override
+        public boolean startListening(String searchName, int timeout) {
+            if (search != null) {
+                return false;
+            }
+            search = searchName;
+            return true;
+        }
+
+        @Override
+        public boolean stop() {
+            return cancel();
+        }
+
+        @Override
+        public boolean cancel() {
+            boolean listening = search != null;
+            search = null;
+            return listening;
+        }
+
+        @Override
+        public String getSearchName() {
+            return search;
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.rayworks.asrwordsrecognition.engine;
+
+import com.rayworks.asrwordsrecognition.audio.FrameListener;
+import com.rayworks.asrwordsrecognition.audio.PcmSource;
+import com.rayworks.asrwordsrecognition.rescore.NbestRescorer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WakeUpControllerTest {
+
+    private final FakeEngine engine = new FakeEngine();
+    private final List<String> callbacks = new ArrayList<>();
+    private final WakeUpController controller =
+            new WakeUpController(engine, "wakeup", "ngram", new WakeUpController.Callback() {
+                @Override
+                public void onWakeUp() {
+                    callbacks.add("wake up");
+                }
+
+                @Override
+                public void onUtteranceEnd() {
+                    callbacks.add("utterance end");
+                }
+
+                @Override
+                public void onStopped(Exception error) {
+                    callbacks.add("stopped: " + error.getMessage());
+                }
+            }).setUtteranceTimeout(5000);
+
+    @Test
+    public void keywordSwitchesToTheUtteranceSearchAndBack() {
+        controller.start();
+        assertEquals(WakeUpController.State.WAITING, controller.getState());
+        assertEquals("wakeup", engine.search);
+        assertTrue(engine.listeners.contains(controller));
+
+        controller.onPartial("go to school");
+        assertEquals(WakeUpController.State.LISTENING, controller.getState());
+        assertEquals("ngram", engine.search);
+        assertEquals(5000, engine.timeout);
+
+        // partials of the utterance are no keywords
+        controller.onPartial("i want");
+        assertEquals("ngram", engine.search);
+
+        controller.onResult(null);
+        assertEquals(WakeUpController.State.WAITING, controller.getState());
+        assertEquals("wakeup", engine.search);
+        assertEquals(Arrays.asList("wake up", "utterance end"), callbacks);
+    }
+
+    @Test
+    public void emptyKeywordHypothesesAreIgnored() {
+        controller.start();
+        controller.onPartial(null);
+        controller.onPartial(" ");
+        assertEquals(WakeUpController.State.WAITING, controller.getState());
+        assertTrue(callbacks.isEmpty());
+
+        // a noise ended by the endpointer
+        controller.onResult(null);
+        assertEquals(
+                Arrays.asList("cancel", "start wakeup", "cancel", "start wakeup"), engine.log);
+    }
+
+    @Test
+    public void utteranceTimeoutStopsForTheResult() {
+        controller.start();
+        controller.onPartial("go to school");
+        controller.onTimeout();
+        assertEquals("stop", engine.log.get(engine.log.size() - 1));
+
+        controller.onResult(null);
+        assertEquals("wakeup", engine.search);
+        assertEquals(Arrays.asList("wake up", "utterance end"), callbacks);
+    }
+
+    @Test
+    public void errorTurnsHandsFreeOff() {
+        controller.start();
+        controller.onError(new IOException("microphone busy"));
+
+        assertEquals(WakeUpController.State.OFF, controller.getState());
+        assertEquals(null, engine.search);
+        assertFalse(engine.listeners.contains(controller));
+        assertEquals(Arrays.asList("stopped: microphone busy"), callbacks);
+
+        controller.onPartial("go to school");
+        assertEquals(null, engine.search);
+    }
+
+    @Test
+    public void stopCancelsWhateverIsListening() {
+        controller.start();
+        controller.onPartial("go to school");
+        controller.stop();
+
+        assertEquals(WakeUpController.State.OFF, controller.getState());
+        assertEquals(null, engine.search);
+        assertFalse(engine.listeners.contains(controller));
+
+        // results of the cancelled utterance change nothing
+        controller.onResult(null);
+        assertEquals(null, engine.search);
+        assertEquals(Arrays.asList("wake up"), callbacks);
+    }
+
+    private static final class FakeEngine implements RecognitionEngine {
+        final List<RecognitionListener> listeners = new ArrayList<>();
+        final List<String> log = new ArrayList<>();
+        String search;
+        int timeout;
+
+        @Override
+        public void addListener(RecognitionListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeListener(RecognitionListener listener) {
+            listeners.remove(listener);
+        }
+
+        @Override
+        public void addFrameListener(FrameListener listener) {}
+
+        @Override
+        public void removeFrameListener(FrameListener listener) {}
+
+        @Override
+        public void setRescorer(String searchName, NbestRescorer rescorer) {}
+
+        @Override
+        public boolean startListening(String searchName) {
+            return startListening(searchName, -1);
+        }
+
+        @Override
+        public boolean startListening(String searchName, PcmSource source) {
+            return startListening(searchName, -1);
+        }
+
+        @Override
+        public boolean startListening(String searchName, int timeout) {
+            if (search != null) {
+                return false;
+            }
+            log.add("start " + searchName);
+            search = searchName;
+            this.timeout = timeout;
+            return true;
+        }
+
+        @Override
+        public boolean stop() {
+            log.add("stop");
+            return finish();
+        }
+
+        @Override
+        public boolean cancel() {
+            log.add("cancel");
+            return finish();
+        }
+
+        private boolean finish() {
+            boolean listening = search != null;
+            search = null;
+            return listening;
+        }
+
+        @Override
+        public String getSearchName() {
+            return search;
+        }
+
+        @Override
+        public void shutdown() {}
+    }
+}
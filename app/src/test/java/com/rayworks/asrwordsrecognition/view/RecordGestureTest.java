@@ -0,0 +1,165 @@
+package com.rayworks.asrwordsrecognition.view;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordGestureTest {
+
+    private static final long LONG_PRESS = 500;
+    private static final long DOUBLE_TAP = 300;
+    private static final float SLOP = 8;
+
+    private final List<String> calls = new ArrayList<>();
+    private boolean prepared = true;
+    private long now;
+    private long startedAt;
+    private final RecordGesture gesture = new RecordGesture(new RecordGesture.Listener() {
+        @Override
+        public boolean preparedForRecording() {
+            return prepared;
+        }
+
+        @Override
+        public void onRecordStarted() {
+            calls.add("started");
+            if (startedAt < 0) {
+                startedAt = now;
+            }
+        }
+
+        @Override
+        public void onRecordComplete() {
+            calls.add("complete");
+        }
+
+        @Override
+        public void onRecordCancelled() {
+            calls.add("cancelled");
+        }
+    }, LONG_PRESS, DOUBLE_TAP, SLOP);
+
+    /**
+     * Replays a timeline as a view delivers it, events such as "down 0", "move 120 4 3" (time,
+     * x, y), "up 80" or "cancel 90", firing the timeouts that fall between the events and then
+     * the ones left.
+     *
+     * @return when recording started, -1 if it did not
+     */
+    private long replay(String... events) {
+        startedAt = -1;
+        for (String event : events) {
+            String[] fields = event.split(" ");
+            long time = Long.parseLong(fields[1]);
+            fireTimeouts(time);
+            now = time;
+            if (fields[0].equals("down")) {
+                gesture.onDown(0, 0, time);
+            } else if (fields[0].equals("move")) {
+                gesture.onMove(Float.parseFloat(fields[2]), Float.parseFloat(fields[3]), time);
+            } else if (fields[0].equals("up")) {
+                gesture.onUp(time);
+            } else {
+                gesture.onCancel(time);
+            }
+        }
+        fireTimeouts(RecordGesture.NO_DEADLINE - 1);
+        return startedAt;
+    }
+
+    private void fireTimeouts(long until) {
+        while (gesture.getDeadline() <= until) {
+            now = gesture.getDeadline();
+            gesture.advance(now);
+        }
+    }
+
+    @Test
+    public void tapStartsOnTouchDownAndTheNextTapCompletes() {
+        assertEquals(0, replay("down 0", "up 90"));
+        assertEquals(RecordGesture.State.TAPPED, gesture.getState());
+        assertTrue(gesture.isRecording());
+
+        replay("down 2000", "up 2080");
+        assertEquals(Arrays.asList("started", "complete"), calls);
+        assertEquals(RecordGesture.State.IDLE, gesture.getState());
+    }
+
+    @Test
+    public void longPressRecordsUntilTheFingerLifts() {
+        assertEquals(0, replay("down 0", "move 200 3 2", "up 3000"));
+        assertEquals(Arrays.asList("started", "complete"), calls);
+    }
+
+    @Test
+    public void doubleTapCancelsTheSpeculativeRecording() {
+        replay("down 0", "up 80", "down 200", "up 260");
+        assertEquals(Arrays.asList("started", "cancelled"), calls);
+        assertEquals(RecordGesture.State.IDLE, gesture.getState());
+
+        // the button works as before afterwards
+        calls.clear();
+        replay("down 5000", "up 5070");
+        assertEquals(Arrays.asList("started"), calls);
+    }
+
+    @Test
+    public void dragAndCancelledTouchesCancel() {
+        replay("down 0", "move 50 4 4", "move 100 30 0", "up 700");
+        assertEquals(Arrays.asList("started", "cancelled"), calls);
+
+        calls.clear();
+        replay("down 1000", "cancel 1100");
+        assertEquals(Arrays.asList("started", "cancelled"), calls);
+        assertFalse(gesture.isRecording());
+        assertEquals(RecordGesture.State.IDLE, gesture.getState());
+    }
+
+    @Test
+    public void withoutSpeculationRecordingStartsOnceTheGestureIsCertain() {
+        gesture.setSpeculative(false);
+
+        // confirmed once the double-tap timeout has passed after the finger lifted
+        assertEquals(90 + DOUBLE_TAP, replay("down 0", "up 90"));
+        replay("down 2000", "up 2080");
+        assertEquals(Arrays.asList("started", "complete"), calls);
+
+        calls.clear();
+        assertEquals(5000 + LONG_PRESS, replay("down 5000", "up 7000"));
+        assertEquals(Arrays.asList("started", "complete"), calls);
+
+        // a double tap records nothing, so nothing is cancelled
+        calls.clear();
+        assertEquals(-1, replay("down 9000", "up 9050", "down 9200", "up 9250"));
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void notPreparedIgnoresTheTouch() {
+        prepared = false;
+        assertEquals(-1, replay("down 0", "up 80"));
+        assertTrue(calls.isEmpty());
+        assertEquals(RecordGesture.State.IDLE, gesture.getState());
+    }
+
+    @Test
+    public void resetAfterTheEndpointerIgnoresTheRestOfTheTouch() {
+        replay("down 0", "up 60");
+        gesture.reset();
+        assertEquals(RecordGesture.State.IDLE, gesture.getState());
+
+        replay("down 1000");
+        assertTrue(gesture.isRecording());
+        // the utterance ended on silence while the finger was still down
+        gesture.reset();
+        replay("up 3000");
+        assertEquals(Arrays.asList("started", "started"), calls);
+        assertEquals(RecordGesture.State.IDLE, gesture.getState());
+    }
+}
@@ -0,0 +1,75 @@
+package com.rayworks.asrwordsrecognition;
+
+import com.rayworks.asrwordsrecognition.dict.BinaryDictionaryWriter;
+import com.rayworks.asrwordsrecognition.dict.DictionaryParser;
+
+import java.io.File;
+import java.io.IOException;
+
+/** Locations of the app's bundled models, which several benchmarks read. */
+public final class BenchmarkFiles {
+
+    private BenchmarkFiles() {}
+
+    /** @return {@code app/src/main/assets/sync}, as passed by the build in asr.syncAssets */
+    public static File syncAssets() throws IOException {
+        File dir = new File(System.getProperty("asr.syncAssets", "../app/src/main/assets/sync"));
+        if (!dir.isDirectory()) {
+            throw new IOException("Bundled assets not found in " + dir.getAbsolutePath());
+        }
+        return dir;
+    }
+
+    /**
+     * @return the acoustic model definition as checked in, before the app build prunes it, as
+     *     passed by the build in asr.mdef
+     */
+    public static File originalMdef() throws IOException {
+        File file = new File(System.getProperty("asr.mdef", "../app/models/en-us-ptm/mdef"));
+        if (!file.isFile()) {
+            throw new IOException("Model definition not found in " + file.getAbsolutePath());
+        }
+        return file;
+    }
+
+    /**
+     * @return the text cmudict, which the app build converts to the bundled binary one, as
+     *     passed by the build in asr.dictionary
+     */
+    public static File fullDictionary() throws IOException {
+        File file = new File(
+                System.getProperty("asr.dictionary", "../app/models/cmudict-en-us.dict"));
+        if (!file.isFile()) {
+            throw new IOException("Dictionary not found in " + file.getAbsolutePath());
+        }
+        return file;
+    }
+
+    /** @return the bundled binary dictionary, written to {@code dir} as the app build does */
+    public static File binaryDictionary(File dir) throws IOException {
+        File file = new File(dir, "cmudict-en-us.bdic");
+        BinaryDictionaryWriter.write(DictionaryParser.parse(fullDictionary()), file);
+        return file;
+    }
+
+    /** @return a fresh temporary directory, deleted when the JVM exits */
+    public static File tempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /** Deletes {@code file} and, for a directory, everything in it. */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,145 @@
+package com.rayworks.asrwordsrecognition.asset;
+
+import com.rayworks.asrwordsrecognition.BenchmarkFiles;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Syncing a model-sized asset set: copying it into an empty directory, confirming an up-to-date
+ * copy from the manifest alone or by hashing every file, and hashing a single file.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AssetSyncBenchmark {
+
+    private static final int MB = 1024 * 1024;
+
+    private File dir;
+    private File source;
+    private File warm;
+    private File cold;
+    private DirectorySource assets;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = BenchmarkFiles.tempDir("asset-bench");
+        source = new File(dir, "apk");
+        source.mkdirs();
+        assets = new DirectorySource(source);
+        Random random = new Random(5);
+        assets.add("en-us-ptm/means", 4 * MB, random);
+        assets.add("en-us-ptm/variances", 4 * MB, random);
+        assets.add("en-us-ptm/mdef", 1 * MB, random);
+        assets.add("pruned-en-us.dict", 2 * MB, random);
+
+        warm = new File(dir, "warm");
+        new AssetSync(assets, warm).sync();
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTarget() {
+        cold = new File(dir, "cold");
+        BenchmarkFiles.delete(cold);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public SyncResult coldSync() throws IOException {
+        return new AssetSync(assets, cold).sync();
+    }
+
+    @Benchmark
+    public SyncResult warmSync() throws IOException {
+        return new AssetSync(assets, warm).sync();
+    }
+
+    @Benchmark
+    public SyncResult verifiedWarmSync() throws IOException {
+        return new AssetSync(assets, warm).setVerifyContents(true).sync();
+    }
+
+    @Benchmark
+    public String checksum() throws IOException {
+        return AssetSync.md5(new File(source, "en-us-ptm/means"));
+    }
+
+    /** Serves a directory; dictionaries as a plain stream, everything else as a file channel. */
+    private static final class DirectorySource implements AssetSource {
+        final File dir;
+        final List<String> items = new ArrayList<>();
+
+        DirectorySource(File dir) {
+            this.dir = dir;
+        }
+
+        void add(String item, int size, Random random) throws IOException {
+            File file = new File(dir, item);
+            file.getParentFile().mkdirs();
+            byte[] chunk = new byte[64 * 1024];
+            OutputStream out = new FileOutputStream(file);
+            try {
+                for (int written = 0; written < size; written += chunk.length) {
+                    random.nextBytes(chunk);
+                    out.write(chunk, 0, Math.min(chunk.length, size - written));
+                }
+            } finally {
+                out.close();
+            }
+            OutputStream checksum = new FileOutputStream(new File(dir, item + ".md5"));
+            try {
+                checksum.write(AssetSync.md5(file).getBytes("UTF-8"));
+            } finally {
+                checksum.close();
+            }
+            items.add(item);
+        }
+
+        @Override
+        public List<String> list() {
+            return new ArrayList<>(items);
+        }
+
+        @Override
+        public String checksum(String item) throws IOException {
+            FileInputStream in = new FileInputStream(new File(dir, item + ".md5"));
+            try {
+                byte[] bytes = new byte[64];
+                int length = in.read(bytes);
+                return new String(bytes, 0, length, "UTF-8").trim();
+            } finally {
+                in.close();
+            }
+        }
+
+        @Override
+        public Content open(String item) throws IOException {
+            File file = new File(dir, item);
+            FileInputStream in = new FileInputStream(file);
+            if (item.endsWith(".dict")) {
+                return new Content(Channels.newChannel(in));
+            }
+            return new Content(in.getChannel(), 0, file.length(), in);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Per-chunk work on the audio thread: metering and voice activity detection of one chunk, of the
+ * size the engine reads (640 samples, 40 ms) or a single 10 ms frame.
+ */
+@State(Scope.Thread)
+public class AudioFrameBenchmark {
+
+    private static final int RATE = 16000;
+    // one second of audio, walked through chunk by chunk
+    private static final int SECONDS = 1;
+
+    @Param({"160", "640"})
+    public int chunk;
+
+    private short[] audio;
+    private short[] frame;
+    private int position;
+    private LevelMeter meter;
+    private VoiceActivityDetector vad;
+
+    @Setup
+    public void setUp() {
+        // alternating quiet noise and a voiced tone, so the detector changes state
+        Random random = new Random(9);
+        audio = new short[SECONDS * RATE];
+        for (int i = 0; i < audio.length; i++) {
+            boolean voiced = (i / (RATE / 4)) % 2 == 1;
+            double value = random.nextGaussian() * 100;
+            if (voiced) {
+                value += 6000 * Math.sin(2 * Math.PI * 140 * i / RATE)
+                        + 2000 * Math.sin(2 * Math.PI * 420 * i / RATE);
+            }
+            audio[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+        }
+        frame = new short[chunk];
+        meter = new LevelMeter();
+        vad = new VoiceActivityDetector(RATE);
+    }
+
+    private short[] nextChunk() {
+        if (position + chunk > audio.length) {
+            position = 0;
+        }
+        System.arraycopy(audio, position, frame, 0, chunk);
+        position += chunk;
+        return frame;
+    }
+
+    @Benchmark
+    public float level() {
+        meter.onFrame(nextChunk(), chunk);
+        return meter.getRmsDb();
+    }
+
+    @Benchmark
+    public VoiceActivityDetector.Event vad() {
+        return vad.process(nextChunk(), 0, chunk);
+    }
+}
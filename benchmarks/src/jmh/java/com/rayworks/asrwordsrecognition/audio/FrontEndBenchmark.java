@@ -0,0 +1,69 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import com.rayworks.asrwordsrecognition.audio.dsp.AudioFrontEnd;
+import com.rayworks.asrwordsrecognition.audio.dsp.NoiseGate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Converting one second of external audio to 16 kHz mono in the 20 ms chunks a headset or a file
+ * reader delivers; the time per operation against one second is the real-time factor.
+ */
+@State(Scope.Thread)
+public class FrontEndBenchmark {
+
+    private static final int CHUNK_MILLIS = 20;
+
+    /** Input rate and channels. */
+    @Param({"44100x2", "48000x2", "8000x1"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean gate;
+
+    private short[] audio;
+    private short[] out;
+    private int rate;
+    private int channels;
+    private int chunkFrames;
+    private AudioFrontEnd frontEnd;
+
+    @Setup
+    public void setUp() {
+        String[] parts = format.split("x");
+        rate = Integer.parseInt(parts[0]);
+        channels = Integer.parseInt(parts[1]);
+        chunkFrames = rate * CHUNK_MILLIS / 1000;
+
+        // a voiced tone over noise, slightly different per channel
+        Random random = new Random(18);
+        audio = new short[rate * channels];
+        for (int i = 0; i < rate; i++) {
+            double voice = 6000 * Math.sin(2 * Math.PI * 140 * i / rate)
+                    + 2000 * Math.sin(2 * Math.PI * 2100 * i / rate);
+            for (int c = 0; c < channels; c++) {
+                audio[i * channels + c] = (short) (voice + random.nextGaussian() * 200);
+            }
+        }
+        frontEnd = new AudioFrontEnd(rate, channels, chunkFrames);
+        if (gate) {
+            frontEnd.setNoiseGate(new NoiseGate(AudioFrontEnd.DECODER_RATE));
+        }
+        out = new short[frontEnd.getMaxOutput()];
+    }
+
+    @Benchmark
+    public int oneSecond() {
+        int produced = 0;
+        for (int frame = 0; frame + chunkFrames <= rate; frame += chunkFrames) {
+            produced += frontEnd.process(audio, frame * channels, chunkFrames, out, 0);
+        }
+        return produced;
+    }
+}
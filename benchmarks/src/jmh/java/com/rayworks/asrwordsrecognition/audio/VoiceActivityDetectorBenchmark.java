@@ -0,0 +1,99 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link VoiceActivityDetector} per 10 ms frame over a whole utterance of silence, a voiced
+ * stretch, a pause and a fricative, fed in chunks from a single frame to 400 ms.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VoiceActivityDetectorBenchmark {
+
+    private static final int RATE = 16000;
+    // 4 s of audio
+    private static final int FRAMES = 400;
+
+    @Param({"160", "512", "1600", "6400"})
+    public int chunk;
+
+    private final Random random = new Random(1);
+    private short[] samples;
+    private int length;
+    private double phase;
+    private VoiceActivityDetector vad;
+
+    @Setup
+    public void setUp() {
+        samples = new short[FRAMES * RATE / 100];
+        noise(1000, -50);
+        voiced(2000, -20);
+        noise(700, -50);
+        fricative(300, -35);
+        vad = new VoiceActivityDetector(RATE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long utterance() {
+        vad.reset();
+        for (int offset = 0; offset < samples.length; offset += chunk) {
+            vad.process(samples, offset, Math.min(chunk, samples.length - offset));
+        }
+        return vad.getFrameCount();
+    }
+
+    private void noise(int millis, double db) {
+        double sigma = amplitude(db);
+        for (int i = 0; i < count(millis); i++) {
+            add(random.nextGaussian() * sigma);
+        }
+    }
+
+    /** Harmonics of a gliding pitch under a syllable-rate envelope. */
+    private void voiced(int millis, double db) {
+        double peak = amplitude(db) * 1.6;
+        int n = count(millis);
+        for (int i = 0; i < n; i++) {
+            phase += 2 * Math.PI * (120 + 30 * Math.sin(2 * Math.PI * i / n)) / RATE;
+            double voice = 0;
+            for (int h = 1; h <= 8; h++) {
+                voice += Math.sin(h * phase) / h;
+            }
+            double envelope = 0.7 + 0.3 * Math.sin(2 * Math.PI * 4 * i / RATE);
+            add(peak * envelope * voice / 2 + random.nextGaussian() * amplitude(-55));
+        }
+    }
+
+    /** High-passed noise like an /s/. */
+    private void fricative(int millis, double db) {
+        double sigma = amplitude(db) / Math.sqrt(2);
+        double previous = 0;
+        for (int i = 0; i < count(millis); i++) {
+            double white = random.nextGaussian();
+            add((white - previous) * sigma);
+            previous = white;
+        }
+    }
+
+    private void add(double value) {
+        samples[length++] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    private static double amplitude(double db) {
+        return 32768 * Math.pow(10, db / 20);
+    }
+
+    private static int count(int millis) {
+        return millis * RATE / 1000;
+    }
+}
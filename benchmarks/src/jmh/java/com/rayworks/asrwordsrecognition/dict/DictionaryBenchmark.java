@@ -0,0 +1,89 @@
+package com.rayworks.asrwordsrecognition.dict;
+
+import com.rayworks.asrwordsrecognition.BenchmarkFiles;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/** Loading the bundled cmudict in both formats, and looking words up in it. */
+@State(Scope.Benchmark)
+public class DictionaryBenchmark {
+
+    private static final int LOOKUPS = 1000;
+
+    private File dir;
+    private File textDictionary;
+    private File binaryDictionary;
+    private BinaryDictionary binary;
+    private SortedMap<String, List<String>> parsed;
+    private String[] words;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = BenchmarkFiles.tempDir("dictionary-bench");
+        textDictionary = BenchmarkFiles.fullDictionary();
+        binaryDictionary = BenchmarkFiles.binaryDictionary(dir);
+        binary = BinaryDictionary.open(binaryDictionary);
+        parsed = DictionaryParser.parse(textDictionary);
+
+        // known words in random order, plus a few misses
+        List<String> all = new ArrayList<>(parsed.keySet());
+        Collections.shuffle(all, new Random(1));
+        words = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            words[i] = i % 10 == 0 ? "zz" + all.get(i) : DictionaryParser.baseWord(all.get(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SortedMap<String, List<String>> parseText() throws IOException {
+        return DictionaryParser.parse(textDictionary);
+    }
+
+    @Benchmark
+    public BinaryDictionary openBinary() throws IOException {
+        return BinaryDictionary.open(binaryDictionary);
+    }
+
+    /** What the app pays before its first lookup, against {@link #parseText()}. */
+    @Benchmark
+    public int openBinaryAndLookUp() throws IOException {
+        return BinaryDictionary.open(binaryDictionary).indexOf("school");
+    }
+
+    /** {@value #LOOKUPS} lookups in the memory-mapped binary dictionary. */
+    @Benchmark
+    public void lookupBinary(Blackhole blackhole) {
+        for (String word : words) {
+            blackhole.consume(binary.indexOf(word));
+        }
+    }
+
+    /** The same lookups in the parsed text dictionary, for reference. */
+    @Benchmark
+    public void lookupParsed(Blackhole blackhole) {
+        for (String word : words) {
+            blackhole.consume(parsed.get(word));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.rayworks.asrwordsrecognition.engine;
+
+import com.rayworks.asrwordsrecognition.BenchmarkFiles;
+import com.rayworks.asrwordsrecognition.audio.EnergyGate;
+import com.rayworks.asrwordsrecognition.audio.VoiceActivityDetector;
+import com.rayworks.asrwordsrecognition.eval.EvalAudio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import edu.cmu.pocketsphinx.Config;
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.Hypothesis;
+
+/**
+ * Decoding time of one minute of audio on one thread, i.e. CPU time per minute, in the modes the
+ * app can listen in: always-on n-gram decoding, hands-free keyword spotting, and keyword spotting
+ * behind the energy gate. Switching to the n-gram search after the keyphrase and back on the endpoint works
+ * as in {@link WakeUpController}.
+ *
+ * <p>Needs the native {@code pocketsphinx_jni} library on {@code java.library.path}. The audio
+ * is a 16 kHz recording given in {@code asr.wakeUpAudio} (WAV, raw or capture, looped or cut to a
+ * minute), by default a synthetic mix of room noise and voiced bursts, which never says the
+ * keyphrase.
+ */
+@State(Scope.Thread)
+public class WakeUpBenchmark {
+
+    private static final int RATE = 16000;
+    private static final int CHUNK = 640;
+    // the same search setup as SphinxEngineFactory
+    private static final String NGRAM = "ngram_search";
+    private static final String KEYWORD = "wakeup";
+    private static final String KEYPHRASE = "hello teacher";
+    private static final float KEYWORD_THRESHOLD = 1e-45f;
+
+    @Param({"ngram", "keyword", "keyword_gated"})
+    public String mode;
+
+    private short[] minute;
+    private Decoder decoder;
+    private VoiceActivityDetector vad;
+    private EnergyGate gate;
+    private short[] chunk;
+    private short[] preRoll;
+
+    @Setup
+    public void setUp() throws IOException {
+        System.loadLibrary("pocketsphinx_jni");
+        File assets = BenchmarkFiles.syncAssets();
+        Config config = Decoder.defaultConfig();
+        config.setString("-hmm", new File(assets, "en-us-ptm").getPath());
+        // the synced model has no mdef until the app build prunes one; MdefPruner.verify checks
+        // that the pruned one maps every reachable context as this one does, and release builds
+        // compare their decodes (decodeWithPrunedAcousticModel)
+        config.setString("-mdef", BenchmarkFiles.originalMdef().getPath());
+        config.setString("-dict", BenchmarkFiles.fullDictionary().getPath());
+        config.setBoolean("-allphone_ci", true);
+        config.setFloat("-kws_threshold", KEYWORD_THRESHOLD);
+        config.setString("-logfn", "/dev/null");
+        decoder = new Decoder(config);
+        decoder.setLmFile(NGRAM, new File(assets, "6805.lm").getPath());
+        decoder.setKeyphrase(KEYWORD, KEYPHRASE);
+
+        minute = loadMinute();
+        vad = new VoiceActivityDetector(RATE);
+        gate = "keyword_gated".equals(mode) ? new EnergyGate(RATE) : null;
+        chunk = new short[CHUNK];
+        preRoll = new short[gate == null ? 0 : gate.getPreRollCapacity()];
+    }
+
+    @TearDown
+    public void tearDown() {
+        decoder.delete();
+    }
+
+    /** @return the number of utterances the n-gram search decoded */
+    @Benchmark
+    public int decodeMinute() {
+        boolean spotting = !NGRAM.equals(mode);
+        String search = spotting ? KEYWORD : NGRAM;
+        int utterances = 0;
+        vad.reset();
+        if (gate != null) {
+            gate.reset();
+        }
+        decoder.setSearch(search);
+        decoder.startUtt();
+        for (int position = 0; position + CHUNK <= minute.length; position += CHUNK) {
+            System.arraycopy(minute, position, chunk, 0, CHUNK);
+            boolean keyword = KEYWORD.equals(search);
+            if (!keyword || gate == null || gate.process(chunk, 0, CHUNK)) {
+                if (keyword && gate != null) {
+                    int held = gate.drainPreRoll(preRoll);
+                    if (held > 0) {
+                        decoder.processRaw(preRoll, held, false, false);
+                    }
+                }
+                decoder.processRaw(chunk, CHUNK, false, false);
+            }
+
+            String next = null;
+            if (keyword) {
+                Hypothesis hypothesis = decoder.hyp();
+                if (hypothesis != null && !hypothesis.getHypstr().isEmpty()) {
+                    next = NGRAM;
+                }
+            }
+            if (vad.process(chunk, 0, CHUNK) == VoiceActivityDetector.Event.UTTERANCE_ENDED) {
+                if (!keyword) {
+                    utterances++;
+                }
+                next = spotting ? KEYWORD : NGRAM;
+            }
+            if (next != null) {
+                decoder.endUtt();
+                decoder.hyp();
+                if (!next.equals(search)) {
+                    search = next;
+                    decoder.setSearch(search);
+                    vad.reset();
+                }
+                decoder.startUtt();
+            }
+        }
+        decoder.endUtt();
+        return utterances;
+    }
+
+    private static short[] loadMinute() throws IOException {
+        short[] minute = new short[60 * RATE];
+        String path = System.getProperty("asr.wakeUpAudio");
+        if (path != null) {
+            EvalAudio audio = EvalAudio.read(new File(path));
+            if (audio.getSampleRate() != RATE || audio.getSamples().length == 0) {
+                throw new IOException(path + " is not 16 kHz audio");
+            }
+            short[] samples = audio.getSamples();
+            for (int i = 0; i < minute.length; i++) {
+                minute[i] = samples[i % samples.length];
+            }
+            return minute;
+        }
+
+        // a burst of a second or two every ten seconds or so, as in a quiet classroom
+        Random random = new Random(15);
+        for (int i = 0; i < minute.length; i++) {
+            double second = (double) i / RATE;
+            boolean voiced = second % 10 > 6 && second % 10 < 7.5;
+            double value = random.nextGaussian() * 60;
+            if (voiced) {
+                value += 5000 * Math.sin(2 * Math.PI * 130 * second)
+                        + 1500 * Math.sin(2 * Math.PI * 390 * second);
+            }
+            minute[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+        }
+        return minute;
+    }
+}
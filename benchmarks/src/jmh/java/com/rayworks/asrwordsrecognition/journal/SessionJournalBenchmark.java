@@ -0,0 +1,101 @@
+package com.rayworks.asrwordsrecognition.journal;
+
+import com.rayworks.asrwordsrecognition.BenchmarkFiles;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending results in bursts of {@value #BURST} until they are durable, with every record
+ * synced on its own against one sync per batch, and finding the attempts at one sentence among
+ * {@value #RECORDS} records through the index against reading every record.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionJournalBenchmark {
+
+    private static final int BURST = 64;
+    private static final int RECORDS = 20000;
+    private static final int SENTENCES = 500;
+
+    @Param({"1", "256"})
+    public int maxBatch;
+
+    private File dir;
+    private SessionJournal appending;
+    private SessionJournal history;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        dir = BenchmarkFiles.tempDir("journal-bench");
+        // the sizes keep the appending journal from compacting in the middle of a run
+        appending = new SessionJournal(new File(dir, "appending"))
+                .setMaxBatch(maxBatch)
+                .setMaxBytes(Long.MAX_VALUE);
+        appending.open();
+
+        history = new SessionJournal(new File(dir, "history"));
+        history.open();
+        for (int i = 0; i < RECORDS; i++) {
+            while (!history.append(record(i))) {
+                history.flush();
+            }
+        }
+        history.flush();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        appending.close();
+        history.close();
+        BenchmarkFiles.delete(dir);
+    }
+
+    private static SessionRecord record(int i) {
+        int target = (i * 7919) % SENTENCES;
+        return new SessionRecord(1500000000000L + i * 3000L, "she wants to go to the park " + i)
+                .setScore(-4000 - i % 1000)
+                .setTarget(target, "she wants to go to the park", i % 3)
+                .setTimings(2100, 350, 90)
+                .setAudio("capture-1500000000000-" + i + ".rpz");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public boolean appendBurst() throws InterruptedException {
+        for (int i = 0; i < BURST; i++) {
+            appending.append(record(next++));
+        }
+        return appending.flush();
+    }
+
+    @Benchmark
+    public List<SessionRecord> attemptsFromIndex() throws IOException {
+        return history.readTarget(next++ % SENTENCES, Integer.MAX_VALUE);
+    }
+
+    /** The same attempts found by decoding every record. */
+    @Benchmark
+    public int attemptsFromScan() throws IOException {
+        int target = next++ % SENTENCES;
+        int attempts = 0;
+        for (SessionRecord record : history.read(0, Integer.MAX_VALUE)) {
+            if (record.getTarget() == target) {
+                attempts++;
+            }
+        }
+        return attempts;
+    }
+}
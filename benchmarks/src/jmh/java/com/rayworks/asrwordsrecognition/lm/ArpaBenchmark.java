@@ -0,0 +1,94 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import com.rayworks.asrwordsrecognition.BenchmarkFiles;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Parsing ARPA language models and scoring sentences with them: the bundled model, and a larger
+ * one compiled from a synthetic corpus to show how parsing scales.
+ */
+@State(Scope.Benchmark)
+public class ArpaBenchmark {
+
+    @Param({"bundled", "synthetic"})
+    public String model;
+
+    private File dir;
+    private File arpa;
+    private File snapshot;
+    private NgramModel loaded;
+    private String sentence;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = BenchmarkFiles.tempDir("arpa-bench");
+        if (model.equals("bundled")) {
+            arpa = new File(BenchmarkFiles.syncAssets(), "6805.lm");
+            sentence = "i want to go to school";
+        } else {
+            File corpus = new File(dir, "corpus.txt");
+            writeCorpus(corpus, 20000, 3);
+            arpa = new File(dir, "synthetic.lm");
+            new QuickLmCompiler().compile(corpus, arpa);
+            sentence = "w1 w2 w15 w7 w300 w1";
+        }
+        loaded = NgramModel.load(arpa);
+        snapshot = new File(dir, "model.bin");
+        loaded.save(snapshot);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public NgramModel parseArpa() throws IOException {
+        return NgramModel.load(arpa);
+    }
+
+    @Benchmark
+    public NgramModel openSnapshot() throws IOException {
+        return NgramModel.open(snapshot);
+    }
+
+    @Benchmark
+    public double perplexity() {
+        return loaded.perplexity(sentence);
+    }
+
+    /** Sentences of 3 to 14 words drawn from a Zipf-like distribution over 5000 words. */
+    private static void writeCorpus(File file, int sentences, long seed) throws IOException {
+        Random random = new Random(seed);
+        Writer out =
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            for (int s = 0; s < sentences; s++) {
+                int length = 3 + random.nextInt(12);
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        out.write(' ');
+                    }
+                    out.write("w" + (int) Math.pow(5000, random.nextDouble()));
+                }
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
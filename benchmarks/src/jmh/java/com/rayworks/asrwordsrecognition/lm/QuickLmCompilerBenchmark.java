@@ -0,0 +1,122 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import com.rayworks.asrwordsrecognition.BenchmarkFiles;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiling synthetic corpora of a 20000 word vocabulary with everything counted in memory and
+ * with a budget that makes the compiler spill. The peak heap of each iteration is reported next
+ * to the time, as {@code peakHeapMb}, to show what the budget saves. Run with {@code -prof gc}
+ * for the allocations.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QuickLmCompilerBenchmark {
+
+    private static final int VOCABULARY = 20000;
+
+    @Param({"25000", "100000"})
+    public int sentences;
+
+    /** Bigram and trigram entries kept in memory, or "unbounded". */
+    @Param({"unbounded", "200000"})
+    public String budget;
+
+    private File dir;
+    private File corpus;
+    private File arpa;
+    private QuickLmCompiler compiler;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = BenchmarkFiles.tempDir("quicklm-bench");
+        corpus = new File(dir, "corpus.txt");
+        arpa = new File(dir, "corpus.lm");
+        writeCorpus(corpus, sentences, 7);
+        compiler = new QuickLmCompiler().setTempDir(dir).setMaxEntriesInMemory(
+                budget.equals("unbounded") ? Long.MAX_VALUE : Long.parseLong(budget));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public int compile(PeakHeap heap) throws IOException {
+        int result = compiler.compile(corpus, arpa);
+        heap.sample();
+        return result;
+    }
+
+    /** The most heap in use during an iteration, garbage included, as the heap pools saw it. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PeakHeap {
+
+        public double peakHeapMb;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+            peakHeapMb = 0;
+        }
+
+        void sample() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            peakHeapMb = Math.max(peakHeapMb, peak / (1024.0 * 1024.0));
+        }
+    }
+
+    /** Sentences of 3 to 14 words drawn from a Zipf-like distribution. */
+    private static void writeCorpus(File file, int sentences, long seed) throws IOException {
+        Random random = new Random(seed);
+        Writer out =
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            for (int s = 0; s < sentences; s++) {
+                int length = 3 + random.nextInt(12);
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        out.write(' ');
+                    }
+                    out.write("w" + (int) Math.pow(VOCABULARY, random.nextDouble()));
+                }
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
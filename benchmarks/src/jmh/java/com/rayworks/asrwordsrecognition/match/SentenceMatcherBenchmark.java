@@ -0,0 +1,104 @@
+package com.rayworks.asrwordsrecognition.match;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Finding the closest of {@code sentences} lesson-like targets for hypotheses with up to three
+ * word errors, against comparing every sentence with the same bounded distance. The targets are
+ * 3 to 12 words from a vocabulary of 5000 with a skewed frequency, so common bigrams such as
+ * the first words of a sentence have long postings.
+ */
+@State(Scope.Thread)
+public class SentenceMatcherBenchmark {
+
+    private static final int VOCABULARY = 5000;
+
+    @Param({"10000", "100000"})
+    public int sentences;
+
+    private List<String> corpus;
+    private SentenceIndex index;
+    private SentenceMatcher matcher;
+    private String[] hypotheses;
+    private int[][] encoded;
+    private int[] previous;
+    private int[] current;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        corpus = new ArrayList<>(sentences);
+        for (int s = 0; s < sentences; s++) {
+            corpus.add(sentence(random, 3 + random.nextInt(10)));
+        }
+        index = new SentenceIndex(corpus);
+        matcher = new SentenceMatcher(index);
+
+        hypotheses = new String[64];
+        encoded = new int[hypotheses.length][];
+        for (int i = 0; i < hypotheses.length; i++) {
+            String[] words = index.sentence(random.nextInt(index.size())).split(" ");
+            for (int e = random.nextInt(4); e > 0; e--) {
+                words[random.nextInt(words.length)] = sentence(random, 1);
+            }
+            StringBuilder hypothesis = new StringBuilder();
+            encoded[i] = new int[words.length];
+            for (int w = 0; w < words.length; w++) {
+                hypothesis.append(w == 0 ? "" : " ").append(words[w]);
+                encoded[i][w] = index.id(words[w]);
+            }
+            hypotheses[i] = hypothesis.toString();
+        }
+        previous = new int[index.maxLength() + 1];
+        current = new int[index.maxLength() + 1];
+    }
+
+    private static String sentence(Random random, int length) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            int word = (int) (VOCABULARY * Math.pow(random.nextDouble(), 3));
+            sentence.append(i == 0 ? "" : " ").append("word").append(word);
+        }
+        return sentence.toString();
+    }
+
+    @Benchmark
+    public SentenceMatcher.Match match() {
+        return matcher.match(hypotheses[next++ & (hypotheses.length - 1)]);
+    }
+
+    /** The same search without the index: every sentence within half the words. */
+    @Benchmark
+    public int scan() {
+        int[] query = encoded[next++ & (encoded.length - 1)];
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int s = 0; s < index.size(); s++) {
+            int[] words = index.words(s);
+            int bound = Math.min(bestDistance - 1, Math.max(words.length, query.length) / 2);
+            if (bound < 0) {
+                continue;
+            }
+            int distance = SentenceMatcher.distance(query, words, bound, previous, current);
+            if (distance <= bound) {
+                best = s;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public SentenceIndex build() {
+        return new SentenceIndex(corpus);
+    }
+}
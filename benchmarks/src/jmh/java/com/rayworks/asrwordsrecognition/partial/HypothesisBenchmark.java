@@ -0,0 +1,61 @@
+package com.rayworks.asrwordsrecognition.partial;
+
+import com.rayworks.asrwordsrecognition.eval.WordAlignment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Post-processing of hypotheses: diffing the partial results of an utterance as they grow and
+ * get revised, and aligning a final result with its reference.
+ */
+@State(Scope.Thread)
+public class HypothesisBenchmark {
+
+    private static final String REFERENCE =
+            "i want to go to school but there is a limit to how far i can walk in the rain";
+
+    private String[] partials;
+    private String hypothesis;
+    private PartialDiffer differ;
+
+    @Setup
+    public void setUp() {
+        // how a decoder's partials evolve: words appended, the last one often revised
+        String[] words = REFERENCE.split(" ");
+        List<String> sequence = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words.length; i++) {
+            String prefix = text.toString();
+            sequence.add(prefix + (i % 3 == 1 ? "two" : words[i]));
+            sequence.add(prefix + words[i]);
+            sequence.add(prefix + words[i]);
+            text.append(words[i]).append(' ');
+        }
+        partials = sequence.toArray(new String[0]);
+        hypothesis = "I want to go to [noise] school but their is a limit to how far i can walk"
+                + " in the rain(2) <sil>";
+        differ = new PartialDiffer();
+    }
+
+    /** One utterance's worth of partial results through the differ. */
+    @Benchmark
+    public void diffUtterance(Blackhole blackhole) {
+        differ.reset();
+        for (String partial : partials) {
+            blackhole.consume(differ.diff(partial));
+        }
+        blackhole.consume(differ.finish(REFERENCE));
+    }
+
+    @Benchmark
+    public WordAlignment align() {
+        return WordAlignment.of(REFERENCE, hypothesis);
+    }
+}
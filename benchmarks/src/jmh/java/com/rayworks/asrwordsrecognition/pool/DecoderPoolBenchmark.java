@@ -0,0 +1,72 @@
+package com.rayworks.asrwordsrecognition.pool;
+
+import com.rayworks.asrwordsrecognition.eval.BatchRecognizer;
+import com.rayworks.asrwordsrecognition.eval.StandInRecognizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+
+/**
+ * A batch of utterances graded through the pool, on the stand-in recognizer so that only the
+ * scheduling is measured next to work proportional to the audio. The time per utterance should
+ * fall close to 1 / size while the size is within the machine's cores.
+ */
+@State(Scope.Benchmark)
+public class DecoderPoolBenchmark {
+
+    private static final int JOBS = 64;
+    private static final int RATE = 16000;
+    private static final int SECONDS = 5;
+
+    @Param({"1", "2", "4", "8"})
+    public int size;
+
+    private DecoderPool pool;
+    private DecoderPool.Job<String> job;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(20);
+        final short[] audio = new short[SECONDS * RATE];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (short) (random.nextGaussian() * 3000);
+        }
+        pool = new DecoderPool(new StandInRecognizer.Factory().answer(audio, "go to school"),
+                size).setMinSize(size);
+        job = new DecoderPool.Job<String>() {
+            @Override
+            public String run(BatchRecognizer recognizer) throws Exception {
+                return recognizer.decode(audio, RATE);
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(JOBS)
+    public int batch() throws Exception {
+        List<Future<String>> results = new ArrayList<>(JOBS);
+        for (int i = 0; i < JOBS; i++) {
+            results.add(pool.submit(job));
+        }
+        int recognized = 0;
+        for (Future<String> result : results) {
+            recognized += result.get().isEmpty() ? 0 : 1;
+        }
+        return recognized;
+    }
+}
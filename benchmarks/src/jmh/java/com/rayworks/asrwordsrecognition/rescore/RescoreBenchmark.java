@@ -0,0 +1,60 @@
+package com.rayworks.asrwordsrecognition.rescore;
+
+import com.rayworks.asrwordsrecognition.BenchmarkFiles;
+import com.rayworks.asrwordsrecognition.lm.ContextCache;
+import com.rayworks.asrwordsrecognition.lm.NgramModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rescoring a 10-best list of the bundled model whose candidates share most of their words, as
+ * the decoder's do. A cache of one entry stands for no cache at all.
+ */
+@State(Scope.Thread)
+public class RescoreBenchmark {
+
+    private static final String[] NBEST = {
+            "i want to go to school",
+            "i want to go to school a",
+            "i want to go to a school",
+            "i want to go school",
+            "i want a go to school",
+            "i want to go to there",
+            "but i want to go to school",
+            "i want to go to school is",
+            "i want to go there school",
+            "i want to go to to school",
+    };
+
+    @Param({"1", "4096"})
+    public int cacheSize;
+
+    private NbestRescorer rescorer;
+    private List<NbestRescorer.Candidate> candidates;
+
+    @Setup
+    public void setUp() throws IOException {
+        NgramModel model = NgramModel.load(new File(BenchmarkFiles.syncAssets(), "6805.lm"));
+        rescorer = new NbestRescorer(new ContextCache(model, cacheSize))
+                .setExpectedSentences(Collections.singletonList("i want to go to school"));
+        candidates = new ArrayList<>();
+        for (int i = 0; i < NBEST.length; i++) {
+            candidates.add(new NbestRescorer.Candidate(NBEST[i], -20000 - 150 * i));
+        }
+    }
+
+    @Benchmark
+    public NbestRescorer.Result rescore() {
+        return rescorer.rescore(candidates);
+    }
+}
@@ -0,0 +1,148 @@
+package com.rayworks.asrwordsrecognition.search;
+
+import com.rayworks.asrwordsrecognition.BenchmarkFiles;
+import com.rayworks.asrwordsrecognition.dict.BinaryDictionary;
+import com.rayworks.asrwordsrecognition.dict.DictionaryParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding a few sentences at run time, from the call to the swap: counting them, writing the
+ * model and its pronunciations, and declaring the search. The backend builds nothing, so the
+ * decoder's own build of the search is not included.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LanguageModelUpdaterBenchmark {
+
+    private static final int ADDED = 3;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /** The corpus the base model was compiled from: the bundled one, or 20000 sentences. */
+    @Param({"bundled", "synthetic"})
+    public String corpus;
+
+    private File dir;
+    private String[] words;
+    private Random random;
+    private LanguageModelUpdater updater;
+    private volatile Exception failure;
+
+    @Setup
+    public void setUp() throws IOException {
+        File assets = BenchmarkFiles.syncAssets();
+        dir = BenchmarkFiles.tempDir("lm-update-bench");
+        List<String> plain = new ArrayList<>();
+        for (String key : DictionaryParser.parse(BenchmarkFiles.fullDictionary()).keySet()) {
+            if (key.matches("[a-z]+")) {
+                plain.add(key);
+            }
+        }
+        words = plain.toArray(new String[plain.size()]);
+        random = new Random(5);
+
+        File base = new File(assets, "lm_based_corpus.txt");
+        if (corpus.equals("synthetic")) {
+            base = new File(dir, "corpus.txt");
+            writeCorpus(base, 20000);
+        }
+        SearchRegistry registry = new SearchRegistry(new SearchBackend() {
+            @Override
+            public void compile(SearchSpec spec) {
+            }
+
+            @Override
+            public void release(SearchSpec spec) {
+            }
+        }, DIRECT);
+        File model = new File(assets, "6805.lm");
+        registry.declare(SearchSpec.ngram("ngram", model));
+        updater = new LanguageModelUpdater("ngram", model, new File(dir, "lm"),
+                BinaryDictionary.open(BenchmarkFiles.binaryDictionary(dir)), registry, DIRECT);
+        updater.setListener(new LanguageModelUpdater.Listener() {
+            @Override
+            public void onSwapped(int version, File model) {
+            }
+
+            @Override
+            public void onUpdateFailed(Exception error) {
+                failure = error;
+            }
+        });
+        updater.restore(base);
+        checkFailure();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(dir);
+        checkFailure();
+    }
+
+    /** {@value #ADDED} new sentences, swapped in. */
+    @Benchmark
+    public int addSentences() {
+        String[] sentences = new String[ADDED];
+        for (int i = 0; i < ADDED; i++) {
+            sentences[i] = sentence();
+        }
+        updater.addSentences(Arrays.asList(sentences));
+        return updater.getActiveVersion();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Update failed", failure);
+        }
+    }
+
+    /** 3 to 14 words drawn from a Zipf-like distribution over the dictionary. */
+    private String sentence() {
+        StringBuilder sentence = new StringBuilder();
+        int length = 3 + random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(words[(int) Math.pow(words.length, random.nextDouble()) - 1]);
+        }
+        return sentence.toString();
+    }
+
+    private void writeCorpus(File file, int sentences) throws IOException {
+        Writer out =
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            for (int s = 0; s < sentences; s++) {
+                out.write(sentence());
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
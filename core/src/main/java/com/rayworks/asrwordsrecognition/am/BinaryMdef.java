@@ -0,0 +1,505 @@
+package com.rayworks.asrwordsrecognition.am;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The model definition of a pocketsphinx acoustic model in its binary {@code BMDF} format: the
+ * context-independent phones, the triphones with their senone sequences and transition
+ * matrices, and the tree that finds a triphone by word position, base phone and left and right
+ * context.
+ *
+ * <p>Lookups follow pocketsphinx's {@code bin_mdef.c}, including the back-off of {@link
+ * #nearestPhoneId} for triphones the model lacks, so that a {@link #retain retained} model can be
+ * checked against the original without the native decoder. Only models with the same number of
+ * states in every phone, which is what sphinxtrain produces, are supported.
+ */
+public final class BinaryMdef {
+
+    /** Word positions, as in pocketsphinx's {@code mdef.h}. */
+    public static final int WORD_INTERNAL = 0;
+    public static final int WORD_BEGIN = 1;
+    public static final int WORD_END = 2;
+    public static final int WORD_SINGLE = 3;
+    static final int WORD_POSITIONS = 4;
+
+    private static final int MAGIC = 0x46444D42; // "BMDF" little-endian
+    private static final int HEADER_INTS = 10;
+
+    private final ByteOrder order;
+    private final int version;
+    private final byte[] description;
+    private final int emitStates;
+    private final int ciSenones;
+    private final int senones;
+    private final int transitionMatrices;
+    private final int contexts;
+    private final int silence;
+    private final List<String> ciPhones;
+
+    // the tree, level by level: word positions, base phones, left contexts, right contexts
+    private final short[] treeContext;
+    private final short[] treeChildren;
+    private final int[] treeValue;
+
+    private final int[] phoneSsid;
+    private final int[] phoneTmat;
+    // 4 bytes per phone: filler flag of a CI phone, word position and contexts of a triphone
+    private final byte[] phoneInfo;
+    // emitStates senones per sequence
+    private final char[] sseq;
+
+    private BinaryMdef(ByteOrder order, int version, byte[] description, int emitStates,
+            int ciSenones, int senones, int transitionMatrices, int contexts, int silence,
+            List<String> ciPhones, short[] treeContext, short[] treeChildren, int[] treeValue,
+            int[] phoneSsid, int[] phoneTmat, byte[] phoneInfo, char[] sseq) {
+        this.order = order;
+        this.version = version;
+        this.description = description;
+        this.emitStates = emitStates;
+        this.ciSenones = ciSenones;
+        this.senones = senones;
+        this.transitionMatrices = transitionMatrices;
+        this.contexts = contexts;
+        this.silence = silence;
+        this.ciPhones = ciPhones;
+        this.treeContext = treeContext;
+        this.treeChildren = treeChildren;
+        this.treeValue = treeValue;
+        this.phoneSsid = phoneSsid;
+        this.phoneTmat = phoneTmat;
+        this.phoneInfo = phoneInfo;
+        this.sseq = sseq;
+    }
+
+    public static BinaryMdef read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return read(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()));
+        } finally {
+            in.close();
+        }
+    }
+
+    public static BinaryMdef read(ByteBuffer in) throws IOException {
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < 12) {
+            throw new IOException("Not a binary mdef");
+        }
+        int magic = in.getInt();
+        if (magic == Integer.reverseBytes(MAGIC)) {
+            in.order(ByteOrder.BIG_ENDIAN);
+        } else if (magic != MAGIC) {
+            throw new IOException("Not a binary mdef");
+        }
+        int version = in.getInt();
+        int descriptionLength = in.getInt();
+        if (descriptionLength < 0 || descriptionLength > in.remaining()) {
+            throw new IOException("Truncated mdef description");
+        }
+        byte[] description = new byte[descriptionLength];
+        in.get(description);
+
+        int ciPhoneCount = in.getInt();
+        int phoneCount = in.getInt();
+        int emitStates = in.getInt();
+        int ciSenones = in.getInt();
+        int senones = in.getInt();
+        int transitionMatrices = in.getInt();
+        int sseqCount = in.getInt();
+        int contexts = in.getInt();
+        int treeSize = in.getInt();
+        int silence = in.getInt();
+        if (emitStates <= 0) {
+            throw new IOException("Phones with different numbers of states are not supported");
+        }
+
+        List<String> ciPhones = new ArrayList<>(ciPhoneCount);
+        StringBuilder name = new StringBuilder();
+        while (ciPhones.size() < ciPhoneCount) {
+            byte b = in.get();
+            if (b == 0) {
+                ciPhones.add(name.toString());
+                name.setLength(0);
+            } else {
+                name.append((char) (b & 0xFF));
+            }
+        }
+        in.position((in.position() + 3) & ~3);
+
+        short[] treeContext = new short[treeSize];
+        short[] treeChildren = new short[treeSize];
+        int[] treeValue = new int[treeSize];
+        for (int i = 0; i < treeSize; i++) {
+            treeContext[i] = in.getShort();
+            treeChildren[i] = in.getShort();
+            treeValue[i] = in.getInt();
+        }
+
+        int[] phoneSsid = new int[phoneCount];
+        int[] phoneTmat = new int[phoneCount];
+        byte[] phoneInfo = new byte[phoneCount * 4];
+        for (int i = 0; i < phoneCount; i++) {
+            phoneSsid[i] = in.getInt();
+            phoneTmat[i] = in.getInt();
+            in.get(phoneInfo, i * 4, 4);
+        }
+
+        int sseqLength = in.getInt();
+        if (sseqLength != sseqCount * emitStates) {
+            throw new IOException("Senone sequences of " + sseqLength + " states, expected "
+                    + sseqCount * emitStates);
+        }
+        char[] sseq = new char[sseqLength];
+        in.asCharBuffer().get(sseq);
+        return new BinaryMdef(in.order(), version, description, emitStates, ciSenones, senones,
+                transitionMatrices, contexts, silence, Collections.unmodifiableList(ciPhones),
+                treeContext, treeChildren, treeValue, phoneSsid, phoneTmat, phoneInfo, sseq);
+    }
+
+    public void write(File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Writes the model in the byte order it was read in, byte for byte as pocketsphinx does. */
+    public void write(OutputStream out) throws IOException {
+        int namesLength = 0;
+        for (String phone : ciPhones) {
+            namesLength += phone.length() + 1;
+        }
+        int headerLength = 12 + description.length + 4 * HEADER_INTS;
+        int namesEnd = (headerLength + namesLength + 3) & ~3;
+        ByteBuffer buffer = ByteBuffer.allocate(namesEnd + 8 * treeContext.length
+                + 12 * phoneSsid.length + 4 + 2 * sseq.length).order(order);
+
+        buffer.putInt(order == ByteOrder.LITTLE_ENDIAN ? MAGIC : Integer.reverseBytes(MAGIC));
+        buffer.putInt(version).putInt(description.length).put(description);
+        buffer.putInt(ciPhones.size()).putInt(phoneSsid.length).putInt(emitStates)
+                .putInt(ciSenones).putInt(senones).putInt(transitionMatrices)
+                .putInt(sseq.length / emitStates).putInt(contexts).putInt(treeContext.length)
+                .putInt(silence);
+        for (String phone : ciPhones) {
+            for (int i = 0; i < phone.length(); i++) {
+                buffer.put((byte) phone.charAt(i));
+            }
+            buffer.put((byte) 0);
+        }
+        buffer.position(namesEnd);
+        for (int i = 0; i < treeContext.length; i++) {
+            buffer.putShort(treeContext[i]).putShort(treeChildren[i]).putInt(treeValue[i]);
+        }
+        for (int i = 0; i < phoneSsid.length; i++) {
+            buffer.putInt(phoneSsid[i]).putInt(phoneTmat[i]).put(phoneInfo, i * 4, 4);
+        }
+        buffer.putInt(sseq.length);
+        buffer.asCharBuffer().put(sseq);
+        out.write(buffer.array());
+    }
+
+    public List<String> getCiPhones() {
+        return ciPhones;
+    }
+
+    /** @return the ID of the context-independent phone, -1 if there is none of that name */
+    public int ciPhone(String name) {
+        return ciPhones.indexOf(name);
+    }
+
+    public int getSilence() {
+        return silence;
+    }
+
+    public boolean isFiller(int ciPhone) {
+        return phoneInfo[ciPhone * 4] != 0;
+    }
+
+    /** @return CI phones and triphones */
+    public int getPhoneCount() {
+        return phoneSsid.length;
+    }
+
+    public int getTriphoneCount() {
+        return phoneSsid.length - ciPhones.size();
+    }
+
+    public int getSenoneSequenceCount() {
+        return sseq.length / emitStates;
+    }
+
+    public int getSenoneCount() {
+        return senones;
+    }
+
+    public int getEmitStates() {
+        return emitStates;
+    }
+
+    /** @return the senone of each emitting state of the phone */
+    public int[] getSenones(int phone) {
+        int[] states = new int[emitStates];
+        int start = phoneSsid[phone] * emitStates;
+        for (int i = 0; i < emitStates; i++) {
+            states[i] = sseq[start + i];
+        }
+        return states;
+    }
+
+    public int getTransitionMatrix(int phone) {
+        return phoneTmat[phone];
+    }
+
+    /** @return the word position of a triphone, see {@link #WORD_BEGIN} and the others */
+    public int getWordPosition(int phone) {
+        return phoneInfo[phone * 4];
+    }
+
+    /** @return the base phone, left and right context of a triphone */
+    public int[] getContext(int phone) {
+        return new int[] {
+                phoneInfo[phone * 4 + 1] & 0xFF,
+                phoneInfo[phone * 4 + 2] & 0xFF,
+                phoneInfo[phone * 4 + 3] & 0xFF};
+    }
+
+    /**
+     * @return the triphone of {@code base} between {@code left} and {@code right} at the word
+     *     position, -1 if the model has none; filler contexts count as silence
+     */
+    public int phoneId(int base, int left, int right, int position) {
+        if (left < 0 || right < 0) {
+            return base;
+        }
+        int[] path = {position, base, silenceIfFiller(left), silenceIfFiller(right)};
+        int node = 0;
+        int count = WORD_POSITIONS;
+        for (int level = 0; level < path.length; level++) {
+            int found = -1;
+            for (int i = node; i < node + count; i++) {
+                if (treeContext[i] == path[level]) {
+                    found = i;
+                    break;
+                }
+            }
+            if (found < 0) {
+                return -1;
+            }
+            if (treeChildren[found] == 0) {
+                return treeValue[found];
+            }
+            count = treeChildren[found];
+            node = treeValue[found];
+        }
+        return -1;
+    }
+
+    /**
+     * @return the phone the decoder uses for the context: the triphone if the model has it,
+     *     otherwise the same context at another word position, then with silence around word
+     *     boundaries and filler contexts, then the CI phone
+     */
+    public int nearestPhoneId(int base, int left, int right, int position) {
+        if (left < 0 || right < 0) {
+            return base;
+        }
+        int phone = anyPosition(base, left, right, position);
+        if (phone >= 0) {
+            return phone;
+        }
+        if (silence >= 0) {
+            int newLeft = isFiller(left) || position == WORD_BEGIN || position == WORD_SINGLE
+                    ? silence : left;
+            int newRight = isFiller(right) || position == WORD_END || position == WORD_SINGLE
+                    ? silence : right;
+            if (newLeft != left || newRight != right) {
+                phone = anyPosition(base, newLeft, newRight, position);
+                if (phone >= 0) {
+                    return phone;
+                }
+            }
+        }
+        return base;
+    }
+
+    private int anyPosition(int base, int left, int right, int position) {
+        int phone = phoneId(base, left, right, position);
+        for (int other = 0; phone < 0 && other < WORD_POSITIONS; other++) {
+            if (other != position) {
+                phone = phoneId(base, left, right, other);
+            }
+        }
+        return phone;
+    }
+
+    private int silenceIfFiller(int phone) {
+        return silence >= 0 && isFiller(phone) ? silence : phone;
+    }
+
+    /**
+     * @return a model with the CI phones and only the triphones in {@code keep}, by phone ID, and
+     *     the senone sequences they use; senones and transition matrices are left as they are
+     */
+    public BinaryMdef retain(BitSet keep) {
+        int ciCount = ciPhones.size();
+        int[] oldPhones = new int[phoneSsid.length];
+        int kept = 0;
+        for (int phone = 0; phone < phoneSsid.length; phone++) {
+            if (phone < ciCount || keep.get(phone)) {
+                oldPhones[kept++] = phone;
+            }
+        }
+        oldPhones = Arrays.copyOf(oldPhones, kept);
+
+        // senone sequences in their original order, so the CI phones keep theirs
+        BitSet usedSsids = new BitSet();
+        for (int phone : oldPhones) {
+            usedSsids.set(phoneSsid[phone]);
+        }
+        int[] newSsid = new int[sseq.length / emitStates];
+        char[] newSseq = new char[usedSsids.cardinality() * emitStates];
+        int next = 0;
+        for (int ssid = usedSsids.nextSetBit(0); ssid >= 0; ssid = usedSsids.nextSetBit(ssid + 1)) {
+            newSsid[ssid] = next;
+            System.arraycopy(sseq, ssid * emitStates, newSseq, next * emitStates, emitStates);
+            next++;
+        }
+
+        int[] ssids = new int[kept];
+        int[] tmats = new int[kept];
+        byte[] info = new byte[kept * 4];
+        for (int i = 0; i < kept; i++) {
+            ssids[i] = newSsid[phoneSsid[oldPhones[i]]];
+            tmats[i] = phoneTmat[oldPhones[i]];
+            System.arraycopy(phoneInfo, oldPhones[i] * 4, info, i * 4, 4);
+        }
+        Tree tree = new Tree(ciCount, oldPhones, info);
+        return new BinaryMdef(order, version, description, emitStates, ciSenones, senones,
+                transitionMatrices, contexts, silence, ciPhones, tree.context, tree.children,
+                tree.value, ssids, tmats, info, newSseq);
+    }
+
+    /**
+     * The lookup tree of a set of triphones, laid out level by level like pocketsphinx's: every
+     * word position, every base phone under each, then the left and right contexts that occur.
+     */
+    private static final class Tree {
+        short[] context;
+        short[] children;
+        int[] value;
+        int size;
+
+        Tree(int ciCount, int[] phones, byte[] info) {
+            // triphones by word position, base, left and right context
+            Integer[] order = new Integer[phones.length - ciCount];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = ciCount + i;
+            }
+            final byte[] keys = info;
+            Arrays.sort(order, new java.util.Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    for (int k = 0; k < 4; k++) {
+                        int diff = (keys[a * 4 + k] & 0xFF) - (keys[b * 4 + k] & 0xFF);
+                        if (diff != 0) {
+                            return diff;
+                        }
+                    }
+                    return 0;
+                }
+            });
+
+            int capacity = WORD_POSITIONS * (1 + ciCount) + 2 * order.length;
+            context = new short[capacity];
+            children = new short[capacity];
+            value = new int[capacity];
+
+            // level 0 and 1 cover every word position and base phone
+            for (int position = 0; position < WORD_POSITIONS; position++) {
+                add(position, ciCount, WORD_POSITIONS + position * ciCount);
+            }
+            for (int position = 0; position < WORD_POSITIONS; position++) {
+                for (int base = 0; base < ciCount; base++) {
+                    add(base, 0, -1);
+                }
+            }
+            int[][] range = new int[WORD_POSITIONS * ciCount][];
+            int start = 0;
+            while (start < order.length) {
+                int first = order[start];
+                int end = start;
+                while (end < order.length && sameBase(keys, first, order[end])) {
+                    end++;
+                }
+                range[(keys[first * 4] & 0xFF) * ciCount + (keys[first * 4 + 1] & 0xFF)] =
+                        new int[] {start, end};
+                start = end;
+            }
+
+            // level 2: the left contexts of each base phone, in the order of the bases
+            int[] leftStart = new int[order.length];
+            int[] leftEnd = new int[order.length];
+            int lefts = 0;
+            for (int baseNode = 0; baseNode < range.length; baseNode++) {
+                int[] r = range[baseNode];
+                if (r == null) {
+                    continue;
+                }
+                int firstLeft = size;
+                for (int i = r[0]; i < r[1]; ) {
+                    int j = i;
+                    while (j < r[1] && keys[order[j] * 4 + 2] == keys[order[i] * 4 + 2]) {
+                        j++;
+                    }
+                    leftStart[lefts] = i;
+                    leftEnd[lefts] = j;
+                    lefts++;
+                    add(keys[order[i] * 4 + 2] & 0xFF, 0, 0);
+                    i = j;
+                }
+                int node = WORD_POSITIONS + baseNode;
+                children[node] = (short) (size - firstLeft);
+                value[node] = firstLeft;
+            }
+
+            // level 3: the right contexts, leaves holding the phone IDs
+            int leftNode = size - lefts;
+            for (int l = 0; l < lefts; l++) {
+                children[leftNode + l] = (short) (leftEnd[l] - leftStart[l]);
+                value[leftNode + l] = size;
+                for (int i = leftStart[l]; i < leftEnd[l]; i++) {
+                    add(keys[order[i] * 4 + 3] & 0xFF, 0, order[i]);
+                }
+            }
+            context = Arrays.copyOf(context, size);
+            children = Arrays.copyOf(children, size);
+            value = Arrays.copyOf(value, size);
+        }
+
+        private static boolean sameBase(byte[] keys, int a, int b) {
+            return keys[a * 4] == keys[b * 4] && keys[a * 4 + 1] == keys[b * 4 + 1];
+        }
+
+        private void add(int ctx, int count, int target) {
+            context[size] = (short) ctx;
+            children[size] = (short) count;
+            value[size] = target;
+            size++;
+        }
+    }
+}
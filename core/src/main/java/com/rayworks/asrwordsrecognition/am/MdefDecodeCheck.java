@@ -0,0 +1,80 @@
+package com.rayworks.asrwordsrecognition.am;
+
+import com.rayworks.asrwordsrecognition.eval.EvalItem;
+import com.rayworks.asrwordsrecognition.eval.EvalReport;
+import com.rayworks.asrwordsrecognition.eval.Evaluator;
+import com.rayworks.asrwordsrecognition.eval.SphinxBatchRecognizer;
+import com.rayworks.asrwordsrecognition.eval.UtteranceResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes an evaluation set once with the original model definition and once with the pruned
+ * one, and fails unless every utterance gets the same hypothesis. {@link MdefPruner#verify} shows
+ * that the lookups agree; this shows it on the decoder the app ships. Needs the native {@code
+ * pocketsphinx_jni} library on {@code java.library.path}.
+ *
+ * <p>Run by the app's {@code decodeWithPrunedAcousticModel} task:
+ *
+ * <pre>
+ * java MdefDecodeCheck manifest.tsv en-us-ptm models/en-us-ptm/mdef en-us-ptm/mdef dict lm
+ * </pre>
+ */
+public final class MdefDecodeCheck {
+
+    private MdefDecodeCheck() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 6) {
+            System.err.println("Usage: MdefDecodeCheck <manifest> <hmm> <mdef> <pruned mdef>"
+                    + " <dict> <lm>");
+            System.exit(1);
+        }
+        List<EvalItem> items = EvalItem.readManifest(new File(args[0]));
+        File hmm = new File(args[1]);
+        File dictionary = new File(args[4]);
+        File languageModel = new File(args[5]);
+        EvalReport original = decode(items, hmm, new File(args[2]), dictionary, languageModel);
+        EvalReport pruned = decode(items, hmm, new File(args[3]), dictionary, languageModel);
+
+        List<String> differences = compare(original, pruned);
+        for (String difference : differences) {
+            System.err.println(difference);
+        }
+        System.out.println("Decoded " + items.size() + " utterances with both model definitions, "
+                + differences.size() + " differ");
+        if (!differences.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /** @return a line per utterance whose hypothesis or failure differs, in manifest order */
+    static List<String> compare(EvalReport original, EvalReport pruned) {
+        List<String> differences = new ArrayList<>();
+        List<UtteranceResult> expected = original.getResults();
+        List<UtteranceResult> actual = pruned.getResults();
+        for (int i = 0; i < expected.size(); i++) {
+            UtteranceResult before = expected.get(i);
+            UtteranceResult after = actual.get(i);
+            if (before.getError() != null || after.getError() != null) {
+                differences.add(before.getItem().getId() + ": failed, "
+                        + (before.getError() != null ? before.getError() : after.getError()));
+            } else if (!before.getHypothesis().equals(after.getHypothesis())) {
+                differences.add(before.getItem().getId() + ": '" + before.getHypothesis()
+                        + "' became '" + after.getHypothesis() + "'");
+            }
+        }
+        return differences;
+    }
+
+    private static EvalReport decode(List<EvalItem> items, File hmm, File mdef, File dictionary,
+            File languageModel) throws IOException {
+        SphinxBatchRecognizer.Factory sphinx =
+                new SphinxBatchRecognizer.Factory(hmm, dictionary, languageModel);
+        sphinx.setString("-mdef", mdef.getPath());
+        return new Evaluator(sphinx).evaluate(items);
+    }
+}
@@ -0,0 +1,187 @@
+package com.rayworks.asrwordsrecognition.am;
+
+import com.rayworks.asrwordsrecognition.dict.DictionaryParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prunes an acoustic model's {@link BinaryMdef} down to the triphones the decoder can reach from
+ * a set of pronunciation dictionaries, for shipping a smaller model file.
+ *
+ * <p>A word-internal triphone is reachable if a pronunciation contains it. Across words any
+ * word-final phone, or silence, can precede a word and any word-initial phone, or silence, can
+ * follow it. For each reachable context the pruned model keeps the phone that {@link
+ * BinaryMdef#nearestPhoneId} picks, so a model that lacks the exact triphone backs off to the
+ * same phone after pruning as before. Senones and transition matrices are shared between
+ * triphones and are left as they are. {@link #verify(BinaryMdef)} checks exactly that, context by
+ * context, and the command line runs it before writing the pruned model.
+ *
+ * <p>Run by the app's {@code pruneAcousticModel} task:
+ *
+ * <pre>
+ * java MdefPruner models/en-us-ptm/mdef src/main/assets/sync/en-us-ptm/mdef models/cmudict-en-us.dict
+ * </pre>
+ */
+public final class MdefPruner {
+
+    private final BinaryMdef mdef;
+    private final List<int[]> words = new ArrayList<>();
+    private final BitSet wordBegins = new BitSet();
+    private final BitSet wordEnds = new BitSet();
+
+    public MdefPruner(BinaryMdef mdef) {
+        this.mdef = mdef;
+        int silence = mdef.getSilence();
+        if (silence >= 0) {
+            wordBegins.set(silence);
+            wordEnds.set(silence);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: MdefPruner <mdef> <pruned mdef> <dictionary>...");
+            System.exit(1);
+        }
+        File in = new File(args[0]);
+        File out = new File(args[1]);
+        BinaryMdef mdef = BinaryMdef.read(in);
+        MdefPruner pruner = new MdefPruner(mdef);
+        for (int i = 2; i < args.length; i++) {
+            pruner.addDictionary(new File(args[i]));
+        }
+        BinaryMdef pruned = pruner.prune();
+        int contexts = pruner.verify(pruned);
+        pruned.write(out);
+        System.out.println("Pruned mdef: " + mdef.getTriphoneCount() + " -> "
+                + pruned.getTriphoneCount() + " triphones, " + mdef.getSenoneSequenceCount()
+                + " -> " + pruned.getSenoneSequenceCount() + " senone sequences, "
+                + in.length() + " -> " + out.length() + " bytes, same senones in " + contexts
+                + " contexts");
+    }
+
+    /** Adds every pronunciation of a CMU text dictionary. */
+    public MdefPruner addDictionary(File dictionary) throws IOException {
+        for (Map.Entry<String, List<String>> entry
+                : DictionaryParser.parse(dictionary).entrySet()) {
+            for (String pronunciation : entry.getValue()) {
+                try {
+                    addPronunciation(pronunciation);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage() + " in " + entry.getKey() + ", "
+                            + dictionary, e);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param pronunciation space separated phones, as in a dictionary
+     * @throws IllegalArgumentException if the model has no such phone
+     */
+    public MdefPruner addPronunciation(String pronunciation) {
+        String[] names = pronunciation.trim().split("\\s+");
+        int[] phones = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            phones[i] = mdef.ciPhone(names[i]);
+            if (phones[i] < 0) {
+                throw new IllegalArgumentException("Unknown phone " + names[i]);
+            }
+        }
+        words.add(phones);
+        wordBegins.set(phones[0]);
+        wordEnds.set(phones[phones.length - 1]);
+        return this;
+    }
+
+    /** @return the phone IDs the decoder can use for the pronunciations added so far */
+    public BitSet reachable() {
+        final BitSet reachable = new BitSet(mdef.getPhoneCount());
+        forEachContext(new ContextVisitor() {
+            @Override
+            public void visit(int base, int left, int right, int position) {
+                reachable.set(mdef.nearestPhoneId(base, left, right, position));
+            }
+        });
+        return reachable;
+    }
+
+    public BinaryMdef prune() {
+        return mdef.retain(reachable());
+    }
+
+    /**
+     * Checks that every context the pronunciations added so far can put a phone in gets the same
+     * senones and transition matrix from {@code pruned} as from the original, be it from a
+     * triphone or by backing off to the context-independent phone.
+     *
+     * @return the number of contexts checked
+     * @throws IllegalStateException naming the first context that differs
+     */
+    public int verify(final BinaryMdef pruned) {
+        final int ciPhones = mdef.getCiPhones().size();
+        final int[] checked = new int[1];
+        forEachContext(new ContextVisitor() {
+            @Override
+            public void visit(int base, int left, int right, int position) {
+                int expected = mdef.nearestPhoneId(base, left, right, position);
+                int actual = pruned.nearestPhoneId(base, left, right, position);
+                if (!Arrays.equals(mdef.getSenones(expected), pruned.getSenones(actual))
+                        || mdef.getTransitionMatrix(expected)
+                                != pruned.getTransitionMatrix(actual)
+                        || (expected < ciPhones) != (actual < ciPhones)) {
+                    List<String> names = mdef.getCiPhones();
+                    throw new IllegalStateException("Pruned model differs for "
+                            + names.get(base) + " between " + names.get(left) + " and "
+                            + names.get(right) + " at " + position);
+                }
+                checked[0]++;
+            }
+        });
+        return checked[0];
+    }
+
+    /** Calls {@code visitor} for every context a phone of the added pronunciations can be in. */
+    private void forEachContext(ContextVisitor visitor) {
+        for (int[] phones : words) {
+            int last = phones.length - 1;
+            if (last == 0) {
+                across(visitor, phones[0], wordEnds, wordBegins, BinaryMdef.WORD_SINGLE);
+                continue;
+            }
+            across(visitor, phones[0], wordEnds, only(phones[1]), BinaryMdef.WORD_BEGIN);
+            for (int i = 1; i < last; i++) {
+                visitor.visit(phones[i], phones[i - 1], phones[i + 1],
+                        BinaryMdef.WORD_INTERNAL);
+            }
+            across(visitor, phones[last], only(phones[last - 1]), wordBegins,
+                    BinaryMdef.WORD_END);
+        }
+    }
+
+    private static void across(ContextVisitor visitor, int base, BitSet lefts, BitSet rights,
+            int position) {
+        for (int l = lefts.nextSetBit(0); l >= 0; l = lefts.nextSetBit(l + 1)) {
+            for (int r = rights.nextSetBit(0); r >= 0; r = rights.nextSetBit(r + 1)) {
+                visitor.visit(base, l, r, position);
+            }
+        }
+    }
+
+    private static BitSet only(int phone) {
+        BitSet set = new BitSet();
+        set.set(phone);
+        return set;
+    }
+
+    private interface ContextVisitor {
+        void visit(int base, int left, int right, int position);
+    }
+}
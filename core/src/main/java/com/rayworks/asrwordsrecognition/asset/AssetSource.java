@@ -0,0 +1,51 @@
+package com.rayworks.asrwordsrecognition.asset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+/**
+ * Where the bundled assets come from: the item list and checksums produced by the {@code list}
+ * and {@code checksum} targets of {@code assets.xml}, and the content of each item.
+ */
+public interface AssetSource {
+
+    /** @return the relative paths listed in {@code assets.lst} */
+    List<String> list() throws IOException;
+
+    /** @return the checksum shipped next to {@code item}, i.e. the content of its md5 file */
+    String checksum(String item) throws IOException;
+
+    Content open(String item) throws IOException;
+
+    /**
+     * Readable content of one item. When the channel is a {@link FileChannel} and the length is
+     * known, the bytes {@code [offset, offset + length)} are transferred without copying through
+     * the Java heap.
+     */
+    final class Content implements Closeable {
+        final ReadableByteChannel channel;
+        final long offset;
+        final long length;
+        private final Closeable owner;
+
+        public Content(ReadableByteChannel channel, long offset, long length, Closeable owner) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+            this.owner = owner;
+        }
+
+        /** Content of unknown length, read sequentially from the channel's current position. */
+        public Content(ReadableByteChannel channel) {
+            this(channel, 0, -1, channel);
+        }
+
+        @Override
+        public void close() throws IOException {
+            owner.close();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.rayworks.asrwordsrecognition.asset;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Incrementally mirrors an {@link AssetSource} into a directory.
+ *
+ * <p>A manifest in the target directory remembers the checksum, size and modification time of
+ * every file copied so far. A file is copied again only when its shipped checksum changed or the
+ * local copy no longer matches the recorded size and time, so a warm launch with nothing changed
+ * only reads the checksums. Changed files are copied in parallel through NIO channels, each into
+ * a temporary file that is renamed into place once complete.
+ */
+public class AssetSync {
+
+    public static final String MANIFEST_NAME = "assets.manifest";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final String TEMP_SUFFIX = ".part";
+
+    private final AssetSource source;
+    private final File targetDir;
+    private int parallelism = 4;
+    private boolean verifyContents;
+
+    public AssetSync(AssetSource source, File targetDir) {
+        this.source = source;
+        this.targetDir = targetDir;
+    }
+
+    public AssetSync setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Also hashes every local file that looks up to date, catching corruption that kept size and
+     * modification time intact. Off by default since it reads every byte on each launch.
+     */
+    public AssetSync setVerifyContents(boolean verifyContents) {
+        this.verifyContents = verifyContents;
+        return this;
+    }
+
+    public File getTargetDir() {
+        return targetDir;
+    }
+
+    public SyncResult sync() throws IOException {
+        long start = System.nanoTime();
+        if (!targetDir.isDirectory() && !targetDir.mkdirs()) {
+            throw new IOException("Cannot create asset directory " + targetDir);
+        }
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        for (String item : source.list()) {
+            expected.put(item, source.checksum(item));
+        }
+
+        Map<String, Entry> manifest = readManifest();
+        Map<String, Entry> updated = new LinkedHashMap<>();
+        List<String> toCopy = new ArrayList<>();
+        for (Map.Entry<String, String> item : expected.entrySet()) {
+            Entry recorded = manifest.get(item.getKey());
+            if (isUpToDate(item.getKey(), item.getValue(), recorded)) {
+                updated.put(item.getKey(), recorded);
+            } else {
+                toCopy.add(item.getKey());
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        for (String item : manifest.keySet()) {
+            if (!expected.containsKey(item)) {
+                new File(targetDir, item).delete();
+                removed.add(item);
+            }
+        }
+        long checked = System.nanoTime();
+
+        long bytes = 0;
+        if (!toCopy.isEmpty()) {
+            // drop the manifest first so that a crash mid-copy cannot leave stale entries behind
+            new File(targetDir, MANIFEST_NAME).delete();
+            for (Entry entry : copyAll(toCopy, expected)) {
+                updated.put(entry.item, entry);
+                bytes += entry.size;
+            }
+        }
+        if (!toCopy.isEmpty() || !removed.isEmpty() || updated.size() != manifest.size()) {
+            writeManifest(updated);
+        }
+        long done = System.nanoTime();
+
+        return new SyncResult(
+                targetDir,
+                toCopy,
+                removed,
+                expected.size() - toCopy.size(),
+                bytes,
+                checked - start,
+                done - checked);
+    }
+
+    private boolean isUpToDate(String item, String checksum, Entry recorded) throws IOException {
+        if (recorded == null || !recorded.checksum.equals(checksum)) {
+            return false;
+        }
+        File file = new File(targetDir, item);
+        if (file.length() != recorded.size || file.lastModified() != recorded.modified) {
+            return false;
+        }
+        return !verifyContents || md5(file).equals(checksum);
+    }
+
+    private List<Entry> copyAll(List<String> items, final Map<String, String> checksums)
+            throws IOException {
+        List<Entry> entries = new ArrayList<>(items.size());
+        int threads = Math.min(parallelism, items.size());
+        if (threads == 1) {
+            for (String item : items) {
+                entries.add(copy(item, checksums.get(item)));
+            }
+            return entries;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Entry>> futures = new ArrayList<>(items.size());
+            for (final String item : items) {
+                futures.add(
+                        executor.submit(
+                                new Callable<Entry>() {
+                                    @Override
+                                    public Entry call() throws IOException {
+                                        return copy(item, checksums.get(item));
+                                    }
+                                }));
+            }
+            for (Future<Entry> future : futures) {
+                entries.add(await(future));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return entries;
+    }
+
+    private Entry copy(String item, String checksum) throws IOException {
+        File target = new File(targetDir, item);
+        File parent = target.getParentFile();
+        // parallel copies into the same new directory race to create it
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+
+        File temp = new File(parent, target.getName() + TEMP_SUFFIX);
+        AssetSource.Content content = source.open(item);
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                transfer(content, out.getChannel());
+            } finally {
+                out.close();
+            }
+        } finally {
+            content.close();
+        }
+
+        if (!temp.renameTo(target)) {
+            target.delete();
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Cannot move " + temp + " to " + target);
+            }
+        }
+        return new Entry(item, checksum, target.length(), target.lastModified());
+    }
+
+    static void transfer(AssetSource.Content content, FileChannel target) throws IOException {
+        if (content.channel instanceof FileChannel && content.length >= 0) {
+            FileChannel channel = (FileChannel) content.channel;
+            long position = 0;
+            while (position < content.length) {
+                long moved =
+                        channel.transferTo(
+                                content.offset + position, content.length - position, target);
+                if (moved <= 0) {
+                    throw new IOException("Unexpected end of asset content");
+                }
+                position += moved;
+            }
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        while (content.channel.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private Map<String, Entry> readManifest() {
+        Map<String, Entry> entries = new HashMap<>();
+        File file = new File(targetDir, MANIFEST_NAME);
+        if (!file.isFile()) {
+            return entries;
+        }
+
+        try {
+            BufferedReader in =
+                    new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (fields.length != 4) {
+                        return new HashMap<>();
+                    }
+                    entries.put(
+                            fields[0],
+                            new Entry(
+                                    fields[0],
+                                    fields[1],
+                                    Long.parseLong(fields[2]),
+                                    Long.parseLong(fields[3])));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException | NumberFormatException e) {
+            // an unreadable manifest only costs a full copy
+            return new HashMap<>();
+        }
+        return entries;
+    }
+
+    private void writeManifest(Map<String, Entry> entries) throws IOException {
+        File file = new File(targetDir, MANIFEST_NAME);
+        File temp = new File(targetDir, MANIFEST_NAME + TEMP_SUFFIX);
+        Writer out = new OutputStreamWriter(new FileOutputStream(temp), UTF_8);
+        try {
+            for (Entry entry : entries.values()) {
+                out.write(
+                        entry.item
+                                + '\t'
+                                + entry.checksum
+                                + '\t'
+                                + entry.size
+                                + '\t'
+                                + entry.modified
+                                + '\n');
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    static String md5(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            in.close();
+        }
+
+        StringBuilder hex = new StringBuilder(32);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static Entry await(Future<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while copying assets");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to copy asset", e.getCause());
+        }
+    }
+
+    private static final class Entry {
+        final String item;
+        final String checksum;
+        final long size;
+        final long modified;
+
+        Entry(String item, String checksum, long size, long modified) {
+            this.item = item;
+            this.checksum = checksum;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
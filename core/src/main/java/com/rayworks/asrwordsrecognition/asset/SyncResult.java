@@ -0,0 +1,79 @@
+package com.rayworks.asrwordsrecognition.asset;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/** What an {@link AssetSync#sync()} run did and how long each phase took. */
+public class SyncResult {
+
+    private final File directory;
+    private final List<String> copied;
+    private final List<String> removed;
+    private final int unchanged;
+    private final long bytesCopied;
+    private final long checkNanos;
+    private final long copyNanos;
+
+    SyncResult(
+            File directory,
+            List<String> copied,
+            List<String> removed,
+            int unchanged,
+            long bytesCopied,
+            long checkNanos,
+            long copyNanos) {
+        this.directory = directory;
+        this.copied = Collections.unmodifiableList(copied);
+        this.removed = Collections.unmodifiableList(removed);
+        this.unchanged = unchanged;
+        this.bytesCopied = bytesCopied;
+        this.checkNanos = checkNanos;
+        this.copyNanos = copyNanos;
+    }
+
+    /** The synced directory, to be handed to the recognizer setup. */
+    public File getDirectory() {
+        return directory;
+    }
+
+    public List<String> getCopied() {
+        return copied;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    /** Time spent reading checksums and comparing them with the manifest. */
+    public long getCheckNanos() {
+        return checkNanos;
+    }
+
+    /** Time spent copying changed files and writing the manifest. */
+    public long getCopyNanos() {
+        return copyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.US,
+                "copied %d (%d KB), removed %d, unchanged %d; check %.1f ms, copy %.1f ms",
+                copied.size(),
+                bytesCopied / 1024,
+                removed.size(),
+                unchanged,
+                checkNanos / 1e6,
+                copyNanos / 1e6);
+    }
+}
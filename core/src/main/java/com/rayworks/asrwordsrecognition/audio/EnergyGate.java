@@ -0,0 +1,139 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+/**
+ * Decides chunk by chunk whether audio is worth decoding, so that a decoder left listening for a
+ * keyword idles through silence.
+ *
+ * <p>The gate opens on a chunk louder than the threshold and closes again after a hangover of
+ * quiet chunks. While it is closed the most recent audio is kept as pre-roll; when it opens, the
+ * pre-roll is {@link #drainPreRoll(short[]) drained} and decoded ahead of the opening chunk, so
+ * the quiet onset of a word is not lost. Nothing is allocated after construction. An instance
+ * serves one stream at a time.
+ */
+public class EnergyGate {
+
+    private final int sampleRate;
+    private final short[] preRoll;
+    // the pre-roll is a ring: preRollLength samples ending just before preRollEnd
+    private int preRollEnd;
+    private int preRollLength;
+
+    private float thresholdDb = -50f;
+    private int hangoverSamples;
+
+    private boolean open;
+    private int quietSamples;
+    private long skippedSamples;
+
+    /** Pre-roll of 200 ms and hangover of 500 ms. */
+    public EnergyGate(int sampleRate) {
+        this(sampleRate, 200);
+    }
+
+    public EnergyGate(int sampleRate, int preRollMillis) {
+        this.sampleRate = sampleRate;
+        this.preRoll = new short[(int) ((long) sampleRate * preRollMillis / 1000)];
+        setHangoverMillis(500);
+    }
+
+    /** RMS level of a chunk, in dBFS, above which the gate opens; -50 by default. */
+    public EnergyGate setThresholdDb(float thresholdDb) {
+        this.thresholdDb = thresholdDb;
+        return this;
+    }
+
+    /** How long the gate stays open after the last loud chunk. */
+    public EnergyGate setHangoverMillis(int millis) {
+        this.hangoverSamples = (int) ((long) sampleRate * millis / 1000);
+        return this;
+    }
+
+    /** Closes the gate and forgets the pre-roll, for a new stream. */
+    public void reset() {
+        open = false;
+        quietSamples = 0;
+        preRollEnd = 0;
+        preRollLength = 0;
+    }
+
+    /**
+     * @return true if the chunk should be decoded, after the {@link #drainPreRoll(short[])
+     *     pre-roll}; false if it was skipped and kept as pre-roll
+     */
+    public boolean process(short[] samples, int offset, int length) {
+        if (length <= 0) {
+            return open;
+        }
+        double sumOfSquares = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int sample = samples[i];
+            sumOfSquares += sample * sample;
+        }
+        boolean loud = LevelMeter.toDb(Math.sqrt(sumOfSquares / length)) > thresholdDb;
+
+        if (loud) {
+            open = true;
+            quietSamples = 0;
+        } else if (open) {
+            quietSamples += length;
+            open = quietSamples <= hangoverSamples;
+        }
+        if (!open) {
+            keep(samples, offset, length);
+            skippedSamples += length;
+        }
+        return open;
+    }
+
+    /**
+     * Moves the audio skipped just before the gate opened into {@code out}, oldest first.
+     *
+     * @param out at least {@link #getPreRollCapacity()} samples
+     * @return the number of samples moved, 0 once drained
+     */
+    public int drainPreRoll(short[] out) {
+        int length = preRollLength;
+        int start = preRollEnd - length;
+        if (start < 0) {
+            start += preRoll.length;
+            int tail = preRoll.length - start;
+            System.arraycopy(preRoll, start, out, 0, tail);
+            System.arraycopy(preRoll, 0, out, tail, length - tail);
+        } else {
+            System.arraycopy(preRoll, start, out, 0, length);
+        }
+        preRollLength = 0;
+        return length;
+    }
+
+    public int getPreRollCapacity() {
+        return preRoll.length;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /** Samples held back so far; those drained as pre-roll were decoded after all. */
+    public long getSkippedSamples() {
+        return skippedSamples;
+    }
+
+    private void keep(short[] samples, int offset, int length) {
+        int capacity = preRoll.length;
+        if (capacity == 0) {
+            return;
+        }
+        if (length >= capacity) {
+            System.arraycopy(samples, offset + length - capacity, preRoll, 0, capacity);
+            preRollEnd = 0;
+            preRollLength = capacity;
+            return;
+        }
+        int first = Math.min(length, capacity - preRollEnd);
+        System.arraycopy(samples, offset, preRoll, preRollEnd, first);
+        System.arraycopy(samples, offset + first, preRoll, 0, length - first);
+        preRollEnd = (preRollEnd + length) % capacity;
+        preRollLength = Math.min(capacity, preRollLength + length);
+    }
+}
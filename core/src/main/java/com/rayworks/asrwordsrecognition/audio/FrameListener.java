@@ -0,0 +1,17 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+/**
+ * Receives the audio a recognizer decodes, on its audio thread. Implementations must return
+ * quickly and must not allocate or block.
+ */
+public interface FrameListener {
+
+    /** An utterance starts with the named search; its frames follow. */
+    void onUtteranceStart(String searchName);
+
+    /** @param frame samples valid only for the duration of the call */
+    void onFrame(short[] frame, int length);
+
+    /** The utterance the preceding frames belong to has ended or was cancelled. */
+    void onUtteranceEnd();
+}
@@ -0,0 +1,119 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loudness of the audio being recognized, for the microphone level view.
+ *
+ * <p>The audio thread measures each frame and publishes its RMS and peak level, in dBFS, packed
+ * into a single atomic slot; nothing is queued, so readers always see the latest frame and
+ * frames nobody read are simply overwritten. The display side polls once per frame and eases
+ * towards the level with a {@link Smoother}.
+ */
+public class LevelMeter implements FrameListener {
+
+    /** Level reported for digital silence and between utterances. */
+    public static final float SILENCE_DB = -90f;
+
+    private static final double FULL_SCALE = 32768.0;
+
+    private final AtomicLong latest = new AtomicLong(pack(SILENCE_DB, SILENCE_DB));
+
+    @Override
+    public void onUtteranceStart(String searchName) {
+    }
+
+    @Override
+    public void onFrame(short[] frame, int length) {
+        if (length <= 0) {
+            return;
+        }
+        double sumOfSquares = 0;
+        int peak = 0;
+        for (int i = 0; i < length; i++) {
+            int sample = frame[i];
+            sumOfSquares += sample * sample;
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        double rms = Math.sqrt(sumOfSquares / length);
+        latest.lazySet(pack(toDb(rms), toDb(peak)));
+    }
+
+    @Override
+    public void onUtteranceEnd() {
+        latest.lazySet(pack(SILENCE_DB, SILENCE_DB));
+    }
+
+    public float getRmsDb() {
+        return Float.intBitsToFloat((int) (latest.get() >>> 32));
+    }
+
+    public float getPeakDb() {
+        return Float.intBitsToFloat((int) latest.get());
+    }
+
+    static float toDb(double amplitude) {
+        if (amplitude <= 0) {
+            return SILENCE_DB;
+        }
+        return (float) Math.max(SILENCE_DB, 20 * Math.log10(amplitude / FULL_SCALE));
+    }
+
+    private static long pack(float rmsDb, float peakDb) {
+        return ((long) Float.floatToRawIntBits(rmsDb) << 32)
+                | (Float.floatToRawIntBits(peakDb) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Maps levels onto a 0..1 display range and eases towards them, rising with the attack time
+     * constant and falling with the slower decay one. Meant to be called once per display frame
+     * from one thread.
+     */
+    public static class Smoother {
+
+        private final float floorDb;
+        private final float ceilingDb;
+        private final double attackNanos;
+        private final double decayNanos;
+
+        private float value;
+        private long lastFrameNanos = -1;
+
+        /**
+         * @param floorDb level shown as 0
+         * @param ceilingDb level shown as 1
+         */
+        public Smoother(float floorDb, float ceilingDb, int attackMillis, int decayMillis) {
+            this.floorDb = floorDb;
+            this.ceilingDb = ceilingDb;
+            this.attackNanos = attackMillis * 1e6;
+            this.decayNanos = decayMillis * 1e6;
+        }
+
+        /** @return the smoothed proportion to display for the frame at {@code frameNanos} */
+        public float update(float levelDb, long frameNanos) {
+            float target = (levelDb - floorDb) / (ceilingDb - floorDb);
+            target = Math.max(0f, Math.min(1f, target));
+
+            if (lastFrameNanos < 0) {
+                value = target;
+            } else {
+                double elapsed = Math.max(0, frameNanos - lastFrameNanos);
+                double tau = target > value ? attackNanos : decayNanos;
+                value += (target - value) * (float) (1 - Math.exp(-elapsed / tau));
+            }
+            lastFrameNanos = frameNanos;
+            return value;
+        }
+
+        public float getValue() {
+            return value;
+        }
+
+        /** Drops to 0 immediately and forgets the frame clock. */
+        public void reset() {
+            value = 0;
+            lastFrameNanos = -1;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring of 16-bit PCM samples.
+ *
+ * <p>The storage is allocated once. {@link #offer(short[], int, int)} never blocks: when the
+ * consumer has fallen behind, the whole chunk is rejected and counted, so the producer (usually
+ * the audio thread) keeps its timing. Positions are absolute sample counts since creation.
+ */
+public final class PcmRingBuffer {
+
+    private final short[] buffer;
+    private final int mask;
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** @param capacity number of samples, rounded up to a power of two */
+    public PcmRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        buffer = new short[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /** Producer side: copies {@code length} samples in, or drops them all if they do not fit. */
+    public boolean offer(short[] src, int offset, int length) {
+        long write = writePosition.get();
+        long free = buffer.length - (write - readPosition.get());
+        if (length > free) {
+            dropped.addAndGet(length);
+            return false;
+        }
+
+        int start = (int) (write & mask);
+        int first = Math.min(length, buffer.length - start);
+        System.arraycopy(src, offset, buffer, start, first);
+        System.arraycopy(src, offset + first, buffer, 0, length - first);
+        writePosition.lazySet(write + length);
+        return true;
+    }
+
+    /** Consumer side: moves up to {@code max} samples out. */
+    public int poll(short[] dst, int offset, int max) {
+        long read = readPosition.get();
+        int length = (int) Math.min(max, writePosition.get() - read);
+        if (length <= 0) {
+            return 0;
+        }
+
+        int start = (int) (read & mask);
+        int first = Math.min(length, buffer.length - start);
+        System.arraycopy(buffer, start, dst, offset, first);
+        System.arraycopy(buffer, 0, dst, offset + first, length - first);
+        readPosition.lazySet(read + length);
+        return length;
+    }
+
+    /** Samples written and not yet read. */
+    public int available() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    public long writePosition() {
+        return writePosition.get();
+    }
+
+    public long readPosition() {
+        return readPosition.get();
+    }
+
+    /** Samples rejected by {@link #offer(short[], int, int)} so far. */
+    public long droppedSamples() {
+        return dropped.get();
+    }
+}
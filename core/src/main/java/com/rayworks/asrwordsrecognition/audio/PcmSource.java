@@ -0,0 +1,23 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import java.io.IOException;
+
+/** A stream of 16-bit mono PCM that a recognizer decodes, started and stopped per utterance. */
+public interface PcmSource {
+
+    int getSampleRate();
+
+    void start() throws IOException;
+
+    /**
+     * Blocks until samples are available.
+     *
+     * @return the number of samples read, or -1 at the end of a finite stream
+     */
+    int read(short[] buffer, int offset, int length) throws IOException;
+
+    void stop();
+
+    /** Frees the underlying device or file; the source is not used afterwards. */
+    void release();
+}
@@ -0,0 +1,222 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import java.io.IOException;
+
+/**
+ * {@link PcmSource} that can keep a device, usually the microphone, recording between utterances
+ * so that an utterance starts without waiting for the device and with the audio of the moment
+ * before it was started: the word the user began as their finger landed.
+ *
+ * <p>While {@link #warmUp() warm}, a thread of its own reads the device into a history of
+ * {@code preRollMillis} plus a second of backlog for the reader, overwriting the oldest samples.
+ * {@link #start()} then opens an utterance at the last {@code preRollMillis} of the history, and
+ * {@link #stop()} ends it with the device still recording. When cold, {@code start()} and {@code
+ * stop()} start and stop the device for the utterance as usual, without a pre-roll. A reader that
+ * falls more than the backlog behind skips the audio it missed.
+ */
+public class PreRollPcmSource implements PcmSource {
+
+    private final PcmSource device;
+    private final int preRollSamples;
+    private final short[] history;
+    private final short[] chunk;
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private long written;
+    private long position;
+    private boolean listening;
+    private boolean capturing;
+    private IOException failure;
+    private long skipped;
+
+    // guarded by this
+    private boolean warm;
+    private Thread capture;
+
+    public PreRollPcmSource(PcmSource device, int preRollMillis) {
+        this.device = device;
+        this.preRollSamples = (int) ((long) device.getSampleRate() * preRollMillis / 1000);
+        this.history = new short[preRollSamples + device.getSampleRate()];
+        this.chunk = new short[Math.max(1, device.getSampleRate() / 100)];
+    }
+
+    @Override
+    public int getSampleRate() {
+        return device.getSampleRate();
+    }
+
+    public int getPreRollSamples() {
+        return preRollSamples;
+    }
+
+    /** @return samples a slow reader had to skip */
+    public long getSkippedSamples() {
+        synchronized (lock) {
+            return skipped;
+        }
+    }
+
+    public synchronized boolean isWarm() {
+        return warm;
+    }
+
+    /** Starts recording in the background, if not already, and keeps on between utterances. */
+    public synchronized void warmUp() throws IOException {
+        warm = true;
+        startCapture();
+    }
+
+    /** Stops recording in the background, once the utterance in progress, if any, has ended. */
+    public synchronized void coolDown() {
+        warm = false;
+        boolean inUtterance;
+        synchronized (lock) {
+            inUtterance = listening;
+        }
+        if (!inUtterance) {
+            stopCapture();
+        }
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+        startCapture();
+        synchronized (lock) {
+            listening = true;
+            // all of the pre-roll there is; none if the device has just started
+            position = Math.max(0, written - preRollSamples);
+        }
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        synchronized (lock) {
+            while (listening && position == written && capturing) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    // the caller checks why
+                    Thread.currentThread().interrupt();
+                    return 0;
+                }
+            }
+            if (position == written) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return listening ? -1 : 0;
+            }
+            long oldest = written - history.length;
+            if (position < oldest) {
+                skipped += oldest - position;
+                position = oldest;
+            }
+            int count = (int) Math.min(length, written - position);
+            int start = (int) (position % history.length);
+            int first = Math.min(count, history.length - start);
+            System.arraycopy(history, start, buffer, offset, first);
+            System.arraycopy(history, 0, buffer, offset + first, count - first);
+            position += count;
+            return count;
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        synchronized (lock) {
+            listening = false;
+            lock.notifyAll();
+        }
+        if (!warm) {
+            stopCapture();
+        }
+    }
+
+    @Override
+    public synchronized void release() {
+        warm = false;
+        stop();
+        device.release();
+    }
+
+    private void startCapture() throws IOException {
+        if (capture != null) {
+            if (capture.isAlive()) {
+                return;
+            }
+            // the device ended or failed; start it again
+            capture = null;
+            device.stop();
+        }
+        device.start();
+        synchronized (lock) {
+            capturing = true;
+            failure = null;
+        }
+        capture = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                capture();
+            }
+        }, "pre-roll-capture");
+        capture.start();
+    }
+
+    private void stopCapture() {
+        Thread stopped = capture;
+        if (stopped == null) {
+            return;
+        }
+        synchronized (lock) {
+            capturing = false;
+            lock.notifyAll();
+        }
+        boolean interrupted = false;
+        while (stopped.isAlive()) {
+            try {
+                // a read of the device returns within a chunk
+                stopped.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        capture = null;
+        device.stop();
+    }
+
+    private void capture() {
+        try {
+            while (true) {
+                synchronized (lock) {
+                    if (!capturing) {
+                        return;
+                    }
+                }
+                int read = device.read(chunk, 0, chunk.length);
+                synchronized (lock) {
+                    if (read < 0) {
+                        capturing = false;
+                        lock.notifyAll();
+                        return;
+                    }
+                    int start = (int) (written % history.length);
+                    int first = Math.min(read, history.length - start);
+                    System.arraycopy(chunk, 0, history, start, first);
+                    System.arraycopy(chunk, first, history, 0, read - first);
+                    written += read;
+                    lock.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (lock) {
+                failure = e;
+                capturing = false;
+                lock.notifyAll();
+            }
+        }
+    }
+}
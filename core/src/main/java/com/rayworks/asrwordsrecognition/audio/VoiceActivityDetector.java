@@ -0,0 +1,218 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+/**
+ * Energy and zero-crossing voice activity detector for endpointing 16-bit mono PCM.
+ *
+ * <p>Audio is analysed in 10 ms frames. A frame is active when its energy is well above an
+ * adaptive noise floor, or moderately above it with the high zero-crossing rate of a fricative.
+ * Speech starts after a few consecutive active frames and the utterance ends after a hangover of
+ * inactive frames, so short pauses between words do not cut it. The floor follows the quiet
+ * frames quickly downwards and slowly upwards, and creeps up even during activity so that a
+ * lasting change of background noise is eventually absorbed.
+ *
+ * <p>{@link #process(short[], int, int)} accepts chunks of any length and neither allocates nor
+ * modifies the samples. An instance serves one stream at a time.
+ */
+public class VoiceActivityDetector {
+
+    public enum Event {
+        NONE,
+        SPEECH_STARTED,
+        UTTERANCE_ENDED
+    }
+
+    public static final int FRAME_MILLIS = 10;
+
+    private static final double FULL_SCALE_SQUARED = 32768.0 * 32768.0;
+    private static final float FLOOR_FALL = 0.3f;
+    private static final float FLOOR_RISE = 0.02f;
+    private static final float FLOOR_CREEP = 0.002f;
+
+    private final int frameSize;
+    private final short[] pending;
+    private int pendingLength;
+
+    private float speechMarginDb = 10f;
+    private float fricativeMarginDb = 4f;
+    private float fricativeZeroCrossings = 0.3f;
+    private float minSpeechDb = -60f;
+    private int onsetFrames = 3;
+    private int hangoverFrames = 60;
+
+    private float noiseFloorDb;
+    private float energyDb;
+    private float zeroCrossingRate;
+    private boolean speech;
+    private int activeRun;
+    private int inactiveRun;
+    private long frames;
+
+    public VoiceActivityDetector(int sampleRate) {
+        frameSize = sampleRate * FRAME_MILLIS / 1000;
+        pending = new short[frameSize];
+        reset();
+    }
+
+    /** Energy above the noise floor at which a frame counts as speech; 10 dB by default. */
+    public VoiceActivityDetector setSpeechMarginDb(float speechMarginDb) {
+        this.speechMarginDb = speechMarginDb;
+        return this;
+    }
+
+    /**
+     * Weaker margin, 4 dB by default, accepted from frames whose zero-crossing rate (crossings
+     * per sample) exceeds {@code zeroCrossings}, 0.3 by default.
+     */
+    public VoiceActivityDetector setFricativeThreshold(float marginDb, float zeroCrossings) {
+        this.fricativeMarginDb = marginDb;
+        this.fricativeZeroCrossings = zeroCrossings;
+        return this;
+    }
+
+    /** Frames quieter than this are never speech, whatever the floor; -60 dBFS by default. */
+    public VoiceActivityDetector setMinSpeechDb(float minSpeechDb) {
+        this.minSpeechDb = minSpeechDb;
+        return this;
+    }
+
+    /** Activity needed before speech is reported; 30 ms by default. */
+    public VoiceActivityDetector setOnsetMillis(int millis) {
+        this.onsetFrames = Math.max(1, millis / FRAME_MILLIS);
+        return this;
+    }
+
+    /** Silence after speech that ends the utterance; 600 ms by default. */
+    public VoiceActivityDetector setEndSilenceMillis(int millis) {
+        this.hangoverFrames = Math.max(1, millis / FRAME_MILLIS);
+        return this;
+    }
+
+    /** Forgets the stream, including the noise floor; call before each utterance. */
+    public void reset() {
+        pendingLength = 0;
+        noiseFloorDb = Float.NaN;
+        energyDb = Float.NaN;
+        zeroCrossingRate = 0;
+        speech = false;
+        activeRun = 0;
+        inactiveRun = 0;
+        frames = 0;
+    }
+
+    /**
+     * Analyses the next chunk of the stream.
+     *
+     * @return {@link Event#UTTERANCE_ENDED} if an utterance ended in this chunk, else {@link
+     *     Event#SPEECH_STARTED} if speech started in it, else {@link Event#NONE}
+     */
+    public Event process(short[] samples, int offset, int length) {
+        Event event = Event.NONE;
+        int end = offset + length;
+        int position = offset;
+
+        if (pendingLength > 0) {
+            int n = Math.min(frameSize - pendingLength, length);
+            System.arraycopy(samples, position, pending, pendingLength, n);
+            pendingLength += n;
+            position += n;
+            if (pendingLength < frameSize) {
+                return event;
+            }
+            event = merge(event, analyse(pending, 0));
+            pendingLength = 0;
+        }
+
+        while (end - position >= frameSize) {
+            event = merge(event, analyse(samples, position));
+            position += frameSize;
+        }
+
+        pendingLength = end - position;
+        System.arraycopy(samples, position, pending, 0, pendingLength);
+        return event;
+    }
+
+    public boolean isSpeech() {
+        return speech;
+    }
+
+    /** @return the noise floor in dBFS, NaN before the first frame */
+    public float getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+
+    /** @return the energy of the last complete frame in dBFS */
+    public float getEnergyDb() {
+        return energyDb;
+    }
+
+    public float getZeroCrossingRate() {
+        return zeroCrossingRate;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    private Event analyse(short[] frame, int offset) {
+        int end = offset + frameSize;
+
+        // remove the frame's DC offset, it would bias both features
+        long sum = 0;
+        for (int i = offset; i < end; i++) {
+            sum += frame[i];
+        }
+        int mean = (int) (sum / frameSize);
+
+        double energy = 0;
+        int crossings = 0;
+        int previous = frame[offset] - mean;
+        for (int i = offset; i < end; i++) {
+            int centred = frame[i] - mean;
+            energy += (double) centred * centred;
+            crossings += (centred ^ previous) >>> 31;
+            previous = centred;
+        }
+        energyDb = (float) (10 * Math.log10(energy / frameSize / FULL_SCALE_SQUARED + 1e-10));
+        zeroCrossingRate = (float) crossings / (frameSize - 1);
+        frames++;
+
+        if (Float.isNaN(noiseFloorDb)) {
+            noiseFloorDb = energyDb;
+        }
+        float margin = energyDb - noiseFloorDb;
+        boolean active =
+                energyDb > minSpeechDb
+                        && (margin > speechMarginDb
+                                || (margin > fricativeMarginDb
+                                        && zeroCrossingRate > fricativeZeroCrossings));
+
+        float rate = active ? FLOOR_CREEP : margin < 0 ? FLOOR_FALL : FLOOR_RISE;
+        noiseFloorDb += rate * margin;
+
+        if (!speech) {
+            activeRun = active ? activeRun + 1 : 0;
+            if (activeRun >= onsetFrames) {
+                speech = true;
+                inactiveRun = 0;
+                return Event.SPEECH_STARTED;
+            }
+        } else {
+            inactiveRun = active ? 0 : inactiveRun + 1;
+            if (inactiveRun >= hangoverFrames) {
+                speech = false;
+                activeRun = 0;
+                return Event.UTTERANCE_ENDED;
+            }
+        }
+        return Event.NONE;
+    }
+
+    private static Event merge(Event current, Event next) {
+        return next.ordinal() > current.ordinal() ? next : current;
+    }
+}
@@ -0,0 +1,225 @@
+package com.rayworks.asrwordsrecognition.audio.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Lossless codec for 16-bit PCM captures: a fixed second-order predictor followed by Rice coding
+ * of the zig-zagged residuals, the same scheme FLAC uses for its fixed subframes. It typically
+ * saves a third to a half of the raw size of speech, at a few cycles per sample.
+ *
+ * <p>Each block is self-contained:
+ *
+ * <pre>
+ * u16 sampleCount, u8 riceParameter,
+ * up to two warm-up samples as raw 16-bit values,
+ * Rice coded residuals, padded to a byte boundary
+ * </pre>
+ *
+ * <p>A residual whose quotient reaches {@value #ESCAPE} is written as {@value #ESCAPE} one bits
+ * followed by its zig-zag value in {@value #ESCAPE_BITS} bits, which bounds the worst case.
+ *
+ * <p>An instance keeps its bit packer between blocks so that encoding does not allocate; it is
+ * not thread-safe.
+ */
+public final class CaptureCodec {
+
+    public static final int MAX_BLOCK_SAMPLES = 4096;
+
+    static final int ESCAPE = 32;
+    static final int ESCAPE_BITS = 18;
+    private static final int MAX_RICE = 16;
+
+    private final BitWriter writer = new BitWriter();
+    private final BitReader reader = new BitReader();
+
+    /** Upper bound of the encoded size of a block of {@code samples} samples. */
+    public static int maxBlockBytes(int samples) {
+        return 3 + 4 + (samples * (ESCAPE + ESCAPE_BITS) + 7) / 8;
+    }
+
+    /** Encodes one block into {@code out}; does not allocate. */
+    public void encodeBlock(short[] src, int offset, int length, ByteBuffer out) {
+        if (length <= 0 || length > MAX_BLOCK_SAMPLES) {
+            throw new IllegalArgumentException("Block of " + length + " samples");
+        }
+
+        long sum = 0;
+        for (int i = 2; i < length; i++) {
+            sum += zigzag(residual(src, offset + i));
+        }
+        int k = riceParameter(sum, length - 2);
+
+        out.putShort((short) length);
+        out.put((byte) k);
+
+        BitWriter bits = writer.reset(out);
+        for (int i = 0; i < Math.min(2, length); i++) {
+            bits.write(src[offset + i] & 0xFFFF, 16);
+        }
+        for (int i = 2; i < length; i++) {
+            int u = zigzag(residual(src, offset + i));
+            int q = u >>> k;
+            if (q < ESCAPE) {
+                bits.writeUnary(q);
+                bits.write(u & ((1 << k) - 1), k);
+            } else {
+                bits.write((int) ((1L << ESCAPE) - 1), ESCAPE);
+                bits.write(u, ESCAPE_BITS);
+            }
+        }
+        bits.flush();
+    }
+
+    /**
+     * Decodes one block from {@code in} into {@code dst}.
+     *
+     * @return the number of samples decoded
+     */
+    public int decodeBlock(ByteBuffer in, short[] dst, int offset) throws IOException {
+        int length = in.getShort() & 0xFFFF;
+        int k = in.get() & 0xFF;
+        if (length == 0 || length > MAX_BLOCK_SAMPLES || k > MAX_RICE) {
+            throw new IOException("Corrupt capture block");
+        }
+        if (dst.length - offset < length) {
+            throw new IOException("Capture block larger than the output");
+        }
+
+        BitReader bits = reader.reset(in);
+        for (int i = 0; i < Math.min(2, length); i++) {
+            dst[offset + i] = (short) bits.read(16);
+        }
+        for (int i = 2; i < length; i++) {
+            int q = bits.readUnary(ESCAPE);
+            int u = q < ESCAPE ? (q << k) | bits.read(k) : bits.read(ESCAPE_BITS);
+            int prediction = 2 * dst[offset + i - 1] - dst[offset + i - 2];
+            dst[offset + i] = (short) (prediction + unzigzag(u));
+        }
+        bits.align();
+        return length;
+    }
+
+    private static int residual(short[] src, int index) {
+        return src[index] - (2 * src[index - 1] - src[index - 2]);
+    }
+
+    private static int riceParameter(long sum, int count) {
+        if (count <= 0) {
+            return 0;
+        }
+        long mean = sum / count;
+        int k = 0;
+        while (k < MAX_RICE && (1L << (k + 1)) <= mean) {
+            k++;
+        }
+        return k;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** MSB-first bit packing onto a byte buffer. */
+    private static final class BitWriter {
+        private ByteBuffer out;
+        private long accumulator;
+        private int count;
+
+        BitWriter reset(ByteBuffer out) {
+            this.out = out;
+            accumulator = 0;
+            count = 0;
+            return this;
+        }
+
+        void write(int value, int n) {
+            if (n == 0) {
+                return;
+            }
+            accumulator = (accumulator << n) | (value & ((1L << n) - 1));
+            count += n;
+            drain();
+        }
+
+        void writeUnary(int q) {
+            while (q >= 24) {
+                write(0xFFFFFF, 24);
+                q -= 24;
+            }
+            // q ones followed by a terminating zero
+            write(((1 << q) - 1) << 1, q + 1);
+        }
+
+        void flush() {
+            if (count > 0) {
+                out.put((byte) (accumulator << (8 - count)));
+                count = 0;
+            }
+            accumulator = 0;
+            out = null;
+        }
+
+        private void drain() {
+            while (count >= 8) {
+                count -= 8;
+                out.put((byte) (accumulator >>> count));
+            }
+            accumulator &= (1L << count) - 1;
+        }
+    }
+
+    private static final class BitReader {
+        private ByteBuffer in;
+        private long accumulator;
+        private int count;
+
+        BitReader reset(ByteBuffer in) {
+            this.in = in;
+            accumulator = 0;
+            count = 0;
+            return this;
+        }
+
+        int read(int n) throws IOException {
+            if (n == 0) {
+                return 0;
+            }
+            fill(n);
+            count -= n;
+            return (int) ((accumulator >>> count) & ((1L << n) - 1));
+        }
+
+        /** Counts one bits up to the terminating zero, or up to {@code limit} ones. */
+        int readUnary(int limit) throws IOException {
+            int q = 0;
+            while (q < limit) {
+                if (read(1) == 0) {
+                    return q;
+                }
+                q++;
+            }
+            return q;
+        }
+
+        void align() {
+            count = 0;
+            accumulator = 0;
+            in = null;
+        }
+
+        private void fill(int n) throws IOException {
+            while (count < n) {
+                if (!in.hasRemaining()) {
+                    throw new IOException("Truncated capture block");
+                }
+                accumulator = (accumulator << 8) | (in.get() & 0xFF);
+                count += 8;
+            }
+        }
+    }
+}
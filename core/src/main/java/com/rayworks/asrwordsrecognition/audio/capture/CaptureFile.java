@@ -0,0 +1,121 @@
+package com.rayworks.asrwordsrecognition.audio.capture;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A decoded capture: one utterance of 16-bit mono PCM.
+ *
+ * <p>On disk a capture is the magic {@code RPZ1}, the sample rate as a big-endian int, and then
+ * {@link CaptureCodec} blocks up to the end of the file.
+ */
+public final class CaptureFile {
+
+    public static final String EXTENSION = ".rpz";
+
+    static final int MAGIC = 0x52505A31; // "RPZ1"
+    static final int HEADER_BYTES = 8;
+
+    private final int sampleRate;
+    private final short[] samples;
+
+    CaptureFile(int sampleRate, short[] samples) {
+        this.sampleRate = sampleRate;
+        this.samples = samples;
+    }
+
+    public static CaptureFile read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ByteBuffer in;
+        try {
+            long size = raf.length();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a capture file: " + file);
+            }
+            byte[] bytes = new byte[(int) size];
+            raf.readFully(bytes);
+            in = ByteBuffer.wrap(bytes);
+        } finally {
+            raf.close();
+        }
+        return decode(in);
+    }
+
+    static CaptureFile decode(ByteBuffer in) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a capture file");
+        }
+        int sampleRate = in.getInt();
+
+        CaptureCodec codec = new CaptureCodec();
+        short[] samples = new short[Math.max(CaptureCodec.MAX_BLOCK_SAMPLES, in.remaining() * 2)];
+        int count = 0;
+        while (in.hasRemaining()) {
+            if (samples.length - count < CaptureCodec.MAX_BLOCK_SAMPLES) {
+                samples = Arrays.copyOf(samples, samples.length * 2);
+            }
+            count += codec.decodeBlock(in, samples, count);
+        }
+        return new CaptureFile(sampleRate, Arrays.copyOf(samples, count));
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public short[] getSamples() {
+        return samples;
+    }
+
+    /** Writes the samples as a 16-bit mono WAV file for listening and re-decoding. */
+    public void writeWav(File wav) throws IOException {
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(wav), 64 * 1024));
+        try {
+            int dataBytes = samples.length * 2;
+            out.writeInt(0x52494646); // "RIFF"
+            out.writeInt(Integer.reverseBytes(36 + dataBytes));
+            out.writeInt(0x57415645); // "WAVE"
+            out.writeInt(0x666D7420); // "fmt "
+            out.writeInt(Integer.reverseBytes(16));
+            out.writeShort(Short.reverseBytes((short) 1)); // PCM
+            out.writeShort(Short.reverseBytes((short) 1)); // mono
+            out.writeInt(Integer.reverseBytes(sampleRate));
+            out.writeInt(Integer.reverseBytes(sampleRate * 2));
+            out.writeShort(Short.reverseBytes((short) 2));
+            out.writeShort(Short.reverseBytes((short) 16));
+            out.writeInt(0x64617461); // "data"
+            out.writeInt(Integer.reverseBytes(dataBytes));
+            for (short sample : samples) {
+                out.writeShort(Short.reverseBytes(sample));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Converts captures pulled from a device into WAV files next to them. */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: CaptureFile <capture.rpz>...");
+            System.exit(1);
+        }
+        for (String name : args) {
+            File file = new File(name);
+            CaptureFile capture = read(file);
+            String base = name.endsWith(EXTENSION)
+                    ? name.substring(0, name.length() - EXTENSION.length())
+                    : name;
+            File wav = new File(base + ".wav");
+            capture.writeWav(wav);
+            System.out.println(
+                    wav + ": " + capture.samples.length + " samples at " + capture.sampleRate + " Hz");
+        }
+    }
+}
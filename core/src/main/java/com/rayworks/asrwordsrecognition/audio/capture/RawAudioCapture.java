@@ -0,0 +1,390 @@
+package com.rayworks.asrwordsrecognition.audio.capture;
+
+import com.rayworks.asrwordsrecognition.audio.FrameListener;
+import com.rayworks.asrwordsrecognition.audio.PcmRingBuffer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps compressed recordings of recent utterances for QA, within a fixed disk budget.
+ *
+ * <p>The producer thread only copies samples into a preallocated {@link PcmRingBuffer} and marks
+ * utterance ends; neither call blocks or allocates, and samples that do not fit are dropped and
+ * counted. A daemon writer thread drains the ring, encodes it with {@link CaptureCodec} into a
+ * reusable buffer and writes it out in large batches, one {@link CaptureFile} per utterance.
+ * After each file the directory is trimmed: files older than the maximum age go first, then the
+ * oldest ones until the total fits the byte budget. Files are named after the capture's start and
+ * the number of the utterance, so that {@link #getLastCaptureName()} can refer to the file of an
+ * utterance before it is written. As a {@link FrameListener} it can be limited to the
+ * utterances of one search, see {@link #setSearch(String)}.
+ *
+ * <p>{@link #write(short[], int, int)} and {@link #endUtterance()} must be called from a single
+ * producer thread.
+ */
+public class RawAudioCapture implements FrameListener {
+
+    public static final long DEFAULT_MAX_BYTES = 50L * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    static final String PREFIX = "capture-";
+
+    private static final int MAX_PENDING_UTTERANCES = 64;
+    private static final int OUTPUT_BYTES = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final File directory;
+    private final int sampleRate;
+    private final PcmRingBuffer ring;
+    private final long startMillis = System.currentTimeMillis();
+
+    // utterance end positions, a second single-producer/single-consumer ring
+    private final long[] utteranceEnds = new long[MAX_PENDING_UTTERANCES];
+    private final AtomicLong endsWritten = new AtomicLong();
+    private final AtomicLong endsRead = new AtomicLong();
+    private final AtomicLong droppedUtterances = new AtomicLong();
+    // the number of the utterance ended last, -1 if its end was dropped
+    private volatile long lastUtterance = -1;
+
+    private final AtomicLong filesWritten = new AtomicLong();
+    private final AtomicLong filesEvicted = new AtomicLong();
+
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private volatile String search;
+    // producer thread only: whether the utterance in progress is captured
+    private boolean capturing = true;
+
+    private volatile Thread writer;
+    private volatile boolean running;
+    private volatile IOException lastError;
+
+    // writer thread only
+    private File currentFile;
+
+    /** @param bufferSamples ring size; it bounds how far the writer may fall behind */
+    public RawAudioCapture(File directory, int sampleRate, int bufferSamples) {
+        this.directory = directory;
+        this.sampleRate = sampleRate;
+        this.ring = new PcmRingBuffer(bufferSamples);
+    }
+
+    public RawAudioCapture setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    public RawAudioCapture setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+        return this;
+    }
+
+    /**
+     * Captures only the utterances of the named search, e.g. not the keyword spotting between
+     * them; null, the default, captures every utterance. Takes effect from the next one.
+     */
+    public RawAudioCapture setSearch(String search) {
+        this.search = search;
+        return this;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        running = true;
+        Thread thread =
+                new Thread(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                drain();
+                            }
+                        },
+                        "raw-audio-capture");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        writer = thread;
+        thread.start();
+    }
+
+    /** Writes out everything already queued and stops the writer thread. */
+    public synchronized void stop() throws InterruptedException {
+        Thread thread = writer;
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        writer = null;
+    }
+
+    /**
+     * Producer side: queues samples of the current utterance.
+     *
+     * @return false if the samples were dropped because the writer has fallen behind
+     */
+    public boolean write(short[] samples, int offset, int length) {
+        boolean accepted = ring.offer(samples, offset, length);
+        wakeWriter();
+        return accepted;
+    }
+
+    /** Producer side: closes the current utterance, which becomes one capture file. */
+    public void endUtterance() {
+        long written = endsWritten.get();
+        if (written - endsRead.get() == utteranceEnds.length) {
+            // the writer will merge this utterance into the next one
+            droppedUtterances.incrementAndGet();
+            lastUtterance = -1;
+            return;
+        }
+        lastUtterance = written;
+        utteranceEnds[(int) (written % utteranceEnds.length)] = ring.writePosition();
+        endsWritten.lazySet(written + 1);
+        wakeWriter();
+    }
+
+    @Override
+    public void onUtteranceStart(String searchName) {
+        String only = search;
+        capturing = only == null || only.equals(searchName);
+    }
+
+    @Override
+    public void onFrame(short[] frame, int length) {
+        if (capturing) {
+            write(frame, 0, length);
+        }
+    }
+
+    @Override
+    public void onUtteranceEnd() {
+        if (capturing) {
+            endUtterance();
+        }
+    }
+
+    /**
+     * The name of the file the utterance ended last goes to, once written, within {@link
+     * #getDirectory()}; null if it was merged into the next one. An utterance without samples
+     * has no file.
+     */
+    public String getLastCaptureName() {
+        long utterance = lastUtterance;
+        return utterance < 0 ? null : captureName(utterance);
+    }
+
+    private String captureName(long utterance) {
+        return PREFIX + startMillis + "-" + utterance + CaptureFile.EXTENSION;
+    }
+
+    public long getDroppedSamples() {
+        return ring.droppedSamples();
+    }
+
+    public long getDroppedUtterances() {
+        return droppedUtterances.get();
+    }
+
+    public long getFilesWritten() {
+        return filesWritten.get();
+    }
+
+    public long getFilesEvicted() {
+        return filesEvicted.get();
+    }
+
+    /** The last write failure; the utterance it happened in is lost, later ones are not. */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /** Capture files in the directory, oldest first. */
+    public List<File> listCaptures() {
+        File[] files = directory.listFiles();
+        List<File> captures = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(PREFIX) && name.endsWith(CaptureFile.EXTENSION)) {
+                    captures.add(file);
+                }
+            }
+        }
+        Collections.sort(
+                captures,
+                new Comparator<File>() {
+                    @Override
+                    public int compare(File a, File b) {
+                        long diff = a.lastModified() - b.lastModified();
+                        if (diff != 0) {
+                            return diff < 0 ? -1 : 1;
+                        }
+                        return a.getName().compareTo(b.getName());
+                    }
+                });
+        return captures;
+    }
+
+    private void wakeWriter() {
+        Thread thread = writer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void drain() {
+        CaptureCodec codec = new CaptureCodec();
+        short[] block = new short[CaptureCodec.MAX_BLOCK_SAMPLES];
+        ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BYTES);
+        int flushThreshold = OUTPUT_BYTES - CaptureCodec.maxBlockBytes(block.length);
+
+        FileChannel channel = null;
+        boolean failed = false;
+        try {
+            while (true) {
+                boolean stopping = !running;
+                long read = ring.readPosition();
+                boolean hasEnd = endsRead.get() < endsWritten.get();
+                long end =
+                        hasEnd
+                                ? utteranceEnds[(int) (endsRead.get() % utteranceEnds.length)]
+                                : ring.writePosition();
+                int pending = (int) (end - read);
+
+                // wait for full blocks in the middle of an utterance, they compress better
+                if (pending >= block.length || (pending > 0 && (hasEnd || stopping))) {
+                    int n = ring.poll(block, 0, Math.min(pending, block.length));
+                    if (!failed) {
+                        try {
+                            if (channel == null) {
+                                // the utterance whose end is read next
+                                channel = open(endsRead.get(), output);
+                            }
+                            codec.encodeBlock(block, 0, n, output);
+                            if (output.position() > flushThreshold) {
+                                flush(output, channel);
+                            }
+                        } catch (IOException e) {
+                            lastError = e;
+                            failed = true;
+                        }
+                    }
+                    continue;
+                }
+
+                if (hasEnd && pending == 0) {
+                    endsRead.lazySet(endsRead.get() + 1);
+                    channel = finish(output, channel, failed);
+                    failed = false;
+                    continue;
+                }
+
+                if (stopping) {
+                    finish(output, channel, failed);
+                    channel = null;
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        } finally {
+            closeQuietly(channel);
+        }
+    }
+
+    private FileChannel open(long utterance, ByteBuffer output) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        currentFile = new File(directory, captureName(utterance));
+        FileChannel channel = new FileOutputStream(currentFile).getChannel();
+        output.clear();
+        output.putInt(CaptureFile.MAGIC);
+        output.putInt(sampleRate);
+        return channel;
+    }
+
+    /**
+     * Completes the current file, deleting it if any write failed, and trims the directory.
+     *
+     * @return null, the channel of the next utterance is opened lazily
+     */
+    private FileChannel finish(ByteBuffer output, FileChannel channel, boolean failed) {
+        if (channel != null) {
+            try {
+                if (!failed) {
+                    flush(output, channel);
+                }
+            } catch (IOException e) {
+                lastError = e;
+                failed = true;
+            } finally {
+                closeQuietly(channel);
+            }
+        }
+        if (currentFile != null) {
+            if (failed) {
+                currentFile.delete();
+            } else {
+                filesWritten.incrementAndGet();
+            }
+            currentFile = null;
+            evict(System.currentTimeMillis());
+        }
+        return null;
+    }
+
+    private static void flush(ByteBuffer output, FileChannel channel) throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        output.clear();
+    }
+
+    void evict(long now) {
+        List<File> captures = listCaptures();
+        long total = 0;
+        for (File file : captures) {
+            total += file.length();
+        }
+        for (File file : captures) {
+            boolean expired = now - file.lastModified() > maxAgeMillis;
+            if (!expired && total <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                filesEvicted.incrementAndGet();
+            }
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // nothing left to lose
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.rayworks.asrwordsrecognition.audio.dsp;
+
+/**
+ * Turns interleaved 16-bit PCM at any rate and channel count into the 16 kHz mono the decoder
+ * takes: downmix, resampling, DC removal and, if set, a {@link NoiseGate}. DC removal runs after
+ * resampling, where there are fewer samples for its recursive loop; the resampler's filter passes
+ * DC unchanged, so the result is the same.
+ *
+ * <p>All buffers are allocated by the constructor for blocks of up to {@code maxFrames} frames;
+ * {@link #process} allocates nothing. An instance serves one stream at a time.
+ */
+public final class AudioFrontEnd {
+
+    public static final int DECODER_RATE = 16000;
+
+    private final int inputRate;
+    private final int channels;
+    private final int maxFrames;
+    private final float[] mono;
+    private final float[] resampled;
+    private final PolyphaseResampler resampler;
+    private final DcBlocker dcBlocker = new DcBlocker(DECODER_RATE);
+    private NoiseGate gate;
+
+    public AudioFrontEnd(int inputRate, int channels, int maxFrames) {
+        if (channels < 1 || maxFrames < 1) {
+            throw new IllegalArgumentException(channels + " channels, " + maxFrames + " frames");
+        }
+        this.inputRate = inputRate;
+        this.channels = channels;
+        this.maxFrames = maxFrames;
+        this.mono = new float[maxFrames];
+        this.resampler = inputRate == DECODER_RATE
+                ? null : new PolyphaseResampler(inputRate, DECODER_RATE, maxFrames);
+        this.resampled = resampler == null ? mono : new float[resampler.maxOutput(maxFrames)];
+    }
+
+    /** @param gate applied last, or null for none */
+    public AudioFrontEnd setNoiseGate(NoiseGate gate) {
+        this.gate = gate;
+        return this;
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    /** @return the most samples one call to {@link #process} writes */
+    public int getMaxOutput() {
+        return resampled.length;
+    }
+
+    /**
+     * Converts the next block of the stream.
+     *
+     * @param frames at most {@link #getMaxFrames()} frames of {@code channels} samples each
+     * @param out room for {@link #getMaxOutput()} samples from {@code outOffset}
+     * @return the number of 16 kHz samples written to {@code out}
+     */
+    public int process(short[] interleaved, int offset, int frames, short[] out, int outOffset) {
+        if (frames > maxFrames) {
+            throw new IllegalArgumentException(frames + " frames, at most " + maxFrames);
+        }
+        Downmix.toMono(interleaved, offset, frames, channels, mono);
+        int length = resampler == null
+                ? frames : resampler.process(mono, 0, frames, resampled, 0);
+        dcBlocker.process(resampled, length);
+        if (gate != null) {
+            gate.process(resampled, length);
+        }
+        Downmix.toShorts(resampled, length, out, outOffset);
+        return length;
+    }
+
+    /** Forgets the filter state, for a new stream. */
+    public void reset() {
+        if (resampler != null) {
+            resampler.reset();
+        }
+        dcBlocker.reset();
+        if (gate != null) {
+            gate.reset();
+        }
+    }
+}
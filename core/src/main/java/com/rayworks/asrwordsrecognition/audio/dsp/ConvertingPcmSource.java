@@ -0,0 +1,81 @@
+package com.rayworks.asrwordsrecognition.audio.dsp;
+
+import com.rayworks.asrwordsrecognition.audio.PcmSource;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSource} of 16 kHz mono read through an {@link AudioFrontEnd} from a source at its
+ * own rate that delivers {@code channels} interleaved samples per frame, e.g. a 44.1 kHz stereo
+ * recording or a Bluetooth headset.
+ */
+public class ConvertingPcmSource implements PcmSource {
+
+    /** 20 ms at 48 kHz. */
+    static final int DEFAULT_FRAMES = 960;
+
+    private final PcmSource source;
+    private final AudioFrontEnd frontEnd;
+    private final short[] input;
+    private final short[] converted;
+    // interleaved samples in input that do not make up a whole frame yet
+    private int partial;
+    private int pending;
+    private int position;
+
+    public ConvertingPcmSource(PcmSource source, int channels) {
+        this(source, new AudioFrontEnd(source.getSampleRate(), channels, DEFAULT_FRAMES));
+    }
+
+    public ConvertingPcmSource(PcmSource source, AudioFrontEnd frontEnd) {
+        this.source = source;
+        this.frontEnd = frontEnd;
+        this.input = new short[frontEnd.getMaxFrames() * frontEnd.getChannels()];
+        this.converted = new short[frontEnd.getMaxOutput()];
+    }
+
+    @Override
+    public int getSampleRate() {
+        return AudioFrontEnd.DECODER_RATE;
+    }
+
+    @Override
+    public void start() throws IOException {
+        frontEnd.reset();
+        partial = 0;
+        pending = 0;
+        position = 0;
+        source.start();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        while (position == pending) {
+            int read = source.read(input, partial, input.length - partial);
+            if (read < 0) {
+                return -1;
+            }
+            int channels = frontEnd.getChannels();
+            int available = partial + read;
+            int frames = available / channels;
+            pending = frontEnd.process(input, 0, frames, converted, 0);
+            position = 0;
+            partial = available - frames * channels;
+            System.arraycopy(input, frames * channels, input, 0, partial);
+        }
+        int count = Math.min(length, pending - position);
+        System.arraycopy(converted, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void stop() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+}
@@ -0,0 +1,43 @@
+package com.rayworks.asrwordsrecognition.audio.dsp;
+
+/**
+ * Removes the DC offset some headsets and recordings carry, with the one-pole high-pass {@code
+ * y[n] = x[n] - x[n-1] + r * y[n-1]}. The cutoff is low enough to leave speech alone. The
+ * recursion keeps the loop from being vectorized, so it is best run at the lowest rate of a
+ * chain, after resampling.
+ */
+public final class DcBlocker {
+
+    private final float pole;
+    private float lastInput;
+    private float lastOutput;
+
+    /** A cutoff of 20 Hz. */
+    public DcBlocker(int sampleRate) {
+        this(sampleRate, 20f);
+    }
+
+    public DcBlocker(int sampleRate, float cutoffHz) {
+        this.pole = (float) Math.exp(-2 * Math.PI * cutoffHz / sampleRate);
+    }
+
+    /** Filters {@code samples[0 .. length)} in place, continuing from the previous call. */
+    public void process(float[] samples, int length) {
+        float x1 = lastInput;
+        float y1 = lastOutput;
+        for (int i = 0; i < length; i++) {
+            float x = samples[i];
+            y1 = x - x1 + pole * y1;
+            x1 = x;
+            samples[i] = y1;
+        }
+        lastInput = x1;
+        // decaying towards denormals in digital silence slows the loop down on some CPUs
+        lastOutput = Math.abs(y1) < 1e-10f ? 0f : y1;
+    }
+
+    public void reset() {
+        lastInput = 0;
+        lastOutput = 0;
+    }
+}
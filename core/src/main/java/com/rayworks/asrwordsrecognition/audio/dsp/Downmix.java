@@ -0,0 +1,50 @@
+package com.rayworks.asrwordsrecognition.audio.dsp;
+
+/**
+ * Interleaved 16-bit PCM to mono float samples, averaging the channels. The values stay in
+ * 16-bit units. Mono and stereo, the common cases, get loops of their own that the JIT can
+ * vectorize.
+ */
+public final class Downmix {
+
+    private Downmix() {
+    }
+
+    /**
+     * @param in {@code frames * channels} interleaved samples from {@code offset}
+     * @param out receives {@code frames} samples from index 0
+     */
+    public static void toMono(short[] in, int offset, int frames, int channels, float[] out) {
+        switch (channels) {
+            case 1:
+                for (int i = 0; i < frames; i++) {
+                    out[i] = in[offset + i];
+                }
+                break;
+            case 2:
+                for (int i = 0; i < frames; i++) {
+                    out[i] = 0.5f * (in[offset + 2 * i] + in[offset + 2 * i + 1]);
+                }
+                break;
+            default:
+                float scale = 1f / channels;
+                for (int i = 0; i < frames; i++) {
+                    int first = offset + i * channels;
+                    int sum = 0;
+                    for (int c = 0; c < channels; c++) {
+                        sum += in[first + c];
+                    }
+                    out[i] = sum * scale;
+                }
+                break;
+        }
+    }
+
+    /** Rounds float samples back to 16 bits, clipping what does not fit. */
+    public static void toShorts(float[] in, int length, short[] out, int offset) {
+        for (int i = 0; i < length; i++) {
+            float clipped = Math.max(-32768f, Math.min(32767f, in[i]));
+            out[offset + i] = (short) Math.round(clipped);
+        }
+    }
+}
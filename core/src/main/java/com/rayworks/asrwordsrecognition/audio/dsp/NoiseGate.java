@@ -0,0 +1,84 @@
+package com.rayworks.asrwordsrecognition.audio.dsp;
+
+/**
+ * Attenuates blocks whose level stays below a threshold, to keep the hiss of a headset or a
+ * recording out of the decoder between words. The gate opens on the first loud block and stays
+ * open for a hold time after the last one; the gain moves linearly across a block, so switching
+ * does not click.
+ */
+public final class NoiseGate {
+
+    private final int sampleRate;
+    private float threshold;
+    private float floorGain;
+    private int holdSamples;
+
+    private float gain = 1f;
+    private int quietSamples;
+
+    /** Opens above -50 dBFS, holds for 200 ms and lets 10% (-20 dB) through when closed. */
+    public NoiseGate(int sampleRate) {
+        this.sampleRate = sampleRate;
+        setThresholdDb(-50);
+        setFloorDb(-20);
+        setHoldMillis(200);
+    }
+
+    /** @param db the block RMS relative to full scale at which the gate opens */
+    public NoiseGate setThresholdDb(float db) {
+        this.threshold = (float) (32768 * Math.pow(10, db / 20));
+        return this;
+    }
+
+    /** @param db the gain of a closed gate, at most 0 */
+    public NoiseGate setFloorDb(float db) {
+        this.floorGain = (float) Math.pow(10, Math.min(0, db) / 20);
+        return this;
+    }
+
+    public NoiseGate setHoldMillis(int millis) {
+        this.holdSamples = (int) ((long) sampleRate * millis / 1000);
+        return this;
+    }
+
+    /** Gates {@code samples[0 .. length)} in place, in 16-bit units. */
+    public void process(float[] samples, int length) {
+        if (length == 0) {
+            return;
+        }
+        float energy = 0;
+        for (int i = 0; i < length; i++) {
+            energy += samples[i] * samples[i];
+        }
+        if (energy >= threshold * threshold * length) {
+            quietSamples = 0;
+        } else {
+            quietSamples = (int) Math.min(Integer.MAX_VALUE, (long) quietSamples + length);
+        }
+        float target = quietSamples > holdSamples ? floorGain : 1f;
+
+        float start = gain;
+        if (start == target) {
+            if (target != 1f) {
+                for (int i = 0; i < length; i++) {
+                    samples[i] *= target;
+                }
+            }
+            return;
+        }
+        float step = (target - start) / length;
+        for (int i = 0; i < length; i++) {
+            samples[i] *= start + step * (i + 1);
+        }
+        gain = target;
+    }
+
+    public boolean isOpen() {
+        return gain == 1f;
+    }
+
+    public void reset() {
+        gain = 1f;
+        quietSamples = 0;
+    }
+}
@@ -0,0 +1,174 @@
+package com.rayworks.asrwordsrecognition.audio.dsp;
+
+/**
+ * Converts between sample rates whose ratio reduces to {@code up / down}, e.g. 48 kHz to 16 kHz
+ * as 1/3 and 44.1 kHz to 16 kHz as 160/441.
+ *
+ * <p>The low-pass filter is a Kaiser-windowed sinc designed at {@code up} times the input rate
+ * and split into {@code up} phases of {@code taps} coefficients each; an output sample is the
+ * dot product of one phase with the last {@code taps} input samples, so only the samples that are
+ * kept are ever computed. The filter's -6 dB point lies at half the lower of the two rates, and
+ * its transition band is as narrow as the taps allow for {@value #STOPBAND_DB} dB of stopband
+ * attenuation: with the default taps about +-1.2 kHz around 8 kHz for 16 kHz output, so the
+ * frequencies that would alias fold onto the top of the band the decoder ignores.
+ *
+ * <p>Each phase is stored reversed and contiguous and the history is a flat array, so the inner
+ * loop runs over two arrays in lockstep with four accumulators. The buffers are allocated up
+ * front for blocks of up to {@code maxFrames}; processing allocates nothing. An instance serves
+ * one stream at a time.
+ */
+public final class PolyphaseResampler {
+
+    /** Coefficients per phase, i.e. input samples per output sample, by default. */
+    public static final int DEFAULT_TAPS = 96;
+    static final double STOPBAND_DB = 80;
+
+    private final int up;
+    private final int down;
+    private final int taps;
+    // phase p at [p * taps, (p + 1) * taps), reversed
+    private final float[] coefficients;
+    // the last taps - 1 samples of the previous block, then the current block
+    private final float[] history;
+
+    // the input index within the current block of the next output's newest sample
+    private int next;
+    private int phase;
+
+    public PolyphaseResampler(int inputRate, int outputRate, int maxFrames) {
+        this(inputRate, outputRate, maxFrames, DEFAULT_TAPS);
+    }
+
+    public PolyphaseResampler(int inputRate, int outputRate, int maxFrames, int taps) {
+        if (inputRate <= 0 || outputRate <= 0 || taps < 1 || maxFrames < 1) {
+            throw new IllegalArgumentException(
+                    inputRate + " Hz to " + outputRate + " Hz, " + taps + " taps");
+        }
+        int gcd = gcd(inputRate, outputRate);
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+        this.taps = taps;
+        this.coefficients = design(up, taps, 0.5 * Math.min(inputRate, outputRate) / inputRate);
+        this.history = new float[taps - 1 + maxFrames];
+    }
+
+    /** @return the most samples {@link #process} can produce from {@code frames} input samples */
+    public int maxOutput(int frames) {
+        return (int) (((long) frames * up + down - 1) / down) + 1;
+    }
+
+    /** @return the most input samples one call to {@link #process} takes */
+    public int getMaxFrames() {
+        return history.length - (taps - 1);
+    }
+
+    /**
+     * Resamples the next block of the stream.
+     *
+     * @param frames at most {@link #getMaxFrames()} samples
+     * @param out room for {@link #maxOutput(int)} samples from {@code outOffset}
+     * @return the number of samples written to {@code out}
+     */
+    public int process(float[] in, int offset, int frames, float[] out, int outOffset) {
+        if (frames > getMaxFrames()) {
+            throw new IllegalArgumentException(frames + " frames, at most " + getMaxFrames());
+        }
+        System.arraycopy(in, offset, history, taps - 1, frames);
+
+        int produced = 0;
+        while (next < frames) {
+            out[outOffset + produced++] = dot(phase * taps, next);
+            phase += down;
+            next += phase / up;
+            phase %= up;
+        }
+        next -= frames;
+
+        System.arraycopy(history, frames, history, 0, taps - 1);
+        return produced;
+    }
+
+    /** Forgets the history, for a new stream. */
+    public void reset() {
+        java.util.Arrays.fill(history, 0f);
+        next = 0;
+        phase = 0;
+    }
+
+    private float dot(int coefficient, int sample) {
+        float[] c = coefficients;
+        float[] x = history;
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int k = 0;
+        for (; k + 3 < taps; k += 4) {
+            s0 += c[coefficient + k] * x[sample + k];
+            s1 += c[coefficient + k + 1] * x[sample + k + 1];
+            s2 += c[coefficient + k + 2] * x[sample + k + 2];
+            s3 += c[coefficient + k + 3] * x[sample + k + 3];
+        }
+        for (; k < taps; k++) {
+            s0 += c[coefficient + k] * x[sample + k];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * @param cutoff the -6 dB point as a fraction of the input rate
+     * @return the phases, reversed, each summing to about 1
+     */
+    static float[] design(int up, int taps, double cutoff) {
+        int length = up * taps;
+        double center = (length - 1) / 2.0;
+        // the cutoff as a fraction of the rate the prototype runs at
+        double fc = cutoff / up;
+        double beta = 0.1102 * (STOPBAND_DB - 8.7);
+        double i0Beta = besselI0(beta);
+
+        double[] prototype = new double[length];
+        double sum = 0;
+        for (int j = 0; j < length; j++) {
+            double t = j - center;
+            double sinc = t == 0 ? 2 * fc : Math.sin(2 * Math.PI * fc * t) / (Math.PI * t);
+            double ratio = length == 1 ? 0 : t / center;
+            double window = besselI0(beta * Math.sqrt(Math.max(0, 1 - ratio * ratio))) / i0Beta;
+            prototype[j] = sinc * window;
+            sum += prototype[j];
+        }
+
+        float[] phases = new float[length];
+        for (int p = 0; p < up; p++) {
+            for (int k = 0; k < taps; k++) {
+                // y[n] = sum over k of h[k * up + p] * x[i - k]; the history runs oldest first
+                phases[p * taps + (taps - 1 - k)] = (float) (prototype[k * up + p] * up / sum);
+            }
+        }
+        return phases;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double half = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= half / k;
+            double squared = term * term;
+            sum += squared;
+            if (squared < 1e-12 * sum) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
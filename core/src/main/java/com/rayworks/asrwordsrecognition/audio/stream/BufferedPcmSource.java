@@ -0,0 +1,53 @@
+package com.rayworks.asrwordsrecognition.audio.stream;
+
+import com.rayworks.asrwordsrecognition.audio.PcmSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link StreamingPcmSource} pumping a blocking {@link PcmSource}, such as the microphone, into
+ * the ring, so the device is read on time while the decoder catches up on about a second of
+ * audio instead of letting the device's own buffer overrun.
+ */
+public class BufferedPcmSource extends StreamingPcmSource {
+
+    private final PcmSource source;
+    private final short[] chunk;
+
+    /** Buffers about a second of audio in 20 ms frames. */
+    public BufferedPcmSource(PcmSource source) {
+        this(source, source.getSampleRate() / 50, 64);
+    }
+
+    public BufferedPcmSource(PcmSource source, int frameSamples, int frames) {
+        super(source.getSampleRate(), frameSamples, frames);
+        this.source = source;
+        this.chunk = new short[frameSamples];
+    }
+
+    @Override
+    protected void open() throws IOException {
+        source.start();
+    }
+
+    @Override
+    protected boolean fill(ByteBuffer frame) throws IOException {
+        int read = source.read(chunk, 0, chunk.length);
+        for (int i = 0; i < read; i++) {
+            frame.putShort(chunk[i]);
+        }
+        return read >= 0;
+    }
+
+    @Override
+    protected void close() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        super.release();
+        source.release();
+    }
+}
@@ -0,0 +1,64 @@
+package com.rayworks.asrwordsrecognition.audio.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * {@link StreamingPcmSource} reading 16-bit little-endian mono from a blocking channel, e.g. a
+ * pipe or a local socket another process streams to. The channel stays open between utterances;
+ * each picks up where the previous one stopped. Interrupting a read that stalls on {@link
+ * #stop()} closes the channel, as it does with any interruptible channel.
+ */
+public class ChannelPcmSource extends StreamingPcmSource {
+
+    private final ReadableByteChannel channel;
+
+    /** Buffers about a second of audio in 20 ms frames. */
+    public ChannelPcmSource(ReadableByteChannel channel, int sampleRate) {
+        this(channel, sampleRate, sampleRate / 50, 64);
+    }
+
+    public ChannelPcmSource(
+            ReadableByteChannel channel, int sampleRate, int frameSamples, int frames) {
+        super(sampleRate, frameSamples, frames);
+        this.channel = channel;
+    }
+
+    @Override
+    protected void open() throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Channel closed");
+        }
+    }
+
+    @Override
+    protected boolean fill(ByteBuffer frame) throws IOException {
+        // whole frames keep the samples aligned however the bytes arrive
+        while (frame.hasRemaining()) {
+            int read = channel.read(frame);
+            if (read < 0) {
+                return false;
+            }
+            if (read == 0) {
+                Thread.yield();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void close() {
+        // the channel belongs to the whole stream
+    }
+
+    @Override
+    public void release() {
+        super.release();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing left to read from it either way
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.rayworks.asrwordsrecognition.audio.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer/single-consumer ring of fixed-size frames of 16-bit little-endian PCM in direct
+ * buffers, so channels and mapped files fill them without an extra copy.
+ *
+ * <p>Unlike {@link com.rayworks.asrwordsrecognition.audio.PcmRingBuffer}, which drops audio to
+ * keep the microphone thread on time, this ring applies backpressure: {@link #claim()} parks the
+ * producer while every frame is waiting for the consumer, and {@link #take()} parks the consumer
+ * while none is. The indices are lock-free; parking only happens at the two edges.
+ */
+public final class FrameRing {
+
+    private final ByteBuffer[] frames;
+    private final ShortBuffer[] views;
+    private final int[] lengths;
+    private final int mask;
+    private final int frameSamples;
+
+    // frames published and released since the last reset
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+    private volatile boolean finished;
+    private volatile boolean cancelled;
+    private volatile Thread parkedProducer;
+    private volatile Thread parkedConsumer;
+
+    /** @param frames number of frames, rounded up to a power of two */
+    public FrameRing(int frameSamples, int frames) {
+        if (frameSamples < 1 || frames < 1) {
+            throw new IllegalArgumentException(frames + " frames of " + frameSamples);
+        }
+        int size = Integer.highestOneBit(Math.max(2, frames) - 1) << 1;
+        this.frameSamples = frameSamples;
+        this.frames = new ByteBuffer[size];
+        this.views = new ShortBuffer[size];
+        this.lengths = new int[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            this.frames[i] = ByteBuffer.allocateDirect(frameSamples * 2)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            this.views[i] = this.frames[i].asShortBuffer();
+        }
+    }
+
+    public int getFrameSamples() {
+        return frameSamples;
+    }
+
+    public int capacity() {
+        return frames.length;
+    }
+
+    /**
+     * Producer side: waits for a free frame.
+     *
+     * @return the frame, cleared, to be filled from position 0 and then {@link #publish()}ed; null
+     *     once {@link #cancel()}led or if the producer is interrupted
+     */
+    public ByteBuffer claim() {
+        long h = head.get();
+        if (h - tail.get() == frames.length) {
+            stalls.incrementAndGet();
+            parkedProducer = Thread.currentThread();
+            while (h - tail.get() == frames.length && !cancelled
+                    && !Thread.currentThread().isInterrupted()) {
+                LockSupport.park(this);
+            }
+            parkedProducer = null;
+        }
+        if (cancelled || h - tail.get() == frames.length) {
+            return null;
+        }
+        ByteBuffer frame = frames[(int) (h & mask)];
+        frame.clear();
+        return frame;
+    }
+
+    /** Producer side: hands the claimed frame, up to its position, to the consumer. */
+    public void publish() {
+        long h = head.get();
+        int index = (int) (h & mask);
+        lengths[index] = frames[index].position() / 2;
+        head.set(h + 1);
+        unpark(parkedConsumer);
+    }
+
+    /** Producer side: no more frames follow the ones published. */
+    public void finish() {
+        finished = true;
+        unpark(parkedConsumer);
+    }
+
+    /**
+     * Consumer side: waits for a published frame.
+     *
+     * @return the frame's samples, to be read and then {@link #release()}d; null at the end of
+     *     the stream, see {@link #isDrained()}, or if the consumer is interrupted
+     */
+    public ShortBuffer take() {
+        long t = tail.get();
+        if (head.get() == t) {
+            parkedConsumer = Thread.currentThread();
+            // finished is written after the last publish, so head is current once it is seen
+            while (head.get() == t && !finished && !Thread.currentThread().isInterrupted()) {
+                LockSupport.park(this);
+            }
+            parkedConsumer = null;
+            if (head.get() == t) {
+                return null;
+            }
+        }
+        int index = (int) (t & mask);
+        ShortBuffer view = views[index];
+        view.limit(lengths[index]).position(0);
+        return view;
+    }
+
+    /** Consumer side: returns the frame of the last {@link #take()} to the producer. */
+    public void release() {
+        tail.set(tail.get() + 1);
+        unpark(parkedProducer);
+    }
+
+    /** @return whether the producer has finished and every frame it published has been taken */
+    public boolean isDrained() {
+        return finished && head.get() == tail.get();
+    }
+
+    /** Wakes and turns away the producer, for stopping it from another thread. */
+    public void cancel() {
+        cancelled = true;
+        unpark(parkedProducer);
+    }
+
+    /** Empties the ring for a new stream; neither side may be using it. */
+    public void reset() {
+        head.set(0);
+        tail.set(0);
+        finished = false;
+        cancelled = false;
+    }
+
+    /** Frames published and not yet released. */
+    public int available() {
+        return (int) (head.get() - tail.get());
+    }
+
+    /** Times the producer found the ring full and had to wait for the consumer. */
+    public long getStalls() {
+        return stalls.get();
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
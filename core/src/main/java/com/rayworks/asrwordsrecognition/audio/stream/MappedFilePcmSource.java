@@ -0,0 +1,139 @@
+package com.rayworks.asrwordsrecognition.audio.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link StreamingPcmSource} over a memory-mapped 16-bit PCM WAV file or a headerless {@code .raw}
+ * file at {@value #RAW_SAMPLE_RATE} Hz. Frames are copied straight from the mapping into the ring,
+ * as fast as the reader drains them unless {@link #setRealTime(boolean)} paces them like a live
+ * session. Every utterance starts from the beginning of the file.
+ *
+ * <p>The samples of a multi-channel WAV file are delivered interleaved; wrap the source in a
+ * {@link com.rayworks.asrwordsrecognition.audio.dsp.ConvertingPcmSource} to decode it.
+ */
+public class MappedFilePcmSource extends StreamingPcmSource {
+
+    public static final int RAW_SAMPLE_RATE = 16000;
+
+    private final ByteBuffer data;
+    private final int channels;
+    private volatile boolean realTime;
+    private long startNanos;
+    private long delivered;
+
+    private MappedFilePcmSource(ByteBuffer data, int sampleRate, int channels) {
+        super(sampleRate, sampleRate * channels / 50, 64);
+        this.data = data;
+        this.channels = channels;
+    }
+
+    public static MappedFilePcmSource open(File file) throws IOException {
+        ByteBuffer mapped;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the file is closed
+            mapped = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            in.close();
+        }
+        if (file.getName().endsWith(".raw")) {
+            return new MappedFilePcmSource(mapped, RAW_SAMPLE_RATE, 1);
+        }
+        return openWav(mapped, file);
+    }
+
+    private static MappedFilePcmSource openWav(ByteBuffer bytes, File file) throws IOException {
+        if (bytes.remaining() < 12
+                || bytes.getInt(0) != 0x46464952 // "RIFF"
+                || bytes.getInt(8) != 0x45564157) { // "WAVE"
+            throw new IOException("Not a WAV file: " + file);
+        }
+        int sampleRate = 0;
+        int channels = 0;
+        int position = 12;
+        while (position + 8 <= bytes.limit()) {
+            int chunk = bytes.getInt(position);
+            int size = bytes.getInt(position + 4);
+            position += 8;
+            if (size < 0 || size > bytes.limit() - position) {
+                size = bytes.limit() - position;
+            }
+            if (chunk == 0x20746D66) { // "fmt "
+                int format = bytes.getShort(position) & 0xFFFF;
+                channels = bytes.getShort(position + 2);
+                sampleRate = bytes.getInt(position + 4);
+                int bits = bytes.getShort(position + 14);
+                if (format != 1 || channels < 1 || bits != 16) {
+                    throw new IOException("Only 16-bit PCM is supported: " + file);
+                }
+            } else if (chunk == 0x61746164) { // "data"
+                if (sampleRate == 0) {
+                    throw new IOException("WAV data before its format: " + file);
+                }
+                bytes.limit(position + size / (2 * channels) * 2 * channels).position(position);
+                return new MappedFilePcmSource(bytes.slice().order(ByteOrder.LITTLE_ENDIAN),
+                        sampleRate, channels);
+            }
+            position += size + (size & 1);
+        }
+        throw new IOException("WAV file without data: " + file);
+    }
+
+    /** @param realTime whether to deliver the audio no faster than it would be recorded */
+    public MappedFilePcmSource setRealTime(boolean realTime) {
+        this.realTime = realTime;
+        return this;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /** @return the duration of the file */
+    public double getSeconds() {
+        return (double) data.capacity() / 2 / channels / getSampleRate();
+    }
+
+    @Override
+    protected void open() {
+        data.clear();
+        startNanos = System.nanoTime();
+        delivered = 0;
+    }
+
+    @Override
+    protected boolean fill(ByteBuffer frame) throws IOException {
+        int count = Math.min(frame.remaining(), data.remaining());
+        int limit = data.limit();
+        data.limit(data.position() + count);
+        frame.put(data);
+        data.limit(limit);
+
+        delivered += count / 2 / channels;
+        if (realTime) {
+            long due = startNanos + delivered * 1000000000L / getSampleRate();
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Stopped");
+                }
+            }
+        }
+        return data.hasRemaining();
+    }
+
+    @Override
+    protected void close() {
+        // the mapping is kept for the next utterance
+    }
+}
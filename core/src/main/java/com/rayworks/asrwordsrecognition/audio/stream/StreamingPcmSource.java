@@ -0,0 +1,173 @@
+package com.rayworks.asrwordsrecognition.audio.stream;
+
+import com.rayworks.asrwordsrecognition.audio.PcmSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * {@link PcmSource} whose audio is produced on a thread of its own into a {@link FrameRing} and
+ * drained by {@link #read} frame by frame. When the reader falls behind, the producer waits
+ * instead of dropping audio, so a file or a socket is decoded completely however slow the
+ * decoder, and as fast as it is otherwise.
+ *
+ * <p>Subclasses open the stream, fill frames and close it; each utterance runs from {@link
+ * #start()} to {@link #stop()} with a new producer thread. Audio published before a failure is
+ * read first, then {@link #read} throws the failure.
+ */
+public abstract class StreamingPcmSource implements PcmSource {
+
+    // how long stop() lets fill() finish on its own before interrupting it
+    private static final long STOP_GRACE_MILLIS = 200;
+
+    private final int sampleRate;
+    private final FrameRing ring;
+    private final Runnable pump = new Runnable() {
+        @Override
+        public void run() {
+            pump();
+        }
+    };
+
+    private Thread producer;
+    private volatile IOException failure;
+    // the frame being read, null between frames
+    private ShortBuffer current;
+
+    /** Buffers {@code frames} frames of {@code frameSamples} samples between the two threads. */
+    protected StreamingPcmSource(int sampleRate, int frameSamples, int frames) {
+        this.sampleRate = sampleRate;
+        this.ring = new FrameRing(frameSamples, frames);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /** Called by {@link #start()} on the reading thread, before the producer starts. */
+    protected abstract void open() throws IOException;
+
+    /**
+     * Called on the producer thread to fill a frame, as far as the audio allows; the frame is
+     * published up to its position. Should return within about a frame's duration so that
+     * {@link #stop()} does not have to interrupt it.
+     *
+     * @param frame a cleared little-endian buffer of {@link FrameRing#getFrameSamples()} samples
+     * @return false at the end of the stream, after filling what was left
+     */
+    protected abstract boolean fill(ByteBuffer frame) throws IOException;
+
+    /** Called by {@link #stop()} once the producer has exited. */
+    protected abstract void close();
+
+    public FrameRing getRing() {
+        return ring;
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+        if (producer != null) {
+            throw new IllegalStateException("Already started");
+        }
+        ring.reset();
+        failure = null;
+        current = null;
+        open();
+        producer = new Thread(pump, getClass().getSimpleName());
+        producer.start();
+    }
+
+    private void pump() {
+        try {
+            ByteBuffer frame;
+            while ((frame = ring.claim()) != null) {
+                boolean more = fill(frame);
+                if (frame.position() >= 2) {
+                    ring.publish();
+                }
+                if (!more) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            ring.finish();
+        }
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        if (current == null) {
+            current = ring.take();
+            if (current == null) {
+                if (!ring.isDrained()) {
+                    // interrupted; the caller checks why
+                    return 0;
+                }
+                IOException error = failure;
+                if (error != null) {
+                    throw error;
+                }
+                return -1;
+            }
+        }
+        int count = Math.min(length, current.remaining());
+        current.get(buffer, offset, count);
+        if (!current.hasRemaining()) {
+            current = null;
+            ring.release();
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void stop() {
+        Thread stopped = producer;
+        if (stopped == null) {
+            return;
+        }
+        ring.cancel();
+        if (!join(stopped, STOP_GRACE_MILLIS)) {
+            stopped.interrupt();
+            join(stopped, 0);
+        }
+        producer = null;
+        current = null;
+        close();
+    }
+
+    /** Stops the stream; subclasses free what they hold on to across utterances. */
+    @Override
+    public void release() {
+        stop();
+    }
+
+    /**
+     * Waits for {@code thread} even if the calling thread is interrupted, which the decoding
+     * thread is when it is stopped, and restores the interrupt afterwards.
+     *
+     * @return whether the thread has exited
+     */
+    private static boolean join(Thread thread, long millis) {
+        boolean interrupted = false;
+        long deadline = System.currentTimeMillis() + millis;
+        while (thread.isAlive()) {
+            long wait = millis == 0 ? 0 : deadline - System.currentTimeMillis();
+            if (millis != 0 && wait <= 0) {
+                break;
+            }
+            try {
+                thread.join(wait);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+}
@@ -0,0 +1,232 @@
+package com.rayworks.asrwordsrecognition.dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Read-only pronunciation dictionary backed by a memory-mapped file written by {@link
+ * BinaryDictionaryWriter}.
+ *
+ * <p>Layout, big-endian:
+ *
+ * <pre>
+ * int magic, int version
+ * int phoneCount, phoneCount x (byte length, ASCII name)
+ * int wordCount, wordCount x int record offset, sorted by word
+ * records: byte wordLength, ASCII word, byte pronCount,
+ *          pronCount x (byte phoneCount, phoneCount x byte phone code)
+ * </pre>
+ *
+ * <p>Only the phone names live on the Java heap. {@link #indexOf(CharSequence)} and the phone
+ * accessors read the mapped pages directly and do not allocate.
+ */
+public final class BinaryDictionary {
+
+    static final int MAGIC = 0x50444943; // "PDIC"
+    static final int VERSION = 1;
+    static final int MAX_PHONES = 0xFF;
+
+    private final ByteBuffer buffer;
+    private final String[] phoneNames;
+    private final int wordCount;
+    private final int offsetTable;
+    private final int recordBase;
+
+    BinaryDictionary(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary dictionary");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary dictionary version " + buffer.getInt(4));
+        }
+
+        int pos = 8;
+        int phoneCount = buffer.getInt(pos);
+        pos += 4;
+        phoneNames = new String[phoneCount];
+        for (int i = 0; i < phoneCount; i++) {
+            int length = buffer.get(pos++) & 0xFF;
+            char[] name = new char[length];
+            for (int j = 0; j < length; j++) {
+                name[j] = (char) buffer.get(pos++);
+            }
+            phoneNames[i] = new String(name);
+        }
+
+        wordCount = buffer.getInt(pos);
+        offsetTable = pos + 4;
+        recordBase = offsetTable + 4 * wordCount;
+    }
+
+    /** Maps {@code file} read-only. The mapping stays valid after this call returns. */
+    public static BinaryDictionary open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BinaryDictionary(mapped);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int size() {
+        return wordCount;
+    }
+
+    /** @return the index of {@code word}, or -1 if it has no pronunciation. */
+    public int indexOf(CharSequence word) {
+        int low = 0;
+        int high = wordCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareWord(record(mid), word);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(CharSequence word) {
+        return indexOf(word) >= 0;
+    }
+
+    public String wordAt(int index) {
+        int record = record(index);
+        int length = buffer.get(record) & 0xFF;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) buffer.get(record + 1 + i);
+        }
+        return new String(chars);
+    }
+
+    public int pronunciationCount(int index) {
+        int record = record(index);
+        return buffer.get(record + 1 + (buffer.get(record) & 0xFF)) & 0xFF;
+    }
+
+    public int phoneCount(int index, int variant) {
+        return buffer.get(pronunciation(index, variant)) & 0xFF;
+    }
+
+    /** @return the code of the {@code position}-th phone, see {@link #phoneName(int)}. */
+    public int phoneAt(int index, int variant, int position) {
+        return buffer.get(pronunciation(index, variant) + 1 + position) & 0xFF;
+    }
+
+    /**
+     * Copies the phone codes of one pronunciation into {@code dst}.
+     *
+     * @return the number of phones copied
+     */
+    public int copyPhones(int index, int variant, byte[] dst, int offset) {
+        int pron = pronunciation(index, variant);
+        int count = buffer.get(pron) & 0xFF;
+        for (int i = 0; i < count; i++) {
+            dst[offset + i] = buffer.get(pron + 1 + i);
+        }
+        return count;
+    }
+
+    public String phoneName(int code) {
+        return phoneNames[code];
+    }
+
+    public int phoneSetSize() {
+        return phoneNames.length;
+    }
+
+    /**
+     * @return the pronunciation in the text form the decoder accepts, e.g. {@code "T UW"}, or null
+     *     when the word or variant is missing. Allocates the result.
+     */
+    public String pronunciation(CharSequence word, int variant) {
+        int index = indexOf(word);
+        if (index < 0 || variant >= pronunciationCount(index)) {
+            return null;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        int count = phoneCount(index, variant);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(phoneNames[phoneAt(index, variant, i)]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the pronunciations of {@code words} in the text format, alternates numbered like
+     * {@code to(2)}: the dictionary a decoder needs for just these words.
+     *
+     * @return the words without a pronunciation, which are left out
+     */
+    public List<String> writeSubset(Collection<String> words, Writer out) throws IOException {
+        List<String> missing = new ArrayList<>();
+        for (String word : words) {
+            int index = indexOf(word);
+            if (index < 0) {
+                missing.add(word);
+                continue;
+            }
+            for (int variant = 0; variant < pronunciationCount(index); variant++) {
+                out.write(variant == 0 ? word : word + "(" + (variant + 1) + ")");
+                out.write(' ');
+                out.write(pronunciation(word, variant));
+                out.write('\n');
+            }
+        }
+        out.flush();
+        return missing;
+    }
+
+    private int record(int index) {
+        if (index < 0 || index >= wordCount) {
+            throw new IndexOutOfBoundsException("word index " + index);
+        }
+        return recordBase + buffer.getInt(offsetTable + 4 * index);
+    }
+
+    private int pronunciation(int index, int variant) {
+        int record = record(index);
+        int pos = record + 1 + (buffer.get(record) & 0xFF);
+        int count = buffer.get(pos++) & 0xFF;
+        if (variant < 0 || variant >= count) {
+            throw new IndexOutOfBoundsException("pronunciation variant " + variant);
+        }
+        for (int i = 0; i < variant; i++) {
+            pos += 1 + (buffer.get(pos) & 0xFF);
+        }
+        return pos;
+    }
+
+    private int compareWord(int record, CharSequence word) {
+        int length = buffer.get(record) & 0xFF;
+        int n = Math.min(length, word.length());
+        for (int i = 0; i < n; i++) {
+            int diff = (buffer.get(record + 1 + i) & 0xFF) - word.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - word.length();
+    }
+}
@@ -0,0 +1,128 @@
+package com.rayworks.asrwordsrecognition.dict;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Converts a text pronunciation dictionary into the layout read by {@link BinaryDictionary}.
+ *
+ * <p>Run by the app's {@code writeBinaryDictionary} task, which writes the bundled asset:
+ *
+ * <pre>
+ * java BinaryDictionaryWriter models/cmudict-en-us.dict src/main/assets/sync/cmudict-en-us.bdic
+ * </pre>
+ */
+public final class BinaryDictionaryWriter {
+
+    private BinaryDictionaryWriter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BinaryDictionaryWriter <text dict> <binary dict>");
+            System.exit(1);
+        }
+
+        SortedMap<String, List<String>> entries = DictionaryParser.parse(new File(args[0]));
+        write(entries, new File(args[1]));
+        System.out.println("Wrote " + entries.size() + " words to " + args[1]);
+    }
+
+    public static void write(SortedMap<String, List<String>> entries, File file)
+            throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        try {
+            write(entries, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes {@code entries}, which must be sorted by word, as produced by {@link
+     * DictionaryParser#parse(java.io.Reader)}.
+     */
+    public static void write(SortedMap<String, List<String>> entries, OutputStream out)
+            throws IOException {
+        List<String> phones = new ArrayList<>();
+        Map<String, Integer> phoneCodes = new HashMap<>();
+
+        int[] offsets = new int[entries.size()];
+        ByteArrayOutputStream records = new ByteArrayOutputStream(entries.size() * 16);
+
+        int index = 0;
+        for (Map.Entry<String, List<String>> entry : entries.entrySet()) {
+            offsets[index++] = records.size();
+
+            byte[] word = ascii(entry.getKey());
+            records.write(checkedLength(word.length, entry.getKey()));
+            records.write(word, 0, word.length);
+
+            List<String> prons = entry.getValue();
+            records.write(checkedLength(prons.size(), entry.getKey()));
+            for (String pron : prons) {
+                String[] symbols = pron.split(" ");
+                records.write(checkedLength(symbols.length, entry.getKey()));
+                for (String symbol : symbols) {
+                    Integer code = phoneCodes.get(symbol);
+                    if (code == null) {
+                        code = phones.size();
+                        if (code > BinaryDictionary.MAX_PHONES) {
+                            throw new IOException("Too many distinct phones at " + symbol);
+                        }
+                        phones.add(symbol);
+                        phoneCodes.put(symbol, code);
+                    }
+                    records.write(code);
+                }
+            }
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(BinaryDictionary.MAGIC);
+        data.writeInt(BinaryDictionary.VERSION);
+
+        data.writeInt(phones.size());
+        for (String phone : phones) {
+            byte[] name = ascii(phone);
+            data.writeByte(checkedLength(name.length, phone));
+            data.write(name);
+        }
+
+        data.writeInt(offsets.length);
+        for (int offset : offsets) {
+            data.writeInt(offset);
+        }
+        records.writeTo(data);
+        data.flush();
+    }
+
+    private static byte[] ascii(String text) throws IOException {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = text.charAt(i);
+            if (c > 0x7F) {
+                throw new IOException("Non-ASCII symbol in dictionary: " + text);
+            }
+            bytes[i] = (byte) c;
+        }
+        return bytes;
+    }
+
+    private static int checkedLength(int length, String context) throws IOException {
+        if (length > 0xFF) {
+            throw new IOException("Entry too long for binary dictionary: " + context);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,93 @@
+package com.rayworks.asrwordsrecognition.dict;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Parser for the CMU text dictionary format, one pronunciation per line:
+ *
+ * <pre>
+ * to T UW
+ * to(2) T IH
+ * </pre>
+ *
+ * <p>Alternate pronunciations are folded under their base word in file order.
+ */
+public final class DictionaryParser {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private DictionaryParser() {
+    }
+
+    public static SortedMap<String, List<String>> parse(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+        try {
+            return parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the pronunciations keyed by base word, sorted by word. Each pronunciation is the
+     *     space separated phone string exactly as the decoder expects it.
+     */
+    public static SortedMap<String, List<String>> parse(Reader reader) throws IOException {
+        SortedMap<String, List<String>> entries = new TreeMap<>();
+        BufferedReader in = new BufferedReader(reader, 64 * 1024);
+        String line;
+        int lineNo = 0;
+        while ((line = in.readLine()) != null) {
+            ++lineNo;
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            int split = indexOfWhitespace(line);
+            if (split < 0) {
+                throw new IOException("No pronunciation at line " + lineNo + ": " + line);
+            }
+
+            String word = baseWord(line.substring(0, split));
+            String phones = line.substring(split + 1).trim().replaceAll("\\s+", " ");
+
+            List<String> prons = entries.get(word);
+            if (prons == null) {
+                prons = new ArrayList<>(1);
+                entries.put(word, prons);
+            }
+            prons.add(phones);
+        }
+        return entries;
+    }
+
+    /** Strips the alternate marker from keys like {@code to(2)}. */
+    public static String baseWord(String key) {
+        int paren = key.indexOf('(');
+        if (paren > 0 && key.charAt(key.length() - 1) == ')') {
+            return key.substring(0, paren);
+        }
+        return key;
+    }
+
+    private static int indexOfWhitespace(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ' || c == '\t') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
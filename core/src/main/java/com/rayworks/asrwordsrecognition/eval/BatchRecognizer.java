@@ -0,0 +1,19 @@
+package com.rayworks.asrwordsrecognition.eval;
+
+/**
+ * Decodes whole utterances, one at a time. The evaluation harness creates one instance per
+ * worker, so implementations need not be thread-safe.
+ */
+public interface BatchRecognizer {
+
+    /** Creates the recognizer of one worker; called on that worker's thread. */
+    interface Factory {
+        BatchRecognizer create() throws Exception;
+    }
+
+    /** @return the recognized words separated by spaces, empty if nothing was recognized */
+    String decode(short[] samples, int sampleRate) throws Exception;
+
+    /** Releases native resources; the recognizer is not used afterwards. */
+    void close();
+}
@@ -0,0 +1,119 @@
+package com.rayworks.asrwordsrecognition.eval;
+
+import com.rayworks.asrwordsrecognition.audio.capture.CaptureFile;
+import com.rayworks.asrwordsrecognition.audio.dsp.Downmix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 16-bit mono audio of one evaluation item, read from a WAV file, a headerless {@code .raw} file
+ * as logged by pocketsphinx (little-endian, {@value #RAW_SAMPLE_RATE} Hz) or a capture. The
+ * channels of a multi-channel WAV file are averaged.
+ */
+public final class EvalAudio {
+
+    public static final int RAW_SAMPLE_RATE = 16000;
+
+    private final short[] samples;
+    private final int sampleRate;
+
+    public EvalAudio(short[] samples, int sampleRate) {
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+    }
+
+    public static EvalAudio read(File file) throws IOException {
+        String name = file.getName();
+        if (name.endsWith(CaptureFile.EXTENSION)) {
+            CaptureFile capture = CaptureFile.read(file);
+            return new EvalAudio(capture.getSamples(), capture.getSampleRate());
+        }
+
+        ByteBuffer bytes = readFully(file).order(ByteOrder.LITTLE_ENDIAN);
+        if (name.endsWith(".raw")) {
+            return new EvalAudio(toSamples(bytes, bytes.remaining() / 2), RAW_SAMPLE_RATE);
+        }
+        return readWav(bytes, file);
+    }
+
+    public short[] getSamples() {
+        return samples;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public double getDurationSeconds() {
+        return (double) samples.length / sampleRate;
+    }
+
+    private static EvalAudio readWav(ByteBuffer bytes, File file) throws IOException {
+        if (bytes.remaining() < 12
+                || bytes.getInt(0) != 0x46464952 // "RIFF"
+                || bytes.getInt(8) != 0x45564157) { // "WAVE"
+            throw new IOException("Not a WAV file: " + file);
+        }
+
+        int sampleRate = 0;
+        int channels = 0;
+        bytes.position(12);
+        while (bytes.remaining() >= 8) {
+            int chunk = bytes.getInt();
+            int size = bytes.getInt();
+            if (size < 0 || size > bytes.remaining()) {
+                size = bytes.remaining();
+            }
+            if (chunk == 0x20746D66) { // "fmt "
+                int format = bytes.getShort(bytes.position()) & 0xFFFF;
+                channels = bytes.getShort(bytes.position() + 2);
+                sampleRate = bytes.getInt(bytes.position() + 4);
+                int bits = bytes.getShort(bytes.position() + 14);
+                if (format != 1 || channels < 1 || bits != 16) {
+                    throw new IOException("Only 16-bit PCM is supported: " + file);
+                }
+            } else if (chunk == 0x61746164) { // "data"
+                if (sampleRate == 0) {
+                    throw new IOException("WAV data before its format: " + file);
+                }
+                short[] samples = toSamples(bytes, size / 2 / channels * channels);
+                return new EvalAudio(toMono(samples, channels), sampleRate);
+            }
+            bytes.position(bytes.position() + size + (size & 1));
+        }
+        throw new IOException("WAV file without data: " + file);
+    }
+
+    private static short[] toSamples(ByteBuffer bytes, int count) {
+        short[] samples = new short[count];
+        bytes.asShortBuffer().get(samples);
+        return samples;
+    }
+
+    private static short[] toMono(short[] samples, int channels) {
+        if (channels == 1) {
+            return samples;
+        }
+        int frames = samples.length / channels;
+        float[] mono = new float[frames];
+        Downmix.toMono(samples, 0, frames, channels, mono);
+        short[] out = new short[frames];
+        Downmix.toShorts(mono, frames, out, 0);
+        return out;
+    }
+
+    private static ByteBuffer readFully(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return ByteBuffer.wrap(bytes);
+        } finally {
+            raf.close();
+        }
+    }
+}
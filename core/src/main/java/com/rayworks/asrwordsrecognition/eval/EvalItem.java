@@ -0,0 +1,74 @@
+package com.rayworks.asrwordsrecognition.eval;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/** One utterance of an evaluation set: an audio file and what was actually said. */
+public final class EvalItem {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String id;
+    private final File audio;
+    private final String reference;
+
+    public EvalItem(String id, File audio, String reference) {
+        this.id = id;
+        this.audio = audio;
+        this.reference = reference;
+    }
+
+    /**
+     * Reads a manifest of tab separated {@code audio path, reference transcript} lines. Relative
+     * paths are resolved against the manifest's directory; blank lines and lines starting with
+     * {@code #} are skipped. The ID of an item is its path as written in the manifest.
+     */
+    public static List<EvalItem> readManifest(File manifest) throws IOException {
+        File base = manifest.getAbsoluteFile().getParentFile();
+        BufferedReader in =
+                new BufferedReader(new InputStreamReader(new FileInputStream(manifest), UTF_8));
+        List<EvalItem> items = new ArrayList<>();
+        try {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    throw new IOException(
+                            manifest + ":" + number + ": expected <audio> TAB <transcript>");
+                }
+                String path = line.substring(0, tab).trim();
+                File audio = new File(path);
+                if (!audio.isAbsolute()) {
+                    audio = new File(base, path);
+                }
+                items.add(new EvalItem(path, audio, line.substring(tab + 1).trim()));
+            }
+        } finally {
+            in.close();
+        }
+        return items;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public File getAudio() {
+        return audio;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+}
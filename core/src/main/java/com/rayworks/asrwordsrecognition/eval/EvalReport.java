@@ -0,0 +1,165 @@
+package com.rayworks.asrwordsrecognition.eval;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Corpus-level scores of an evaluation run.
+ *
+ * <p>The real-time factor is decode time over audio time summed across utterances, i.e. the cost
+ * of one worker; the wall-clock factor divides the elapsed time of the whole run instead and so
+ * reflects the parallelism. Latencies are the per-utterance decode times.
+ */
+public final class EvalReport {
+
+    private final List<UtteranceResult> results;
+    private final int parallelism;
+    private final long wallNanos;
+    private final long[] sortedLatencies;
+
+    private int referenceWords;
+    private int substitutions;
+    private int deletions;
+    private int insertions;
+    private int sentenceErrors;
+    private int failures;
+    private double audioSeconds;
+    private long decodeNanos;
+
+    EvalReport(List<UtteranceResult> results, int parallelism, long wallNanos) {
+        this.results = Collections.unmodifiableList(results);
+        this.parallelism = parallelism;
+        this.wallNanos = wallNanos;
+
+        sortedLatencies = new long[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            UtteranceResult result = results.get(i);
+            WordAlignment alignment = result.getAlignment();
+            referenceWords += alignment.getReferenceLength();
+            substitutions += alignment.getSubstitutions();
+            deletions += alignment.getDeletions();
+            insertions += alignment.getInsertions();
+            if (alignment.getErrors() > 0) {
+                sentenceErrors++;
+            }
+            if (result.getError() != null) {
+                failures++;
+            }
+            audioSeconds += result.getAudioSeconds();
+            decodeNanos += result.getDecodeNanos();
+            sortedLatencies[i] = result.getDecodeNanos();
+        }
+        Arrays.sort(sortedLatencies);
+    }
+
+    public List<UtteranceResult> getResults() {
+        return results;
+    }
+
+    public int getReferenceWords() {
+        return referenceWords;
+    }
+
+    public int getErrors() {
+        return substitutions + deletions + insertions;
+    }
+
+    public double getWordErrorRate() {
+        return referenceWords == 0 ? Double.NaN : (double) getErrors() / referenceWords;
+    }
+
+    public double getSentenceErrorRate() {
+        return results.isEmpty() ? Double.NaN : (double) sentenceErrors / results.size();
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public double getAudioSeconds() {
+        return audioSeconds;
+    }
+
+    public double getRealTimeFactor() {
+        return decodeNanos / 1e9 / audioSeconds;
+    }
+
+    public double getWallClockRealTimeFactor() {
+        return wallNanos / 1e9 / audioSeconds;
+    }
+
+    /** @param percentile in (0, 100]; nearest-rank decode latency in milliseconds */
+    public double getLatencyMillis(double percentile) {
+        if (sortedLatencies.length == 0) {
+            return Double.NaN;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+        return sortedLatencies[Math.max(rank, 1) - 1] / 1e6;
+    }
+
+    public void writeJson(Writer out) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.beginObject();
+        json.name("utterances").value(results.size());
+        json.name("referenceWords").value(referenceWords);
+        json.name("wer").value(getWordErrorRate());
+        json.name("ser").value(getSentenceErrorRate());
+        json.name("substitutions").value(substitutions);
+        json.name("deletions").value(deletions);
+        json.name("insertions").value(insertions);
+        json.name("failures").value(failures);
+        json.name("audioSeconds").value(audioSeconds);
+        json.name("parallelism").value(parallelism);
+        json.name("rtf").value(getRealTimeFactor());
+        json.name("wallRtf").value(getWallClockRealTimeFactor());
+        json.name("latencyMs").beginObject();
+        json.name("p50").value(getLatencyMillis(50));
+        json.name("p95").value(getLatencyMillis(95));
+        json.name("p99").value(getLatencyMillis(99));
+        json.name("max").value(getLatencyMillis(100));
+        json.endObject();
+
+        json.name("results").beginArray();
+        for (UtteranceResult result : results) {
+            WordAlignment alignment = result.getAlignment();
+            json.beginObject();
+            json.name("id").value(result.getItem().getId());
+            json.name("reference").value(result.getItem().getReference());
+            json.name("hypothesis").value(result.getHypothesis());
+            json.name("wer").value(alignment.getWordErrorRate());
+            json.name("audioSeconds").value(result.getAudioSeconds());
+            json.name("decodeMs").value(result.getDecodeNanos() / 1e6);
+            if (result.getError() != null) {
+                json.name("error").value(result.getError());
+            }
+            json.name("alignment").beginArray();
+            for (WordAlignment.Step step : alignment.getSteps()) {
+                json.beginObject();
+                json.name("op").value(String.valueOf(step.getOperation()));
+                json.name("ref").value(step.getReference());
+                json.name("hyp").value(step.getHypothesis());
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        out.write('\n');
+        out.flush();
+    }
+
+    public String toJson() {
+        StringWriter out = new StringWriter();
+        try {
+            writeJson(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package com.rayworks.asrwordsrecognition.eval;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes an evaluation set and scores it.
+ *
+ * <p>Each worker thread creates its own {@link BatchRecognizer} and pulls the next utterance
+ * from a shared cursor, so slow utterances do not hold up a fixed partition. Audio is loaded
+ * outside the timed section. A failed utterance is reported with its error and an empty
+ * hypothesis; failing to create a recognizer aborts the run.
+ *
+ * <p>To compare recognizer setups on a host with the native pocketsphinx library:
+ *
+ * <pre>
+ * java Evaluator manifest.tsv report.json en-us-ptm cmudict-en-us.dict 6805.lm [-option value]...
+ * </pre>
+ */
+public class Evaluator {
+
+    private final BatchRecognizer.Factory factory;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public Evaluator(BatchRecognizer.Factory factory) {
+        this.factory = factory;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5 || args.length % 2 == 0) {
+            System.err.println(
+                    "Usage: Evaluator <manifest> <report.json> <hmm> <dict> <lm> [-option value]...");
+            System.exit(1);
+        }
+
+        SphinxBatchRecognizer.Factory sphinx =
+                new SphinxBatchRecognizer.Factory(
+                        new File(args[2]), new File(args[3]), new File(args[4]));
+        for (int i = 5; i < args.length; i += 2) {
+            sphinx.setOption(args[i], args[i + 1]);
+        }
+
+        EvalReport report =
+                new Evaluator(sphinx).evaluate(EvalItem.readManifest(new File(args[0])));
+        Writer out =
+                new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(args[1]), EvalItem.UTF_8));
+        try {
+            report.writeJson(out);
+        } finally {
+            out.close();
+        }
+        System.out.printf(
+                Locale.US,
+                "%d utterances: WER %.2f%%, RTF %.3f, p95 %.0f ms%n",
+                report.getResults().size(),
+                report.getWordErrorRate() * 100,
+                report.getRealTimeFactor(),
+                report.getLatencyMillis(95));
+    }
+
+    public Evaluator setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public EvalReport evaluate(final List<EvalItem> items) throws IOException {
+        final UtteranceResult[] results = new UtteranceResult[items.size()];
+        final AtomicInteger cursor = new AtomicInteger();
+        int workers = Math.max(1, Math.min(parallelism, items.size()));
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Void>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(
+                        executor.submit(
+                                new Callable<Void>() {
+                                    @Override
+                                    public Void call() throws Exception {
+                                        work(items, cursor, results);
+                                        return null;
+                                    }
+                                }));
+            }
+            for (Future<Void> future : futures) {
+                await(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long wallNanos = System.nanoTime() - start;
+
+        return new EvalReport(new ArrayList<>(Arrays.asList(results)), workers, wallNanos);
+    }
+
+    private void work(List<EvalItem> items, AtomicInteger cursor, UtteranceResult[] results)
+            throws Exception {
+        BatchRecognizer recognizer = factory.create();
+        try {
+            int index;
+            while ((index = cursor.getAndIncrement()) < items.size()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                results[index] = decode(recognizer, items.get(index));
+            }
+        } finally {
+            recognizer.close();
+        }
+    }
+
+    private static UtteranceResult decode(BatchRecognizer recognizer, EvalItem item) {
+        EvalAudio audio;
+        try {
+            audio = EvalAudio.read(item.getAudio());
+        } catch (IOException e) {
+            return new UtteranceResult(item, "", 0, 0, String.valueOf(e));
+        }
+
+        long start = System.nanoTime();
+        String hypothesis;
+        String error = null;
+        try {
+            hypothesis = recognizer.decode(audio.getSamples(), audio.getSampleRate());
+        } catch (Exception e) {
+            hypothesis = "";
+            error = String.valueOf(e);
+        }
+        long decodeNanos = System.nanoTime() - start;
+        return new UtteranceResult(
+                item,
+                hypothesis == null ? "" : hypothesis,
+                audio.getDurationSeconds(),
+                decodeNanos,
+                error);
+    }
+
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while evaluating");
+        } catch (ExecutionException e) {
+            throw new IOException("Evaluation worker failed", e.getCause());
+        }
+    }
+}
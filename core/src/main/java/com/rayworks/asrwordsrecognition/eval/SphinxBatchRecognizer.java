@@ -0,0 +1,158 @@
+package com.rayworks.asrwordsrecognition.eval;
+
+import com.rayworks.asrwordsrecognition.audio.dsp.AudioFrontEnd;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.cmu.pocketsphinx.Config;
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.Hypothesis;
+
+/**
+ * {@link BatchRecognizer} on a pocketsphinx {@link Decoder}. Needs the native {@code
+ * pocketsphinx_jni} library: on a device it comes with the app, on a host it must be on {@code
+ * java.library.path}.
+ */
+public class SphinxBatchRecognizer implements BatchRecognizer {
+
+    private final Decoder decoder;
+    private final int sampleRate;
+
+    SphinxBatchRecognizer(Decoder decoder) {
+        this.decoder = decoder;
+        this.sampleRate = (int) decoder.getConfig().getFloat("-samprate");
+    }
+
+    @Override
+    public String decode(short[] samples, int sampleRate) {
+        if (sampleRate != this.sampleRate) {
+            if (this.sampleRate != AudioFrontEnd.DECODER_RATE) {
+                throw new IllegalArgumentException("Audio at " + sampleRate
+                        + " Hz, decoder expects " + this.sampleRate + " Hz");
+            }
+            samples = resample(samples, sampleRate);
+        }
+        decoder.startUtt();
+        decoder.processRaw(samples, samples.length, false, true);
+        decoder.endUtt();
+        Hypothesis hypothesis = decoder.hyp();
+        return hypothesis == null ? "" : hypothesis.getHypstr();
+    }
+
+    private static short[] resample(short[] samples, int sampleRate) {
+        AudioFrontEnd frontEnd = new AudioFrontEnd(sampleRate, 1, sampleRate / 10);
+        short[] out = new short[(int) ((long) samples.length * AudioFrontEnd.DECODER_RATE
+                / sampleRate) + frontEnd.getMaxOutput()];
+        int length = 0;
+        for (int i = 0; i < samples.length; i += frontEnd.getMaxFrames()) {
+            int frames = Math.min(frontEnd.getMaxFrames(), samples.length - i);
+            length += frontEnd.process(samples, i, frames, out, length);
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    @Override
+    public void close() {
+        decoder.delete();
+    }
+
+    /**
+     * Types an option value given as text: {@code yes}, {@code no}, {@code true} and {@code
+     * false} are booleans, numbers with a decimal point or exponent are floats (a {@link Double}),
+     * other numbers integers; anything else stays a string.
+     */
+    public static Object parseOption(String value) {
+        if (value.matches("(?i)yes|no|true|false")) {
+            return value.matches("(?i)yes|true");
+        }
+        if (value.matches("[-+]?\\d+")) {
+            return Integer.parseInt(value);
+        }
+        if (value.matches("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?")) {
+            return Double.parseDouble(value);
+        }
+        return value;
+    }
+
+    /**
+     * Configures decoders the way {@code SphinxEngineFactory} does, so that options can be
+     * evaluated before they are changed in the app.
+     */
+    public static class Factory implements BatchRecognizer.Factory {
+
+        private final File acousticModel;
+        private final File dictionary;
+        private final File languageModel;
+        private final Map<String, Object> options = new LinkedHashMap<>();
+
+        public Factory(File acousticModel, File dictionary, File languageModel) {
+            this.acousticModel = acousticModel;
+            this.dictionary = dictionary;
+            this.languageModel = languageModel;
+            options.put("-allphone_ci", true);
+        }
+
+        public Factory setString(String name, String value) {
+            options.put(name, value);
+            return this;
+        }
+
+        public Factory setFloat(String name, double value) {
+            options.put(name, value);
+            return this;
+        }
+
+        public Factory setInteger(String name, int value) {
+            options.put(name, value);
+            return this;
+        }
+
+        public Factory setBoolean(String name, boolean value) {
+            options.put(name, value);
+            return this;
+        }
+
+        /** Sets an option given on the command line, typed by {@link #parseOption(String)}. */
+        public Factory setOption(String name, String value) {
+            options.put(name, parseOption(value));
+            return this;
+        }
+
+        @Override
+        public BatchRecognizer create() {
+            NativeLibrary.load();
+            Config config = Decoder.defaultConfig();
+            config.setString("-hmm", acousticModel.getPath());
+            config.setString("-dict", dictionary.getPath());
+            config.setString("-lm", languageModel.getPath());
+            config.setString("-logfn", "/dev/null");
+            for (Map.Entry<String, Object> option : options.entrySet()) {
+                String name = option.getKey();
+                Object value = option.getValue();
+                if (value instanceof Boolean) {
+                    config.setBoolean(name, (Boolean) value);
+                } else if (value instanceof Integer) {
+                    config.setInt(name, (Integer) value);
+                } else if (value instanceof Double) {
+                    config.setFloat(name, (Double) value);
+                } else {
+                    config.setString(name, (String) value);
+                }
+            }
+            return new SphinxBatchRecognizer(new Decoder(config));
+        }
+    }
+
+    private static final class NativeLibrary {
+        static {
+            System.loadLibrary("pocketsphinx_jni");
+        }
+
+        static void load() {
+            // the static initializer runs once
+        }
+    }
+}
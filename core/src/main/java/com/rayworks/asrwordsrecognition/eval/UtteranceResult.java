@@ -0,0 +1,52 @@
+package com.rayworks.asrwordsrecognition.eval;
+
+/** Outcome of decoding one {@link EvalItem}. */
+public final class UtteranceResult {
+
+    private final EvalItem item;
+    private final String hypothesis;
+    private final WordAlignment alignment;
+    private final double audioSeconds;
+    private final long decodeNanos;
+    private final String error;
+
+    UtteranceResult(
+            EvalItem item,
+            String hypothesis,
+            double audioSeconds,
+            long decodeNanos,
+            String error) {
+        this.item = item;
+        this.hypothesis = hypothesis;
+        this.alignment = WordAlignment.of(item.getReference(), hypothesis);
+        this.audioSeconds = audioSeconds;
+        this.decodeNanos = decodeNanos;
+        this.error = error;
+    }
+
+    public EvalItem getItem() {
+        return item;
+    }
+
+    public String getHypothesis() {
+        return hypothesis;
+    }
+
+    public WordAlignment getAlignment() {
+        return alignment;
+    }
+
+    public double getAudioSeconds() {
+        return audioSeconds;
+    }
+
+    /** Time spent in {@link BatchRecognizer#decode(short[], int)}, excluding audio loading. */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /** Why the utterance could not be decoded, or null. Failed utterances score as deletions. */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,156 @@
+package com.rayworks.asrwordsrecognition.eval;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/** Minimum edit-distance alignment of a hypothesis against its reference, word by word. */
+public final class WordAlignment {
+
+    public static final char CORRECT = 'C';
+    public static final char SUBSTITUTION = 'S';
+    public static final char DELETION = 'D';
+    public static final char INSERTION = 'I';
+
+    private final String[] reference;
+    private final String[] hypothesis;
+    private final List<Step> steps;
+    private int substitutions;
+    private int deletions;
+    private int insertions;
+
+    private WordAlignment(String[] reference, String[] hypothesis) {
+        this.reference = reference;
+        this.hypothesis = hypothesis;
+        this.steps = align();
+    }
+
+    /** Aligns two transcripts after {@link #normalize(String) normalizing} them. */
+    public static WordAlignment of(String reference, String hypothesis) {
+        return new WordAlignment(normalize(reference), normalize(hypothesis));
+    }
+
+    /**
+     * Lower-cases and splits a transcript, dropping sentence markers, fillers such as {@code
+     * <sil>}, {@code [noise]} or {@code ++breath++}, and alternate pronunciation suffixes.
+     */
+    public static String[] normalize(String transcript) {
+        List<String> words = new ArrayList<>();
+        for (String token : transcript.trim().toLowerCase(Locale.US).split("\\s+")) {
+            if (token.isEmpty()
+                    || token.startsWith("<")
+                    || token.startsWith("[")
+                    || token.startsWith("++")) {
+                continue;
+            }
+            int alternate = token.indexOf('(');
+            words.add(alternate > 0 && token.endsWith(")") ? token.substring(0, alternate) : token);
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    public int getReferenceLength() {
+        return reference.length;
+    }
+
+    public int getSubstitutions() {
+        return substitutions;
+    }
+
+    public int getDeletions() {
+        return deletions;
+    }
+
+    public int getInsertions() {
+        return insertions;
+    }
+
+    public int getErrors() {
+        return substitutions + deletions + insertions;
+    }
+
+    /** Word error rate of this utterance alone; an empty reference counts every insertion. */
+    public double getWordErrorRate() {
+        return reference.length == 0 ? getErrors() : (double) getErrors() / reference.length;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    private List<Step> align() {
+        int n = reference.length;
+        int m = hypothesis.length;
+        int[][] cost = new int[n + 1][m + 1];
+        for (int i = 0; i <= n; i++) {
+            cost[i][0] = i;
+        }
+        for (int j = 0; j <= m; j++) {
+            cost[0][j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                int diagonal =
+                        cost[i - 1][j - 1] + (reference[i - 1].equals(hypothesis[j - 1]) ? 0 : 1);
+                cost[i][j] = Math.min(diagonal, Math.min(cost[i - 1][j], cost[i][j - 1]) + 1);
+            }
+        }
+
+        // walk back, preferring matches and substitutions so that the alignment stays diagonal
+        List<Step> path = new ArrayList<>(Math.max(n, m));
+        int i = n;
+        int j = m;
+        while (i > 0 || j > 0) {
+            if (i > 0 && j > 0) {
+                boolean same = reference[i - 1].equals(hypothesis[j - 1]);
+                if (cost[i][j] == cost[i - 1][j - 1] + (same ? 0 : 1)) {
+                    char operation = same ? CORRECT : SUBSTITUTION;
+                    path.add(new Step(operation, reference[i - 1], hypothesis[j - 1]));
+                    if (!same) {
+                        substitutions++;
+                    }
+                    i--;
+                    j--;
+                    continue;
+                }
+            }
+            if (i > 0 && cost[i][j] == cost[i - 1][j] + 1) {
+                path.add(new Step(DELETION, reference[i - 1], null));
+                deletions++;
+                i--;
+            } else {
+                path.add(new Step(INSERTION, null, hypothesis[j - 1]));
+                insertions++;
+                j--;
+            }
+        }
+        Collections.reverse(path);
+        return Collections.unmodifiableList(path);
+    }
+
+    /** One aligned position; the word missing on either side is null. */
+    public static final class Step {
+        private final char operation;
+        private final String reference;
+        private final String hypothesis;
+
+        Step(char operation, String reference, String hypothesis) {
+            this.operation = operation;
+            this.reference = reference;
+            this.hypothesis = hypothesis;
+        }
+
+        public char getOperation() {
+            return operation;
+        }
+
+        public String getReference() {
+            return reference;
+        }
+
+        public String getHypothesis() {
+            return hypothesis;
+        }
+    }
+}
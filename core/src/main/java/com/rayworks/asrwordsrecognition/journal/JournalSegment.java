@@ -0,0 +1,371 @@
+package com.rayworks.asrwordsrecognition.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * A data file of consecutive records and its memory-mapped index, named after the sequence of
+ * their first record.
+ *
+ * <p>The data file holds frames of a big-endian payload length, the CRC-32 of the payload, and
+ * the payload, a {@link SessionRecord} starting with its sequence. The index is a header (magic,
+ * record count, sealed flag, capacity) followed by one {@value #ENTRY_BYTES}-byte entry per
+ * record: its time key, the offset of its frame and its target sentence. Time keys are the
+ * record times made non-decreasing, so that time ranges can be searched.
+ *
+ * <p>Only a sealed index is trusted when a segment is opened; otherwise the index is rebuilt from
+ * the data file, which is cut at the first frame that is torn or fails its CRC.
+ */
+final class JournalSegment {
+
+    static final String PREFIX = "journal-";
+    static final String DATA = ".log";
+    static final String INDEX = ".idx";
+
+    static final int FRAME_HEADER_BYTES = 8;
+    static final int INDEX_MAGIC = 0x534A4931; // "SJI1"
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 16;
+    // a payload can be no longer than this; a longer length is corruption
+    static final int MAX_PAYLOAD_BYTES = 1024 * 1024;
+
+    private static final int COUNT_AT = 4;
+    private static final int SEALED_AT = 8;
+    private static final int CAPACITY_AT = 12;
+
+    private final long firstSequence;
+    private final File data;
+    private final File index;
+    private final RandomAccessFile dataFile;
+    private final FileChannel channel;
+    private final RandomAccessFile indexFile;
+    private final MappedByteBuffer entries;
+    private final int capacity;
+    private final CRC32 crc = new CRC32();
+
+    // published to readers by the volatile write
+    private volatile int count;
+    // writer only
+    private int pending;
+    private long size;
+    private long committedSize;
+    private long lastKey = Long.MIN_VALUE;
+    private boolean sealed;
+
+    private JournalSegment(File directory, long firstSequence, int capacity) throws IOException {
+        this.firstSequence = firstSequence;
+        this.data = new File(directory, name(firstSequence) + DATA);
+        this.index = new File(directory, name(firstSequence) + INDEX);
+        this.dataFile = new RandomAccessFile(data, "rw");
+        this.channel = dataFile.getChannel();
+        this.indexFile = new RandomAccessFile(index, "rw");
+        if (indexFile.length() >= HEADER_BYTES && indexFile.readInt() == INDEX_MAGIC) {
+            indexFile.seek(CAPACITY_AT);
+            capacity = Math.max(capacity, indexFile.readInt());
+        }
+        this.capacity = capacity;
+        long indexBytes = HEADER_BYTES + (long) capacity * ENTRY_BYTES;
+        if (indexFile.length() < indexBytes) {
+            indexFile.setLength(indexBytes);
+        }
+        this.entries = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, indexBytes);
+        this.size = channel.size();
+        this.committedSize = size;
+    }
+
+    /** Creates an empty segment; a leftover of the same name is overwritten. */
+    static JournalSegment create(File directory, long firstSequence, int capacity,
+                                 long previousKey) throws IOException {
+        File data = new File(directory, name(firstSequence) + DATA);
+        File index = new File(directory, name(firstSequence) + INDEX);
+        if ((data.exists() && !data.delete()) || (index.exists() && !index.delete())) {
+            throw new IOException("Cannot replace " + data);
+        }
+        JournalSegment segment = new JournalSegment(directory, firstSequence, capacity);
+        segment.lastKey = previousKey;
+        segment.writeHeader(0, false);
+        return segment;
+    }
+
+    /** Opens a segment, rebuilding its index unless it was sealed. */
+    static JournalSegment open(File directory, long firstSequence, int capacity)
+            throws IOException {
+        JournalSegment segment = new JournalSegment(directory, firstSequence, capacity);
+        try {
+            if (!segment.loadSealed()) {
+                segment.recover();
+            }
+        } catch (IOException e) {
+            segment.close();
+            throw e;
+        }
+        return segment;
+    }
+
+    /** The first sequence of the segment named {@code name}, -1 if it is not a data file. */
+    static long parseSequence(String name) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(DATA)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - DATA.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String name(long firstSequence) {
+        // zero-padded so that names sort like sequences
+        return PREFIX + String.format(Locale.US, "%019d", firstSequence);
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    /** @return the sequence after the last record readers can see */
+    long getEndSequence() {
+        return firstSequence + count;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /** Records that still fit the index. */
+    int getFreeSlots() {
+        return capacity - pending;
+    }
+
+    /** Data bytes, including the ones written but not yet committed. */
+    long getSize() {
+        return size;
+    }
+
+    long getLastKey() {
+        return lastKey;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /** Bytes on disk, the index included. */
+    long getDiskBytes() {
+        return size + HEADER_BYTES + (long) capacity * ENTRY_BYTES;
+    }
+
+    /** The sequence the next record written to this segment gets. */
+    long nextSequence() {
+        return firstSequence + pending;
+    }
+
+    /**
+     * Writes frames encoded with {@link #frame(SessionRecord, ByteBuffer)} at the end of the data
+     * file and indexes them; readers see them after {@link #commit()}.
+     *
+     * @param offsets where each record's frame starts within {@code frames}
+     */
+    void write(ByteBuffer frames, long[] times, int[] offsets, int[] targets, int records)
+            throws IOException {
+        long start = size;
+        while (frames.hasRemaining()) {
+            size += channel.write(frames, size);
+        }
+        for (int i = 0; i < records; i++) {
+            lastKey = Math.max(lastKey, times[i]);
+            int at = HEADER_BYTES + (pending + i) * ENTRY_BYTES;
+            entries.putLong(at, lastKey);
+            entries.putInt(at + 8, (int) (start + offsets[i]));
+            entries.putInt(at + 12, targets[i]);
+        }
+        pending += records;
+    }
+
+    /** Makes the records written so far durable, then visible to readers. */
+    void commit() throws IOException {
+        if (pending == count) {
+            return;
+        }
+        channel.force(false);
+        entries.putInt(COUNT_AT, pending);
+        committedSize = size;
+        count = pending;
+    }
+
+    /** Drops what was written since the last commit, leaving no torn frame to follow. */
+    void rollback() throws IOException {
+        pending = count;
+        lastKey = count > 0 ? key(count - 1) : lastKey;
+        size = committedSize;
+        channel.truncate(size);
+    }
+
+    /** Marks the index as complete, so it is trusted the next time the segment is opened. */
+    void seal() {
+        writeHeader(count, true);
+        entries.force();
+        sealed = true;
+    }
+
+    /** Frames {@code record} at the position of {@code out}. */
+    static void frame(SessionRecord record, ByteBuffer out) {
+        int start = out.position();
+        out.position(start + FRAME_HEADER_BYTES);
+        record.encode(out);
+        int end = out.position();
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), out.arrayOffset() + start + FRAME_HEADER_BYTES,
+                end - start - FRAME_HEADER_BYTES);
+        out.putInt(start, end - start - FRAME_HEADER_BYTES);
+        out.putInt(start + 4, (int) crc.getValue());
+    }
+
+    long key(int slot) {
+        return entries.getLong(HEADER_BYTES + slot * ENTRY_BYTES);
+    }
+
+    int target(int slot) {
+        return entries.getInt(HEADER_BYTES + slot * ENTRY_BYTES + 12);
+    }
+
+    /** Reads the record in {@code slot}, below {@link #getCount()}. */
+    SessionRecord read(int slot) throws IOException {
+        long offset = entries.getInt(HEADER_BYTES + slot * ENTRY_BYTES + 8);
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+        readFully(header, offset);
+        int length = header.getInt(0);
+        if (length < 0 || length > MAX_PAYLOAD_BYTES) {
+            throw new IOException("Corrupt frame at " + offset + " of " + data);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, offset + FRAME_HEADER_BYTES);
+        payload.flip();
+        return SessionRecord.decode(payload);
+    }
+
+    void close() {
+        try {
+            channel.close();
+            dataFile.close();
+        } catch (IOException ignored) {
+            // nothing left to lose
+        }
+        try {
+            indexFile.close();
+        } catch (IOException ignored) {
+            // the mapping is released with the buffer
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        if ((data.exists() && !data.delete()) || (index.exists() && !index.delete())) {
+            throw new IOException("Cannot delete " + data);
+        }
+    }
+
+    private void writeHeader(int records, boolean sealed) {
+        entries.putInt(0, INDEX_MAGIC);
+        entries.putInt(COUNT_AT, records);
+        entries.putInt(SEALED_AT, sealed ? 1 : 0);
+        entries.putInt(CAPACITY_AT, capacity);
+    }
+
+    private boolean loadSealed() throws IOException {
+        if (entries.getInt(0) != INDEX_MAGIC || entries.getInt(SEALED_AT) != 1) {
+            return false;
+        }
+        int records = entries.getInt(COUNT_AT);
+        if (records < 0 || records > capacity) {
+            return false;
+        }
+        if (records > 0) {
+            // the last frame must end where the data does
+            long last = entries.getInt(HEADER_BYTES + (records - 1) * ENTRY_BYTES + 8);
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+            if (last < 0 || last + FRAME_HEADER_BYTES > size) {
+                return false;
+            }
+            readFully(header, last);
+            if (last + FRAME_HEADER_BYTES + header.getInt(0) != size) {
+                return false;
+            }
+            lastKey = key(records - 1);
+        }
+        pending = records;
+        count = records;
+        sealed = true;
+        return true;
+    }
+
+    /** Rebuilds the index from the valid frames and cuts the data file after them. */
+    private void recover() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+        ByteBuffer payload = ByteBuffer.allocate(256);
+        long offset = 0;
+        int records = 0;
+        while (records < capacity && offset + FRAME_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, offset);
+            int length = header.getInt(0);
+            if (length < 0 || length > MAX_PAYLOAD_BYTES
+                    || offset + FRAME_HEADER_BYTES + length > size) {
+                break;
+            }
+            if (payload.capacity() < length) {
+                payload = ByteBuffer.allocate(Math.max(length, 2 * payload.capacity()));
+            }
+            payload.clear();
+            payload.limit(length);
+            readFully(payload, offset + FRAME_HEADER_BYTES);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            payload.flip();
+            SessionRecord record;
+            try {
+                record = SessionRecord.decode(payload);
+            } catch (IOException | RuntimeException e) {
+                break;
+            }
+            if (record.getSequence() != firstSequence + records) {
+                break;
+            }
+            lastKey = Math.max(lastKey, record.getTimeMillis());
+            int at = HEADER_BYTES + records * ENTRY_BYTES;
+            entries.putLong(at, lastKey);
+            entries.putInt(at + 8, (int) offset);
+            entries.putInt(at + 12, record.getTarget());
+            records++;
+            offset += FRAME_HEADER_BYTES + length;
+        }
+        if (offset < size) {
+            channel.truncate(offset);
+            size = offset;
+        }
+        channel.force(false);
+        committedSize = size;
+        writeHeader(records, false);
+        pending = records;
+        count = records;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + data);
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,597 @@
+package com.rayworks.asrwordsrecognition.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The history of the results the user saw, appended to {@link JournalSegment segments} in a
+ * directory, for analytics and to be synced to the backend.
+ *
+ * <p>{@link #append(SessionRecord)} only queues the record; it never blocks on the disk, and a
+ * record that does not fit the queue is dropped and counted. A daemon writer thread takes
+ * whatever has queued up, writes it as one batch and makes it durable with a single {@code
+ * fsync} (group commit), so the cost of a sync is shared by the records that arrived while the
+ * previous one ran. Records are given their sequence as they are written and can be read once
+ * they are durable.
+ *
+ * <p>A segment is sealed and a new one started once it passes {@link #setMaxSegmentBytes(long)}
+ * or its index is full. When the segments together pass {@link #setMaxBytes(long)}, the oldest
+ * go: those already {@link #acknowledge(long) acknowledged} by the backend first, a partly
+ * acknowledged one being rewritten with its remaining records, then unsynced ones if there is
+ * no other way, which are counted as dropped.
+ *
+ * <p>After a crash the last segment is cut at its last intact record and its index rebuilt.
+ */
+public class SessionJournal {
+
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 1024 * 1024;
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    // where the backend's acknowledged sequence is kept
+    static final String ACKNOWLEDGED = "acknowledged";
+
+    private static final int MAX_PENDING = 1024;
+    // results come a few per minute; an index this size outlasts the default segment size
+    private static final int SEGMENT_RECORDS = 16 * 1024;
+    private static final long IDLE_POLL_MILLIS = 50;
+
+    private final File directory;
+    private long maxSegmentBytes = DEFAULT_MAX_SEGMENT_BYTES;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private int maxBatch = DEFAULT_MAX_BATCH;
+    private int segmentRecords = SEGMENT_RECORDS;
+
+    private final BlockingQueue<SessionRecord> queue =
+            new ArrayBlockingQueue<>(MAX_PENDING);
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+
+    // guards appended and processed; signalled as batches are done
+    private final Object progress = new Object();
+    private long appended;
+    private long processed;
+
+    // readers hold the read lock; the writer holds the write lock to change the segment list
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<JournalSegment> segments = new ArrayList<>();
+    private volatile long acknowledged;
+
+    private volatile Thread writer;
+    private volatile boolean running;
+    private volatile IOException lastError;
+
+    public SessionJournal(File directory) {
+        this.directory = directory;
+    }
+
+    /** Size after which a segment is sealed; 1 MB by default, at most 1 GB. */
+    public SessionJournal setMaxSegmentBytes(long maxSegmentBytes) {
+        this.maxSegmentBytes = Math.min(maxSegmentBytes, 1L << 30);
+        return this;
+    }
+
+    /** Size the segments together are kept within; 16 MB by default. */
+    public SessionJournal setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /** Records made durable by one sync at most; 1 syncs every record. */
+    public SessionJournal setMaxBatch(int maxBatch) {
+        this.maxBatch = Math.max(1, maxBatch);
+        return this;
+    }
+
+    /** Records indexed per segment, for tests; a full index also seals the segment. */
+    SessionJournal setSegmentRecords(int segmentRecords) {
+        this.segmentRecords = segmentRecords;
+        return this;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /** Opens the segments left by the last run, repairing the last one, and starts writing. */
+    public synchronized void open() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        lock.writeLock().lock();
+        try {
+            load();
+            compact();
+        } catch (IOException e) {
+            closeSegments();
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        running = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "session-journal");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        writer = thread;
+        thread.start();
+    }
+
+    /** Writes out everything already queued, stops the writer thread and closes the files. */
+    public synchronized void close() throws InterruptedException {
+        Thread thread = writer;
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        thread.join();
+        writer = null;
+        lock.writeLock().lock();
+        try {
+            closeSegments();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Queues {@code record} for writing, without blocking; it must not be changed afterwards.
+     *
+     * @return false if the record was dropped because the writer has fallen behind
+     */
+    public boolean append(SessionRecord record) {
+        synchronized (progress) {
+            if (!queue.offer(record)) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            appended++;
+        }
+        return true;
+    }
+
+    /**
+     * Waits until the records appended so far are written.
+     *
+     * @return false if writing one of them failed, see {@link #getLastError()}
+     */
+    public boolean flush() throws InterruptedException {
+        IOException before = lastError;
+        synchronized (progress) {
+            long target = appended;
+            while (processed < target) {
+                if (writer == null) {
+                    throw new IllegalStateException("The journal is not open");
+                }
+                progress.wait(IDLE_POLL_MILLIS);
+            }
+        }
+        return lastError == before;
+    }
+
+    /** Records sent to the backend, the ones before {@code sequence}, may be compacted away. */
+    public synchronized void acknowledge(long sequence) throws IOException {
+        if (sequence <= acknowledged) {
+            return;
+        }
+        RandomAccessFile file = new RandomAccessFile(new File(directory, ACKNOWLEDGED), "rw");
+        try {
+            file.setLength(0);
+            file.writeLong(sequence);
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        acknowledged = sequence;
+    }
+
+    /** The sequence up to which the backend has the records. */
+    public long getAcknowledged() {
+        return acknowledged;
+    }
+
+    /** The sequence of the oldest record kept. */
+    public long getFirstSequence() {
+        lock.readLock().lock();
+        try {
+            return segments.isEmpty() ? 0 : segments.get(0).getFirstSequence();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** The sequence the next record written gets. */
+    public long getEndSequence() {
+        lock.readLock().lock();
+        try {
+            return segments.isEmpty() ? 0 : last().getEndSequence();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Records dropped because the queue was full. */
+    public long getDroppedAppends() {
+        return dropped.get();
+    }
+
+    /** Unsynced records deleted to keep within {@link #setMaxBytes(long)}. */
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    /** Syncs done; fewer than the records when they are committed in groups. */
+    public long getCommits() {
+        return commits.get();
+    }
+
+    /** The last write failure; the batch it happened in is lost, later ones are not. */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /** Bytes the segments take on disk. */
+    public long getDiskBytes() {
+        lock.readLock().lock();
+        try {
+            return diskBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Up to {@code max} records from {@code sequence} on, e.g. the ones to send to the backend. */
+    public List<SessionRecord> read(long sequence, int max) throws IOException {
+        List<SessionRecord> records = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int s = find(sequence); s < segments.size() && records.size() < max; s++) {
+                JournalSegment segment = segments.get(s);
+                int count = segment.getCount();
+                int slot = (int) Math.max(0, sequence - segment.getFirstSequence());
+                for (; slot < count && records.size() < max; slot++) {
+                    records.add(segment.read(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return records;
+    }
+
+    /**
+     * The records from {@code fromMillis} inclusive to {@code toMillis} exclusive. Records are
+     * found by the index's time keys: a record older than one before it counts as that one's
+     * time.
+     */
+    public List<SessionRecord> readBetween(long fromMillis, long toMillis) throws IOException {
+        List<SessionRecord> records = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (JournalSegment segment : segments) {
+                int count = segment.getCount();
+                if (count == 0 || segment.key(count - 1) < fromMillis) {
+                    continue;
+                }
+                for (int slot = lowerBound(segment, count, fromMillis);
+                        slot < count && segment.key(slot) < toMillis; slot++) {
+                    records.add(segment.read(slot));
+                }
+                if (segment.key(count - 1) >= toMillis) {
+                    break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return records;
+    }
+
+    /**
+     * The last {@code max} attempts at the lesson sentence {@code target}, oldest first. Only
+     * the index is scanned; just the matching records are read.
+     */
+    public List<SessionRecord> readTarget(int target, int max) throws IOException {
+        List<SessionRecord> records = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int s = segments.size() - 1; s >= 0 && records.size() < max; s--) {
+                JournalSegment segment = segments.get(s);
+                for (int slot = segment.getCount() - 1; slot >= 0 && records.size() < max;
+                        slot--) {
+                    if (segment.target(slot) == target) {
+                        records.add(segment.read(slot));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Collections.reverse(records);
+        return records;
+    }
+
+    /** Attempts at the lesson sentence {@code target}, counted from the index alone. */
+    public int countTarget(int target) {
+        int attempts = 0;
+        lock.readLock().lock();
+        try {
+            for (JournalSegment segment : segments) {
+                for (int slot = segment.getCount() - 1; slot >= 0; slot--) {
+                    if (segment.target(slot) == target) {
+                        attempts++;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return attempts;
+    }
+
+    private static int lowerBound(JournalSegment segment, int count, long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (segment.key(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** @return the segment holding {@code sequence}, or the first one after it */
+    private int find(long sequence) {
+        int low = 0;
+        int high = segments.size() - 1;
+        int found = segments.size();
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (segments.get(middle).getEndSequence() > sequence) {
+                found = middle;
+                high = middle - 1;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return found;
+    }
+
+    private JournalSegment last() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private long diskBytes() {
+        long total = 0;
+        for (JournalSegment segment : segments) {
+            total += segment.getDiskBytes();
+        }
+        return total;
+    }
+
+    private void load() throws IOException {
+        File ack = new File(directory, ACKNOWLEDGED);
+        if (ack.length() == 8) {
+            RandomAccessFile file = new RandomAccessFile(ack, "r");
+            try {
+                acknowledged = file.readLong();
+            } finally {
+                file.close();
+            }
+        }
+
+        File[] files = directory.listFiles();
+        long[] firsts = new long[files == null ? 0 : files.length];
+        int found = 0;
+        for (int i = 0; i < firsts.length; i++) {
+            long first = JournalSegment.parseSequence(files[i].getName());
+            if (first >= 0) {
+                firsts[found++] = first;
+            }
+        }
+        Arrays.sort(firsts, 0, found);
+        for (int i = 0; i < found; i++) {
+            JournalSegment segment = JournalSegment.open(directory, firsts[i], segmentRecords);
+            if (!segments.isEmpty() && last().getEndSequence() > firsts[i]) {
+                // a compaction crashed: before deleting the segment it had copied, or while
+                // copying, in which case the copy is not sealed
+                if (!segment.isSealed()) {
+                    segment.delete();
+                    continue;
+                }
+                segments.remove(segments.size() - 1).delete();
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            long next = Math.max(0, acknowledged);
+            segments.add(JournalSegment.create(directory, next, segmentRecords, Long.MIN_VALUE));
+        } else if (last().isSealed()) {
+            JournalSegment previous = last();
+            segments.add(JournalSegment.create(directory, previous.getEndSequence(),
+                    segmentRecords, previous.getLastKey()));
+        }
+    }
+
+    private void closeSegments() {
+        for (JournalSegment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private void drain() {
+        List<SessionRecord> batch = new ArrayList<>();
+        ByteBuffer frames = ByteBuffer.allocate(64 * 1024);
+        long[] times = new long[0];
+        int[] offsets = new int[0];
+        int[] targets = new int[0];
+        while (true) {
+            boolean stopping = !running;
+            SessionRecord first;
+            try {
+                first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+            if (first == null) {
+                if (stopping) {
+                    return;
+                }
+                continue;
+            }
+            batch.clear();
+            batch.add(first);
+            queue.drainTo(batch, maxBatch - 1);
+            if (times.length < batch.size()) {
+                times = new long[batch.size()];
+                offsets = new int[batch.size()];
+                targets = new int[batch.size()];
+            }
+
+            // the records that would overflow the segment go in the next one
+            int written = 0;
+            while (written < batch.size()) {
+                JournalSegment segment = last();
+                frames.clear();
+                int records = 0;
+                while (written + records < batch.size() && records < segment.getFreeSlots()) {
+                    SessionRecord record = batch.get(written + records);
+                    int bytes = JournalSegment.FRAME_HEADER_BYTES + record.maxEncodedBytes();
+                    if (records > 0 && (segment.getSize() + frames.position() + bytes
+                            > maxSegmentBytes || frames.remaining() < bytes)) {
+                        break;
+                    }
+                    if (frames.remaining() < bytes) {
+                        frames = ByteBuffer.allocate(bytes);
+                    }
+                    record.setSequence(segment.nextSequence() + records);
+                    times[records] = record.getTimeMillis();
+                    offsets[records] = frames.position();
+                    targets[records] = record.getTarget();
+                    JournalSegment.frame(record, frames);
+                    records++;
+                }
+                frames.flip();
+                written += records;
+                try {
+                    segment.write(frames, times, offsets, targets, records);
+                    segment.commit();
+                    commits.incrementAndGet();
+                } catch (IOException e) {
+                    lastError = e;
+                    for (int i = written - records; i < written; i++) {
+                        batch.get(i).setSequence(SessionRecord.NONE);
+                    }
+                    try {
+                        segment.rollback();
+                    } catch (IOException ignored) {
+                        // recovery cuts the torn frame at the next open
+                    }
+                    continue;
+                }
+                if (segment.getFreeSlots() == 0 || segment.getSize() >= maxSegmentBytes) {
+                    try {
+                        rotate(segment);
+                    } catch (IOException e) {
+                        // the records are safe; the segment takes more until rotation succeeds
+                        lastError = e;
+                    }
+                }
+            }
+
+            synchronized (progress) {
+                processed += batch.size();
+                progress.notifyAll();
+            }
+        }
+    }
+
+    private void rotate(JournalSegment full) throws IOException {
+        full.seal();
+        JournalSegment next = JournalSegment.create(directory, full.getEndSequence(),
+                segmentRecords, full.getLastKey());
+        lock.writeLock().lock();
+        try {
+            segments.add(next);
+            compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Drops the oldest sealed segments until the journal fits its size. */
+    private void compact() throws IOException {
+        while (segments.size() > 1 && diskBytes() > maxBytes) {
+            JournalSegment oldest = segments.get(0);
+            long synced = acknowledged;
+            if (synced > oldest.getFirstSequence() && synced < oldest.getEndSequence()) {
+                segments.set(0, rewrite(oldest, synced));
+                continue;
+            }
+            if (synced <= oldest.getFirstSequence()) {
+                droppedRecords.addAndGet(oldest.getCount());
+            }
+            segments.remove(0);
+            oldest.delete();
+        }
+    }
+
+    /** Copies the records of {@code segment} from {@code sequence} on into a sealed segment. */
+    private JournalSegment rewrite(JournalSegment segment, long sequence) throws IOException {
+        int first = (int) (sequence - segment.getFirstSequence());
+        int records = segment.getCount() - first;
+        JournalSegment copy = JournalSegment.create(directory, sequence, records,
+                first > 0 ? segment.key(first - 1) : Long.MIN_VALUE);
+        long[] times = new long[1];
+        int[] offsets = new int[1];
+        int[] targets = new int[1];
+        ByteBuffer frames = ByteBuffer.allocate(4096);
+        try {
+            for (int slot = first; slot < segment.getCount(); slot++) {
+                SessionRecord record = segment.read(slot);
+                int bytes = JournalSegment.FRAME_HEADER_BYTES + record.maxEncodedBytes();
+                if (frames.capacity() < bytes) {
+                    frames = ByteBuffer.allocate(bytes);
+                }
+                frames.clear();
+                JournalSegment.frame(record, frames);
+                frames.flip();
+                times[0] = segment.key(slot);
+                targets[0] = record.getTarget();
+                copy.write(frames, times, offsets, targets, 1);
+            }
+            copy.commit();
+            copy.seal();
+        } catch (IOException e) {
+            copy.delete();
+            throw e;
+        }
+        // the copy is complete on disk before the original goes
+        segment.delete();
+        return copy;
+    }
+}
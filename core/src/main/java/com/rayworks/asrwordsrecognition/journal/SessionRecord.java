@@ -0,0 +1,176 @@
+package com.rayworks.asrwordsrecognition.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * One result the user saw: the hypothesis, the lesson sentence it was graded against and how
+ * long it took, as kept by the {@link SessionJournal}. Not modified once appended.
+ */
+public final class SessionRecord {
+
+    public static final int NONE = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private long sequence = NONE;
+    private final long timeMillis;
+    private final String hypothesis;
+    private int score;
+    private int target = NONE;
+    private String sentence;
+    private int errors = NONE;
+    private int audioMillis = NONE;
+    private int firstPartialMillis = NONE;
+    private int partialToFinalMillis = NONE;
+    private String audio;
+
+    /** @param hypothesis null when nothing was recognized */
+    public SessionRecord(long timeMillis, String hypothesis) {
+        this.timeMillis = timeMillis;
+        this.hypothesis = hypothesis;
+    }
+
+    public SessionRecord setScore(int score) {
+        this.score = score;
+        return this;
+    }
+
+    /** The lesson sentence the result was graded against, by its index, with the word errors. */
+    public SessionRecord setTarget(int target, String sentence, int errors) {
+        this.target = target;
+        this.sentence = sentence;
+        this.errors = errors;
+        return this;
+    }
+
+    /** Milliseconds, {@link #NONE} where unknown. */
+    public SessionRecord setTimings(int audioMillis, int firstPartialMillis,
+                                    int partialToFinalMillis) {
+        this.audioMillis = audioMillis;
+        this.firstPartialMillis = firstPartialMillis;
+        this.partialToFinalMillis = partialToFinalMillis;
+        return this;
+    }
+
+    /** Where the utterance's audio is kept, e.g. the name of its capture file. */
+    public SessionRecord setAudio(String audio) {
+        this.audio = audio;
+        return this;
+    }
+
+    /** Position in the journal, {@link #NONE} until the record is written. */
+    public long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getHypothesis() {
+        return hypothesis;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public String getSentence() {
+        return sentence;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    public int getAudioMillis() {
+        return audioMillis;
+    }
+
+    public int getFirstPartialMillis() {
+        return firstPartialMillis;
+    }
+
+    public int getPartialToFinalMillis() {
+        return partialToFinalMillis;
+    }
+
+    public String getAudio() {
+        return audio;
+    }
+
+    /** @return an upper bound of the bytes {@link #encode(ByteBuffer)} writes */
+    int maxEncodedBytes() {
+        return 48 + maxBytes(hypothesis) + maxBytes(sentence) + maxBytes(audio);
+    }
+
+    void encode(ByteBuffer out) {
+        out.putLong(sequence);
+        out.putLong(timeMillis);
+        out.putInt(score);
+        out.putInt(target);
+        out.putInt(errors);
+        out.putInt(audioMillis);
+        out.putInt(firstPartialMillis);
+        out.putInt(partialToFinalMillis);
+        putString(out, hypothesis);
+        putString(out, sentence);
+        putString(out, audio);
+    }
+
+    static SessionRecord decode(ByteBuffer in) throws IOException {
+        long sequence = in.getLong();
+        long timeMillis = in.getLong();
+        int score = in.getInt();
+        int target = in.getInt();
+        int errors = in.getInt();
+        int audioMillis = in.getInt();
+        int firstPartialMillis = in.getInt();
+        int partialToFinalMillis = in.getInt();
+        SessionRecord record = new SessionRecord(timeMillis, getString(in))
+                .setScore(score)
+                .setTarget(target, getString(in), errors)
+                .setTimings(audioMillis, firstPartialMillis, partialToFinalMillis)
+                .setAudio(getString(in));
+        record.sequence = sequence;
+        return record;
+    }
+
+    private static int maxBytes(String text) {
+        // UTF-8 takes at most three bytes per UTF-16 unit
+        return 4 + (text == null ? 0 : 3 * text.length());
+    }
+
+    private static void putString(ByteBuffer out, String text) {
+        if (text == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Corrupt record: string of " + length + " bytes");
+        }
+        String text = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+        in.position(in.position() + length);
+        return text;
+    }
+}
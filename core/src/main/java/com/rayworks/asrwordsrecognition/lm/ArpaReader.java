@@ -0,0 +1,217 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Reads ARPA text into the primitive tables of an {@link NgramModel}. */
+final class ArpaReader {
+
+    private ArpaReader() {
+    }
+
+    static NgramModel read(Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader, 64 * 1024);
+
+        int[] counts = readCounts(in);
+        int order = counts.length - 1;
+
+        // unigrams first: they define the vocabulary and therefore the word IDs
+        List<String> unigramWords = new ArrayList<>(counts[1]);
+        float[] rawProbs = new float[counts[1]];
+        float[] rawBackoffs = new float[counts[1]];
+        expectSection(in, 1);
+        for (int i = 0; i < counts[1]; i++) {
+            String[] fields = nextEntry(in, 1);
+            rawProbs[i] = Float.parseFloat(fields[0]);
+            unigramWords.add(fields[1]);
+            rawBackoffs[i] = fields.length > 2 ? Float.parseFloat(fields[2]) : 0f;
+        }
+
+        Vocabulary vocabulary = new Vocabulary(unigramWords);
+        FloatBuffer[] probs = new FloatBuffer[order + 1];
+        FloatBuffer[] backoffs = new FloatBuffer[order + 1];
+        IntBuffer[] words = new IntBuffer[order + 1];
+        IntBuffer[] children = new IntBuffer[order + 1];
+
+        float[] unigramProbs = new float[counts[1]];
+        float[] unigramBackoffs = new float[counts[1]];
+        for (int i = 0; i < counts[1]; i++) {
+            int id = vocabulary.id(unigramWords.get(i));
+            unigramProbs[id] = rawProbs[i];
+            unigramBackoffs[id] = rawBackoffs[i];
+        }
+        probs[1] = FloatBuffer.wrap(unigramProbs);
+        backoffs[1] = FloatBuffer.wrap(unigramBackoffs);
+
+        long[] previousKeys = null;
+        for (int k = 2; k <= order; k++) {
+            expectSection(in, k);
+            int n = counts[k];
+            long[] keys = new long[n];
+            float[] entryProbs = new float[n];
+            float[] entryBackoffs = new float[n];
+            int[] ids = new int[k];
+            for (int i = 0; i < n; i++) {
+                String[] fields = nextEntry(in, k);
+                for (int j = 0; j < k; j++) {
+                    ids[j] = vocabulary.id(fields[j + 1]);
+                    if (ids[j] < 0) {
+                        throw new IOException("Unknown word in " + k + "-gram: " + fields[j + 1]);
+                    }
+                }
+                keys[i] = NgramKeys.pack(ids, 0, k);
+                entryProbs[i] = Float.parseFloat(fields[0]);
+                entryBackoffs[i] = fields.length > k + 1 ? Float.parseFloat(fields[k + 1]) : 0f;
+            }
+
+            long[] sorted = keys.clone();
+            Arrays.sort(sorted);
+            float[] sortedProbs = new float[n];
+            float[] sortedBackoffs = new float[n];
+            int[] lastWords = new int[n];
+            for (int i = 0; i < n; i++) {
+                int index = Arrays.binarySearch(sorted, keys[i]);
+                sortedProbs[index] = entryProbs[i];
+                sortedBackoffs[index] = entryBackoffs[i];
+            }
+            for (int i = 0; i < n; i++) {
+                if (i > 0 && sorted[i] == sorted[i - 1]) {
+                    throw new IOException("Duplicate " + k + "-gram in ARPA file");
+                }
+                lastWords[i] = NgramKeys.last(sorted[i]);
+            }
+
+            probs[k] = FloatBuffer.wrap(sortedProbs);
+            words[k] = IntBuffer.wrap(lastWords);
+            if (k < order) {
+                backoffs[k] = FloatBuffer.wrap(sortedBackoffs);
+            }
+            children[k - 1] = IntBuffer.wrap(childRanges(previousKeys, counts[k - 1], sorted));
+            previousKeys = sorted;
+        }
+        if (order == 1) {
+            backoffs[1] = null;
+        }
+
+        int[] offsets = new int[counts[1] + 1];
+        StringBuilder pool = new StringBuilder(counts[1] * 8);
+        for (int id = 0; id < counts[1]; id++) {
+            offsets[id] = pool.length();
+            pool.append(vocabulary.word(id));
+        }
+        offsets[counts[1]] = pool.length();
+        char[] poolChars = new char[pool.length()];
+        pool.getChars(0, pool.length(), poolChars, 0);
+
+        return new NgramModel(
+                order,
+                counts,
+                IntBuffer.wrap(offsets),
+                CharBuffer.wrap(poolChars),
+                probs,
+                backoffs,
+                words,
+                children);
+    }
+
+    /**
+     * @param parents sorted keys of the lower order, or null for unigrams whose key is the ID
+     * @return for each parent the index of its first extension in {@code keys}, plus an end marker
+     */
+    private static int[] childRanges(long[] parents, int parentCount, long[] keys)
+            throws IOException {
+        int[] ranges = new int[parentCount + 1];
+        int child = 0;
+        for (int parent = 0; parent < parentCount; parent++) {
+            ranges[parent] = child;
+            long parentKey = parents == null ? parent : parents[parent];
+            while (child < keys.length && NgramKeys.context(keys[child]) == parentKey) {
+                child++;
+            }
+        }
+        ranges[parentCount] = child;
+        if (child != keys.length) {
+            throw new IOException("N-gram without its lower-order context in ARPA file");
+        }
+        return ranges;
+    }
+
+    private static int[] readCounts(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null && !line.trim().equals("\\data\\")) {
+            // skip the free-form header
+        }
+        if (line == null) {
+            throw new IOException("Missing \\data\\ section in ARPA file");
+        }
+
+        List<Integer> counts = new ArrayList<>();
+        counts.add(0);
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                if (counts.size() > 1) {
+                    break;
+                }
+                continue;
+            }
+            if (!line.startsWith("ngram ")) {
+                throw new IOException("Unexpected line in \\data\\ section: " + line);
+            }
+            int equals = line.indexOf('=');
+            int k = Integer.parseInt(line.substring(6, equals).trim());
+            if (k != counts.size()) {
+                throw new IOException("N-gram orders out of sequence at: " + line);
+            }
+            counts.add(Integer.parseInt(line.substring(equals + 1).trim()));
+        }
+
+        int order = counts.size() - 1;
+        if (order < 1 || order > NgramModel.MAX_ORDER) {
+            throw new IOException("Unsupported n-gram order " + order);
+        }
+        int[] result = new int[counts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    private static void expectSection(BufferedReader in, int k) throws IOException {
+        String header = "\\" + k + "-grams:";
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.equals(header)) {
+                return;
+            }
+            if (!line.isEmpty()) {
+                throw new IOException("Expected " + header + " but found: " + line);
+            }
+        }
+        throw new IOException("Missing " + header + " section in ARPA file");
+    }
+
+    private static String[] nextEntry(BufferedReader in, int k) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != k + 1 && fields.length != k + 2) {
+                throw new IOException("Malformed " + k + "-gram: " + line);
+            }
+            return fields;
+        }
+        throw new IOException("ARPA file ends inside the " + k + "-gram section");
+    }
+}
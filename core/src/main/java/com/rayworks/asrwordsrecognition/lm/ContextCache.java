@@ -0,0 +1,175 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+/**
+ * Bounded least-recently-used cache in front of {@link NgramModel#logProb(int[], int, int)}.
+ *
+ * <p>Candidates of an N-best list mostly share their prefixes, so the same n-grams are looked up
+ * over and over. Entries are keyed by the {@link NgramKeys packed} word IDs of the n-gram behind
+ * a length marker, and live in preallocated primitive arrays: an open-addressing table of entry
+ * indexes and a doubly-linked recency list. Neither hits nor misses allocate. N-grams with
+ * unknown words bypass the cache. Not thread-safe.
+ */
+public final class ContextCache {
+
+    private static final int NONE = -1;
+
+    private final NgramModel model;
+    private final long[] keys;
+    private final float[] values;
+    private final int[] newer;
+    private final int[] older;
+    // entry index + 1 per slot, 0 when empty
+    private final int[] table;
+
+    private int size;
+    private int newest = NONE;
+    private int oldest = NONE;
+    private long hits;
+    private long misses;
+
+    public ContextCache(NgramModel model, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        this.model = model;
+        keys = new long[capacity];
+        values = new float[capacity];
+        newer = new int[capacity];
+        older = new int[capacity];
+        // at most half full, so probe sequences stay short
+        table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    public NgramModel getModel() {
+        return model;
+    }
+
+    /** {@link NgramModel#logProb(int[], int, int)}, from the cache when possible. */
+    public float logProb(int[] sequence, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (sequence[i] < 0) {
+                return model.logProb(sequence, offset, length);
+            }
+        }
+        long key = (1L << (NgramKeys.BITS * length)) | NgramKeys.pack(sequence, offset, length);
+        int slot = find(key);
+        if (table[slot] != 0) {
+            int entry = table[slot] - 1;
+            touch(entry);
+            hits++;
+            return values[entry];
+        }
+
+        misses++;
+        float value = model.logProb(sequence, offset, length);
+        int entry;
+        if (size < keys.length) {
+            entry = size++;
+        } else {
+            entry = oldest;
+            unlink(entry);
+            remove(keys[entry]);
+            slot = find(key);
+        }
+        keys[entry] = key;
+        values[entry] = value;
+        table[slot] = entry + 1;
+        linkNewest(entry);
+        return value;
+    }
+
+    /**
+     * Log10 probability of a sentence given as in {@link NgramModel#sentenceLogProb(int[],
+     * int)}.
+     */
+    public double sentenceLogProb(int[] sentence, int length) {
+        int order = model.order();
+        double total = 0;
+        for (int i = 1; i < length; i++) {
+            int start = Math.max(0, i + 1 - order);
+            total += logProb(sentence, start, i + 1 - start);
+        }
+        return total;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /** @return the slot holding {@code key}, or the empty slot where it belongs */
+    private int find(long key) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0 && keys[table[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Deletes a key from the table, shifting later entries of its probe run back. */
+    private void remove(long key) {
+        int mask = table.length - 1;
+        int hole = find(key);
+        table[hole] = 0;
+        int slot = (hole + 1) & mask;
+        while (table[slot] != 0) {
+            int home = hash(keys[table[slot] - 1]) & mask;
+            // move the entry into the hole unless its home lies cyclically in (hole, slot]
+            boolean stays = hole <= slot ? hole < home && home <= slot : hole < home || home <= slot;
+            if (!stays) {
+                table[hole] = table[slot];
+                table[slot] = 0;
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void touch(int entry) {
+        if (entry != newest) {
+            unlink(entry);
+            linkNewest(entry);
+        }
+    }
+
+    private void unlink(int entry) {
+        int before = older[entry];
+        int after = newer[entry];
+        if (before != NONE) {
+            newer[before] = after;
+        } else {
+            oldest = after;
+        }
+        if (after != NONE) {
+            older[after] = before;
+        } else {
+            newest = before;
+        }
+    }
+
+    private void linkNewest(int entry) {
+        older[entry] = newest;
+        newer[entry] = NONE;
+        if (newest != NONE) {
+            newer[newest] = entry;
+        } else {
+            oldest = entry;
+        }
+        newest = entry;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
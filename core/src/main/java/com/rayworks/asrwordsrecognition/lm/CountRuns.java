@@ -0,0 +1,179 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorted count runs spilled to disk while counting, and the k-way merge that sums them back into
+ * a single sorted {@link CountStream}.
+ */
+final class CountRuns {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CountRuns() {
+    }
+
+    /** Writes {@code map} sorted by key to {@code file}; the map is left untouched. */
+    static void spill(LongCountMap map, File file) throws IOException {
+        long[] keys = map.sortedKeys();
+        DataOutputStream out =
+                new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            for (long key : keys) {
+                out.writeLong(key);
+                out.writeInt(map.get(key));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** The sorted contents of an in-memory map. */
+    static CountStream of(final LongCountMap map) {
+        final long[] keys = map.sortedKeys();
+        return new CountStream() {
+            private int index = -1;
+
+            @Override
+            public boolean next() {
+                return ++index < keys.length;
+            }
+
+            @Override
+            public long key() {
+                return keys[index];
+            }
+
+            @Override
+            public int count() {
+                return map.get(keys[index]);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    static CountStream open(final File file) throws IOException {
+        final DataInputStream in =
+                new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        return new CountStream() {
+            private long key;
+            private int count;
+
+            @Override
+            public boolean next() throws IOException {
+                try {
+                    key = in.readLong();
+                } catch (EOFException e) {
+                    return false;
+                }
+                count = in.readInt();
+                return true;
+            }
+
+            @Override
+            public long key() {
+                return key;
+            }
+
+            @Override
+            public int count() {
+                return count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    /** Merges sorted streams, summing the counts of keys that appear in several of them. */
+    static CountStream merge(List<CountStream> streams) throws IOException {
+        if (streams.size() == 1) {
+            return streams.get(0);
+        }
+        return new Merger(streams);
+    }
+
+    private static final class Merger implements CountStream {
+        private final List<CountStream> sources;
+        private final PriorityQueue<CountStream> heap;
+        private long key;
+        private int count;
+
+        Merger(List<CountStream> sources) throws IOException {
+            this.sources = sources;
+            heap =
+                    new PriorityQueue<>(
+                            Math.max(1, sources.size()),
+                            new Comparator<CountStream>() {
+                                @Override
+                                public int compare(CountStream a, CountStream b) {
+                                    return a.key() < b.key() ? -1 : (a.key() == b.key() ? 0 : 1);
+                                }
+                            });
+            for (CountStream source : sources) {
+                if (source.next()) {
+                    heap.add(source);
+                }
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            CountStream head = heap.poll();
+            if (head == null) {
+                return false;
+            }
+            key = head.key();
+            count = head.count();
+            advance(head);
+
+            while (!heap.isEmpty() && heap.peek().key() == key) {
+                CountStream same = heap.poll();
+                count += same.count();
+                advance(same);
+            }
+            return true;
+        }
+
+        private void advance(CountStream stream) throws IOException {
+            if (stream.next()) {
+                heap.add(stream);
+            }
+        }
+
+        @Override
+        public long key() {
+            return key;
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (CountStream source : sources) {
+                source.close();
+            }
+        }
+    }
+}
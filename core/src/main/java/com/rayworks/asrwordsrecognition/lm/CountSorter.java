@@ -0,0 +1,65 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sorts (key, count) pairs that need not fit in memory: they are collected in a table that is
+ * spilled as a sorted run whenever it grows past its budget, and {@link #sorted()} merges the runs
+ * back. Counts added under the same key are summed.
+ */
+final class CountSorter implements Closeable {
+
+    private final long maxEntriesInMemory;
+    private final File tempDir;
+    private final LongCountMap memory = new LongCountMap(1024);
+    private final List<File> runs = new ArrayList<>();
+
+    CountSorter(long maxEntriesInMemory, File tempDir) {
+        this.maxEntriesInMemory = maxEntriesInMemory;
+        this.tempDir = tempDir;
+    }
+
+    void add(long key, int count) throws IOException {
+        memory.add(key, count);
+        if (memory.size() > maxEntriesInMemory) {
+            File run = File.createTempFile("sorted", ".run", tempDir);
+            runs.add(run);
+            CountRuns.spill(memory, run);
+            memory.clear();
+        }
+    }
+
+    /** Everything added so far, by ascending key. */
+    CountStream sorted() throws IOException {
+        List<CountStream> streams = new ArrayList<>(runs.size() + 1);
+        try {
+            for (File run : runs) {
+                streams.add(CountRuns.open(run));
+            }
+        } catch (IOException e) {
+            for (CountStream stream : streams) {
+                stream.close();
+            }
+            throw e;
+        }
+        streams.add(CountRuns.of(memory));
+        return CountRuns.merge(streams);
+    }
+
+    int spilledRuns() {
+        return runs.size();
+    }
+
+    @Override
+    public void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        memory.clear();
+    }
+}
@@ -0,0 +1,15 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/** Cursor over (packed n-gram key, count) pairs in ascending key order. */
+interface CountStream extends Closeable {
+
+    /** Advances to the next pair, returning false once exhausted. */
+    boolean next() throws IOException;
+
+    long key();
+
+    int count();
+}
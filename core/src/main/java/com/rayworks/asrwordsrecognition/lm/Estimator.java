@@ -0,0 +1,286 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Turns the counts of an {@link NgramCounter} into QuickLM style probabilities and backoff
+ * weights and writes them as ARPA text.
+ *
+ * <p>Bigrams and trigrams are only ever streamed, so memory stays within the counter's budget
+ * whatever the size of the corpus. The backoff of a bigram needs the count of the bigram that
+ * ends each of its trigrams; those tail counts are joined to the trigrams by sorting the
+ * trigrams on their last two words and back, through {@link CountSorter}s. The bigram and trigram
+ * sections are formatted into temporary files and appended after the header, which needs their
+ * sizes.
+ */
+final class Estimator {
+
+    private final Vocabulary vocabulary;
+    private final NgramCounter counter;
+    private final double discountMass;
+    private final double keptMass;
+    private final long maxEntriesInMemory;
+    private final File tempDir;
+
+    private double[] unigramProbs;
+    private int spilledRuns;
+
+    Estimator(Vocabulary vocabulary, NgramCounter counter, double discountMass,
+              long maxEntriesInMemory, File tempDir) {
+        this.vocabulary = vocabulary;
+        this.counter = counter;
+        this.discountMass = discountMass;
+        this.keptMass = 1.0 - discountMass;
+        this.maxEntriesInMemory = maxEntriesInMemory;
+        this.tempDir = tempDir;
+    }
+
+    void write(int sentences, Writer out) throws IOException {
+        long[] unigramCounts = counter.unigrams();
+        long total = 0;
+        for (long count : unigramCounts) {
+            total += count;
+        }
+
+        unigramProbs = new double[unigramCounts.length];
+        for (int w = 0; w < unigramCounts.length; w++) {
+            unigramProbs[w] = keptMass * unigramCounts[w] / total;
+        }
+
+        File bigramSection = File.createTempFile("bigrams", ".arpa", tempDir);
+        File trigramSection = File.createTempFile("trigrams", ".arpa", tempDir);
+        CountSorter tails = tailCounts();
+        try {
+            long[] sizes = writeSections(tails, bigramSection, trigramSection);
+
+            out.write("Language model created by QuickLmCompiler\n\n");
+            out.write("The (fixed) discount mass is " + discountMass + ". ");
+            out.write("The backoffs are computed using the ratio method.\n");
+            out.write(
+                    "This model based on a corpus of "
+                            + sentences
+                            + " sentences and "
+                            + vocabulary.size()
+                            + " words\n\n");
+
+            out.write("\\data\\\n");
+            out.write("ngram 1=" + vocabulary.size() + "\n");
+            out.write("ngram 2=" + sizes[0] + "\n");
+            out.write("ngram 3=" + sizes[1] + "\n\n");
+
+            writeUnigrams(out);
+
+            out.write("\\2-grams:\n");
+            copy(bigramSection, out);
+            out.write('\n');
+
+            out.write("\\3-grams:\n");
+            copy(trigramSection, out);
+            out.write("\n\\end\\\n");
+            out.flush();
+        } finally {
+            tails.close();
+            bigramSection.delete();
+            trigramSection.delete();
+        }
+    }
+
+    /** Runs spilled to disk by the last {@link #write(int, Writer)}. */
+    int spilledRuns() {
+        return spilledRuns;
+    }
+
+    /**
+     * Sorts the trigrams by their last two words, looks up the count of those in the bigram
+     * stream, and sorts the counts back into trigram order.
+     *
+     * @return the count of the tail bigram of every trigram, keyed by the trigram
+     */
+    private CountSorter tailCounts() throws IOException {
+        CountSorter rotated = new CountSorter(maxEntriesInMemory, tempDir);
+        CountSorter tails = new CountSorter(maxEntriesInMemory, tempDir);
+        try {
+            CountStream trigrams = counter.trigrams();
+            try {
+                while (trigrams.next()) {
+                    rotated.add(rotate(trigrams.key()), 1);
+                }
+            } finally {
+                trigrams.close();
+            }
+
+            CountStream byTail = rotated.sorted();
+            CountStream bigrams = counter.bigrams();
+            try {
+                boolean more = bigrams.next();
+                while (byTail.next()) {
+                    long key = byTail.key();
+                    long tail = NgramKeys.context(key);
+                    // every trigram's tail is a bigram of the same sentence
+                    while (more && bigrams.key() < tail) {
+                        more = bigrams.next();
+                    }
+                    tails.add(unrotate(key), bigrams.count());
+                }
+            } finally {
+                byTail.close();
+                bigrams.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            tails.close();
+            throw e;
+        } finally {
+            spilledRuns = rotated.spilledRuns();
+            rotated.close();
+        }
+        spilledRuns += tails.spilledRuns();
+        return tails;
+    }
+
+    /** (w1, w2, w3) to (w2, w3, w1), which sorts by the tail bigram. */
+    private static long rotate(long trigram) {
+        return (NgramKeys.suffix(trigram, 3) << NgramKeys.BITS) | NgramKeys.word(trigram, 3, 0);
+    }
+
+    private static long unrotate(long rotated) {
+        return ((long) NgramKeys.last(rotated) << (2 * NgramKeys.BITS))
+                | NgramKeys.context(rotated);
+    }
+
+    /**
+     * Formats the bigrams and, context by context, their trigrams, whose mass makes up the
+     * bigram's backoff.
+     *
+     * @return the number of bigrams and of trigrams
+     */
+    private long[] writeSections(CountSorter tails, File bigramSection, File trigramSection)
+            throws IOException {
+        long[] unigramCounts = counter.unigrams();
+        Writer bigramOut = open(bigramSection);
+        Writer trigramOut = null;
+        CountStream bigrams = null;
+        CountStream trigrams = null;
+        CountStream tailCounts = null;
+        StringBuilder line = new StringBuilder(64);
+        long bigramsWritten = 0;
+        long trigramsWritten = 0;
+        try {
+            trigramOut = open(trigramSection);
+            bigrams = counter.bigrams();
+            trigrams = counter.trigrams();
+            tailCounts = tails.sorted();
+            // trigrams and their tail counts come in the same order, sorted by context
+            boolean moreTrigrams = trigrams.next() && tailCounts.next();
+            while (bigrams.next()) {
+                long context = bigrams.key();
+                int contextCount = bigrams.count();
+                double followMass = 0;
+                while (moreTrigrams && NgramKeys.context(trigrams.key()) == context) {
+                    long key = trigrams.key();
+                    int w2 = NgramKeys.word(key, 3, 1);
+                    followMass += keptMass * tailCounts.count() / unigramCounts[w2];
+
+                    line.setLength(0);
+                    QuickLmCompiler.appendLog10(line, keptMass * trigrams.count() / contextCount);
+                    line.append(' ')
+                            .append(vocabulary.word(NgramKeys.word(key, 3, 0)))
+                            .append(' ')
+                            .append(vocabulary.word(w2))
+                            .append(' ')
+                            .append(vocabulary.word(NgramKeys.word(key, 3, 2)))
+                            .append('\n');
+                    trigramOut.append(line);
+                    trigramsWritten++;
+                    moreTrigrams = trigrams.next() && tailCounts.next();
+                }
+
+                int w1 = NgramKeys.word(context, 2, 0);
+                line.setLength(0);
+                QuickLmCompiler.appendLog10(line, keptMass * contextCount / unigramCounts[w1]);
+                line.append(' ')
+                        .append(vocabulary.word(w1))
+                        .append(' ')
+                        .append(vocabulary.word(NgramKeys.last(context)))
+                        .append(' ');
+                QuickLmCompiler.appendLog10(line, backoff(followMass));
+                line.append('\n');
+                bigramOut.append(line);
+                bigramsWritten++;
+            }
+        } finally {
+            close(bigrams);
+            close(trigrams);
+            close(tailCounts);
+            bigramOut.close();
+            if (trigramOut != null) {
+                trigramOut.close();
+            }
+        }
+        return new long[] {bigramsWritten, trigramsWritten};
+    }
+
+    private void writeUnigrams(Writer out) throws IOException {
+        double[] followMass = new double[unigramProbs.length];
+        CountStream bigrams = counter.bigrams();
+        try {
+            while (bigrams.next()) {
+                long key = bigrams.key();
+                followMass[NgramKeys.word(key, 2, 0)] += unigramProbs[NgramKeys.last(key)];
+            }
+        } finally {
+            bigrams.close();
+        }
+
+        StringBuilder line = new StringBuilder(64);
+        out.write("\\1-grams:\n");
+        for (int w = 0; w < unigramProbs.length; w++) {
+            line.setLength(0);
+            QuickLmCompiler.appendLog10(line, unigramProbs[w]);
+            line.append(' ').append(vocabulary.word(w)).append(' ');
+            QuickLmCompiler.appendLog10(line, backoff(followMass[w]));
+            line.append('\n');
+            out.append(line);
+        }
+        out.write('\n');
+    }
+
+    private double backoff(double followMass) {
+        return discountMass / (1.0 - followMass);
+    }
+
+    private static Writer open(File section) throws IOException {
+        return new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(section), QuickLmCompiler.UTF_8),
+                64 * 1024);
+    }
+
+    private static void close(CountStream stream) throws IOException {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private static void copy(File section, Writer out) throws IOException {
+        BufferedReader in =
+                new BufferedReader(
+                        new InputStreamReader(new FileInputStream(section), QuickLmCompiler.UTF_8),
+                        64 * 1024);
+        try {
+            char[] buffer = new char[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
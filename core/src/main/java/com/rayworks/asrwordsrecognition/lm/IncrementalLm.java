@@ -0,0 +1,178 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Trigram counts that grow sentence by sentence, for adding practice sentences at run time.
+ *
+ * <p>{@link QuickLmCompiler} numbers words in sorted order, so a new word shifts the IDs of the
+ * words after it and the counts with them. Here IDs are assigned as words are first seen and the
+ * counts are kept between builds: adding a sentence only counts that sentence, and {@link
+ * #write(Writer)} maps the IDs to sorted order on the way out. The model written is the one
+ * {@link QuickLmCompiler} compiles from all the sentences added so far. Not thread-safe.
+ */
+public final class IncrementalLm {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> words = new ArrayList<>();
+    private long[] unigrams = new long[64];
+    private final LongCountMap bigrams = new LongCountMap(1024);
+    private final LongCountMap trigrams = new LongCountMap(1024);
+    private int sentences;
+
+    private double discountMass = QuickLmCompiler.DEFAULT_DISCOUNT_MASS;
+    private File tempDir;
+
+    public IncrementalLm() {
+        id(Vocabulary.SENTENCE_START);
+        id(Vocabulary.SENTENCE_END);
+    }
+
+    /** @see QuickLmCompiler#setDiscountMass(double) */
+    public IncrementalLm setDiscountMass(double discountMass) {
+        if (discountMass <= 0 || discountMass >= 1) {
+            throw new IllegalArgumentException("Discount mass must be in (0, 1): " + discountMass);
+        }
+        this.discountMass = discountMass;
+        return this;
+    }
+
+    /** Directory for the temporary trigram section, defaults to {@code java.io.tmpdir}. */
+    public IncrementalLm setTempDir(File tempDir) {
+        this.tempDir = tempDir;
+        return this;
+    }
+
+    /** @return the words of a sentence as the model counts them */
+    public static String[] words(String sentence) {
+        return QuickLmCompiler.tokenize(sentence);
+    }
+
+    /** @return false for a blank sentence, which counts nothing */
+    public boolean addSentence(String sentence) {
+        String[] tokens = words(sentence);
+        if (tokens.length == 0) {
+            return false;
+        }
+
+        int[] sequence = new int[tokens.length + 2];
+        sequence[0] = id(Vocabulary.SENTENCE_START);
+        for (int i = 0; i < tokens.length; i++) {
+            sequence[i + 1] = id(tokens[i]);
+        }
+        sequence[sequence.length - 1] = id(Vocabulary.SENTENCE_END);
+
+        for (int i = 0; i < sequence.length; i++) {
+            unigrams[sequence[i]]++;
+            if (i >= 1) {
+                bigrams.add(NgramKeys.bigram(sequence[i - 1], sequence[i]), 1);
+            }
+            if (i >= 2) {
+                trigrams.add(NgramKeys.trigram(sequence[i - 2], sequence[i - 1], sequence[i]), 1);
+            }
+        }
+        sentences++;
+        return true;
+    }
+
+    /**
+     * Adds a corpus of one sentence per line, like the one {@code 6805.lm} is compiled from.
+     *
+     * @return the number of sentences added
+     */
+    public int addCorpus(File corpus) throws IOException {
+        BufferedReader in =
+                new BufferedReader(new InputStreamReader(new FileInputStream(corpus),
+                        QuickLmCompiler.UTF_8));
+        try {
+            int added = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (addSentence(line)) {
+                    added++;
+                }
+            }
+            return added;
+        } finally {
+            in.close();
+        }
+    }
+
+    public int getSentenceCount() {
+        return sentences;
+    }
+
+    public boolean contains(String word) {
+        return ids.containsKey(word);
+    }
+
+    /** @return the words seen so far, sorted, without the sentence markers */
+    public List<String> getWords() {
+        TreeSet<String> sorted = new TreeSet<>(words);
+        sorted.remove(Vocabulary.SENTENCE_START);
+        sorted.remove(Vocabulary.SENTENCE_END);
+        return new ArrayList<>(sorted);
+    }
+
+    public void write(File arpa) throws IOException {
+        Writer out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(arpa), QuickLmCompiler.UTF_8));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Writes the ARPA model of the sentences added so far. */
+    public void write(Writer out) throws IOException {
+        Vocabulary vocabulary = new Vocabulary(words);
+        int[] sortedIds = new int[words.size()];
+        long[] sortedUnigrams = new long[words.size()];
+        for (int i = 0; i < sortedIds.length; i++) {
+            sortedIds[i] = vocabulary.id(words.get(i));
+            sortedUnigrams[sortedIds[i]] = unigrams[i];
+        }
+
+        NgramCounter counter =
+                new NgramCounter(vocabulary.size(), null, 1, Long.MAX_VALUE, tempDir);
+        try {
+            counter.add(sortedUnigrams, bigrams.remap(sortedIds, 2), trigrams.remap(sortedIds, 3));
+            new Estimator(vocabulary, counter, discountMass, Long.MAX_VALUE, tempDir)
+                    .write(sentences, out);
+        } finally {
+            counter.close();
+        }
+    }
+
+    private int id(String word) {
+        Integer id = ids.get(word);
+        if (id != null) {
+            return id;
+        }
+        if (words.size() == NgramKeys.MAX_WORDS) {
+            throw new IllegalStateException("Vocabulary too large: " + word);
+        }
+        id = words.size();
+        ids.put(word, id);
+        words.add(word);
+        if (id == unigrams.length) {
+            unigrams = Arrays.copyOf(unigrams, id * 2);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,141 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from non-negative packed n-gram keys to counts, without boxing.
+ */
+final class LongCountMap {
+
+    private static final long EMPTY = -1L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] counts;
+    private int size;
+    private int threshold;
+
+    LongCountMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /** Approximate heap cost of one entry, used for memory budgeting. */
+    static int bytesPerEntry() {
+        return (int) ((8 + 4) / LOAD_FACTOR) + 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(long key, int delta) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            long current = keys[slot];
+            if (current == key) {
+                counts[slot] += delta;
+                return;
+            }
+            if (current == EMPTY) {
+                keys[slot] = key;
+                counts[slot] = delta;
+                if (++size > threshold) {
+                    rehash();
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int get(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            long current = keys[slot];
+            if (current == key) {
+                return counts[slot];
+            }
+            if (current == EMPTY) {
+                return 0;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** Adds every entry of {@code other} to this map. */
+    void addAll(LongCountMap other) {
+        long[] otherKeys = other.keys;
+        int[] otherCounts = other.counts;
+        for (int i = 0; i < otherKeys.length; i++) {
+            if (otherKeys[i] != EMPTY) {
+                add(otherKeys[i], otherCounts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return a copy with every word {@code w} of the keys, n-grams of {@code order} words,
+     *     replaced by {@code ids[w]}
+     */
+    LongCountMap remap(int[] ids, int order) {
+        LongCountMap remapped = new LongCountMap(size);
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            if (key != EMPTY) {
+                long mapped = 0;
+                for (int position = 0; position < order; position++) {
+                    mapped = (mapped << NgramKeys.BITS) | ids[NgramKeys.word(key, order, position)];
+                }
+                remapped.add(mapped, counts[i]);
+            }
+        }
+        return remapped;
+    }
+
+    /** @return the keys in ascending order. */
+    long[] sortedKeys() {
+        long[] sorted = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                sorted[n++] = key;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        counts = new int[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        allocate(oldKeys.length << 1);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                add(oldKeys[i], oldCounts[i]);
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
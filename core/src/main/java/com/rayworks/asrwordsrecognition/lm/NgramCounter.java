@@ -0,0 +1,195 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Counts uni-, bi- and trigrams of sentences given as word-ID arrays.
+ *
+ * <p>Each batch is split into slices that are counted in parallel and then merged into the
+ * running totals. Once the totals exceed the in-memory budget they are written out as sorted
+ * runs, and {@link #bigrams()} / {@link #trigrams()} merge the runs back on the way out.
+ */
+final class NgramCounter implements Closeable {
+
+    private final int vocabularySize;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final long maxEntriesInMemory;
+    private final File tempDir;
+
+    private final long[] unigrams;
+    private final LongCountMap bigrams = new LongCountMap(1024);
+    private final LongCountMap trigrams = new LongCountMap(1024);
+    private final List<File> bigramRuns = new ArrayList<>();
+    private final List<File> trigramRuns = new ArrayList<>();
+
+    NgramCounter(
+            int vocabularySize,
+            ExecutorService executor,
+            int parallelism,
+            long maxEntriesInMemory,
+            File tempDir) {
+        this.vocabularySize = vocabularySize;
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxEntriesInMemory = maxEntriesInMemory;
+        this.tempDir = tempDir;
+        unigrams = new long[vocabularySize];
+    }
+
+    /** Counts a batch of sentences, each already wrapped in sentence start and end IDs. */
+    void count(final List<int[]> sentences) throws IOException {
+        int slices = Math.min(parallelism, Math.max(1, sentences.size() / 256));
+        if (slices == 1) {
+            merge(countSlice(sentences, 0, sentences.size()));
+        } else {
+            List<Future<Partial>> futures = new ArrayList<>(slices);
+            int step = (sentences.size() + slices - 1) / slices;
+            for (int from = 0; from < sentences.size(); from += step) {
+                final int start = from;
+                final int end = Math.min(sentences.size(), from + step);
+                futures.add(
+                        executor.submit(
+                                new Callable<Partial>() {
+                                    @Override
+                                    public Partial call() {
+                                        return countSlice(sentences, start, end);
+                                    }
+                                }));
+            }
+            for (Future<Partial> future : futures) {
+                merge(await(future));
+            }
+        }
+
+        if (bigrams.size() + trigrams.size() > maxEntriesInMemory) {
+            spill();
+        }
+    }
+
+    /** Adds counts kept elsewhere, already in this counter's word IDs. */
+    void add(long[] unigramCounts, LongCountMap bigramCounts, LongCountMap trigramCounts)
+            throws IOException {
+        for (int i = 0; i < vocabularySize; i++) {
+            unigrams[i] += unigramCounts[i];
+        }
+        bigrams.addAll(bigramCounts);
+        trigrams.addAll(trigramCounts);
+        if (bigrams.size() + trigrams.size() > maxEntriesInMemory) {
+            spill();
+        }
+    }
+
+    /** @return the total count of every word, indexed by word ID. */
+    long[] unigrams() {
+        return unigrams;
+    }
+
+    CountStream bigrams() throws IOException {
+        return stream(bigrams, bigramRuns);
+    }
+
+    CountStream trigrams() throws IOException {
+        return stream(trigrams, trigramRuns);
+    }
+
+    int spilledRuns() {
+        return trigramRuns.size();
+    }
+
+    @Override
+    public void close() {
+        for (File run : bigramRuns) {
+            run.delete();
+        }
+        for (File run : trigramRuns) {
+            run.delete();
+        }
+        bigramRuns.clear();
+        trigramRuns.clear();
+    }
+
+    private Partial countSlice(List<int[]> sentences, int from, int to) {
+        Partial partial = new Partial(vocabularySize, (to - from) * 8);
+        for (int s = from; s < to; s++) {
+            int[] words = sentences.get(s);
+            for (int i = 0; i < words.length; i++) {
+                partial.unigrams[words[i]]++;
+                if (i >= 1) {
+                    partial.bigrams.add(NgramKeys.bigram(words[i - 1], words[i]), 1);
+                }
+                if (i >= 2) {
+                    partial.trigrams.add(NgramKeys.trigram(words[i - 2], words[i - 1], words[i]), 1);
+                }
+            }
+        }
+        return partial;
+    }
+
+    private void merge(Partial partial) {
+        for (int i = 0; i < vocabularySize; i++) {
+            unigrams[i] += partial.unigrams[i];
+        }
+        bigrams.addAll(partial.bigrams);
+        trigrams.addAll(partial.trigrams);
+    }
+
+    private void spill() throws IOException {
+        File bigramRun = File.createTempFile("bigrams", ".run", tempDir);
+        bigramRuns.add(bigramRun);
+        CountRuns.spill(bigrams, bigramRun);
+        bigrams.clear();
+
+        File trigramRun = File.createTempFile("trigrams", ".run", tempDir);
+        trigramRuns.add(trigramRun);
+        CountRuns.spill(trigrams, trigramRun);
+        trigrams.clear();
+    }
+
+    private static CountStream stream(LongCountMap memory, List<File> runs) throws IOException {
+        List<CountStream> streams = new ArrayList<>(runs.size() + 1);
+        try {
+            for (File run : runs) {
+                streams.add(CountRuns.open(run));
+            }
+        } catch (IOException e) {
+            for (CountStream stream : streams) {
+                stream.close();
+            }
+            throw e;
+        }
+        streams.add(CountRuns.of(memory));
+        return CountRuns.merge(streams);
+    }
+
+    private static Partial await(Future<Partial> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while counting n-grams");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to count n-grams", e.getCause());
+        }
+    }
+
+    private static final class Partial {
+        final int[] unigrams;
+        final LongCountMap bigrams;
+        final LongCountMap trigrams;
+
+        Partial(int vocabularySize, int expected) {
+            unigrams = new int[vocabularySize];
+            bigrams = new LongCountMap(expected);
+            trigrams = new LongCountMap(expected);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+/**
+ * Packs n-gram word-ID tuples into a single {@code long}, {@value #BITS} bits per word, oldest
+ * word in the highest bits. Packed keys therefore sort in the same order as the word-ID tuples,
+ * and the key of an n-gram's context is simply {@code key >>> BITS}.
+ */
+public final class NgramKeys {
+
+    public static final int BITS = 21;
+    public static final int MAX_WORDS = 1 << BITS;
+    static final long MASK = MAX_WORDS - 1;
+
+    private NgramKeys() {
+    }
+
+    public static long bigram(int w1, int w2) {
+        return ((long) w1 << BITS) | w2;
+    }
+
+    public static long trigram(int w1, int w2, int w3) {
+        return ((long) w1 << (2 * BITS)) | ((long) w2 << BITS) | w3;
+    }
+
+    /** @return the packed key of {@code words[offset .. offset + length)}. */
+    public static long pack(int[] words, int offset, int length) {
+        long key = 0;
+        for (int i = 0; i < length; i++) {
+            key = (key << BITS) | words[offset + i];
+        }
+        return key;
+    }
+
+    /** @return the last word of a packed key. */
+    public static int last(long key) {
+        return (int) (key & MASK);
+    }
+
+    /** @return the key without its last word. */
+    public static long context(long key) {
+        return key >>> BITS;
+    }
+
+    /** @return the key without its first word, for an n-gram of {@code order} words. */
+    public static long suffix(long key, int order) {
+        return key & ((1L << (BITS * (order - 1))) - 1);
+    }
+
+    /** @return the {@code position}-th word of an n-gram of {@code order} words. */
+    public static int word(long key, int order, int position) {
+        return (int) ((key >>> (BITS * (order - 1 - position))) & MASK);
+    }
+}
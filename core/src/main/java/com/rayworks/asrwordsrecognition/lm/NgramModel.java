@@ -0,0 +1,390 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Back-off n-gram language model (up to trigrams) stored as a sorted-array trie.
+ *
+ * <p>Order 1 is indexed directly by word ID. Every higher order holds the last word ID of each
+ * entry, sorted within its parent, and each lower order has a {@code children} table giving the
+ * range of its extensions. Log10 probabilities and backoffs live in parallel float tables, and
+ * the words themselves in a sorted UTF-16 pool, so the model is nothing but primitive buffers:
+ * heap arrays when read from ARPA text, views of one mapping when opened from a snapshot.
+ *
+ * <p>{@link #wordId(CharSequence)}, {@link #logProb(int[], int, int)} and {@link
+ * #sentenceLogProb(int[], int)} do not allocate.
+ */
+public final class NgramModel {
+
+    public static final int MAX_ORDER = 3;
+
+    /** Log10 probability reported for words outside the vocabulary. */
+    public static final float UNKNOWN_LOG_PROB = -99f;
+
+    static final int MAGIC = 0x4E47524D; // "NGRM"
+    static final int VERSION = 1;
+
+    private final int order;
+    private final int[] counts;
+    private final IntBuffer wordOffsets;
+    private final CharBuffer wordPool;
+    private final FloatBuffer[] probs;
+    private final FloatBuffer[] backoffs;
+    private final IntBuffer[] words;
+    private final IntBuffer[] children;
+
+    private final int sentenceStart;
+    private final int sentenceEnd;
+
+    NgramModel(
+            int order,
+            int[] counts,
+            IntBuffer wordOffsets,
+            CharBuffer wordPool,
+            FloatBuffer[] probs,
+            FloatBuffer[] backoffs,
+            IntBuffer[] words,
+            IntBuffer[] children) {
+        this.order = order;
+        this.counts = counts;
+        this.wordOffsets = wordOffsets;
+        this.wordPool = wordPool;
+        this.probs = probs;
+        this.backoffs = backoffs;
+        this.words = words;
+        this.children = children;
+
+        sentenceStart = wordId(Vocabulary.SENTENCE_START);
+        sentenceEnd = wordId(Vocabulary.SENTENCE_END);
+    }
+
+    /** Reads an ARPA text model. */
+    public static NgramModel load(File arpa) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(arpa), QuickLmCompiler.UTF_8);
+        try {
+            return ArpaReader.read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Maps a snapshot written by {@link #save(File)}; only the headers are read eagerly. */
+    public static NgramModel open(File snapshot) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(snapshot, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return fromSnapshot(mapped);
+        } finally {
+            raf.close();
+        }
+    }
+
+    static NgramModel fromSnapshot(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an n-gram model snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported n-gram snapshot version " + buffer.getInt(4));
+        }
+
+        int order = buffer.getInt(8);
+        if (order < 1 || order > MAX_ORDER) {
+            throw new IOException("Unsupported n-gram order " + order);
+        }
+        int[] counts = new int[order + 1];
+        int pos = 12;
+        for (int k = 1; k <= order; k++) {
+            counts[k] = buffer.getInt(pos);
+            pos += 4;
+        }
+        int poolLength = buffer.getInt(pos);
+        pos += 4;
+
+        IntBuffer wordOffsets = slice(buffer, pos, 4 * (counts[1] + 1)).asIntBuffer();
+        pos += 4 * (counts[1] + 1);
+        CharBuffer wordPool = slice(buffer, pos, 2 * poolLength).asCharBuffer();
+        pos += align(2 * poolLength);
+
+        FloatBuffer[] probs = new FloatBuffer[order + 1];
+        FloatBuffer[] backoffs = new FloatBuffer[order + 1];
+        IntBuffer[] words = new IntBuffer[order + 1];
+        IntBuffer[] children = new IntBuffer[order + 1];
+        for (int k = 1; k <= order; k++) {
+            int n = counts[k];
+            probs[k] = slice(buffer, pos, 4 * n).asFloatBuffer();
+            pos += 4 * n;
+            if (k > 1) {
+                words[k] = slice(buffer, pos, 4 * n).asIntBuffer();
+                pos += 4 * n;
+            }
+            if (k < order) {
+                backoffs[k] = slice(buffer, pos, 4 * n).asFloatBuffer();
+                pos += 4 * n;
+                children[k] = slice(buffer, pos, 4 * (n + 1)).asIntBuffer();
+                pos += 4 * (n + 1);
+            }
+        }
+        if (pos != buffer.limit()) {
+            throw new IOException("Truncated n-gram snapshot");
+        }
+
+        return new NgramModel(order, counts, wordOffsets, wordPool, probs, backoffs, words, children);
+    }
+
+    /** Writes a snapshot that {@link #open(File)} can map without parsing. */
+    public void save(File snapshot) throws IOException {
+        DataOutputStream out =
+                new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(snapshot), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(order);
+            for (int k = 1; k <= order; k++) {
+                out.writeInt(counts[k]);
+            }
+            int poolLength = wordPool.limit();
+            out.writeInt(poolLength);
+
+            writeInts(out, wordOffsets);
+            for (int i = 0; i < poolLength; i++) {
+                out.writeChar(wordPool.get(i));
+            }
+            for (int pad = align(2 * poolLength) - 2 * poolLength; pad > 0; pad--) {
+                out.writeByte(0);
+            }
+
+            for (int k = 1; k <= order; k++) {
+                writeFloats(out, probs[k]);
+                if (k > 1) {
+                    writeInts(out, words[k]);
+                }
+                if (k < order) {
+                    writeFloats(out, backoffs[k]);
+                    writeInts(out, children[k]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public int order() {
+        return order;
+    }
+
+    /** @return the number of n-grams of the given order */
+    public int count(int n) {
+        return counts[n];
+    }
+
+    public int vocabularySize() {
+        return counts[1];
+    }
+
+    /** @return the ID of {@code word}, or -1 when it is not in the vocabulary. */
+    public int wordId(CharSequence word) {
+        int low = 0;
+        int high = counts[1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareWord(mid, word);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public String word(int id) {
+        int start = wordOffsets.get(id);
+        int end = wordOffsets.get(id + 1);
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = wordPool.get(start + i);
+        }
+        return new String(chars);
+    }
+
+    public int sentenceStartId() {
+        return sentenceStart;
+    }
+
+    public int sentenceEndId() {
+        return sentenceEnd;
+    }
+
+    /**
+     * @param sequence word IDs, oldest first
+     * @param offset start of the n-gram in {@code sequence}
+     * @param length number of words; the last one is predicted from up to {@code order - 1}
+     *     preceding ones
+     * @return log10 P(last word | preceding words), backing off as needed
+     */
+    public float logProb(int[] sequence, int offset, int length) {
+        int end = offset + length;
+        int word = sequence[end - 1];
+        if (word < 0) {
+            return UNKNOWN_LOG_PROB;
+        }
+
+        float backoff = 0f;
+        for (int start = end - Math.min(length, order); start < end - 1; start++) {
+            int n = end - start;
+            int index = find(sequence, start, n);
+            if (index >= 0) {
+                return backoff + probs[n].get(index);
+            }
+            int context = find(sequence, start, n - 1);
+            if (context >= 0) {
+                backoff += backoffs[n - 1].get(context);
+            }
+        }
+        return backoff + probs[1].get(word);
+    }
+
+    public float logProb(int[] context, int word) {
+        int[] sequence = new int[context.length + 1];
+        System.arraycopy(context, 0, sequence, 0, context.length);
+        sequence[context.length] = word;
+        return logProb(sequence, 0, sequence.length);
+    }
+
+    /**
+     * @param sentence word IDs including the leading {@code <s>} and trailing {@code </s>}
+     * @return log10 probability of every word after the first
+     */
+    public double sentenceLogProb(int[] sentence, int length) {
+        double total = 0;
+        for (int i = 1; i < length; i++) {
+            int start = Math.max(0, i + 1 - order);
+            total += logProb(sentence, start, i + 1 - start);
+        }
+        return total;
+    }
+
+    /** Perplexity of a sentence given as in {@link #sentenceLogProb(int[], int)}. */
+    public double perplexity(int[] sentence, int length) {
+        if (length < 2) {
+            return Double.NaN;
+        }
+        return Math.pow(10, -sentenceLogProb(sentence, length) / (length - 1));
+    }
+
+    /**
+     * Convenience for whitespace separated text, wrapped in sentence markers. Allocates the ID
+     * array.
+     */
+    public int[] toIds(String sentence) {
+        String trimmed = sentence.trim();
+        String[] tokens =
+                trimmed.isEmpty() ? new String[0] : trimmed.toLowerCase(Locale.US).split("\\s+");
+        int[] ids = new int[tokens.length + 2];
+        ids[0] = sentenceStart;
+        for (int i = 0; i < tokens.length; i++) {
+            ids[i + 1] = wordId(tokens[i]);
+        }
+        ids[ids.length - 1] = sentenceEnd;
+        return ids;
+    }
+
+    public double perplexity(String sentence) {
+        int[] ids = toIds(sentence);
+        return perplexity(ids, ids.length);
+    }
+
+    /** @return the index of n-gram {@code sequence[start .. start + n)} in its order, or -1 */
+    private int find(int[] sequence, int start, int n) {
+        int index = sequence[start];
+        if (index < 0) {
+            return -1;
+        }
+        for (int k = 2; k <= n; k++) {
+            int word = sequence[start + k - 1];
+            if (word < 0) {
+                return -1;
+            }
+            IntBuffer table = children[k - 1];
+            index = search(words[k], table.get(index), table.get(index + 1) - 1, word);
+            if (index < 0) {
+                return -1;
+            }
+        }
+        return index;
+    }
+
+    private static int search(IntBuffer table, int low, int high, int word) {
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = table.get(mid);
+            if (value < word) {
+                low = mid + 1;
+            } else if (value > word) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareWord(int id, CharSequence word) {
+        int start = wordOffsets.get(id);
+        int length = wordOffsets.get(id + 1) - start;
+        int n = Math.min(length, word.length());
+        for (int i = 0; i < n; i++) {
+            int diff = wordPool.get(start + i) - word.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - word.length();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length)
+            throws IOException {
+        if (position + length > buffer.limit()) {
+            throw new IOException("Truncated n-gram snapshot");
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.limit(position + length);
+        return view.slice();
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer values) throws IOException {
+        for (int i = 0; i < values.limit(); i++) {
+            out.writeInt(values.get(i));
+        }
+    }
+
+    private static void writeFloats(DataOutputStream out, FloatBuffer values) throws IOException {
+        for (int i = 0; i < values.limit(); i++) {
+            out.writeFloat(values.get(i));
+        }
+    }
+}
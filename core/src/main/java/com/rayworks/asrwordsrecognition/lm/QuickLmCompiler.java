@@ -0,0 +1,212 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compiles a corpus of one sentence per line into a trigram ARPA language model, using the same
+ * estimates as the CMU QuickLM tool that produced {@code 6805.lm}:
+ *
+ * <ul>
+ *   <li>every n-gram keeps {@code 1 - discountMass} of its maximum likelihood estimate,
+ *   <li>the backoff weight of a context is {@code discountMass} divided by the lower-order
+ *       probability mass not covered by the words seen after it (the "ratio" method).
+ * </ul>
+ *
+ * <p>The corpus is streamed twice: once to collect the vocabulary and once to count n-grams in
+ * parallel batches, spilling sorted count runs to disk whenever the in-memory tables grow beyond
+ * {@link #setMaxEntriesInMemory(long)}. The estimates are computed from the merged runs under the
+ * same budget, so besides the vocabulary memory does not grow with the corpus.
+ */
+public class QuickLmCompiler {
+
+    public static final double DEFAULT_DISCOUNT_MASS = 0.5;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private double discountMass = DEFAULT_DISCOUNT_MASS;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 8192;
+    private long maxEntriesInMemory =
+            Runtime.getRuntime().maxMemory() / 4 / LongCountMap.bytesPerEntry();
+    private File tempDir;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: QuickLmCompiler <corpus> <arpa>");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        int sentences = new QuickLmCompiler().compile(new File(args[0]), new File(args[1]));
+        System.out.printf(
+                Locale.US,
+                "Compiled %d sentences in %d ms%n",
+                sentences,
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    public QuickLmCompiler setDiscountMass(double discountMass) {
+        if (discountMass <= 0 || discountMass >= 1) {
+            throw new IllegalArgumentException("Discount mass must be in (0, 1): " + discountMass);
+        }
+        this.discountMass = discountMass;
+        return this;
+    }
+
+    public QuickLmCompiler setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public QuickLmCompiler setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /**
+     * Upper bound of bigram and trigram counts kept in memory before they are spilled, both while
+     * counting and while estimating.
+     */
+    public QuickLmCompiler setMaxEntriesInMemory(long maxEntriesInMemory) {
+        this.maxEntriesInMemory = Math.max(1, maxEntriesInMemory);
+        return this;
+    }
+
+    /** Directory for spilled count runs, defaults to {@code java.io.tmpdir}. */
+    public QuickLmCompiler setTempDir(File tempDir) {
+        this.tempDir = tempDir;
+        return this;
+    }
+
+    /** @return the number of sentences compiled into the model */
+    public int compile(File corpus, File arpa) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(arpa), UTF_8));
+        try {
+            return compile(corpus, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** @return the number of sentences compiled into the model */
+    public int compile(File corpus, Writer out) throws IOException {
+        Vocabulary vocabulary = collectVocabulary(corpus);
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        NgramCounter counter =
+                new NgramCounter(
+                        vocabulary.size(), executor, parallelism, maxEntriesInMemory, tempDir);
+        try {
+            int sentences = countNgrams(corpus, vocabulary, counter);
+            new Estimator(vocabulary, counter, discountMass, maxEntriesInMemory, tempDir)
+                    .write(sentences, out);
+            return sentences;
+        } finally {
+            counter.close();
+            executor.shutdownNow();
+        }
+    }
+
+    private Vocabulary collectVocabulary(File corpus) throws IOException {
+        Set<String> words = new TreeSet<>();
+        words.add(Vocabulary.SENTENCE_START);
+        words.add(Vocabulary.SENTENCE_END);
+
+        BufferedReader in = open(corpus);
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                for (String word : tokenize(line)) {
+                    words.add(word);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return new Vocabulary(words);
+    }
+
+    private int countNgrams(File corpus, Vocabulary vocabulary, NgramCounter counter)
+            throws IOException {
+        int start = vocabulary.id(Vocabulary.SENTENCE_START);
+        int end = vocabulary.id(Vocabulary.SENTENCE_END);
+
+        int sentences = 0;
+        List<int[]> batch = new ArrayList<>(batchSize);
+        BufferedReader in = open(corpus);
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] words = tokenize(line);
+                if (words.length == 0) {
+                    continue;
+                }
+
+                int[] ids = new int[words.length + 2];
+                ids[0] = start;
+                for (int i = 0; i < words.length; i++) {
+                    ids[i + 1] = vocabulary.id(words[i]);
+                }
+                ids[ids.length - 1] = end;
+
+                batch.add(ids);
+                ++sentences;
+                if (batch.size() == batchSize) {
+                    counter.count(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        if (!batch.isEmpty()) {
+            counter.count(batch);
+        }
+        return sentences;
+    }
+
+    private static BufferedReader open(File corpus) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(corpus), UTF_8);
+        return new BufferedReader(reader, 64 * 1024);
+    }
+
+    static String[] tokenize(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) {
+            return new String[0];
+        }
+        return trimmed.toLowerCase(Locale.US).split("\\s+");
+    }
+
+    /** Appends {@code log10(probability)} with four decimals, the precision of QuickLM. */
+    static void appendLog10(StringBuilder builder, double probability) {
+        long scaled = Math.round(Math.abs(Math.log10(probability)) * 10000);
+        if (probability < 1 && scaled != 0) {
+            builder.append('-');
+        }
+        builder.append(scaled / 10000).append('.');
+        long fraction = scaled % 10000;
+        for (long digit = 1000; digit > 1 && fraction < digit; digit /= 10) {
+            builder.append('0');
+        }
+        builder.append(fraction);
+    }
+}
@@ -0,0 +1,48 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Words of a language model with dense IDs assigned in sorted word order, so that ascending
+ * {@link NgramKeys packed keys} list n-grams in the order ARPA files use.
+ */
+public final class Vocabulary {
+
+    public static final String SENTENCE_START = "<s>";
+    public static final String SENTENCE_END = "</s>";
+
+    private final String[] words;
+    private final Map<String, Integer> ids;
+
+    public Vocabulary(Collection<String> words) {
+        this.words = words.toArray(new String[words.size()]);
+        Arrays.sort(this.words);
+        if (this.words.length > NgramKeys.MAX_WORDS) {
+            throw new IllegalArgumentException("Vocabulary too large: " + this.words.length);
+        }
+
+        ids = new HashMap<>(this.words.length * 2);
+        for (int i = 0; i < this.words.length; i++) {
+            if (ids.put(this.words[i], i) != null) {
+                throw new IllegalArgumentException("Duplicate word: " + this.words[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    /** @return the ID of {@code word}, or -1 if it is not part of the vocabulary. */
+    public int id(String word) {
+        Integer id = ids.get(word);
+        return id == null ? -1 : id;
+    }
+
+    public String word(int id) {
+        return words[id];
+    }
+}
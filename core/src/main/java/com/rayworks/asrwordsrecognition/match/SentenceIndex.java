@@ -0,0 +1,186 @@
+package com.rayworks.asrwordsrecognition.match;
+
+import com.rayworks.asrwordsrecognition.eval.WordAlignment;
+import com.rayworks.asrwordsrecognition.lm.NgramKeys;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Target sentences indexed by word bigram for {@link SentenceMatcher}. Each sentence is {@link
+ * WordAlignment#normalize(String) normalized} and padded with a start and an end marker, so a
+ * sentence of n words has n + 1 bigrams; repeated and empty sentences are dropped.
+ *
+ * <p>The postings are one sorted array: the sentences of each distinct bigram, in corpus order,
+ * a sentence listed once per occurrence. The index is immutable and can be shared by matchers on
+ * any thread.
+ */
+public final class SentenceIndex {
+
+    static final int START = 0;
+    static final int END = 1;
+    // a query word no sentence has
+    static final int UNKNOWN = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String[] sentences;
+    private final int[][] words;
+    private final Map<String, Integer> ids;
+    private final long[] keys;
+    // postings of keys[i] are postings[offsets[i] .. offsets[i + 1])
+    private final int[] offsets;
+    private final int[] postings;
+    private final int maxLength;
+
+    public SentenceIndex(Collection<String> sentences) {
+        ids = new HashMap<>();
+        ids.put("<s>", START);
+        ids.put("</s>", END);
+        Set<String> seen = new HashSet<>(sentences.size() * 2);
+        List<String> texts = new ArrayList<>(sentences.size());
+        List<int[]> encoded = new ArrayList<>(sentences.size());
+        int bigrams = 0;
+        int longest = 0;
+        StringBuilder text = new StringBuilder();
+        for (String sentence : sentences) {
+            String[] normalized = WordAlignment.normalize(sentence);
+            if (normalized.length == 0) {
+                continue;
+            }
+            text.setLength(0);
+            int[] sentenceWords = new int[normalized.length];
+            for (int i = 0; i < normalized.length; i++) {
+                Integer id = ids.get(normalized[i]);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(normalized[i], id);
+                }
+                sentenceWords[i] = id;
+                text.append(i == 0 ? "" : " ").append(normalized[i]);
+            }
+            if (!seen.add(text.toString())) {
+                continue;
+            }
+            texts.add(text.toString());
+            encoded.add(sentenceWords);
+            bigrams += sentenceWords.length + 1;
+            longest = Math.max(longest, sentenceWords.length);
+        }
+        if (ids.size() > NgramKeys.MAX_WORDS || encoded.size() > NgramKeys.MAX_WORDS) {
+            throw new IllegalArgumentException("Too many words or sentences: " + ids.size()
+                    + " words, " + encoded.size() + " sentences");
+        }
+        this.sentences = texts.toArray(new String[texts.size()]);
+        this.words = encoded.toArray(new int[encoded.size()][]);
+        this.maxLength = longest;
+
+        // bigram and sentence packed into one long, so one sort groups the postings
+        long[] pairs = new long[bigrams];
+        int next = 0;
+        for (int s = 0; s < words.length; s++) {
+            int previous = START;
+            for (int word : words[s]) {
+                pairs[next++] = NgramKeys.bigram(previous, word) << NgramKeys.BITS | s;
+                previous = word;
+            }
+            pairs[next++] = NgramKeys.bigram(previous, END) << NgramKeys.BITS | s;
+        }
+        Arrays.sort(pairs);
+
+        long[] distinct = new long[bigrams];
+        int[] starts = new int[bigrams + 1];
+        postings = new int[bigrams];
+        int count = 0;
+        for (int i = 0; i < bigrams; i++) {
+            long key = pairs[i] >>> NgramKeys.BITS;
+            if (count == 0 || distinct[count - 1] != key) {
+                distinct[count] = key;
+                starts[count] = i;
+                count++;
+            }
+            postings[i] = NgramKeys.last(pairs[i]);
+        }
+        starts[count] = bigrams;
+        keys = Arrays.copyOf(distinct, count);
+        offsets = Arrays.copyOf(starts, count + 1);
+    }
+
+    /** Indexes a corpus of one sentence per line, as the language models are compiled from. */
+    public static SentenceIndex load(File corpus) throws IOException {
+        List<String> sentences = new ArrayList<>();
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(corpus), UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                sentences.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        return new SentenceIndex(sentences);
+    }
+
+    /** @return the number of distinct sentences */
+    public int size() {
+        return sentences.length;
+    }
+
+    /** @return the normalized sentence, words separated by single spaces */
+    public String sentence(int index) {
+        return sentences[index];
+    }
+
+    /** @return the number of words in the sentence */
+    public int length(int index) {
+        return words[index].length;
+    }
+
+    public int getBigramCount() {
+        return keys.length;
+    }
+
+    int maxLength() {
+        return maxLength;
+    }
+
+    int[] words(int sentence) {
+        return words[sentence];
+    }
+
+    /** @return the word's ID, {@link #UNKNOWN} if no sentence has it */
+    int id(String word) {
+        Integer id = ids.get(word);
+        return id == null ? UNKNOWN : id;
+    }
+
+    /** @return the position of the bigram's postings, negative if no sentence has it */
+    int find(long bigram) {
+        return Arrays.binarySearch(keys, bigram);
+    }
+
+    int postingsStart(int position) {
+        return offsets[position];
+    }
+
+    int postingsEnd(int position) {
+        return offsets[position + 1];
+    }
+
+    int posting(int i) {
+        return postings[i];
+    }
+}
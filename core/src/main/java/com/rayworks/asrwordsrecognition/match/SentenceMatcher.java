@@ -0,0 +1,263 @@
+package com.rayworks.asrwordsrecognition.match;
+
+import com.rayworks.asrwordsrecognition.eval.WordAlignment;
+import com.rayworks.asrwordsrecognition.lm.NgramKeys;
+
+import java.util.Arrays;
+
+/**
+ * Finds the target sentence closest to a hypothesis by word edit distance, for grading what the
+ * user said against what they were expected to say.
+ *
+ * <p>A match differs from the hypothesis in at most half the words of the longer of the two, the
+ * point at which a grade stops meaning anything, and at most {@link #setMaxDistance(int)}. Padded
+ * with sentence markers, two such word sequences share at least one bigram, so only the
+ * sentences listed under the hypothesis's bigrams in the {@link SentenceIndex} are candidates.
+ * They are visited by the number of bigrams they share, the most first, and skipped once that
+ * number and their length show they cannot beat the best so far; the rest are compared with an
+ * edit distance that gives up beyond the best. The result is the one a comparison with every
+ * sentence would give, ties going to the sentence first in the corpus.
+ *
+ * <p>A matcher keeps its scratch space between queries and is not thread-safe; use one per
+ * thread over a shared index.
+ */
+public class SentenceMatcher {
+
+    private final SentenceIndex index;
+    private int maxDistance = Integer.MAX_VALUE;
+
+    // per sentence, bigrams shared with the query; zero between queries
+    private final int[] shared;
+    private int[] touched = new int[64];
+    private int[] byShared = new int[64];
+    private int[] bucketStarts = new int[16];
+    private long[] queryBigrams = new long[16];
+    private int[] previousRow;
+    private int[] currentRow;
+    private int lastCandidates;
+
+    public SentenceMatcher(SentenceIndex index) {
+        this.index = index;
+        this.shared = new int[index.size()];
+        this.previousRow = new int[index.maxLength() + 1];
+        this.currentRow = new int[index.maxLength() + 1];
+    }
+
+    public SentenceIndex getIndex() {
+        return index;
+    }
+
+    /** The most word errors a match may have, on top of half the words; unlimited by default. */
+    public SentenceMatcher setMaxDistance(int maxDistance) {
+        this.maxDistance = Math.max(0, maxDistance);
+        return this;
+    }
+
+    /** @return the sentences that shared a bigram with the last query */
+    public int getLastCandidates() {
+        return lastCandidates;
+    }
+
+    /** @return the closest sentence, null if none is close enough */
+    public Match match(String hypothesis) {
+        String[] normalized = WordAlignment.normalize(hypothesis);
+        int[] query = new int[normalized.length];
+        for (int i = 0; i < query.length; i++) {
+            query[i] = index.id(normalized[i]);
+        }
+        lastCandidates = 0;
+        if (query.length == 0) {
+            return null;
+        }
+        int candidates = countShared(query);
+        lastCandidates = candidates;
+        sortByShared(candidates, query.length + 1);
+
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < candidates; i++) {
+            int sentence = byShared[i];
+            int[] words = index.words(sentence);
+            int bound = Math.min(maxDistance, Math.max(words.length, query.length) / 2);
+            bound = Math.min(bound, bestDistance);
+            if (lowerBound(query.length, words.length, shared[sentence]) > bound) {
+                continue;
+            }
+            int distance = distance(query, words, bound, previousRow, currentRow);
+            // bound is at most the best distance, so a tie is decided by corpus order
+            if (distance <= bound && (distance < bestDistance || sentence < best)) {
+                best = sentence;
+                bestDistance = distance;
+            }
+        }
+        for (int i = 0; i < candidates; i++) {
+            shared[touched[i]] = 0;
+        }
+        return best < 0 ? null : new Match(best, index.sentence(best), hypothesis, bestDistance);
+    }
+
+    /** Counts the bigrams each sentence shares with the query, with repeats, into shared. */
+    private int countShared(int[] query) {
+        int bigrams = query.length + 1;
+        if (queryBigrams.length < bigrams) {
+            queryBigrams = new long[bigrams];
+        }
+        int previous = SentenceIndex.START;
+        for (int i = 0; i <= query.length; i++) {
+            int word = i < query.length ? query[i] : SentenceIndex.END;
+            // a bigram with an unknown word is in no sentence
+            queryBigrams[i] = previous == SentenceIndex.UNKNOWN || word == SentenceIndex.UNKNOWN
+                    ? -1 : NgramKeys.bigram(previous, word);
+            previous = word;
+        }
+        Arrays.sort(queryBigrams, 0, bigrams);
+
+        int candidates = 0;
+        for (int i = 0; i < bigrams; ) {
+            long key = queryBigrams[i];
+            int repeats = 1;
+            while (i + repeats < bigrams && queryBigrams[i + repeats] == key) {
+                repeats++;
+            }
+            i += repeats;
+            int position = key < 0 ? -1 : index.find(key);
+            if (position < 0) {
+                continue;
+            }
+            int end = index.postingsEnd(position);
+            for (int p = index.postingsStart(position); p < end; ) {
+                int sentence = index.posting(p);
+                int run = 1;
+                while (p + run < end && index.posting(p + run) == sentence) {
+                    run++;
+                }
+                p += run;
+                if (shared[sentence] == 0) {
+                    if (candidates == touched.length) {
+                        touched = Arrays.copyOf(touched, candidates * 2);
+                    }
+                    touched[candidates++] = sentence;
+                }
+                shared[sentence] += Math.min(repeats, run);
+            }
+        }
+        return candidates;
+    }
+
+    /** Orders the candidates by shared bigrams, the most first, into byShared. */
+    private void sortByShared(int candidates, int most) {
+        if (byShared.length < candidates) {
+            byShared = new int[Math.max(candidates, byShared.length * 2)];
+        }
+        if (bucketStarts.length < most + 2) {
+            bucketStarts = new int[most + 2];
+        }
+        Arrays.fill(bucketStarts, 0, most + 2, 0);
+        for (int i = 0; i < candidates; i++) {
+            bucketStarts[most - shared[touched[i]] + 1]++;
+        }
+        for (int b = 1; b < most + 2; b++) {
+            bucketStarts[b] += bucketStarts[b - 1];
+        }
+        for (int i = 0; i < candidates; i++) {
+            byShared[bucketStarts[most - shared[touched[i]]]++] = touched[i];
+        }
+    }
+
+    /**
+     * Each edit changes at most two bigrams of the padded sequences, which have {@code length +
+     * 1} bigrams each, and the lengths differ by at least as many edits.
+     */
+    static int lowerBound(int queryLength, int length, int sharedBigrams) {
+        int byBigrams = (Math.max(queryLength, length) + 1 - sharedBigrams + 1) / 2;
+        return Math.max(Math.abs(queryLength - length), byBigrams);
+    }
+
+    /**
+     * Word edit distance of {@code a} and {@code b}, computed only within {@code bound} of the
+     * diagonal and abandoned as soon as it exceeds {@code bound}.
+     *
+     * @param previous scratch space of at least {@code b.length + 1}
+     * @param current scratch space of at least {@code b.length + 1}
+     * @return the distance, or {@code bound + 1} if it is larger than {@code bound}
+     */
+    static int distance(int[] a, int[] b, int bound, int[] previous, int[] current) {
+        int n = a.length;
+        int m = b.length;
+        bound = Math.min(bound, Math.max(n, m));
+        int over = bound + 1;
+        if (Math.abs(n - m) > bound) {
+            return over;
+        }
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j <= bound ? j : over;
+        }
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - bound);
+            int to = Math.min(m, i + bound);
+            current[from - 1] = from == 1 && i <= bound ? i : over;
+            if (to == i + bound) {
+                // outside the band of the row above
+                previous[to] = over;
+            }
+            int rowMin = current[from - 1];
+            int word = a[i - 1];
+            for (int j = from; j <= to; j++) {
+                int cost = previous[j - 1] + (word == b[j - 1] ? 0 : 1);
+                cost = Math.min(cost, Math.min(previous[j], current[j - 1]) + 1);
+                cost = Math.min(cost, over);
+                current[j] = cost;
+                rowMin = Math.min(rowMin, cost);
+            }
+            if (rowMin > bound) {
+                return over;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
+
+    /** The sentence closest to a hypothesis. */
+    public static final class Match {
+        private final int index;
+        private final String sentence;
+        private final String hypothesis;
+        private final int distance;
+        private WordAlignment alignment;
+
+        Match(int index, String sentence, String hypothesis, int distance) {
+            this.index = index;
+            this.sentence = sentence;
+            this.hypothesis = hypothesis;
+            this.distance = distance;
+        }
+
+        /** @return the sentence's position in the {@link SentenceIndex} */
+        public int getIndex() {
+            return index;
+        }
+
+        public String getSentence() {
+            return sentence;
+        }
+
+        /** @return the word errors: substitutions, deletions and insertions */
+        public int getDistance() {
+            return distance;
+        }
+
+        public boolean isExact() {
+            return distance == 0;
+        }
+
+        /** @return the hypothesis aligned against the sentence, word by word */
+        public WordAlignment getAlignment() {
+            if (alignment == null) {
+                alignment = WordAlignment.of(sentence, hypothesis);
+            }
+            return alignment;
+        }
+    }
+}
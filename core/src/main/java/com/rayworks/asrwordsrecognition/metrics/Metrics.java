@@ -0,0 +1,43 @@
+package com.rayworks.asrwordsrecognition.metrics;
+
+/** The app's registry and the phases of the recognition pipeline it measures. */
+public final class Metrics {
+
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    /** Copying the bundled models out of the APK, see the asset package. */
+    public static final LatencyHistogram ASSET_SYNC = REGISTRY.histogram("asset_sync");
+    /** {@code SpeechRecognizerSetup.getRecognizer()}, loading the acoustic model and dictionary. */
+    public static final LatencyHistogram RECOGNIZER_SETUP = REGISTRY.histogram("recognizer_setup");
+    /** {@code addNgramSearch}, loading the language model. */
+    public static final LatencyHistogram NGRAM_SEARCH = REGISTRY.histogram("ngram_search");
+    /** Building one search of the search registry, in the background or on first use. */
+    public static final LatencyHistogram SEARCH_COMPILE = REGISTRY.histogram("search_compile");
+    /** Rebuilding a language model with new sentences, up to the files being written. */
+    public static final LatencyHistogram LM_UPDATE = REGISTRY.histogram("lm_update");
+    /** From the finger landing on the record button to the first audio reaching the decoder. */
+    public static final LatencyHistogram TOUCH_TO_AUDIO = REGISTRY.histogram("touch_to_audio");
+    /** From stopping an utterance to its final result reaching the listeners. */
+    public static final LatencyHistogram STOP_TO_RESULT = REGISTRY.histogram("stop_to_result");
+    /** From the start of an utterance to its first partial words. */
+    public static final LatencyHistogram FIRST_PARTIAL = REGISTRY.histogram("first_partial");
+    /** From the last changed partial to the final result. */
+    public static final LatencyHistogram PARTIAL_TO_FINAL = REGISTRY.histogram("partial_to_final");
+    /** Collecting and rescoring the N-best list at the end of an utterance. */
+    public static final LatencyHistogram RESCORE = REGISTRY.histogram("rescore");
+    /** Rendering a result or partial result on the UI thread. */
+    public static final LatencyHistogram UI_UPDATE = REGISTRY.histogram("ui_update");
+
+    /** The live decoder over all utterances. */
+    public static final RealTimeFactor DECODE = REGISTRY.realTimeFactor("decode");
+
+    public static final String MEMORY_BEFORE_MODELS = "before_models";
+    public static final String MEMORY_AFTER_MODELS = "after_models";
+
+    private Metrics() {}
+
+    /** The live decoder with one search, e.g. to compare the keyword search with the n-gram. */
+    public static RealTimeFactor decode(String searchName) {
+        return REGISTRY.realTimeFactor("decode_" + searchName);
+    }
+}
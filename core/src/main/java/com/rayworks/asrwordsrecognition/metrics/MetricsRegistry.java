@@ -0,0 +1,116 @@
+package com.rayworks.asrwordsrecognition.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The named metrics of the app, formatted one per line for export.
+ *
+ * <p>Lines have a fixed shape so that logs from different builds can be compared with a script:
+ *
+ * <pre>
+ * t=&lt;epoch ms&gt; histogram &lt;name&gt; count=N mean_us=X p50_us=N p90_us=N p99_us=N max_us=N
+ * t=&lt;epoch ms&gt; rtf &lt;name&gt; audio_s=X processing_s=X rtf=X
+ * t=&lt;epoch ms&gt; memory &lt;name&gt; java_bytes=N native_bytes=N at=&lt;epoch ms&gt;
+ * </pre>
+ *
+ * Values are cumulative since the process started; decimals use a dot whatever the locale, and
+ * a missing value is written as {@code nan}. Metrics are registered once, typically in static
+ * fields, and appear in the order they were registered.
+ */
+public class MetricsRegistry {
+
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private final Map<String, RealTimeFactor> realTimeFactors = new LinkedHashMap<>();
+    private final Map<String, MemorySnapshot> memory = new LinkedHashMap<>();
+
+    /** @return the histogram of that name, created on first use */
+    public synchronized LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(name);
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /** @return the real-time factor of that name, created on first use */
+    public synchronized RealTimeFactor realTimeFactor(String name) {
+        RealTimeFactor factor = realTimeFactors.get(name);
+        if (factor == null) {
+            factor = new RealTimeFactor(name);
+            realTimeFactors.put(name, factor);
+        }
+        return factor;
+    }
+
+    /** Keeps the latest heap sizes under that name, e.g. before and after loading a model. */
+    public synchronized void recordMemory(String name, long javaBytes, long nativeBytes) {
+        memory.put(name, new MemorySnapshot(javaBytes, nativeBytes, System.currentTimeMillis()));
+    }
+
+    /** @return the bytes used on the Java heap right now */
+    public static long javaHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** @return one line per metric, see the class documentation */
+    public List<String> report(long nowMillis) {
+        List<LatencyHistogram> histogramList;
+        List<RealTimeFactor> factorList;
+        Map<String, MemorySnapshot> memoryCopy;
+        synchronized (this) {
+            histogramList = new ArrayList<>(histograms.values());
+            factorList = new ArrayList<>(realTimeFactors.values());
+            memoryCopy = new LinkedHashMap<>(memory);
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (LatencyHistogram histogram : histogramList) {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            lines.add(String.format(Locale.US,
+                    "t=%d histogram %s count=%d mean_us=%s p50_us=%d p90_us=%d p99_us=%d max_us=%d",
+                    nowMillis, snapshot.getName(), snapshot.getCount(),
+                    decimal(snapshot.getMean(), 1),
+                    snapshot.getValueAtPercentile(50), snapshot.getValueAtPercentile(90),
+                    snapshot.getValueAtPercentile(99), snapshot.getMax()));
+        }
+        for (RealTimeFactor factor : factorList) {
+            lines.add(String.format(Locale.US, "t=%d rtf %s audio_s=%s processing_s=%s rtf=%s",
+                    nowMillis, factor.getName(),
+                    decimal(factor.getAudioNanos() / 1e9, 3),
+                    decimal(factor.getProcessingNanos() / 1e9, 3),
+                    decimal(factor.get(), 3)));
+        }
+        for (Map.Entry<String, MemorySnapshot> entry : memoryCopy.entrySet()) {
+            MemorySnapshot snapshot = entry.getValue();
+            lines.add(String.format(Locale.US, "t=%d memory %s java_bytes=%d native_bytes=%d at=%d",
+                    nowMillis, entry.getKey(), snapshot.javaBytes, snapshot.nativeBytes,
+                    snapshot.timeMillis));
+        }
+        return lines;
+    }
+
+    private static String decimal(double value, int digits) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "nan";
+        }
+        return String.format(Locale.US, "%." + digits + "f", value);
+    }
+
+    private static final class MemorySnapshot {
+        final long javaBytes;
+        final long nativeBytes;
+        final long timeMillis;
+
+        MemorySnapshot(long javaBytes, long nativeBytes, long timeMillis) {
+            this.javaBytes = javaBytes;
+            this.nativeBytes = nativeBytes;
+            this.timeMillis = timeMillis;
+        }
+    }
+}
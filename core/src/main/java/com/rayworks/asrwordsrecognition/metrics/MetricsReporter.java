@@ -0,0 +1,72 @@
+package com.rayworks.asrwordsrecognition.metrics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the registry's report to every sink at a fixed period, on a daemon thread of its own.
+ * A sink that fails is skipped for that report; the error is kept for {@link #getLastError()}.
+ */
+public class MetricsReporter {
+
+    private final MetricsRegistry registry;
+    private final MetricsSink[] sinks;
+    private ScheduledExecutorService scheduler;
+    private volatile IOException lastError;
+
+    public MetricsReporter(MetricsRegistry registry, MetricsSink... sinks) {
+        this.registry = registry;
+        this.sinks = sinks.clone();
+    }
+
+    public synchronized void start(long period, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, period, period, unit);
+    }
+
+    /** Stops the periodic reports, after writing a last one. */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        scheduler = null;
+        report();
+    }
+
+    /** Writes a report now, on the calling thread. */
+    public void report() {
+        List<String> lines = registry.report(System.currentTimeMillis());
+        for (MetricsSink sink : sinks) {
+            try {
+                sink.write(lines);
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+    }
+
+    public IOException getLastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,10 @@
+package com.rayworks.asrwordsrecognition.metrics;
+
+import java.io.IOException;
+import java.util.List;
+
+/** Where {@link MetricsReporter} sends each report. */
+public interface MetricsSink {
+
+    void write(List<String> lines) throws IOException;
+}
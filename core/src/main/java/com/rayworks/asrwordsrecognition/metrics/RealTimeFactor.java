@@ -0,0 +1,42 @@
+package com.rayworks.asrwordsrecognition.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processing time over audio time of a decoder, accumulated over everything it decoded. Below 1
+ * the decoder keeps up with the microphone. Lock-free and allocation-free.
+ */
+public class RealTimeFactor {
+
+    private final String name;
+    private final AtomicLong audioNanos = new AtomicLong();
+    private final AtomicLong processingNanos = new AtomicLong();
+
+    public RealTimeFactor(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Adds {@code samples} of audio at {@code sampleRate} that took {@code processingNanos}. */
+    public void record(int samples, int sampleRate, long processingNanos) {
+        audioNanos.addAndGet(samples * 1000000000L / sampleRate);
+        this.processingNanos.addAndGet(processingNanos);
+    }
+
+    public long getAudioNanos() {
+        return audioNanos.get();
+    }
+
+    public long getProcessingNanos() {
+        return processingNanos.get();
+    }
+
+    /** @return the real-time factor, NaN before any audio */
+    public double get() {
+        long audio = audioNanos.get();
+        return audio == 0 ? Double.NaN : (double) processingNanos.get() / audio;
+    }
+}
@@ -0,0 +1,83 @@
+package com.rayworks.asrwordsrecognition.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Appends reports to a file, renaming it to {@code <name>.1} once it outgrows its limit and
+ * shifting older files up to {@code <name>.<maxBackups>}, beyond which they are deleted.
+ */
+public class RollingFileSink implements MetricsSink {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private long maxBytes = 256 * 1024;
+    private int maxBackups = 2;
+
+    public RollingFileSink(File file) {
+        this.file = file;
+    }
+
+    /** Size after which the file is rolled; 256 KB by default. */
+    public RollingFileSink setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /** Rolled files to keep; 2 by default. */
+    public RollingFileSink setMaxBackups(int maxBackups) {
+        this.maxBackups = maxBackups;
+        return this;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void write(List<String> lines) throws IOException {
+        if (file.length() >= maxBytes) {
+            roll();
+        }
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(file, true), UTF_8);
+        try {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void roll() throws IOException {
+        File oldest = backup(maxBackups);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("cannot delete " + oldest);
+        }
+        for (int i = maxBackups - 1; i >= 1; i--) {
+            File backup = backup(i);
+            if (backup.exists() && !backup.renameTo(backup(i + 1))) {
+                throw new IOException("cannot rename " + backup);
+            }
+        }
+        boolean moved = maxBackups > 0 ? file.renameTo(backup(1)) : file.delete();
+        if (!moved) {
+            throw new IOException("cannot roll " + file);
+        }
+    }
+
+    private File backup(int index) {
+        return new File(file.getPath() + "." + index);
+    }
+}
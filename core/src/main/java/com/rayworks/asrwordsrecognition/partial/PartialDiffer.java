@@ -0,0 +1,82 @@
+package com.rayworks.asrwordsrecognition.partial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares each partial hypothesis of an utterance with the previous one, word by word.
+ *
+ * <p>The words both share from the start are stable; everything after the first difference is
+ * the changing tail. Hypotheses with the same words as the previous one, whatever their spacing,
+ * are duplicates and produce no update. Not thread-safe.
+ */
+public class PartialDiffer {
+
+    private List<String> previous = new ArrayList<>();
+    private List<String> current = new ArrayList<>();
+
+    /** Starts a new utterance. */
+    public void reset() {
+        previous.clear();
+    }
+
+    /** @return the update for {@code hypothesis}, or null if its words did not change */
+    public PartialUpdate diff(String hypothesis) {
+        split(hypothesis, current);
+        if (current.equals(previous)) {
+            return null;
+        }
+        int stable = 0;
+        int common = Math.min(current.size(), previous.size());
+        while (stable < common && current.get(stable).equals(previous.get(stable))) {
+            stable++;
+        }
+        return accept(stable, false);
+    }
+
+    /** @return the final result as a fully stable update, even if it repeats the last partial */
+    public PartialUpdate finish(String hypothesis) {
+        split(hypothesis, current);
+        return accept(current.size(), true);
+    }
+
+    private PartialUpdate accept(int stableWords, boolean isFinal) {
+        StringBuilder text = new StringBuilder();
+        int stableLength = 0;
+        for (int i = 0; i < current.size(); i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            if (i == stableWords) {
+                stableLength = text.length();
+            }
+            text.append(current.get(i));
+        }
+        if (stableWords >= current.size()) {
+            stableLength = text.length();
+        }
+
+        List<String> swap = previous;
+        previous = current;
+        current = swap;
+        return new PartialUpdate(
+                text.toString(), stableLength, stableWords, previous.size(), isFinal);
+    }
+
+    private static void split(String hypothesis, List<String> words) {
+        words.clear();
+        if (hypothesis == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= hypothesis.length(); i++) {
+            boolean space = i == hypothesis.length() || Character.isWhitespace(hypothesis.charAt(i));
+            if (space && start >= 0) {
+                words.add(hypothesis.substring(start, i));
+                start = -1;
+            } else if (!space && start < 0) {
+                start = i;
+            }
+        }
+    }
+}
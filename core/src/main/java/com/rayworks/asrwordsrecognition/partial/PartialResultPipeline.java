@@ -0,0 +1,168 @@
+package com.rayworks.asrwordsrecognition.partial;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Turns the stream of partial hypotheses into display updates without working on the UI thread.
+ *
+ * <p>Hypotheses are submitted from one thread, normally the recognizer's callback thread, which
+ * only drops exact repeats and hands the text over. Diffing runs on the worker executor, which
+ * skips straight to the newest hypothesis if several arrived in the meantime. The result waits
+ * in a single slot for the display to {@link #poll()} it once per frame, so at most one update is
+ * rendered per frame however fast the decoder goes.
+ *
+ * <p>The pipeline also times each utterance: from {@link #startUtterance()} to the first
+ * non-empty partial, and from the last partial that changed to the final result.
+ */
+public class PartialResultPipeline {
+
+    private final Executor worker;
+
+    private final AtomicReference<Pending> pending = new AtomicReference<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicReference<PartialUpdate> published = new AtomicReference<>();
+    private volatile int utterance;
+
+    // worker state
+    private final PartialDiffer differ = new PartialDiffer();
+    private int differUtterance = -1;
+    private boolean differFinished;
+
+    // submitting thread state
+    private String lastSubmitted;
+    private boolean finished = true;
+    private long startNanos;
+    private long firstPartialNanos;
+    private long lastPartialNanos;
+
+    private volatile long timeToFirstPartialNanos = -1;
+    private volatile long partialToFinalNanos = -1;
+
+    private final Runnable drain =
+            new Runnable() {
+                @Override
+                public void run() {
+                    do {
+                        Pending next;
+                        while ((next = pending.getAndSet(null)) != null) {
+                            process(next);
+                        }
+                        draining.set(false);
+                        // a submission may have seen the flag still set and left its work to us
+                    } while (pending.get() != null && draining.compareAndSet(false, true));
+                }
+            };
+
+    public PartialResultPipeline(Executor worker) {
+        this.worker = worker;
+    }
+
+    public void startUtterance() {
+        startUtterance(System.nanoTime());
+    }
+
+    /** Starts a new utterance, discarding whatever the previous one left undisplayed. */
+    public void startUtterance(long nowNanos) {
+        utterance++;
+        pending.set(null);
+        published.set(null);
+        lastSubmitted = null;
+        finished = false;
+        startNanos = nowNanos;
+        firstPartialNanos = -1;
+        lastPartialNanos = -1;
+        timeToFirstPartialNanos = -1;
+        partialToFinalNanos = -1;
+    }
+
+    public void submitPartial(String hypothesis) {
+        submitPartial(hypothesis, System.nanoTime());
+    }
+
+    /** Queues a partial hypothesis; ignored outside an utterance or after its final result. */
+    public void submitPartial(String hypothesis, long nowNanos) {
+        if (hypothesis == null) {
+            hypothesis = "";
+        }
+        if (finished || hypothesis.equals(lastSubmitted)) {
+            return;
+        }
+        lastSubmitted = hypothesis;
+        if (!hypothesis.trim().isEmpty()) {
+            if (firstPartialNanos < 0) {
+                firstPartialNanos = nowNanos;
+                timeToFirstPartialNanos = nowNanos - startNanos;
+            }
+            lastPartialNanos = nowNanos;
+        }
+        submit(new Pending(utterance, hypothesis, false));
+    }
+
+    public void submitFinal(String hypothesis) {
+        submitFinal(hypothesis, System.nanoTime());
+    }
+
+    /** Queues the final result, replacing any partial not yet diffed, and ends the utterance. */
+    public void submitFinal(String hypothesis, long nowNanos) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (lastPartialNanos >= 0) {
+            partialToFinalNanos = nowNanos - lastPartialNanos;
+        }
+        submit(new Pending(utterance, hypothesis, true));
+    }
+
+    /** @return the newest update not yet polled, or null; call once per display frame */
+    public PartialUpdate poll() {
+        return published.getAndSet(null);
+    }
+
+    /** @return nanoseconds from the start of the last utterance to its first words, or -1 */
+    public long getTimeToFirstPartialNanos() {
+        return timeToFirstPartialNanos;
+    }
+
+    /** @return nanoseconds from the last changed partial to the final result, or -1 */
+    public long getPartialToFinalNanos() {
+        return partialToFinalNanos;
+    }
+
+    private void submit(Pending next) {
+        pending.set(next);
+        if (draining.compareAndSet(false, true)) {
+            worker.execute(drain);
+        }
+    }
+
+    private void process(Pending next) {
+        if (next.utterance != differUtterance) {
+            differ.reset();
+            differUtterance = next.utterance;
+            differFinished = false;
+        }
+        if (differFinished || next.utterance != utterance) {
+            return;
+        }
+        PartialUpdate update = next.isFinal ? differ.finish(next.text) : differ.diff(next.text);
+        differFinished = next.isFinal;
+        if (update != null && next.utterance == utterance) {
+            published.set(update);
+        }
+    }
+
+    private static final class Pending {
+        final int utterance;
+        final String text;
+        final boolean isFinal;
+
+        Pending(int utterance, String text, boolean isFinal) {
+            this.utterance = utterance;
+            this.text = text;
+            this.isFinal = isFinal;
+        }
+    }
+}
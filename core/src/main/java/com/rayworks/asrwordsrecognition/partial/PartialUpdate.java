@@ -0,0 +1,58 @@
+package com.rayworks.asrwordsrecognition.partial;
+
+/**
+ * A hypothesis to display, split into the prefix it shares with the previous one and the tail
+ * the decoder is still revising.
+ */
+public final class PartialUpdate {
+
+    private final String text;
+    private final int stableLength;
+    private final int stableWords;
+    private final int words;
+    private final boolean isFinal;
+
+    PartialUpdate(String text, int stableLength, int stableWords, int words, boolean isFinal) {
+        this.text = text;
+        this.stableLength = stableLength;
+        this.stableWords = stableWords;
+        this.words = words;
+        this.isFinal = isFinal;
+    }
+
+    /** @return the words of the hypothesis separated by single spaces */
+    public String getText() {
+        return text;
+    }
+
+    /** @return the length of the stable prefix of {@link #getText()}, including its separator */
+    public int getStableLength() {
+        return stableLength;
+    }
+
+    public String getStableText() {
+        return text.substring(0, stableLength);
+    }
+
+    public String getChangingText() {
+        return text.substring(stableLength);
+    }
+
+    public int getStableWords() {
+        return stableWords;
+    }
+
+    public int getWordCount() {
+        return words;
+    }
+
+    /** @return true for the recognizer's final result, which is stable throughout */
+    public boolean isFinal() {
+        return isFinal;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getStableText() + "|" + getChangingText() + "]" + (isFinal ? " final" : "");
+    }
+}
@@ -0,0 +1,413 @@
+package com.rayworks.asrwordsrecognition.pool;
+
+import com.rayworks.asrwordsrecognition.eval.BatchRecognizer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Up to {@code maxSize} recognizers created by one factory, usually decoders sharing the same
+ * read-only model files, for recognizing utterances concurrently: offline re-checks, grading a
+ * batch of recordings. The size bounds the memory the decoders take.
+ *
+ * <p>Recognizers are handed out with {@link #acquire()} as {@link Lease}s, most recently used
+ * first so their caches are warm, and created only when none is idle. {@link #submit(Job)} runs a
+ * job on a leased recognizer on one of the pool's worker threads. Each worker has its own deque:
+ * jobs submitted from outside are spread over the workers, a job's own follow-up jobs stay with
+ * its worker, and a worker that runs out of jobs steals the oldest from another. Workers are
+ * started while every worker is busy and the pool is below its size, and together with idle
+ * recognizers they go away after the idle timeout, down to {@link #setMinSize(int)}.
+ */
+public class DecoderPool {
+
+    /** A unit of work on a recognizer leased for its duration. */
+    public interface Job<T> {
+        T run(BatchRecognizer recognizer) throws Exception;
+    }
+
+    private final BatchRecognizer.Factory factory;
+    private final int maxSize;
+    private volatile int minSize;
+    private volatile long idleNanos = TimeUnit.SECONDS.toNanos(30);
+
+    // guards the fields below; leases and workers wait on it
+    private final Object lock = new Object();
+    // most recently released first
+    private final ArrayDeque<Slot> idle = new ArrayDeque<>();
+    private int size;
+    private int idleWorkers;
+    private int nextWorker;
+    private boolean shutdown;
+
+    private final CopyOnWriteArrayList<Worker> workers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger workerIds = new AtomicInteger();
+
+    /** @param maxSize the most recognizers, and worker threads, alive at once */
+    public DecoderPool(BatchRecognizer.Factory factory, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool of " + maxSize);
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+    }
+
+    /** Recognizers and workers kept alive however long they are idle, 0 by default. */
+    public DecoderPool setMinSize(int minSize) {
+        this.minSize = Math.max(0, Math.min(maxSize, minSize));
+        return this;
+    }
+
+    /** How long recognizers and workers beyond the minimum are kept idle, 30 s by default. */
+    public DecoderPool setIdleTimeout(long timeout, TimeUnit unit) {
+        this.idleNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** @return the number of recognizers alive, leased or idle */
+    public int getSize() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    public int getIdleCount() {
+        synchronized (lock) {
+            return idle.size();
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /** @return the number of submitted jobs that have not started */
+    public int getQueuedJobs() {
+        return queued.get();
+    }
+
+    /**
+     * Leases a recognizer, waiting while all {@code maxSize} are leased.
+     *
+     * @throws Exception if the factory fails to create a recognizer
+     */
+    public Lease acquire() throws Exception {
+        synchronized (lock) {
+            while (true) {
+                if (shutdown) {
+                    throw new IllegalStateException("Pool shut down");
+                }
+                Slot slot = idle.pollFirst();
+                if (slot != null) {
+                    return new Lease(slot);
+                }
+                if (size < maxSize) {
+                    size++;
+                    break;
+                }
+                lock.wait();
+            }
+        }
+        // models load outside the lock, other leases go on meanwhile
+        try {
+            return new Lease(new Slot(factory.create()));
+        } catch (Exception | Error e) {
+            synchronized (lock) {
+                size--;
+                lock.notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /** Runs {@code job} on a pooled recognizer on one of the pool's threads. */
+    public <T> Future<T> submit(Job<T> job) {
+        Task<T> task = new Task<>(job);
+        Thread current = Thread.currentThread();
+        synchronized (lock) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Pool shut down");
+            }
+            Worker target;
+            if (current instanceof Worker && ((Worker) current).pool() == this) {
+                // follow-up work stays with its worker, whose caches hold the related state
+                target = (Worker) current;
+                target.jobs.offerFirst(task);
+            } else {
+                if (idleWorkers == 0 && workers.size() < maxSize) {
+                    target = new Worker();
+                    workers.add(target);
+                    target.start();
+                } else {
+                    target = workers.get(nextWorker++ % workers.size());
+                }
+                target.jobs.offerLast(task);
+            }
+            queued.incrementAndGet();
+            lock.notifyAll();
+        }
+        return task;
+    }
+
+    /** Closes the recognizers idle for longer than {@code maxIdleNanos}, down to the minimum. */
+    public void trim(long maxIdleNanos) {
+        List<Slot> closed = new ArrayList<>();
+        synchronized (lock) {
+            trimLocked(System.nanoTime() - maxIdleNanos, closed);
+        }
+        close(closed);
+    }
+
+    /**
+     * Cancels the jobs that have not started and closes the idle recognizers; running jobs
+     * finish and leased recognizers are closed as they are released.
+     */
+    public void shutdown() {
+        List<Slot> closed;
+        synchronized (lock) {
+            shutdown = true;
+            closed = new ArrayList<>(idle);
+            size -= idle.size();
+            idle.clear();
+            lock.notifyAll();
+        }
+        for (Worker worker : workers) {
+            Task<?> task;
+            while ((task = worker.jobs.pollFirst()) != null) {
+                queued.decrementAndGet();
+                task.cancel(false);
+            }
+        }
+        close(closed);
+    }
+
+    private void trimLocked(long idleBefore, List<Slot> closed) {
+        // the least recently used are at the end
+        while (size > minSize && !idle.isEmpty() && idle.peekLast().idleSince - idleBefore <= 0) {
+            closed.add(idle.pollLast());
+            size--;
+        }
+    }
+
+    private void release(Slot slot, boolean discard) {
+        List<Slot> closed = new ArrayList<>(1);
+        synchronized (lock) {
+            if (discard || shutdown) {
+                closed.add(slot);
+                size--;
+            } else {
+                slot.idleSince = System.nanoTime();
+                idle.addFirst(slot);
+                trimLocked(slot.idleSince - idleNanos, closed);
+            }
+            lock.notifyAll();
+        }
+        close(closed);
+    }
+
+    private static void close(List<Slot> slots) {
+        for (Slot slot : slots) {
+            slot.recognizer.close();
+        }
+    }
+
+    /** A recognizer out of the pool until it is released. */
+    public final class Lease {
+
+        private Slot slot;
+
+        Lease(Slot slot) {
+            this.slot = slot;
+        }
+
+        public BatchRecognizer getRecognizer() {
+            if (slot == null) {
+                throw new IllegalStateException("Lease released");
+            }
+            return slot.recognizer;
+        }
+
+        /** Returns the recognizer to the pool; later calls do nothing. */
+        public void release() {
+            if (slot != null) {
+                DecoderPool.this.release(slot, false);
+                slot = null;
+            }
+        }
+
+        /** Closes a recognizer left in a bad state instead of returning it. */
+        public void discard() {
+            if (slot != null) {
+                DecoderPool.this.release(slot, true);
+                slot = null;
+            }
+        }
+    }
+
+    private static final class Slot {
+        final BatchRecognizer recognizer;
+        long idleSince;
+
+        Slot(BatchRecognizer recognizer) {
+            this.recognizer = recognizer;
+        }
+    }
+
+    private static final class Binding<T> implements Callable<T> {
+        final Job<T> job;
+        BatchRecognizer recognizer;
+
+        Binding(Job<T> job) {
+            this.job = job;
+        }
+
+        @Override
+        public T call() throws Exception {
+            return job.run(recognizer);
+        }
+    }
+
+    private static final class Task<T> extends FutureTask<T> {
+        private final Binding<T> binding;
+
+        Task(Job<T> job) {
+            this(new Binding<>(job));
+        }
+
+        private Task(Binding<T> binding) {
+            super(binding);
+            this.binding = binding;
+        }
+
+        void run(BatchRecognizer recognizer) {
+            binding.recognizer = recognizer;
+            run();
+            binding.recognizer = null;
+        }
+
+        void fail(Exception e) {
+            setException(e);
+        }
+    }
+
+    private final class Worker extends Thread {
+
+        final LinkedBlockingDeque<Task<?>> jobs = new LinkedBlockingDeque<>();
+
+        Worker() {
+            super("decoder-pool-" + workerIds.incrementAndGet());
+            setDaemon(true);
+        }
+
+        DecoderPool pool() {
+            return DecoderPool.this;
+        }
+
+        @Override
+        public void run() {
+            Lease lease = null;
+            try {
+                while (true) {
+                    Task<?> task = next();
+                    if (task == null) {
+                        // an idle worker holds no recognizer, so the pool can trim it
+                        if (lease != null) {
+                            lease.release();
+                            lease = null;
+                        }
+                        if (!await()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (lease == null) {
+                        try {
+                            lease = acquire();
+                        } catch (InterruptedException e) {
+                            task.cancel(false);
+                            return;
+                        } catch (Exception e) {
+                            task.fail(e);
+                            continue;
+                        }
+                    }
+                    task.run(lease.getRecognizer());
+                }
+            } finally {
+                if (lease != null) {
+                    lease.release();
+                }
+                workers.remove(this);
+            }
+        }
+
+        /** @return a job of its own, the newest first, or the oldest of another worker */
+        private Task<?> next() {
+            Task<?> task = jobs.pollFirst();
+            if (task == null) {
+                List<Worker> others = workers;
+                int count = others.size();
+                int start = count == 0 ? 0 : (int) (getId() % count);
+                for (int i = 0; i < count && task == null; i++) {
+                    Worker other = others.get((start + i) % count);
+                    if (other != this) {
+                        task = other.jobs.pollLast();
+                    }
+                }
+            }
+            if (task != null) {
+                queued.decrementAndGet();
+            }
+            return task;
+        }
+
+        /** @return false if the worker is to exit: shut down, or idle beyond the minimum */
+        private boolean await() {
+            List<Slot> closed = new ArrayList<>();
+            try {
+                synchronized (lock) {
+                    long deadline = System.nanoTime() + idleNanos;
+                    idleWorkers++;
+                    try {
+                        while (queued.get() == 0) {
+                            if (shutdown) {
+                                return false;
+                            }
+                            long remaining = deadline - System.nanoTime();
+                            if (remaining <= 0) {
+                                trimLocked(System.nanoTime() - idleNanos, closed);
+                                if (workers.size() > minSize && jobs.isEmpty()) {
+                                    workers.remove(this);
+                                    return false;
+                                }
+                                deadline = System.nanoTime() + idleNanos;
+                                continue;
+                            }
+                            TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                        }
+                        return true;
+                    } catch (InterruptedException e) {
+                        return false;
+                    } finally {
+                        idleWorkers--;
+                    }
+                }
+            } finally {
+                close(closed);
+            }
+        }
+    }
+}
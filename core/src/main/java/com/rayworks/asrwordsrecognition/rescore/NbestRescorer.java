@@ -0,0 +1,235 @@
+package com.rayworks.asrwordsrecognition.rescore;
+
+import com.rayworks.asrwordsrecognition.eval.WordAlignment;
+import com.rayworks.asrwordsrecognition.lm.ContextCache;
+import com.rayworks.asrwordsrecognition.lm.NgramModel;
+import com.rayworks.asrwordsrecognition.match.SentenceIndex;
+import com.rayworks.asrwordsrecognition.match.SentenceMatcher;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Picks the final result of an utterance from the decoder's N-best list.
+ *
+ * <p>Each candidate is scored as its decoder score, converted to log10, plus the weighted log10
+ * probability of its words under a Java-side {@link NgramModel}, plus a bonus for resembling one
+ * of the sentences the user is expected to say: the full bonus for an exact match, less with
+ * every word error. The closest sentence is found by a {@link SentenceMatcher}, which looks only
+ * at the sentences sharing a bigram with the candidate; one with more errors than half its words
+ * gets no bonus. Language model lookups go through a {@link ContextCache}, so the prefixes the
+ * candidates share are scored once. Candidates with the same words after normalization are
+ * scored once too.
+ *
+ * <p>Rescoring has a latency budget. When it runs over, the decoder's own best candidate is
+ * kept. Not thread-safe; the engine rescores on its decoding thread.
+ */
+public class NbestRescorer {
+
+    /** One entry of an N-best list, best first. */
+    public static final class Candidate {
+        private final String text;
+        private final int decoderScore;
+
+        /**
+         * @param text the words as the decoder reports them, fillers and alternate
+         *     pronunciations included
+         * @param decoderScore the decoder's path score, in its log base
+         */
+        public Candidate(String text, int decoderScore) {
+            this.text = text;
+            this.decoderScore = decoderScore;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getDecoderScore() {
+            return decoderScore;
+        }
+    }
+
+    public static final class Result {
+        private final int index;
+        private final String text;
+        private final double score;
+        private final boolean fellBack;
+        private final long elapsedNanos;
+
+        Result(int index, String text, double score, boolean fellBack, long elapsedNanos) {
+            this.index = index;
+            this.text = text;
+            this.score = score;
+            this.fellBack = fellBack;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** @return the position of the chosen candidate in the N-best list */
+        public int getIndex() {
+            return index;
+        }
+
+        /** @return the chosen candidate's words, normalized */
+        public String getText() {
+            return text;
+        }
+
+        /** @return the chosen candidate's combined score, NaN if it fell back */
+        public double getScore() {
+            return score;
+        }
+
+        /** @return true if the budget ran out and the decoder's best was kept */
+        public boolean isFallBack() {
+            return fellBack;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + index + " \"" + text + "\"" + (fellBack ? " (fallback)" : "");
+        }
+    }
+
+    /** log10 of pocketsphinx's default log base, 1.0001. */
+    public static final double SPHINX_LOG10_PER_UNIT = Math.log10(1.0001);
+
+    private final ContextCache cache;
+    private double decoderScale = SPHINX_LOG10_PER_UNIT;
+    private double lmWeight = 6.5;
+    private double expectedBonus = 20;
+    private long budgetNanos = 20000000L;
+    // over the expected sentences; null for none
+    private SentenceMatcher expected;
+
+    // reused between candidates
+    private int[] ids = new int[32];
+
+    public NbestRescorer(NgramModel model) {
+        this(new ContextCache(model, 4096));
+    }
+
+    public NbestRescorer(ContextCache cache) {
+        this.cache = cache;
+    }
+
+    /** log10 per unit of the decoder scores; {@link #SPHINX_LOG10_PER_UNIT} by default. */
+    public NbestRescorer setDecoderScale(double decoderScale) {
+        this.decoderScale = decoderScale;
+        return this;
+    }
+
+    /** Weight of the language model against the decoder score; 6.5, as pocketsphinx's -lw. */
+    public NbestRescorer setLmWeight(double lmWeight) {
+        this.lmWeight = lmWeight;
+        return this;
+    }
+
+    /** Bonus, in log10 units, for a candidate matching an expected sentence; 20 by default. */
+    public NbestRescorer setExpectedBonus(double expectedBonus) {
+        this.expectedBonus = expectedBonus;
+        return this;
+    }
+
+    /** Time after which the decoder's best is kept; 20 ms by default. */
+    public NbestRescorer setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+        return this;
+    }
+
+    /** The sentences the user is asked to say, e.g. the current lesson's; none by default. */
+    public NbestRescorer setExpectedSentences(Collection<String> sentences) {
+        return setExpectedSentences(new SentenceIndex(sentences));
+    }
+
+    /** The sentences the user is asked to say, indexed already; null for none. */
+    public NbestRescorer setExpectedSentences(SentenceIndex sentences) {
+        expected = sentences == null ? null : new SentenceMatcher(sentences);
+        return this;
+    }
+
+    public ContextCache getCache() {
+        return cache;
+    }
+
+    /** @return the chosen candidate, null for an empty list */
+    public Result rescore(List<Candidate> candidates) {
+        long start = System.nanoTime();
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        Set<String> seen = new HashSet<>();
+        int bestIndex = -1;
+        String bestText = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < candidates.size(); i++) {
+            if (System.nanoTime() - start >= budgetNanos) {
+                return fallBack(candidates, start);
+            }
+            Candidate candidate = candidates.get(i);
+            String[] words = WordAlignment.normalize(candidate.getText());
+            String text = join(words);
+            if (!seen.add(text)) {
+                // the same words on another path; the better path came first
+                continue;
+            }
+            double score = score(candidate, words, text);
+            if (score > bestScore) {
+                bestIndex = i;
+                bestText = text;
+                bestScore = score;
+            }
+        }
+        return new Result(bestIndex, bestText, bestScore, false, System.nanoTime() - start);
+    }
+
+    double score(Candidate candidate, String[] words, String text) {
+        NgramModel model = cache.getModel();
+        int length = words.length + 2;
+        if (ids.length < length) {
+            ids = new int[Math.max(length, ids.length * 2)];
+        }
+        ids[0] = model.sentenceStartId();
+        for (int i = 0; i < words.length; i++) {
+            ids[i + 1] = model.wordId(words[i]);
+        }
+        ids[length - 1] = model.sentenceEndId();
+
+        return candidate.getDecoderScore() * decoderScale
+                + lmWeight * cache.sentenceLogProb(ids, length)
+                + expectedBonus * similarity(text);
+    }
+
+    /** @return 1 for an expected sentence, falling with the closest one's word error rate to 0 */
+    private double similarity(String text) {
+        SentenceMatcher.Match match = expected == null ? null : expected.match(text);
+        if (match == null) {
+            return 0;
+        }
+        int length = expected.getIndex().length(match.getIndex());
+        return 1 - Math.min(1, match.getDistance() / (double) length);
+    }
+
+    private Result fallBack(List<Candidate> candidates, long start) {
+        String text = join(WordAlignment.normalize(candidates.get(0).getText()));
+        return new Result(0, text, Double.NaN, true, System.nanoTime() - start);
+    }
+
+    private static String join(String[] words) {
+        StringBuilder text = new StringBuilder();
+        for (String word : words) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(word);
+        }
+        return text.toString();
+    }
+}
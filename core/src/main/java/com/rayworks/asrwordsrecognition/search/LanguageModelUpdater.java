@@ -0,0 +1,305 @@
+package com.rayworks.asrwordsrecognition.search;
+
+import com.rayworks.asrwordsrecognition.dict.BinaryDictionary;
+import com.rayworks.asrwordsrecognition.lm.IncrementalLm;
+import com.rayworks.asrwordsrecognition.metrics.Metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+
+/**
+ * Adds practice sentences to the language model of a search at run time.
+ *
+ * <p>An update counts the new sentences into an {@link IncrementalLm}, writes version N of the
+ * model and of the pronunciations of its words, and declares them as the search {@code
+ * <base>_vN}. Once the decoder is idle the search is built and the base search is {@link
+ * SearchRegistry#redirect(String, String) redirected} to it: utterances that start afterwards
+ * decode with the new model, the one in progress finishes with the old. The previous version is
+ * kept for {@link #rollback()}, older ones are removed.
+ *
+ * <p>Added sentences go to a journal first and are counted again by {@link #restore(File)} after
+ * a restart, or by the next update if the build fails. Updates run one at a time on the worker,
+ * which also calls the listener.
+ */
+public class LanguageModelUpdater {
+
+    public interface Listener {
+        /** Utterances of the base search decode with {@code model} from now on, 0 the base. */
+        void onSwapped(int version, File model);
+
+        /** An update failed; the search in use did not change. */
+        void onUpdateFailed(Exception error);
+    }
+
+    static final String JOURNAL = "sentences.txt";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int NONE = -1;
+
+    private final String baseSearch;
+    private final File baseModel;
+    private final File dir;
+    private final BinaryDictionary pronunciations;
+    private final SearchRegistry registry;
+    private final Executor worker;
+    private final IncrementalLm model = new IncrementalLm();
+    private volatile Listener listener;
+
+    // worker only
+    private int latestVersion;
+
+    // guarded by this
+    private int activeVersion;
+    private int previousVersion = NONE;
+
+    /**
+     * @param baseSearch the declared search to update, built from {@code baseModel}
+     * @param dir where the versions and the journal are written
+     * @param pronunciations where the pronunciations of new words come from
+     */
+    public LanguageModelUpdater(String baseSearch, File baseModel, File dir,
+                                BinaryDictionary pronunciations, SearchRegistry registry,
+                                Executor worker) {
+        this.baseSearch = baseSearch;
+        this.baseModel = baseModel;
+        this.dir = dir;
+        this.pronunciations = pronunciations;
+        this.registry = registry;
+        this.worker = worker;
+        model.setTempDir(dir);
+    }
+
+    public LanguageModelUpdater setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Counts, in the background, the corpus the base model was compiled from and the sentences
+     * journaled before; if there are any of the latter, a version with them is built right away.
+     * Call once, before adding sentences.
+     */
+    public void restore(final File corpus) {
+        worker.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (!dir.isDirectory() && !dir.mkdirs()) {
+                                throw new IOException("Cannot create " + dir);
+                            }
+                            deleteVersions();
+                            model.addCorpus(corpus);
+                            File journal = new File(dir, JOURNAL);
+                            if (journal.isFile() && model.addCorpus(journal) > 0) {
+                                build();
+                            }
+                        } catch (Exception e) {
+                            fail(e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Adds sentences in the background and swaps in the model built with them. Sentences with a
+     * word the pronunciations lack are rejected as a whole.
+     */
+    public void addSentences(Collection<String> sentences) {
+        final List<String> added = new ArrayList<>(sentences);
+        worker.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            update(added);
+                        } catch (Exception e) {
+                            fail(e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Swaps the active version and the previous one, on the calling thread. Updates build on
+     * every sentence added all the same.
+     *
+     * @return false if there is no previous version
+     */
+    public boolean rollback() {
+        int version;
+        synchronized (this) {
+            if (previousVersion == NONE) {
+                return false;
+            }
+            version = previousVersion;
+            registry.redirect(baseSearch, searchName(version));
+            previousVersion = activeVersion;
+            activeVersion = version;
+        }
+        notifySwapped(version);
+        return true;
+    }
+
+    /** @return the version utterances of the base search decode with, 0 for the base model */
+    public synchronized int getActiveVersion() {
+        return activeVersion;
+    }
+
+    /** @return the ARPA file of the active version */
+    public synchronized File getActiveModel() {
+        return modelFile(activeVersion);
+    }
+
+    /** @return the name of the search built from {@code version} */
+    public String searchName(int version) {
+        return version == 0 ? baseSearch : baseSearch + "_v" + version;
+    }
+
+    private void update(List<String> sentences) throws Exception {
+        Set<String> missing = new TreeSet<>();
+        List<String> normalized = new ArrayList<>(sentences.size());
+        for (String sentence : sentences) {
+            String[] words = IncrementalLm.words(sentence);
+            for (String word : words) {
+                if (!pronunciations.contains(word)) {
+                    missing.add(word);
+                }
+            }
+            if (words.length > 0) {
+                normalized.add(join(words));
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IOException("No pronunciation for " + missing);
+        }
+        if (normalized.isEmpty()) {
+            return;
+        }
+
+        appendToJournal(normalized);
+        for (String sentence : normalized) {
+            model.addSentence(sentence);
+        }
+        build();
+    }
+
+    private void build() throws Exception {
+        long start = System.nanoTime();
+        int version = latestVersion + 1;
+        File lm = versionFile(version, ".lm");
+        File dictionary = versionFile(version, ".dict");
+        String search = searchName(version);
+        try {
+            model.write(lm);
+            Writer out = open(dictionary, false);
+            try {
+                // the new words were checked when they were added
+                pronunciations.writeSubset(model.getWords(), out);
+            } finally {
+                out.close();
+            }
+            Metrics.LM_UPDATE.recordSince(start);
+
+            registry.declare(
+                    SearchSpec.ngram(search, lm).setDictionary(dictionary).setLazy(true));
+            // waits for the utterance in progress, if any
+            registry.compileNow(search);
+        } catch (Exception e) {
+            // nothing uses the version yet; the next update builds it again, sentences included
+            registry.remove(search);
+            lm.delete();
+            dictionary.delete();
+            throw e;
+        }
+        latestVersion = version;
+
+        int removed;
+        synchronized (this) {
+            registry.redirect(baseSearch, search);
+            removed = previousVersion;
+            previousVersion = activeVersion;
+            activeVersion = version;
+        }
+        if (removed > 0) {
+            registry.remove(searchName(removed));
+            versionFile(removed, ".lm").delete();
+            versionFile(removed, ".dict").delete();
+        }
+        notifySwapped(version);
+    }
+
+    private void notifySwapped(int version) {
+        Listener current = listener;
+        if (current != null) {
+            current.onSwapped(version, modelFile(version));
+        }
+    }
+
+    private void fail(Exception e) {
+        Listener current = listener;
+        if (current != null) {
+            current.onUpdateFailed(e);
+        }
+    }
+
+    private File modelFile(int version) {
+        return version == 0 ? baseModel : versionFile(version, ".lm");
+    }
+
+    private File versionFile(int version, String suffix) {
+        return new File(dir, baseSearch + "-v" + version + suffix);
+    }
+
+    /** Versions of an earlier run, which the restored counts replace. */
+    private void deleteVersions() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(baseSearch + "-v")) {
+                file.delete();
+            }
+        }
+    }
+
+    private void appendToJournal(List<String> sentences) throws IOException {
+        Writer out = open(new File(dir, JOURNAL), true);
+        try {
+            for (String sentence : sentences) {
+                out.write(sentence);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Writer open(File file, boolean append) throws IOException {
+        return new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file, append), UTF_8));
+    }
+
+    private static String join(String[] words) {
+        StringBuilder text = new StringBuilder();
+        for (String word : words) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(word);
+        }
+        return text.toString();
+    }
+}
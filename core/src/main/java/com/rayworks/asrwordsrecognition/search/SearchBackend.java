@@ -0,0 +1,14 @@
+package com.rayworks.asrwordsrecognition.search;
+
+/**
+ * Builds searches into a decoder. The {@link SearchRegistry} never calls it concurrently, nor
+ * while the decoder is decoding.
+ */
+public interface SearchBackend {
+
+    /** Builds the search, replacing any previous search of the same name. */
+    void compile(SearchSpec spec) throws Exception;
+
+    /** Frees what the search holds; it is compiled again before its next use. */
+    void release(SearchSpec spec) throws Exception;
+}
@@ -0,0 +1,368 @@
+package com.rayworks.asrwordsrecognition.search;
+
+import com.rayworks.asrwordsrecognition.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The searches a decoder can switch between, built in the background as they are declared.
+ *
+ * <p>Declared searches are compiled on the worker executor, most urgent first, so that switching
+ * to one later costs nothing; lazy ones wait until they are used or {@link #prefetch(String)
+ * prefetched}. A search that is needed before its turn is compiled by the thread that needs it.
+ * Under memory pressure, searches that were not used for a while can be {@link
+ * #evictIdle(long) evicted} and are rebuilt on their next use.
+ *
+ * <p>The decoder is not thread-safe, so every backend call and every utterance hold the same
+ * lock: a decoding thread {@link #acquire(String) acquires} the search it decodes with and
+ * {@link #release() releases} it when the utterance ends, and background work waits meanwhile.
+ *
+ * <p>A name can be {@link #redirect(String, String) redirected} to another search, so that a new
+ * version of a search is swapped in at once for every utterance that starts afterwards, while
+ * the one in progress finishes on the search it acquired.
+ */
+public class SearchRegistry {
+
+    private final SearchBackend backend;
+    private final Executor worker;
+    private final ReentrantLock decoderLock = new ReentrantLock();
+
+    // guarded by this
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, String> redirects = new HashMap<>();
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private Entry inUse;
+    private boolean workerScheduled;
+    private boolean closed;
+    private int declarations;
+
+    private volatile Exception lastError;
+
+    private final Runnable compileQueued =
+            new Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        Entry next;
+                        synchronized (SearchRegistry.this) {
+                            next = closed ? null : queue.poll();
+                            if (next == null) {
+                                workerScheduled = false;
+                                return;
+                            }
+                        }
+                        decoderLock.lock();
+                        try {
+                            compileIfNeeded(next);
+                        } catch (Exception e) {
+                            lastError = e;
+                        } finally {
+                            decoderLock.unlock();
+                        }
+                    }
+                }
+            };
+
+    public SearchRegistry(SearchBackend backend, Executor worker) {
+        this.backend = backend;
+        this.worker = worker;
+    }
+
+    /**
+     * Declares a search, replacing any earlier declaration of the name, and queues it for a
+     * background build unless it is lazy.
+     */
+    public synchronized void declare(SearchSpec spec) {
+        Entry entry = new Entry(spec, declarations++);
+        Entry previous = entries.put(spec.getName(), entry);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+        if (!spec.isLazy()) {
+            enqueue(entry);
+        }
+    }
+
+    /** Queues a lazy or evicted search for a background build. */
+    public synchronized void prefetch(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown search " + name);
+        }
+        if (!entry.compiled) {
+            enqueue(entry);
+        }
+    }
+
+    /**
+     * Forgets a search, releasing it on the worker if it was built. Redirects to it are dropped.
+     */
+    public void remove(String name) {
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.remove(name);
+            if (entry == null) {
+                return;
+            }
+            queue.remove(entry);
+            redirects.values().removeAll(Collections.singleton(name));
+            redirects.remove(name);
+            if (!entry.compiled || closed) {
+                return;
+            }
+        }
+        worker.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        decoderLock.lock();
+                        try {
+                            synchronized (SearchRegistry.this) {
+                                if (closed || !entry.compiled) {
+                                    return;
+                                }
+                                entry.compiled = false;
+                            }
+                            backend.release(entry.spec);
+                        } catch (Exception e) {
+                            lastError = e;
+                        } finally {
+                            decoderLock.unlock();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Makes utterances that {@link #acquire(String) acquire} {@code name} decode with {@code
+     * target} from now on; a null target undoes the redirect. Both must be declared.
+     */
+    public synchronized void redirect(String name, String target) {
+        if (!entries.containsKey(name)) {
+            throw new IllegalArgumentException("Unknown search " + name);
+        }
+        if (target == null || target.equals(name)) {
+            redirects.remove(name);
+            return;
+        }
+        if (!entries.containsKey(target)) {
+            throw new IllegalArgumentException("Unknown search " + target);
+        }
+        redirects.put(name, target);
+    }
+
+    /** @return the search utterances acquiring {@code name} decode with */
+    public synchronized String resolve(String name) {
+        String target = redirects.get(name);
+        return target != null ? target : name;
+    }
+
+    public synchronized boolean isDeclared(String name) {
+        return entries.containsKey(name);
+    }
+
+    public synchronized boolean isCompiled(String name) {
+        Entry entry = entries.get(name);
+        return entry != null && entry.compiled;
+    }
+
+    /** @return the declared names, in declaration order */
+    public synchronized List<String> getNames() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * Takes the decoder for an utterance with the named search, compiling the search first if it
+     * is not built yet. Blocks while background work holds the decoder. Every successful call
+     * must be followed by {@link #release()} on the same thread.
+     *
+     * @return the name of the search to decode with, differing from {@code name} if it is
+     *     {@link #redirect(String, String) redirected}
+     * @throws IllegalArgumentException if the search was never declared
+     * @throws InterruptedException if the thread was interrupted while waiting for the decoder
+     * @throws Exception if the search could not be compiled; the decoder is not held then
+     */
+    public String acquire(String name) throws Exception {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(resolve(name));
+            if (entry == null) {
+                throw new IllegalArgumentException("Unknown search " + name);
+            }
+            if (closed) {
+                throw new IllegalStateException("Search registry is shut down");
+            }
+        }
+        // a build can take seconds; whoever waits for it must be able to give up
+        decoderLock.lockInterruptibly();
+        try {
+            compileIfNeeded(entry);
+            synchronized (this) {
+                inUse = entry;
+            }
+        } catch (Exception e) {
+            decoderLock.unlock();
+            throw e;
+        }
+        return entry.spec.getName();
+    }
+
+    /**
+     * Builds the named search on the calling thread unless it is built already, waiting for the
+     * utterance in progress to end first. Waiting can be interrupted.
+     */
+    public void compileNow(String name) throws Exception {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(name);
+            if (entry == null) {
+                throw new IllegalArgumentException("Unknown search " + name);
+            }
+        }
+        decoderLock.lockInterruptibly();
+        try {
+            compileIfNeeded(entry);
+        } finally {
+            decoderLock.unlock();
+        }
+    }
+
+    /** Returns the decoder taken by {@link #acquire(String)}. */
+    public void release() {
+        synchronized (this) {
+            if (inUse != null) {
+                inUse.lastUsedNanos = System.nanoTime();
+                inUse = null;
+            }
+        }
+        decoderLock.unlock();
+    }
+
+    /**
+     * Evicts, on the worker, the compiled searches that are neither pinned nor in use and were
+     * not used in the last {@code maxIdleNanos}; zero evicts every one of them.
+     */
+    public void evictIdle(final long maxIdleNanos) {
+        worker.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        evictIdle(maxIdleNanos, System.nanoTime());
+                    }
+                });
+    }
+
+    /** @return how many searches were evicted */
+    int evictIdle(long maxIdleNanos, long nowNanos) {
+        int evicted = 0;
+        decoderLock.lock();
+        try {
+            for (Entry entry : idleEntries(maxIdleNanos, nowNanos)) {
+                try {
+                    backend.release(entry.spec);
+                    evicted++;
+                } catch (Exception e) {
+                    lastError = e;
+                }
+                // released or not, rebuild it rather than trust a half-freed search
+                synchronized (this) {
+                    entry.compiled = false;
+                }
+            }
+        } finally {
+            decoderLock.unlock();
+        }
+        return evicted;
+    }
+
+    /** Stops background work and evictions; waits for one in progress. */
+    public void shutdown() {
+        synchronized (this) {
+            closed = true;
+            queue.clear();
+        }
+        decoderLock.lock();
+        decoderLock.unlock();
+    }
+
+    /** @return the last failure of a background build or eviction, null if none */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    private synchronized List<Entry> idleEntries(long maxIdleNanos, long nowNanos) {
+        List<Entry> idle = new ArrayList<>();
+        if (closed) {
+            // the backend may already be gone
+            return idle;
+        }
+        for (Entry entry : entries.values()) {
+            if (entry.compiled
+                    && entry != inUse
+                    && !entry.spec.isPinned()
+                    // the current version of a redirected search
+                    && !redirects.containsValue(entry.spec.getName())
+                    && nowNanos - entry.lastUsedNanos >= maxIdleNanos) {
+                idle.add(entry);
+            }
+        }
+        return idle;
+    }
+
+    private void enqueue(Entry entry) {
+        if (closed || queue.contains(entry)) {
+            return;
+        }
+        queue.add(entry);
+        if (!workerScheduled) {
+            workerScheduled = true;
+            worker.execute(compileQueued);
+        }
+    }
+
+    /** Called with the decoder lock held. */
+    private void compileIfNeeded(Entry entry) throws Exception {
+        synchronized (this) {
+            if (entry.compiled || entries.get(entry.spec.getName()) != entry) {
+                return;
+            }
+        }
+        long start = System.nanoTime();
+        backend.compile(entry.spec);
+        Metrics.SEARCH_COMPILE.recordSince(start);
+        synchronized (this) {
+            entry.compiled = true;
+            // not used yet, but it should not be the first thing evicted either
+            entry.lastUsedNanos = System.nanoTime();
+            queue.remove(entry);
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final SearchSpec spec;
+        final int sequence;
+        boolean compiled;
+        long lastUsedNanos;
+
+        Entry(SearchSpec spec, int sequence) {
+            this.spec = spec;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (spec.getPriority() != other.spec.getPriority()) {
+                return spec.getPriority() < other.spec.getPriority() ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+        }
+    }
+}
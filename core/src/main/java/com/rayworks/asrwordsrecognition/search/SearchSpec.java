@@ -0,0 +1,125 @@
+package com.rayworks.asrwordsrecognition.search;
+
+import java.io.File;
+
+/**
+ * A named decoder search as declared to the {@link SearchRegistry}: what kind it is, the model or
+ * phrase it is built from, and when it should be built.
+ */
+public final class SearchSpec {
+
+    public enum Type {
+        /** An ARPA or binary n-gram language model file. */
+        NGRAM,
+        /** A JSGF grammar file. */
+        GRAMMAR,
+        /** A single keyphrase to spot. */
+        KEYPHRASE,
+        /** A file of keyphrases with their thresholds. */
+        KEYWORDS
+    }
+
+    /** Priority of the search the app starts with. */
+    public static final int PRIORITY_DEFAULT = 0;
+    /** Priority of searches that are likely needed soon but not first. */
+    public static final int PRIORITY_LOW = 10;
+
+    private final String name;
+    private final Type type;
+    private final File file;
+    private final String phrase;
+    private File dictionary;
+    private int priority = PRIORITY_DEFAULT;
+    private boolean lazy;
+    private boolean pinned;
+
+    private SearchSpec(String name, Type type, File file, String phrase) {
+        this.name = name;
+        this.type = type;
+        this.file = file;
+        this.phrase = phrase;
+    }
+
+    public static SearchSpec ngram(String name, File model) {
+        return new SearchSpec(name, Type.NGRAM, model, null);
+    }
+
+    public static SearchSpec grammar(String name, File jsgf) {
+        return new SearchSpec(name, Type.GRAMMAR, jsgf, null);
+    }
+
+    public static SearchSpec keyphrase(String name, String phrase) {
+        return new SearchSpec(name, Type.KEYPHRASE, null, phrase);
+    }
+
+    public static SearchSpec keywords(String name, File list) {
+        return new SearchSpec(name, Type.KEYWORDS, list, null);
+    }
+
+    /** Background builds go in ascending priority, then declaration order. */
+    public SearchSpec setPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /** A lazy search is only built when first used or prefetched, never in the background. */
+    public SearchSpec setLazy(boolean lazy) {
+        this.lazy = lazy;
+        return this;
+    }
+
+    /** A pinned search is never evicted. */
+    public SearchSpec setPinned(boolean pinned) {
+        this.pinned = pinned;
+        return this;
+    }
+
+    /**
+     * Pronunciations in the text format that the search may need beyond the decoder's dictionary,
+     * added to it before the search is built.
+     */
+    public SearchSpec setDictionary(File dictionary) {
+        this.dictionary = dictionary;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** @return the model file, null for a keyphrase */
+    public File getFile() {
+        return file;
+    }
+
+    /** @return the keyphrase, null for the file-based types */
+    public String getPhrase() {
+        return phrase;
+    }
+
+    /** @return the extra pronunciations, null if the decoder's dictionary covers the search */
+    public File getDictionary() {
+        return dictionary;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public boolean isPinned() {
+        return pinned;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + type + ": " + (file != null ? file.getName() : phrase) + ")";
+    }
+}
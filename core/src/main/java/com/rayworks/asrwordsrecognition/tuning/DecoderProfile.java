@@ -0,0 +1,58 @@
+package com.rayworks.asrwordsrecognition.tuning;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decoder options for one class of device: the devices whose {@link DeviceBenchmark} score is at
+ * least {@link #getMinScore()}. Carries the scores the options had on the tuning host.
+ */
+public final class DecoderProfile {
+
+    private final String name;
+    private final double minScore;
+    private final Map<String, String> options;
+    private final double wordErrorRate;
+    private final double realTimeFactor;
+
+    /**
+     * @param realTimeFactor on the tuning host; NaN with the word error rate if not measured
+     */
+    public DecoderProfile(String name, double minScore, Map<String, String> options,
+                          double wordErrorRate, double realTimeFactor) {
+        this.name = name;
+        this.minScore = minScore;
+        this.options = Collections.unmodifiableMap(new LinkedHashMap<>(options));
+        this.wordErrorRate = wordErrorRate;
+        this.realTimeFactor = realTimeFactor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getMinScore() {
+        return minScore;
+    }
+
+    /** Decoder options by name, with values as they would be given on the command line. */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    public double getWordErrorRate() {
+        return wordErrorRate;
+    }
+
+    public double getRealTimeFactor() {
+        return realTimeFactor;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s (score >= %.0f, WER %.2f%%, RTF %.3f): %s",
+                name, minScore, wordErrorRate * 100, realTimeFactor, options);
+    }
+}
@@ -0,0 +1,74 @@
+package com.rayworks.asrwordsrecognition.tuning;
+
+import java.util.Random;
+
+/**
+ * A short CPU micro-benchmark for telling devices apart: it scores feature frames against
+ * diagonal Gaussians, the inner loop a semi-continuous decoder spends most of its time in, on
+ * the calling thread. Scores are Gaussians per millisecond; they compare one core of a device
+ * with one core of the host the profiles were tuned on, not absolute speed.
+ */
+public final class DeviceBenchmark {
+
+    private static final int DIMENSIONS = 39;
+    private static final int GAUSSIANS = 256;
+    private static final int FRAMES = 8;
+
+    private final float[] features = new float[FRAMES * DIMENSIONS];
+    private final float[] means = new float[GAUSSIANS * DIMENSIONS];
+    private final float[] precisions = new float[GAUSSIANS * DIMENSIONS];
+    // written so that the compiler cannot drop the work
+    private float sink;
+
+    public DeviceBenchmark() {
+        Random random = new Random(7);
+        for (int i = 0; i < features.length; i++) {
+            features[i] = (float) random.nextGaussian();
+        }
+        for (int i = 0; i < means.length; i++) {
+            means[i] = (float) random.nextGaussian();
+            precisions[i] = 0.5f + random.nextFloat();
+        }
+    }
+
+    /**
+     * Runs the kernel for about {@code millis}, the first quarter of it as a warm-up for the
+     * JIT, and returns Gaussians scored per millisecond over the rest.
+     */
+    public double measure(long millis) {
+        long warmUpEnd = System.nanoTime() + millis * 1000000L / 4;
+        while (System.nanoTime() < warmUpEnd) {
+            sink += score();
+        }
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L * 3 / 4;
+        long rounds = 0;
+        long now;
+        do {
+            sink += score();
+            rounds++;
+            now = System.nanoTime();
+        } while (now < end);
+        return rounds * (double) FRAMES * GAUSSIANS / ((now - start) / 1e6);
+    }
+
+    /** The best Gaussian of each frame, summed. */
+    private float score() {
+        float total = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            int f = frame * DIMENSIONS;
+            float best = Float.NEGATIVE_INFINITY;
+            for (int g = 0; g < GAUSSIANS; g++) {
+                int m = g * DIMENSIONS;
+                float distance = 0;
+                for (int d = 0; d < DIMENSIONS; d++) {
+                    float diff = features[f + d] - means[m + d];
+                    distance += diff * diff * precisions[m + d];
+                }
+                best = Math.max(best, -distance);
+            }
+            total += best;
+        }
+        return total;
+    }
+}
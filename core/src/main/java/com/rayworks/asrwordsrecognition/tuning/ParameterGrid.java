@@ -0,0 +1,52 @@
+package com.rayworks.asrwordsrecognition.tuning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Decoder options and the values to try for each; a sweep visits every combination. */
+public final class ParameterGrid {
+
+    private final Map<String, List<String>> axes = new LinkedHashMap<>();
+
+    /** Tries {@code values} for the option {@code name}; a single value fixes the option. */
+    public ParameterGrid add(String name, String... values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("No values for " + name);
+        }
+        axes.put(name, Collections.unmodifiableList(new ArrayList<>(Arrays.asList(values))));
+        return this;
+    }
+
+    public int size() {
+        int size = 1;
+        for (List<String> values : axes.values()) {
+            size *= values.size();
+        }
+        return size;
+    }
+
+    /** Every combination, in the order of the options, the last one varying fastest. */
+    public List<Map<String, String>> points() {
+        List<Map<String, String>> points = new ArrayList<>(size());
+        List<String> names = new ArrayList<>(axes.keySet());
+        int[] indices = new int[names.size()];
+        for (int point = 0; point < size(); point++) {
+            Map<String, String> options = new LinkedHashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                options.put(names.get(i), axes.get(names.get(i)).get(indices[i]));
+            }
+            points.add(Collections.unmodifiableMap(options));
+            for (int i = names.size() - 1; i >= 0; i--) {
+                if (++indices[i] < axes.get(names.get(i)).size()) {
+                    break;
+                }
+                indices[i] = 0;
+            }
+        }
+        return points;
+    }
+}
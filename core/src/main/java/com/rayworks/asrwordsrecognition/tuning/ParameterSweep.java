@@ -0,0 +1,139 @@
+package com.rayworks.asrwordsrecognition.tuning;
+
+import com.rayworks.asrwordsrecognition.eval.EvalItem;
+import com.rayworks.asrwordsrecognition.eval.EvalReport;
+import com.rayworks.asrwordsrecognition.eval.Evaluator;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates every combination of a {@link ParameterGrid} over an evaluation set, for finding the
+ * options that trade the least accuracy for speed.
+ *
+ * <p>Combinations are evaluated one after the other, each with the given number of workers, by
+ * default one so that decoders do not compete for the caches. The first combination is decoded
+ * once more up front, untimed, so that it does not pay for loading the audio and the models into
+ * the page cache. A combination the engine rejects fails the whole sweep.
+ *
+ * <p>To tune the app's profiles on a host with the native pocketsphinx library:
+ *
+ * <pre>
+ * java ParameterSweep manifest.tsv decoder-profiles.properties en-us-ptm pruned-en-us.dict
+ *     6805.lm -ds 1,2,3 -topn 2,4 -beam 1e-48,1e-60 [-option value,...]...
+ * </pre>
+ *
+ * and copy the profiles next to the models in the app's assets.
+ */
+public class ParameterSweep {
+
+    /** Real-time factor a device class must stay within, with room left for the app itself. */
+    public static final double MAX_DEVICE_RTF = 0.5;
+
+    private static final long BENCHMARK_MILLIS = 2000;
+
+    private final TunableEngine engine;
+    private final List<EvalItem> items;
+    private int parallelism = 1;
+
+    public ParameterSweep(TunableEngine engine, List<EvalItem> items) {
+        this.engine = engine;
+        this.items = items;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5 || args.length % 2 == 0) {
+            System.err.println("Usage: ParameterSweep <manifest> <profiles.properties> <hmm> "
+                    + "<dict> <lm> [-option value[,value]...]...");
+            System.exit(1);
+        }
+        ParameterGrid grid = new ParameterGrid();
+        for (int i = 5; i < args.length; i += 2) {
+            grid.add(args[i], args[i + 1].split(","));
+        }
+        TunableEngine sphinx = new SphinxTunableEngine(
+                new File(args[2]), new File(args[3]), new File(args[4]));
+
+        // before the sweep, while the host is as idle as it gets
+        double referenceScore = new DeviceBenchmark().measure(BENCHMARK_MILLIS);
+        List<SweepPoint> points =
+                new ParameterSweep(sphinx, EvalItem.readManifest(new File(args[0]))).run(grid);
+        for (SweepPoint point : points) {
+            System.out.println(point);
+        }
+        System.out.println("Pareto front:");
+        List<SweepPoint> front = paretoFront(points);
+        for (SweepPoint point : front) {
+            System.out.println(point);
+        }
+
+        ProfileSet profiles = ProfileSet.fromSweep(
+                front, referenceScore, MAX_DEVICE_RTF, ProfileSet.DEVICE_CLASSES);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]));
+        try {
+            profiles.write(out);
+        } finally {
+            out.close();
+        }
+        for (DecoderProfile profile : profiles.getProfiles()) {
+            System.out.println(profile);
+        }
+    }
+
+    public ParameterSweep setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /** @return the scores of every combination, in the order of {@link ParameterGrid#points()} */
+    public List<SweepPoint> run(ParameterGrid grid) throws IOException {
+        List<Map<String, String>> combinations = grid.points();
+        List<SweepPoint> points = new ArrayList<>(combinations.size());
+        for (int i = 0; i < combinations.size(); i++) {
+            Map<String, String> options = combinations.get(i);
+            Evaluator evaluator =
+                    new Evaluator(engine.configure(options)).setParallelism(parallelism);
+            if (i == 0) {
+                evaluator.evaluate(items);
+            }
+            EvalReport report = evaluator.evaluate(items);
+            points.add(new SweepPoint(options, report.getWordErrorRate(),
+                    report.getRealTimeFactor(), report.getLatencyMillis(95)));
+        }
+        return points;
+    }
+
+    /**
+     * The points no other point beats on both speed and accuracy: for each, every faster point
+     * has more errors.
+     *
+     * @return from the fastest point to the most accurate
+     */
+    public static List<SweepPoint> paretoFront(List<SweepPoint> points) {
+        List<SweepPoint> sorted = new ArrayList<>(points);
+        Collections.sort(sorted, new Comparator<SweepPoint>() {
+            @Override
+            public int compare(SweepPoint a, SweepPoint b) {
+                int bySpeed = Double.compare(a.getRealTimeFactor(), b.getRealTimeFactor());
+                return bySpeed != 0
+                        ? bySpeed : Double.compare(a.getWordErrorRate(), b.getWordErrorRate());
+            }
+        });
+        List<SweepPoint> front = new ArrayList<>();
+        for (SweepPoint point : sorted) {
+            if (front.isEmpty()
+                    || point.getWordErrorRate() < front.get(front.size() - 1).getWordErrorRate()) {
+                front.add(point);
+            }
+        }
+        return front;
+    }
+}
@@ -0,0 +1,180 @@
+package com.rayworks.asrwordsrecognition.tuning;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Named decoder profiles, one per class of device, and the {@link DeviceBenchmark} score of the
+ * host they were tuned on. Stored as properties:
+ *
+ * <pre>
+ * reference.score=52000.0
+ * profiles=low,mid,high
+ * low.score=5200.0
+ * low.wer=0.12
+ * low.rtf=0.04
+ * low.option.-ds=2
+ * </pre>
+ */
+public final class ProfileSet {
+
+    /**
+     * Device classes by the speed of one of their cores relative to a core of the tuning host,
+     * a desktop; budget phones are at about a tenth of it.
+     */
+    public static final Map<String, Double> DEVICE_CLASSES;
+
+    static {
+        Map<String, Double> classes = new LinkedHashMap<>();
+        classes.put("low", 0.1);
+        classes.put("mid", 0.25);
+        classes.put("high", 0.5);
+        DEVICE_CLASSES = Collections.unmodifiableMap(classes);
+    }
+
+    private static final String REFERENCE_SCORE = "reference.score";
+    private static final String PROFILES = "profiles";
+    private static final String SCORE = ".score";
+    private static final String WER = ".wer";
+    private static final String RTF = ".rtf";
+    private static final String OPTION = ".option.";
+
+    private final double referenceScore;
+    private final List<DecoderProfile> profiles;
+
+    public ProfileSet(double referenceScore, List<DecoderProfile> profiles) {
+        if (profiles.isEmpty()) {
+            throw new IllegalArgumentException("No profiles");
+        }
+        this.referenceScore = referenceScore;
+        List<DecoderProfile> sorted = new ArrayList<>(profiles);
+        Collections.sort(sorted, new Comparator<DecoderProfile>() {
+            @Override
+            public int compare(DecoderProfile a, DecoderProfile b) {
+                return Double.compare(a.getMinScore(), b.getMinScore());
+            }
+        });
+        this.profiles = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Picks for each device class the most accurate point whose real-time factor, scaled to the
+     * class's speed, stays within {@code maxRtf}, or the fastest point if none does.
+     *
+     * @param points sweep results, usually their {@link ParameterSweep#paretoFront(List)}
+     * @param referenceScore the benchmark score of the host the points were measured on
+     * @param classes relative speeds by class name, e.g. {@link #DEVICE_CLASSES}
+     */
+    public static ProfileSet fromSweep(List<SweepPoint> points, double referenceScore,
+                                       double maxRtf, Map<String, Double> classes) {
+        if (points.isEmpty()) {
+            throw new IllegalArgumentException("No sweep points");
+        }
+        List<DecoderProfile> profiles = new ArrayList<>(classes.size());
+        for (Map.Entry<String, Double> deviceClass : classes.entrySet()) {
+            double speed = deviceClass.getValue();
+            SweepPoint best = null;
+            SweepPoint fastest = null;
+            for (SweepPoint point : points) {
+                if (fastest == null || point.getRealTimeFactor() < fastest.getRealTimeFactor()) {
+                    fastest = point;
+                }
+                if (point.getRealTimeFactor() / speed <= maxRtf
+                        && (best == null || point.getWordErrorRate() < best.getWordErrorRate())) {
+                    best = point;
+                }
+            }
+            if (best == null) {
+                best = fastest;
+            }
+            profiles.add(new DecoderProfile(deviceClass.getKey(), speed * referenceScore,
+                    best.getOptions(), best.getWordErrorRate(), best.getRealTimeFactor()));
+        }
+        return new ProfileSet(referenceScore, profiles);
+    }
+
+    public double getReferenceScore() {
+        return referenceScore;
+    }
+
+    /** By ascending minimum score, i.e. from the slowest devices to the fastest. */
+    public List<DecoderProfile> getProfiles() {
+        return profiles;
+    }
+
+    /**
+     * @return the profile of the fastest class a device with the benchmark score {@code score}
+     *     belongs to, the slowest class's if it is slower than all of them
+     */
+    public DecoderProfile select(double score) {
+        DecoderProfile selected = profiles.get(0);
+        for (DecoderProfile profile : profiles) {
+            if (profile.getMinScore() <= score) {
+                selected = profile;
+            }
+        }
+        return selected;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(REFERENCE_SCORE, Double.toString(referenceScore));
+        StringBuilder names = new StringBuilder();
+        for (DecoderProfile profile : profiles) {
+            String name = profile.getName();
+            names.append(names.length() == 0 ? "" : ",").append(name);
+            properties.setProperty(name + SCORE, Double.toString(profile.getMinScore()));
+            properties.setProperty(name + WER, Double.toString(profile.getWordErrorRate()));
+            properties.setProperty(name + RTF, Double.toString(profile.getRealTimeFactor()));
+            for (Map.Entry<String, String> option : profile.getOptions().entrySet()) {
+                properties.setProperty(name + OPTION + option.getKey(), option.getValue());
+            }
+        }
+        properties.setProperty(PROFILES, names.toString());
+        properties.store(out, "Decoder profiles by device class");
+    }
+
+    public static ProfileSet read(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        String names = properties.getProperty(PROFILES);
+        if (names == null || names.trim().isEmpty()) {
+            throw new IOException("No " + PROFILES + " listed");
+        }
+        List<DecoderProfile> profiles = new ArrayList<>();
+        for (String name : names.split(",")) {
+            name = name.trim();
+            Map<String, String> options = new LinkedHashMap<>();
+            String prefix = name + OPTION;
+            for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+                if (key.startsWith(prefix)) {
+                    options.put(key.substring(prefix.length()), properties.getProperty(key));
+                }
+            }
+            profiles.add(new DecoderProfile(name, parse(properties, name + SCORE), options,
+                    parse(properties, name + WER), parse(properties, name + RTF)));
+        }
+        return new ProfileSet(parse(properties, REFERENCE_SCORE), profiles);
+    }
+
+    private static double parse(Properties properties, String key) throws IOException {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IOException("Missing " + key);
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad " + key + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.rayworks.asrwordsrecognition.tuning;
+
+import com.rayworks.asrwordsrecognition.eval.BatchRecognizer;
+import com.rayworks.asrwordsrecognition.eval.SphinxBatchRecognizer;
+
+import java.io.File;
+import java.util.Map;
+
+/** Sweeps pocketsphinx decoders configured like the app's, see {@link SphinxBatchRecognizer}. */
+public class SphinxTunableEngine implements TunableEngine {
+
+    private final File acousticModel;
+    private final File dictionary;
+    private final File languageModel;
+
+    public SphinxTunableEngine(File acousticModel, File dictionary, File languageModel) {
+        this.acousticModel = acousticModel;
+        this.dictionary = dictionary;
+        this.languageModel = languageModel;
+    }
+
+    @Override
+    public BatchRecognizer.Factory configure(Map<String, String> options) {
+        SphinxBatchRecognizer.Factory factory =
+                new SphinxBatchRecognizer.Factory(acousticModel, dictionary, languageModel);
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            factory.setOption(option.getKey(), option.getValue());
+        }
+        return factory;
+    }
+}
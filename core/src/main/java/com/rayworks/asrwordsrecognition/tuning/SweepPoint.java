@@ -0,0 +1,44 @@
+package com.rayworks.asrwordsrecognition.tuning;
+
+import java.util.Locale;
+import java.util.Map;
+
+/** The scores of one combination of options over the evaluation set. */
+public final class SweepPoint {
+
+    private final Map<String, String> options;
+    private final double wordErrorRate;
+    private final double realTimeFactor;
+    private final double p95LatencyMillis;
+
+    SweepPoint(Map<String, String> options, double wordErrorRate, double realTimeFactor,
+               double p95LatencyMillis) {
+        this.options = options;
+        this.wordErrorRate = wordErrorRate;
+        this.realTimeFactor = realTimeFactor;
+        this.p95LatencyMillis = p95LatencyMillis;
+    }
+
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    public double getWordErrorRate() {
+        return wordErrorRate;
+    }
+
+    /** Decode time over audio time of one decoder, see {@code EvalReport}. */
+    public double getRealTimeFactor() {
+        return realTimeFactor;
+    }
+
+    public double getP95LatencyMillis() {
+        return p95LatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "WER %.2f%%, RTF %.3f, p95 %.0f ms: %s",
+                wordErrorRate * 100, realTimeFactor, p95LatencyMillis, options);
+    }
+}
@@ -0,0 +1,16 @@
+package com.rayworks.asrwordsrecognition.tuning;
+
+import com.rayworks.asrwordsrecognition.eval.BatchRecognizer;
+
+import java.util.Map;
+
+/** A recognizer whose decoder options can be swept, e.g. pocketsphinx or a stand-in. */
+public interface TunableEngine {
+
+    /**
+     * @param options decoder options by name, e.g. {@code -beam}, with values as they would be
+     *     given on the command line
+     * @return recognizers with {@code options} set on top of the engine's defaults
+     */
+    BatchRecognizer.Factory configure(Map<String, String> options);
+}
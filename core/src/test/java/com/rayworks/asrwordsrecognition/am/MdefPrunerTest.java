@@ -0,0 +1,156 @@
+package com.rayworks.asrwordsrecognition.am;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MdefPrunerTest {
+
+    // the model shipped with the app, run from the core directory
+    private static final File MDEF = new File("../app/models/en-us-ptm/mdef");
+
+    private static final String[] WORDS = {"G OW", "T UW", "S K UW L", "AH", "HH AE P IY"};
+
+    private BinaryMdef original;
+
+    @Before
+    public void readModel() throws Exception {
+        original = BinaryMdef.read(MDEF);
+    }
+
+    private static byte[] bytes(BinaryMdef mdef) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mdef.write(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void writesTheModelBackByteForByte() throws Exception {
+        RandomAccessFile in = new RandomAccessFile(MDEF, "r");
+        byte[] file = new byte[(int) in.length()];
+        try {
+            in.readFully(file);
+        } finally {
+            in.close();
+        }
+        assertArrayEquals(file, bytes(original));
+    }
+
+    @Test
+    public void keepsThePhonesOfEveryReachableContext() throws Exception {
+        MdefPruner pruner = new MdefPruner(original);
+        for (String word : WORDS) {
+            pruner.addPronunciation(word);
+        }
+        BinaryMdef pruned = BinaryMdef.read(ByteBuffer.wrap(bytes(pruner.prune())));
+
+        assertEquals(original.getCiPhones(), pruned.getCiPhones());
+        assertEquals(original.getSilence(), pruned.getSilence());
+        assertEquals(original.getSenoneCount(), pruned.getSenoneCount());
+        assertTrue(pruned.getTriphoneCount() > 0);
+        assertTrue(pruned.getTriphoneCount() < original.getTriphoneCount() / 100);
+
+        BitSet ends = new BitSet();
+        BitSet begins = new BitSet();
+        ends.set(original.getSilence());
+        begins.set(original.getSilence());
+        int[][] phones = new int[WORDS.length][];
+        for (int w = 0; w < WORDS.length; w++) {
+            String[] names = WORDS[w].split(" ");
+            phones[w] = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                phones[w][i] = original.ciPhone(names[i]);
+            }
+            begins.set(phones[w][0]);
+            ends.set(phones[w][names.length - 1]);
+        }
+        int checked = 0;
+        for (int[] word : phones) {
+            int last = word.length - 1;
+            for (int l = ends.nextSetBit(0); l >= 0; l = ends.nextSetBit(l + 1)) {
+                for (int r = begins.nextSetBit(0); r >= 0; r = begins.nextSetBit(r + 1)) {
+                    if (last == 0) {
+                        checked += same(pruned, word[0], l, r, BinaryMdef.WORD_SINGLE);
+                    } else {
+                        checked += same(pruned, word[0], l, word[1], BinaryMdef.WORD_BEGIN);
+                        checked += same(pruned, word[last], word[last - 1], r,
+                                BinaryMdef.WORD_END);
+                    }
+                }
+            }
+            for (int i = 1; i < last; i++) {
+                checked += same(pruned, word[i], word[i - 1], word[i + 1],
+                        BinaryMdef.WORD_INTERNAL);
+            }
+        }
+        assertTrue(checked > 0);
+    }
+
+    /** @return 1 if the original model has a triphone for the context, 0 if it backs off to CI */
+    private int same(BinaryMdef pruned, int base, int left, int right, int position) {
+        int expected = original.nearestPhoneId(base, left, right, position);
+        int actual = pruned.nearestPhoneId(base, left, right, position);
+        String context = original.getCiPhones().get(base) + " between "
+                + original.getCiPhones().get(left) + " and "
+                + original.getCiPhones().get(right) + " at " + position;
+        assertArrayEquals(context, original.getSenones(expected), pruned.getSenones(actual));
+        assertEquals(context, original.getTransitionMatrix(expected),
+                pruned.getTransitionMatrix(actual));
+        assertEquals(context, expected < original.getCiPhones().size(),
+                actual < pruned.getCiPhones().size());
+        return expected < original.getCiPhones().size() ? 0 : 1;
+    }
+
+    @Test
+    public void dropsTriphonesNoWordReaches() {
+        BinaryMdef pruned = new MdefPruner(original).addPronunciation("G OW").prune();
+        int g = original.ciPhone("G");
+        int ow = original.ciPhone("OW");
+        int t = original.ciPhone("T");
+        int uw = original.ciPhone("UW");
+
+        assertTrue(pruned.phoneId(g, original.getSilence(), ow, BinaryMdef.WORD_BEGIN) >= 0);
+        assertTrue(original.phoneId(t, original.getSilence(), uw, BinaryMdef.WORD_BEGIN) >= 0);
+        assertEquals(-1, pruned.phoneId(t, original.getSilence(), uw, BinaryMdef.WORD_BEGIN));
+        assertEquals(t, pruned.nearestPhoneId(t, original.getSilence(), uw,
+                BinaryMdef.WORD_BEGIN));
+    }
+
+    @Test
+    public void verifyChecksEveryReachableContext() {
+        MdefPruner pruner = new MdefPruner(original);
+        for (String word : WORDS) {
+            pruner.addPronunciation(word);
+        }
+        assertTrue(pruner.verify(pruner.prune()) > 0);
+
+        // a model pruned for fewer words than the decoder uses
+        BinaryMdef tooSmall = new MdefPruner(original).addPronunciation("G OW").prune();
+        try {
+            pruner.verify(tooSmall);
+            fail();
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().startsWith("Pruned model differs"));
+        }
+    }
+
+    @Test
+    public void rejectsPhonesTheModelLacks() {
+        try {
+            new MdefPruner(original).addPronunciation("G XX");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("XX"));
+        }
+    }
+}
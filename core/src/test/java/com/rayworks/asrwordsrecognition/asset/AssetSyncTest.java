@@ -0,0 +1,183 @@
+package com.rayworks.asrwordsrecognition.asset;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AssetSyncTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File bundled;
+    private File target;
+    private DirectorySource source;
+
+    @Before
+    public void setUp() throws IOException {
+        bundled = temp.newFolder("apk");
+        target = temp.newFolder("sync");
+        source = new DirectorySource(bundled);
+
+        write("6805.lm", 1000, 1);
+        write("cmudict-en-us.dict", 300 * 1024, 2);
+        write("en-us-ptm/mdef", 600 * 1024, 3);
+        write("en-us-ptm/means", 40 * 1024, 4);
+    }
+
+    @Test
+    public void firstSyncCopiesEverything() throws Exception {
+        SyncResult result = new AssetSync(source, target).sync();
+
+        assertEquals(4, result.getCopied().size());
+        assertEquals(0, result.getUnchanged());
+        assertMirrored();
+        assertTrue(new File(target, AssetSync.MANIFEST_NAME).isFile());
+    }
+
+    @Test
+    public void unchangedAssetsAreNotCopiedAgain() throws Exception {
+        new AssetSync(source, target).sync();
+        source.opened.clear();
+
+        SyncResult result = new AssetSync(source, target).sync();
+
+        assertEquals(Collections.emptyList(), result.getCopied());
+        assertEquals(4, result.getUnchanged());
+        assertEquals(Collections.emptyList(), source.opened);
+    }
+
+    @Test
+    public void onlyChangedAssetsAreCopied() throws Exception {
+        new AssetSync(source, target).sync();
+        write("en-us-ptm/means", 50 * 1024, 5);
+        new File(bundled, "6805.lm").delete();
+        source.items.remove("6805.lm");
+
+        SyncResult result = new AssetSync(source, target).sync();
+
+        assertEquals(Arrays.asList("en-us-ptm/means"), result.getCopied());
+        assertEquals(Arrays.asList("6805.lm"), result.getRemoved());
+        assertEquals(2, result.getUnchanged());
+        assertTrue(!new File(target, "6805.lm").exists());
+        assertMirrored();
+    }
+
+    @Test
+    public void corruptedLocalFilesAreRepaired() throws Exception {
+        new AssetSync(source, target).sync();
+
+        // a truncated copy, and one overwritten in place with the same size
+        new RandomAccessFile(new File(target, "en-us-ptm/mdef"), "rw").setLength(10);
+        File dict = new File(target, "cmudict-en-us.dict");
+        long modified = dict.lastModified();
+        RandomAccessFile raf = new RandomAccessFile(dict, "rw");
+        raf.write(new byte[64]);
+        raf.close();
+        dict.setLastModified(modified);
+
+        SyncResult quick = new AssetSync(source, target).sync();
+        assertEquals(Arrays.asList("en-us-ptm/mdef"), quick.getCopied());
+
+        SyncResult verified = new AssetSync(source, target).setVerifyContents(true).sync();
+        assertEquals(Arrays.asList("cmudict-en-us.dict"), verified.getCopied());
+        assertMirrored();
+    }
+
+    @Test
+    public void corruptedManifestFallsBackToFullCopy() throws Exception {
+        new AssetSync(source, target).sync();
+        FileOutputStream out = new FileOutputStream(new File(target, AssetSync.MANIFEST_NAME));
+        out.write("garbage".getBytes("UTF-8"));
+        out.close();
+
+        SyncResult result = new AssetSync(source, target).sync();
+
+        assertEquals(4, result.getCopied().size());
+        assertMirrored();
+        assertEquals(0, new AssetSync(source, target).sync().getCopied().size());
+    }
+
+    private void write(String item, int size, long seed) throws IOException {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        File file = new File(bundled, item);
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(data);
+        out.close();
+
+        FileOutputStream md5 = new FileOutputStream(new File(bundled, item + ".md5"));
+        md5.write(AssetSync.md5(file).getBytes("UTF-8"));
+        md5.close();
+        if (!source.items.contains(item)) {
+            source.items.add(item);
+        }
+    }
+
+    private void assertMirrored() throws IOException {
+        for (String item : source.items) {
+            assertArrayEquals(item, read(new File(bundled, item)), read(new File(target, item)));
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        raf.readFully(data);
+        raf.close();
+        return data;
+    }
+
+    /**
+     * Serves a directory like the APK's sync folder. Dictionaries come through a plain stream,
+     * everything else as a file channel, so both copy paths are exercised.
+     */
+    private static final class DirectorySource implements AssetSource {
+        final File dir;
+        final List<String> items = new ArrayList<>();
+        final List<String> opened = Collections.synchronizedList(new ArrayList<String>());
+
+        DirectorySource(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public List<String> list() {
+            return new ArrayList<>(items);
+        }
+
+        @Override
+        public String checksum(String item) throws IOException {
+            return new String(read(new File(dir, item + ".md5")), "UTF-8").trim();
+        }
+
+        @Override
+        public Content open(String item) throws IOException {
+            opened.add(item);
+            File file = new File(dir, item);
+            FileInputStream in = new FileInputStream(file);
+            if (item.endsWith(".dict")) {
+                return new Content(Channels.newChannel(in));
+            }
+            return new Content(in.getChannel(), 0, file.length(), in);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EnergyGateTest {
+
+    private static final int RATE = 16000;
+    private static final int CHUNK = 640;
+
+    @Test
+    public void opensOnLoudChunksAndClosesAfterTheHangover() {
+        EnergyGate gate = new EnergyGate(RATE).setHangoverMillis(80);
+        assertFalse(gate.process(new short[CHUNK], 0, CHUNK));
+        assertTrue(gate.process(tone(3000), 0, CHUNK));
+
+        // two quiet chunks are 80 ms, within the hangover
+        assertTrue(gate.process(new short[CHUNK], 0, CHUNK));
+        assertTrue(gate.process(new short[CHUNK], 0, CHUNK));
+        assertFalse(gate.process(new short[CHUNK], 0, CHUNK));
+        assertFalse(gate.isOpen());
+        assertEquals(2 * CHUNK, gate.getSkippedSamples());
+    }
+
+    @Test
+    public void preRollPrecedesTheOpeningChunk() {
+        // 100 ms of pre-roll: the last two and a half quiet chunks
+        EnergyGate gate = new EnergyGate(RATE, 100).setThresholdDb(-10);
+        for (int i = 1; i <= 5; i++) {
+            assertFalse(gate.process(positions(i), 0, CHUNK));
+        }
+        assertTrue(gate.process(tone(20000), 0, CHUNK));
+
+        short[] preRoll = new short[gate.getPreRollCapacity()];
+        assertEquals(1600, gate.drainPreRoll(preRoll));
+        // oldest first: the second half of chunk 3, then chunks 4 and 5
+        assertEquals(3 * CHUNK + 320, preRoll[0]);
+        assertEquals(6 * CHUNK - 1, preRoll[1599]);
+        assertEquals(0, gate.drainPreRoll(preRoll));
+    }
+
+    @Test
+    public void resetForgetsThePreRoll() {
+        EnergyGate gate = new EnergyGate(RATE);
+        gate.process(new short[CHUNK], 0, CHUNK);
+        gate.process(tone(3000), 0, CHUNK);
+        gate.reset();
+
+        assertFalse(gate.isOpen());
+        assertEquals(0, gate.drainPreRoll(new short[gate.getPreRollCapacity()]));
+    }
+
+    /** Samples numbered by their position in the stream, so the pre-roll order shows. */
+    private static short[] positions(int index) {
+        short[] chunk = new short[CHUNK];
+        for (int i = 0; i < CHUNK; i++) {
+            chunk[i] = (short) (index * CHUNK + i);
+        }
+        return chunk;
+    }
+
+    private static short[] tone(int amplitude) {
+        short[] chunk = new short[CHUNK];
+        for (int i = 0; i < CHUNK; i++) {
+            chunk[i] = (short) (amplitude * Math.sin(2 * Math.PI * 200 * i / RATE));
+        }
+        return chunk;
+    }
+}
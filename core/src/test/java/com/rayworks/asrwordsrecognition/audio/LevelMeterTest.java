@@ -0,0 +1,134 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LevelMeterTest {
+
+    private static final long FRAME_NANOS = 16_666_667L;
+
+    @Test
+    public void measuresRmsAndPeakInDbfs() {
+        LevelMeter meter = new LevelMeter();
+        assertEquals(LevelMeter.SILENCE_DB, meter.getRmsDb(), 0);
+
+        // a sine's RMS is 3 dB below its peak
+        short[] sine = new short[1600];
+        for (int i = 0; i < sine.length; i++) {
+            sine[i] = (short) Math.round(3277 * Math.sin(2 * Math.PI * 400 * i / 16000.0));
+        }
+        meter.onFrame(sine, sine.length);
+        assertEquals(-20, meter.getPeakDb(), 0.01);
+        assertEquals(-23.01, meter.getRmsDb(), 0.01);
+
+        short[] square = new short[640];
+        for (int i = 0; i < square.length; i++) {
+            square[i] = i % 2 == 0 ? Short.MIN_VALUE : -Short.MIN_VALUE - 1;
+        }
+        meter.onFrame(square, square.length);
+        assertEquals(0, meter.getPeakDb(), 0.01);
+        assertEquals(0, meter.getRmsDb(), 0.01);
+
+        meter.onFrame(new short[640], 640);
+        assertEquals(LevelMeter.SILENCE_DB, meter.getRmsDb(), 0);
+        assertEquals(LevelMeter.SILENCE_DB, meter.getPeakDb(), 0);
+    }
+
+    @Test
+    public void onlyTheLatestFrameIsKept() {
+        LevelMeter meter = new LevelMeter();
+        short[] frame = new short[640];
+        for (int amplitude = 100; amplitude <= 1000; amplitude += 100) {
+            Arrays.fill(frame, (short) amplitude);
+            meter.onFrame(frame, 320);
+        }
+        assertEquals(20 * Math.log10(1000 / 32768.0), meter.getRmsDb(), 1e-4);
+        assertEquals(meter.getRmsDb(), meter.getPeakDb(), 0);
+
+        meter.onUtteranceEnd();
+        assertEquals(LevelMeter.SILENCE_DB, meter.getRmsDb(), 0);
+        assertEquals(LevelMeter.SILENCE_DB, meter.getPeakDb(), 0);
+    }
+
+    @Test
+    public void smootherAttacksFastAndDecaysSlowly() {
+        LevelMeter.Smoother smoother = new LevelMeter.Smoother(-60, 0, 50, 300);
+        assertEquals(0, smoother.update(-80, 0), 0);
+        int rising = framesToReach(smoother, 0f, 0.9f);
+        int falling = framesToReach(smoother, -60f, 0.1f);
+        // 0.9 is ln(10) time constants away, the whole way in both directions
+        assertEquals(Math.ceil(2.303 * 50e6 / FRAME_NANOS), rising, 1);
+        assertEquals(Math.ceil(2.303 * 300e6 / FRAME_NANOS), falling, 1);
+
+        // a dropped frame moves by the time that passed, not the frame count
+        smoother.reset();
+        smoother.update(-60, 0);
+        float skipped = smoother.update(0, 2 * FRAME_NANOS);
+        smoother.reset();
+        smoother.update(-60, 0);
+        smoother.update(0, FRAME_NANOS);
+        assertEquals(skipped, smoother.update(0, 2 * FRAME_NANOS), 1e-5);
+
+        assertEquals(0.5f, new LevelMeter.Smoother(-60, 0, 50, 300).update(-30, 0), 0);
+    }
+
+    @Test
+    public void meteringDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+
+        short[] samples =
+                new VoiceActivityDetectorTest.Signal(1).noise(200, -50).voiced(800, -20).samples();
+        LevelMeter meter = new LevelMeter();
+        LevelMeter.Smoother smoother = new LevelMeter.Smoother(-60, 0, 50, 300);
+        short[] frame = new short[640];
+        float sum = run(meter, smoother, samples, frame, 0);
+
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 1; i <= 200; i++) {
+            sum += run(meter, smoother, samples, frame, i);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(sum > 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static float run(
+            LevelMeter meter, LevelMeter.Smoother smoother, short[] samples, short[] frame,
+            int pass) {
+        float sum = 0;
+        long now = (long) pass * samples.length / frame.length * FRAME_NANOS;
+        for (int offset = 0; offset + frame.length <= samples.length; offset += frame.length) {
+            System.arraycopy(samples, offset, frame, 0, frame.length);
+            meter.onFrame(frame, frame.length);
+            now += FRAME_NANOS;
+            sum += smoother.update(meter.getRmsDb(), now);
+        }
+        return sum;
+    }
+
+    /** @return frames for the smoother to get past {@code value} from the far end */
+    private static int framesToReach(LevelMeter.Smoother smoother, float levelDb, float value) {
+        boolean rising = levelDb == 0;
+        smoother.reset();
+        smoother.update(rising ? -60 : 0, 0);
+        long now = 0;
+        int frames = 0;
+        while (rising ? smoother.getValue() < value : smoother.getValue() > value) {
+            now += FRAME_NANOS;
+            smoother.update(levelDb, now);
+            frames++;
+        }
+        return frames;
+    }
+}
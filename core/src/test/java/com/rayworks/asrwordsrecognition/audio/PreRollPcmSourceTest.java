@@ -0,0 +1,149 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PreRollPcmSourceTest {
+
+    private static final int SAMPLE_RATE = 1000;
+    private static final int PRE_ROLL_MILLIS = 100;
+
+    /** Counts its samples, a chunk of 10 per millisecond, up to {@code limit}. */
+    private static class CountingDevice implements PcmSource {
+        final int limit;
+        volatile int produced;
+        volatile boolean running;
+        volatile int starts;
+
+        CountingDevice(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return SAMPLE_RATE;
+        }
+
+        @Override
+        public void start() {
+            running = true;
+            starts++;
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int length) throws IOException {
+            if (produced >= limit) {
+                return -1;
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            int count = Math.min(Math.min(length, 10), limit - produced);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (short) (produced + i);
+            }
+            produced += count;
+            return count;
+        }
+
+        @Override
+        public void stop() {
+            running = false;
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    /** Reads {@code count} samples and checks that they follow on from each other. */
+    private static int readConsecutive(PcmSource source, int count) throws IOException {
+        short[] buffer = new short[64];
+        int first = -1;
+        int expected = -1;
+        while (count > 0) {
+            int read = source.read(buffer, 0, Math.min(buffer.length, count));
+            assertTrue(read > 0);
+            for (int i = 0; i < read; i++) {
+                if (first < 0) {
+                    first = expected = buffer[i];
+                }
+                assertEquals(expected++, buffer[i]);
+            }
+            count -= read;
+        }
+        return first;
+    }
+
+    @Test
+    public void warmUtteranceStartsWithThePreRoll() throws Exception {
+        CountingDevice device = new CountingDevice(Short.MAX_VALUE);
+        PreRollPcmSource source = new PreRollPcmSource(device, PRE_ROLL_MILLIS);
+        assertEquals(100, source.getPreRollSamples());
+
+        source.warmUp();
+        while (device.produced < 500) {
+            Thread.sleep(5);
+        }
+        int before = device.produced;
+        source.start();
+        int after = device.produced;
+        // the capture thread may not have stored the chunk it is reading
+        int first = readConsecutive(source, 300);
+        assertTrue(first >= before - 110 && first <= after - 100);
+        source.stop();
+        assertTrue(device.running);
+
+        // the next utterance does not restart the device
+        source.start();
+        readConsecutive(source, 50);
+        source.stop();
+        assertEquals(1, device.starts);
+
+        source.coolDown();
+        assertFalse(device.running);
+        source.release();
+    }
+
+    @Test
+    public void coldUtteranceRunsTheDeviceForItsDuration() throws Exception {
+        CountingDevice device = new CountingDevice(Short.MAX_VALUE);
+        PreRollPcmSource source = new PreRollPcmSource(device, PRE_ROLL_MILLIS);
+
+        source.start();
+        assertTrue(device.running);
+        assertEquals(0, readConsecutive(source, 200));
+        source.stop();
+        assertFalse(device.running);
+
+        // cooling down during an utterance keeps the device until the utterance ends
+        source.warmUp();
+        source.start();
+        source.coolDown();
+        assertTrue(device.running);
+        readConsecutive(source, 20);
+        source.stop();
+        assertFalse(device.running);
+        source.release();
+    }
+
+    @Test
+    public void endOfTheDeviceEndsTheUtterance() throws Exception {
+        CountingDevice device = new CountingDevice(250);
+        PreRollPcmSource source = new PreRollPcmSource(device, PRE_ROLL_MILLIS);
+
+        source.start();
+        assertEquals(0, readConsecutive(source, 250));
+        assertEquals(-1, source.read(new short[16], 0, 16));
+        assertEquals(0, source.getSkippedSamples());
+        source.stop();
+        source.release();
+    }
+}
@@ -0,0 +1,236 @@
+package com.rayworks.asrwordsrecognition.audio;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VoiceActivityDetectorTest {
+
+    private static final int RATE = 16000;
+
+    @Test
+    public void endsTheUtteranceSoonAfterSpeech() {
+        Signal signal = new Signal(1)
+                .noise(500, -50)
+                .voiced(1200, -20)
+                .noise(1500, -50);
+        VoiceActivityDetector vad = new VoiceActivityDetector(RATE).setEndSilenceMillis(500);
+
+        List<int[]> events = run(vad, signal.samples(), 160);
+
+        assertEquals(2, events.size());
+        assertEquals(VoiceActivityDetector.Event.SPEECH_STARTED.ordinal(), events.get(0)[1]);
+        assertBetween(500, 560, events.get(0)[0]);
+        assertEquals(VoiceActivityDetector.Event.UTTERANCE_ENDED.ordinal(), events.get(1)[1]);
+        // 500 ms of hangover after the speech stopped at 1700 ms
+        assertBetween(2200, 2260, events.get(1)[0]);
+        assertFalse(vad.isSpeech());
+        assertEquals(-50, vad.getNoiseFloorDb(), 2);
+    }
+
+    @Test
+    public void pausesBetweenWordsDoNotEndTheUtterance() {
+        Signal signal = new Signal(2)
+                .noise(300, -45)
+                .voiced(400, -22)
+                .noise(350, -45)
+                .fricative(150, -38)
+                .voiced(400, -25)
+                .noise(1000, -45);
+
+        List<int[]> events = run(new VoiceActivityDetector(RATE), signal.samples(), 512);
+
+        assertEquals(2, events.size());
+        assertBetween(300, 360, events.get(0)[0]);
+        assertBetween(1600 + 600, 1600 + 660, events.get(1)[0]);
+    }
+
+    @Test
+    public void quietFricativesCountThroughTheirZeroCrossings() {
+        // a hum-like background with few zero crossings, then an /s/ only 6 dB above it
+        Signal signal = new Signal(3).lowNoise(400, -45).fricative(300, -39).lowNoise(100, -45);
+        VoiceActivityDetector vad = new VoiceActivityDetector(RATE);
+        List<int[]> events = run(vad, signal.samples(), 160);
+        assertEquals(VoiceActivityDetector.Event.SPEECH_STARTED.ordinal(), events.get(0)[1]);
+
+        VoiceActivityDetector energyOnly =
+                new VoiceActivityDetector(RATE).setFricativeThreshold(4f, 2f);
+        assertTrue(run(energyOnly, signal.samples(), 160).isEmpty());
+    }
+
+    @Test
+    public void steadyNoiseIsNeverSpeech() {
+        for (int level : new int[] {-70, -50, -30, -15}) {
+            Signal signal = new Signal(level).noise(3000, level);
+            List<int[]> events = run(new VoiceActivityDetector(RATE), signal.samples(), 320);
+            assertTrue("noise at " + level + " dBFS", events.isEmpty());
+        }
+        // digital silence and a DC offset
+        short[] offset = new short[RATE];
+        Arrays.fill(offset, (short) 3000);
+        assertTrue(run(new VoiceActivityDetector(RATE), new short[RATE], 160).isEmpty());
+        assertTrue(run(new VoiceActivityDetector(RATE), offset, 160).isEmpty());
+    }
+
+    @Test
+    public void chunkingDoesNotChangeTheResult() {
+        short[] samples = new Signal(4).noise(400, -48).voiced(900, -18).noise(900, -48).samples();
+
+        // one frame per chunk reports every event at its exact frame
+        List<int[]> framed = run(new VoiceActivityDetector(RATE), samples, 160);
+        assertEquals(2, framed.size());
+        for (int chunk : new int[] {1, 37, 161, 1600, 4096}) {
+            List<int[]> chunked = run(new VoiceActivityDetector(RATE), samples, chunk);
+            assertEquals(framed.size(), chunked.size());
+            for (int i = 0; i < framed.size(); i++) {
+                assertEquals(framed.get(i)[1], chunked.get(i)[1]);
+                // otherwise with the chunk that completes the frame
+                int at = framed.get(i)[0];
+                assertBetween(at, at + chunk * 1000 / RATE + 1, chunked.get(i)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void processingDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+
+        short[] samples = new Signal(5).noise(200, -50).voiced(1000, -20).noise(800, -50).samples();
+        VoiceActivityDetector vad = new VoiceActivityDetector(RATE);
+        for (int i = 0; i < 20; i++) {
+            feed(vad, samples, 333);
+        }
+
+        long before = allocations.getThreadAllocatedBytes(thread);
+        int events = 0;
+        for (int i = 0; i < 200; i++) {
+            vad.reset();
+            events += feed(vad, samples, 333);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(400, events);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static int feed(VoiceActivityDetector vad, short[] samples, int chunk) {
+        int events = 0;
+        for (int offset = 0; offset < samples.length; offset += chunk) {
+            if (vad.process(samples, offset, Math.min(chunk, samples.length - offset))
+                    != VoiceActivityDetector.Event.NONE) {
+                events++;
+            }
+        }
+        return events;
+    }
+
+    /** @return {millisecond at the end of the chunk, event ordinal} for every event */
+    private static List<int[]> run(VoiceActivityDetector vad, short[] samples, int chunk) {
+        List<int[]> events = new ArrayList<>();
+        for (int offset = 0; offset < samples.length; offset += chunk) {
+            int n = Math.min(chunk, samples.length - offset);
+            VoiceActivityDetector.Event event = vad.process(samples, offset, n);
+            if (event != VoiceActivityDetector.Event.NONE) {
+                events.add(new int[] {(offset + n) * 1000 / RATE, event.ordinal()});
+            }
+        }
+        return events;
+    }
+
+    private static void assertBetween(int low, int high, int actual) {
+        assertTrue(actual + " not in [" + low + ", " + high + "]", actual >= low && actual <= high);
+    }
+
+    /** Synthetic test audio: background noises and speech-like segments. */
+    static final class Signal {
+        private final Random random;
+        private final List<Short> samples = new ArrayList<>();
+        private double phase;
+        private double lowNoise;
+
+        Signal(long seed) {
+            random = new Random(seed);
+        }
+
+        Signal noise(int millis, double db) {
+            double sigma = amplitude(db);
+            for (int i = 0; i < count(millis); i++) {
+                add(random.nextGaussian() * sigma);
+            }
+            return this;
+        }
+
+        /** Noise concentrated below a few hundred Hz, with a low zero-crossing rate. */
+        Signal lowNoise(int millis, double db) {
+            double sigma = amplitude(db);
+            for (int i = 0; i < count(millis); i++) {
+                lowNoise = 0.95 * lowNoise + random.nextGaussian();
+                add(lowNoise * sigma * Math.sqrt(1 - 0.95 * 0.95));
+            }
+            return this;
+        }
+
+        /** Harmonics of a gliding pitch under a syllable-rate envelope, over a faint noise. */
+        Signal voiced(int millis, double db) {
+            double peak = amplitude(db) * 1.6;
+            int n = count(millis);
+            for (int i = 0; i < n; i++) {
+                double pitch = 120 + 30 * Math.sin(2 * Math.PI * i / n);
+                phase += 2 * Math.PI * pitch / RATE;
+                double voice = 0;
+                for (int h = 1; h <= 8; h++) {
+                    voice += Math.sin(h * phase) / h;
+                }
+                double envelope = 0.7 + 0.3 * Math.sin(2 * Math.PI * 4 * i / RATE);
+                add(peak * envelope * voice / 2 + random.nextGaussian() * amplitude(-55));
+            }
+            return this;
+        }
+
+        /** High-passed noise like an /s/ or /f/. */
+        Signal fricative(int millis, double db) {
+            double sigma = amplitude(db) / Math.sqrt(2);
+            double previous = 0;
+            for (int i = 0; i < count(millis); i++) {
+                double white = random.nextGaussian();
+                add((white - previous) * sigma);
+                previous = white;
+            }
+            return this;
+        }
+
+        short[] samples() {
+            short[] result = new short[samples.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = samples.get(i);
+            }
+            return result;
+        }
+
+        private void add(double value) {
+            long rounded = Math.round(value);
+            samples.add((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, rounded)));
+        }
+
+        private static int count(int millis) {
+            return millis * RATE / 1000;
+        }
+
+        private static double amplitude(double db) {
+            return 32768 * Math.pow(10, db / 20);
+        }
+    }
+}
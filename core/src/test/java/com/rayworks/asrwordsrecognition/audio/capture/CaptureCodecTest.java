@@ -0,0 +1,106 @@
+package com.rayworks.asrwordsrecognition.audio.capture;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureCodecTest {
+
+    private final CaptureCodec codec = new CaptureCodec();
+
+    @Test
+    public void speechLikeSignalRoundTripsAndShrinks() throws IOException {
+        short[] samples = new short[CaptureCodec.MAX_BLOCK_SAMPLES];
+        Random random = new Random(7);
+        for (int i = 0; i < samples.length; i++) {
+            double tone = 3000 * Math.sin(2 * Math.PI * 220 * i / 16000.0)
+                    + 1200 * Math.sin(2 * Math.PI * 1250 * i / 16000.0);
+            samples[i] = (short) (tone + random.nextGaussian() * 40);
+        }
+
+        ByteBuffer encoded = roundTrip(samples);
+        // the noise floor alone costs about eight bits per sample
+        int raw = samples.length * 2;
+        assertTrue("encoded to " + encoded.limit() + " bytes", encoded.limit() < raw * 2 / 3);
+    }
+
+    @Test
+    public void whiteNoiseAndExtremesRoundTrip() throws IOException {
+        Random random = new Random(11);
+        short[] noise = new short[CaptureCodec.MAX_BLOCK_SAMPLES];
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (short) random.nextInt();
+        }
+        roundTrip(noise);
+
+        short[] square = new short[1000];
+        for (int i = 0; i < square.length; i++) {
+            square[i] = (i / 3) % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+        }
+        ByteBuffer encoded = roundTrip(square);
+        assertTrue(encoded.limit() <= CaptureCodec.maxBlockBytes(square.length));
+    }
+
+    @Test
+    public void silenceAndTinyBlocksRoundTrip() throws IOException {
+        ByteBuffer encoded = roundTrip(new short[CaptureCodec.MAX_BLOCK_SAMPLES]);
+        // one bit per residual
+        assertTrue(encoded.limit() < CaptureCodec.MAX_BLOCK_SAMPLES / 8 + 16);
+
+        roundTrip(new short[] {-5});
+        roundTrip(new short[] {12, -12});
+        roundTrip(new short[] {Short.MIN_VALUE, Short.MAX_VALUE, Short.MIN_VALUE});
+    }
+
+    @Test
+    public void consecutiveBlocksDecodeInSequence() throws IOException {
+        short[] first = {1, 2, 3, 4, 5, 6, 7};
+        short[] second = {-300, 200, -100, 0};
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        codec.encodeBlock(first, 0, first.length, buffer);
+        codec.encodeBlock(second, 0, second.length, buffer);
+        buffer.flip();
+
+        short[] decoded = new short[CaptureCodec.MAX_BLOCK_SAMPLES];
+        assertEquals(first.length, codec.decodeBlock(buffer, decoded, 0));
+        assertEquals(second.length, codec.decodeBlock(buffer, decoded, first.length));
+        assertFalse(buffer.hasRemaining());
+        assertArrayEquals(new short[] {1, 2, 3, 4, 5, 6, 7, -300, 200, -100, 0},
+                Arrays.copyOf(decoded, first.length + second.length));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBlockIsRejected() throws IOException {
+        short[] samples = new short[500];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i * 37);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(CaptureCodec.maxBlockBytes(samples.length));
+        codec.encodeBlock(samples, 0, samples.length, buffer);
+        buffer.flip();
+        buffer.limit(buffer.limit() / 2);
+
+        codec.decodeBlock(buffer, new short[CaptureCodec.MAX_BLOCK_SAMPLES], 0);
+    }
+
+    private ByteBuffer roundTrip(short[] samples) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CaptureCodec.maxBlockBytes(samples.length));
+        codec.encodeBlock(samples, 0, samples.length, buffer);
+        buffer.flip();
+
+        short[] decoded = new short[samples.length];
+        assertEquals(samples.length, codec.decodeBlock(buffer, decoded, 0));
+        assertFalse(buffer.hasRemaining());
+        assertArrayEquals(samples, decoded);
+        buffer.rewind();
+        return buffer;
+    }
+}
@@ -0,0 +1,189 @@
+package com.rayworks.asrwordsrecognition.audio.capture;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RawAudioCaptureTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void eachUtteranceBecomesOneDecodableFile() throws Exception {
+        File dir = new File(temp.getRoot(), "captures");
+        RawAudioCapture capture = new RawAudioCapture(dir, 16000, 64 * 1024);
+        capture.start();
+
+        short[][] utterances = {speech(20000, 1), speech(3, 2), speech(9000, 3)};
+        List<String> names = new ArrayList<>();
+        for (short[] utterance : utterances) {
+            // frames of the size the audio thread delivers
+            for (int offset = 0; offset < utterance.length; offset += 512) {
+                assertTrue(capture.write(utterance, offset, Math.min(512, utterance.length - offset)));
+            }
+            capture.endUtterance();
+            names.add(capture.getLastCaptureName());
+        }
+        capture.endUtterance(); // empty, no file
+        capture.stop();
+
+        List<File> files = capture.listCaptures();
+        assertEquals(3, files.size());
+        assertEquals(3, capture.getFilesWritten());
+        assertEquals(0, capture.getDroppedSamples());
+
+        long raw = 0;
+        long encoded = 0;
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(names.get(i), files.get(i).getName());
+            CaptureFile decoded = CaptureFile.read(files.get(i));
+            assertEquals(16000, decoded.getSampleRate());
+            assertArrayEquals(utterances[i], decoded.getSamples());
+            raw += utterances[i].length * 2;
+            encoded += files.get(i).length();
+        }
+        assertTrue("encoded " + encoded + " of " + raw + " bytes", encoded < raw * 3 / 4);
+    }
+
+    @Test
+    public void onlyUtterancesOfTheNamedSearchAreCaptured() throws Exception {
+        RawAudioCapture capture = new RawAudioCapture(temp.getRoot(), 16000, 64 * 1024)
+                .setSearch("ngram_search");
+        capture.start();
+
+        short[] keyword = speech(4000, 5);
+        short[] sentence = speech(6000, 6);
+        for (String search : new String[] {"wakeup", "ngram_search", "wakeup"}) {
+            short[] samples = search.equals("wakeup") ? keyword : sentence;
+            capture.onUtteranceStart(search);
+            capture.onFrame(samples, samples.length);
+            capture.onUtteranceEnd();
+        }
+        String name = capture.getLastCaptureName();
+        capture.stop();
+
+        List<File> files = capture.listCaptures();
+        assertEquals(1, files.size());
+        assertEquals(name, files.get(0).getName());
+        assertArrayEquals(sentence, CaptureFile.read(files.get(0)).getSamples());
+    }
+
+    @Test
+    public void stopWritesTheUnfinishedUtterance() throws Exception {
+        RawAudioCapture capture = new RawAudioCapture(temp.getRoot(), 8000, 4096);
+        capture.start();
+        short[] samples = speech(1000, 4);
+        capture.write(samples, 0, samples.length);
+        capture.stop();
+
+        List<File> files = capture.listCaptures();
+        assertEquals(1, files.size());
+        assertArrayEquals(samples, CaptureFile.read(files.get(0)).getSamples());
+    }
+
+    @Test
+    public void producerDropsWhenTheRingIsFull() throws Exception {
+        RawAudioCapture capture = new RawAudioCapture(temp.getRoot(), 16000, 1024);
+        short[] frame = new short[400];
+
+        // the writer is not running, so nothing drains
+        assertTrue(capture.write(frame, 0, frame.length));
+        assertTrue(capture.write(frame, 0, frame.length));
+        assertFalse(capture.write(frame, 0, frame.length));
+        assertEquals(400, capture.getDroppedSamples());
+
+        capture.endUtterance();
+        capture.start();
+        capture.stop();
+        assertEquals(800, CaptureFile.read(capture.listCaptures().get(0)).getSamples().length);
+    }
+
+    @Test
+    public void oldAndExcessFilesAreEvictedOldestFirst() throws IOException {
+        long now = System.currentTimeMillis();
+        File expired = capture("capture-1-0.rpz", 100, now - 10 * 24 * 3600 * 1000L);
+        File oldest = capture("capture-2-1.rpz", 400, now - 3000);
+        File older = capture("capture-3-2.rpz", 400, now - 2000);
+        File newest = capture("capture-4-3.rpz", 400, now - 1000);
+        File unrelated = capture("notes.txt", 5000, now - 30 * 24 * 3600 * 1000L);
+
+        RawAudioCapture capture = new RawAudioCapture(temp.getRoot(), 16000, 1024)
+                .setMaxBytes(900)
+                .setMaxAgeMillis(7 * 24 * 3600 * 1000L);
+        capture.evict(now);
+
+        assertFalse(expired.exists());
+        assertFalse(oldest.exists());
+        assertTrue(older.exists());
+        assertTrue(newest.exists());
+        assertTrue(unrelated.exists());
+        assertEquals(2, capture.getFilesEvicted());
+    }
+
+    @Test
+    public void producerDoesNotAllocate() throws Exception {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+
+        RawAudioCapture capture = new RawAudioCapture(temp.getRoot(), 16000, 16 * 1024);
+        capture.start();
+        short[] frame = speech(160, 5);
+        for (int i = 0; i < 200; i++) {
+            capture.write(frame, 0, frame.length);
+        }
+
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 20000; i++) {
+            capture.write(frame, 0, frame.length);
+            if (i % 100 == 99) {
+                capture.endUtterance();
+            }
+        }
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+        capture.stop();
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private File capture(String name, int bytes, long modified) throws IOException {
+        File file = new File(temp.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[bytes]);
+        } finally {
+            out.close();
+        }
+        assertTrue(file.setLastModified(modified));
+        return file;
+    }
+
+    private static short[] speech(int length, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[length];
+        double phase = 0;
+        for (int i = 0; i < length; i++) {
+            phase += 2 * Math.PI * (180 + 40 * Math.sin(i / 4000.0)) / 16000.0;
+            double envelope = 0.5 + 0.5 * Math.sin(i / 1500.0);
+            samples[i] = (short) (6000 * envelope * Math.sin(phase) + random.nextGaussian() * 30);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,147 @@
+package com.rayworks.asrwordsrecognition.audio.dsp;
+
+import com.rayworks.asrwordsrecognition.audio.PcmSource;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioFrontEndTest {
+
+    /** @return {@code seconds} of a 440 Hz tone on the left channel and DC on the right */
+    private static short[] stereo(int rate, double seconds) {
+        short[] samples = new short[(int) (rate * seconds) * 2];
+        for (int i = 0; i < samples.length / 2; i++) {
+            samples[2 * i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / rate));
+            samples[2 * i + 1] = 3000;
+        }
+        return samples;
+    }
+
+    private static double mean(short[] samples, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += samples[i];
+        }
+        return sum / (to - from);
+    }
+
+    private static double rms(short[] samples, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    @Test
+    public void stereoIsDownmixedResampledAndCentered() {
+        AudioFrontEnd frontEnd = new AudioFrontEnd(48000, 2, 960);
+        short[] in = stereo(48000, 1);
+        short[] out = new short[16000 + frontEnd.getMaxOutput()];
+        int length = 0;
+        for (int frame = 0; frame < 48000; frame += 960) {
+            length += frontEnd.process(in, frame * 2, 960, out, length);
+        }
+
+        assertEquals(16000, length);
+        // the averaged tone is left, the averaged offset of 1500 is gone after 20 Hz settles
+        assertEquals(0, mean(out, 8000, 16000), 20);
+        assertEquals(4000 / Math.sqrt(2), rms(out, 8000, 16000), 40);
+    }
+
+    @Test
+    public void sameRateIsPassedThroughWithoutResampling() {
+        AudioFrontEnd frontEnd = new AudioFrontEnd(16000, 1, 160);
+        assertEquals(160, frontEnd.getMaxOutput());
+        short[] in = new short[160];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = (short) (5000 * Math.sin(i * 0.9));
+        }
+        short[] out = new short[160];
+        assertEquals(160, frontEnd.process(in, 0, 160, out, 0));
+        // only the DC blocker's slight high-pass is applied
+        assertEquals(rms(in, 0, 160), rms(out, 0, 160), 50);
+    }
+
+    @Test
+    public void gateAttenuatesQuietStretchesAfterTheHold() {
+        NoiseGate gate = new NoiseGate(16000).setThresholdDb(-40).setFloorDb(-20).setHoldMillis(40);
+        AudioFrontEnd frontEnd = new AudioFrontEnd(16000, 1, 160).setNoiseGate(gate);
+        short[] loud = new short[160];
+        short[] quiet = new short[160];
+        for (int i = 0; i < loud.length; i++) {
+            loud[i] = (short) (6000 * Math.sin(i * 0.7));
+            quiet[i] = (short) (100 * Math.sin(i * 0.7));
+        }
+        short[] out = new short[160];
+
+        frontEnd.process(loud, 0, 160, out, 0);
+        assertTrue(gate.isOpen());
+        // held open for 40 ms, i.e. four blocks
+        for (int block = 0; block < 4; block++) {
+            frontEnd.process(quiet, 0, 160, out, 0);
+            assertTrue(gate.isOpen());
+        }
+        frontEnd.process(quiet, 0, 160, out, 0);
+        assertFalse(gate.isOpen());
+        frontEnd.process(quiet, 0, 160, out, 0);
+        assertEquals(rms(quiet, 0, 160) / 10, rms(out, 0, 160), 2);
+
+        frontEnd.process(loud, 0, 160, out, 0);
+        assertTrue(gate.isOpen());
+    }
+
+    @Test
+    public void sourceIsReadAsSixteenKilohertzMono() throws IOException {
+        final short[] recording = stereo(44100, 0.5);
+        PcmSource file = new PcmSource() {
+            private int position;
+
+            @Override
+            public int getSampleRate() {
+                return 44100;
+            }
+
+            @Override
+            public void start() {
+                position = 0;
+            }
+
+            @Override
+            public int read(short[] buffer, int offset, int length) {
+                if (position == recording.length) {
+                    return -1;
+                }
+                // odd counts split frames between reads
+                int count = Math.min(Math.min(length, 333), recording.length - position);
+                System.arraycopy(recording, position, buffer, offset, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public void release() {
+            }
+        };
+        ConvertingPcmSource source = new ConvertingPcmSource(file, 2);
+        assertEquals(16000, source.getSampleRate());
+
+        source.start();
+        short[] buffer = new short[100];
+        int total = 0;
+        int read;
+        while ((read = source.read(buffer, 0, buffer.length)) >= 0) {
+            total += read;
+        }
+        assertEquals(8000, total, 1);
+    }
+}
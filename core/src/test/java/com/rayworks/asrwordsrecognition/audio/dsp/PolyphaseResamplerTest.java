@@ -0,0 +1,115 @@
+package com.rayworks.asrwordsrecognition.audio.dsp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PolyphaseResamplerTest {
+
+    private static final int OUTPUT_RATE = 16000;
+    private static final float AMPLITUDE = 10000;
+
+    /** @return one second of a sine at {@code hz} resampled in blocks of {@code block} */
+    private static float[] resampleTone(int inputRate, double hz, int block) {
+        PolyphaseResampler resampler = new PolyphaseResampler(inputRate, OUTPUT_RATE, block);
+        float[] in = new float[block];
+        float[] out = new float[OUTPUT_RATE + resampler.maxOutput(block)];
+        int produced = 0;
+        for (int start = 0; start < inputRate; start += block) {
+            int frames = Math.min(block, inputRate - start);
+            for (int i = 0; i < frames; i++) {
+                in[i] = (float) (AMPLITUDE * Math.sin(2 * Math.PI * hz * (start + i) / inputRate));
+            }
+            produced += resampler.process(in, 0, frames, out, produced);
+        }
+        assertEquals(OUTPUT_RATE, produced, 1);
+        return out;
+    }
+
+    /** @return the amplitude at {@code hz} relative to the input tone, past the transients */
+    private static double amplitude(float[] out, double hz) {
+        double sin = 0;
+        double cos = 0;
+        int from = 1000;
+        int to = OUTPUT_RATE - 1000;
+        for (int n = from; n < to; n++) {
+            double angle = 2 * Math.PI * hz * n / OUTPUT_RATE;
+            sin += out[n] * Math.sin(angle);
+            cos += out[n] * Math.cos(angle);
+        }
+        return 2 * Math.hypot(sin, cos) / (to - from) / AMPLITUDE;
+    }
+
+    private static double db(double gain) {
+        return 20 * Math.log10(gain);
+    }
+
+    @Test
+    public void passbandIsFlat() {
+        for (int rate : new int[] {44100, 48000, 8000}) {
+            for (double hz : new double[] {100, 1000, 3000}) {
+                double gain = amplitude(resampleTone(rate, hz, 441), hz);
+                assertEquals(rate + " Hz, " + hz + " Hz", 0, db(gain), 0.1);
+            }
+        }
+        assertEquals(0, db(amplitude(resampleTone(44100, 6000, 960), 6000)), 0.1);
+        assertEquals(0, db(amplitude(resampleTone(48000, 6000, 960), 6000)), 0.1);
+    }
+
+    @Test
+    public void tonesAboveTheOutputNyquistDoNotAlias() {
+        // 12 kHz would fold onto 4 kHz, 10 kHz onto 6 kHz; 9.5 kHz is past the transition band
+        for (double hz : new double[] {9500, 12000, 15000, 20000}) {
+            double aliased = Math.abs(OUTPUT_RATE - hz);
+            for (int rate : new int[] {44100, 48000}) {
+                double gain = amplitude(resampleTone(rate, hz, 1024), aliased);
+                assertTrue(rate + " Hz, " + hz + " Hz at " + db(gain) + " dB", db(gain) < -70);
+            }
+        }
+    }
+
+    @Test
+    public void blockSizeDoesNotChangeTheOutput() {
+        PolyphaseResampler whole = new PolyphaseResampler(44100, OUTPUT_RATE, 4410);
+        PolyphaseResampler chunked = new PolyphaseResampler(44100, OUTPUT_RATE, 4410);
+        float[] in = new float[4410];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = (float) (AMPLITUDE * Math.sin(i * 0.05) + 300 * Math.cos(i * 1.3));
+        }
+        float[] expected = new float[whole.maxOutput(in.length)];
+        int length = whole.process(in, 0, in.length, expected, 0);
+        assertEquals(1600, length);
+
+        float[] actual = new float[expected.length + 10];
+        int produced = 0;
+        int[] sizes = {1, 7, 441, 100, 3000, 861};
+        int offset = 0;
+        for (int size : sizes) {
+            produced += chunked.process(in, offset, size, actual, produced);
+            offset += size;
+        }
+        assertEquals(in.length, offset);
+        assertEquals(length, produced);
+        for (int i = 0; i < length; i++) {
+            assertEquals(expected[i], actual[i], 1e-3f);
+        }
+    }
+
+    @Test
+    public void resetStartsANewStream() {
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, OUTPUT_RATE, 960);
+        float[] in = new float[960];
+        Arrays.fill(in, 1000f);
+        float[] out = new float[resampler.maxOutput(960)];
+        int first = resampler.process(in, 0, 100, out, 0);
+        float head = out[0];
+        resampler.process(in, 0, 960, out, 0);
+
+        resampler.reset();
+        assertEquals(first, resampler.process(in, 0, 100, out, 0));
+        assertEquals(head, out[0], 0f);
+    }
+}
@@ -0,0 +1,108 @@
+package com.rayworks.asrwordsrecognition.audio.stream;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameRingTest {
+
+    @Test
+    public void framesArriveInOrderAcrossThreads() throws Exception {
+        final FrameRing ring = new FrameRing(160, 4);
+        final int frames = 20000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                short value = 0;
+                for (int i = 0; i < frames; i++) {
+                    ByteBuffer frame = ring.claim();
+                    // every frame a different length, up to the whole frame
+                    int samples = 1 + i % 160;
+                    for (int s = 0; s < samples; s++) {
+                        frame.putShort(value++);
+                    }
+                    ring.publish();
+                }
+                ring.finish();
+            }
+        });
+        producer.start();
+
+        short expected = 0;
+        int taken = 0;
+        ShortBuffer frame;
+        while ((frame = ring.take()) != null) {
+            assertEquals(1 + taken % 160, frame.remaining());
+            while (frame.hasRemaining()) {
+                assertEquals(expected++, frame.get());
+            }
+            ring.release();
+            taken++;
+        }
+        producer.join();
+        assertEquals(frames, taken);
+        assertTrue(ring.isDrained());
+    }
+
+    @Test
+    public void fullRingHoldsTheProducerBack() throws Exception {
+        final FrameRing ring = new FrameRing(10, 2);
+        final AtomicLong published = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer frame;
+                while (published.get() < 5 && (frame = ring.claim()) != null) {
+                    frame.putShort((short) published.get());
+                    ring.publish();
+                    published.incrementAndGet();
+                }
+                done.countDown();
+            }
+        });
+        producer.start();
+
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(2, published.get());
+        assertEquals(1, ring.getStalls());
+
+        assertEquals(0, ring.take().get());
+        ring.release();
+        assertEquals(1, ring.take().get());
+        ring.release();
+        // the producer fills the two frames again and waits for the fifth
+        while (published.get() < 4) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, ring.available());
+
+        ring.cancel();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(4, published.get());
+    }
+
+    @Test
+    public void interruptedConsumerIsNotDrained() {
+        FrameRing ring = new FrameRing(10, 2);
+        Thread.currentThread().interrupt();
+        try {
+            assertNull(ring.take());
+            assertFalse(ring.isDrained());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        ring.finish();
+        assertNull(ring.take());
+        assertTrue(ring.isDrained());
+    }
+}
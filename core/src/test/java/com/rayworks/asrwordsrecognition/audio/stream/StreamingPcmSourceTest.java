@@ -0,0 +1,164 @@
+package com.rayworks.asrwordsrecognition.audio.stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingPcmSourceTest {
+
+    private static final int RATE = 16000;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static short[] tone(int samples) {
+        short[] tone = new short[samples];
+        for (int i = 0; i < samples; i++) {
+            tone[i] = (short) (8000 * Math.sin(i * 0.07) + i % 7);
+        }
+        return tone;
+    }
+
+    /** Reads like the decoding loop, in chunks of its own size, pausing after each if asked. */
+    private static short[] readAll(StreamingPcmSource source, int chunk, long pauseMillis)
+            throws Exception {
+        short[] all = new short[RATE];
+        short[] buffer = new short[chunk];
+        int total = 0;
+        source.start();
+        int read;
+        while ((read = source.read(buffer, 0, chunk)) >= 0) {
+            if (total + read > all.length) {
+                all = Arrays.copyOf(all, all.length * 2);
+            }
+            System.arraycopy(buffer, 0, all, total, read);
+            total += read;
+            if (pauseMillis > 0) {
+                Thread.sleep(pauseMillis);
+            }
+        }
+        source.stop();
+        return Arrays.copyOf(all, total);
+    }
+
+    @Test
+    public void socketStreamIsReadCompletelyByASlowReader() throws Exception {
+        final short[] audio = tone(RATE / 2);
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SocketChannel client = server.accept();
+                    ByteBuffer bytes = ByteBuffer.allocate(audio.length * 2)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                    bytes.asShortBuffer().put(audio);
+                    // odd-sized writes split samples between reads
+                    while (bytes.hasRemaining()) {
+                        int end = Math.min(bytes.limit(), bytes.position() + 333);
+                        ByteBuffer part = bytes.duplicate();
+                        part.limit(end);
+                        client.write(part);
+                        bytes.position(end);
+                    }
+                    client.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        sender.start();
+
+        SocketChannel channel = SocketChannel.open(server.socket().getLocalSocketAddress());
+        // four 10 ms frames, so the reader's pauses hold the socket back
+        ChannelPcmSource source = new ChannelPcmSource(channel, RATE, 160, 4);
+        short[] read = readAll(source, 640, 1);
+        sender.join();
+        source.release();
+        server.close();
+
+        assertArrayEquals(audio, read);
+        assertTrue(source.getRing().getStalls() > 0);
+    }
+
+    @Test
+    public void mappedWavIsReadFasterThanRealTime() throws Exception {
+        short[] audio = tone(10 * RATE);
+        MappedFilePcmSource source = MappedFilePcmSource.open(write("ten-seconds.wav", audio));
+        assertEquals(RATE, source.getSampleRate());
+        assertEquals(10, source.getSeconds(), 1e-9);
+        long start = System.nanoTime();
+        assertArrayEquals(audio, readAll(source, 640, 0));
+        assertTrue((System.nanoTime() - start) / 1e9 < 5);
+
+        // and again from the beginning
+        assertArrayEquals(audio, readAll(source, 333, 0));
+        source.release();
+    }
+
+    @Test
+    public void realTimeFileIsPacedLikeTheMicrophone() throws Exception {
+        short[] audio = tone(RATE / 4);
+        MappedFilePcmSource source =
+                MappedFilePcmSource.open(write("quarter.raw", audio)).setRealTime(true);
+        long start = System.nanoTime();
+        assertArrayEquals(audio, readAll(source, 640, 0));
+        assertTrue((System.nanoTime() - start) / 1e6 >= 240);
+    }
+
+    @Test
+    public void stopEndsAStreamThatHasNotEnded() throws Exception {
+        MappedFilePcmSource source =
+                MappedFilePcmSource.open(write("long.raw", tone(10 * RATE))).setRealTime(true);
+        source.start();
+        short[] buffer = new short[640];
+        assertEquals(320, source.read(buffer, 0, buffer.length));
+        long start = System.nanoTime();
+        source.stop();
+        assertTrue((System.nanoTime() - start) / 1e6 < 1000);
+
+        source.start();
+        assertEquals(320, source.read(buffer, 0, buffer.length));
+        assertEquals(buffer[0], tone(1)[0]);
+        source.release();
+    }
+
+    /** Writes a WAV file, or a headerless one if the name ends in {@code .raw}. */
+    private File write(String name, short[] audio) throws IOException {
+        boolean raw = name.endsWith(".raw");
+        int header = raw ? 0 : 44;
+        ByteBuffer bytes = ByteBuffer.allocate(header + audio.length * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (!raw) {
+            bytes.putInt(0x46464952).putInt(36 + audio.length * 2).putInt(0x45564157)
+                    .putInt(0x20746D66).putInt(16).putShort((short) 1).putShort((short) 1)
+                    .putInt(RATE).putInt(RATE * 2).putShort((short) 2).putShort((short) 16)
+                    .putInt(0x61746164).putInt(audio.length * 2);
+        }
+        bytes.asShortBuffer().put(audio);
+        File file = temp.newFile(name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes.array());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,106 @@
+package com.rayworks.asrwordsrecognition.dict;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryDictionaryTest {
+
+    private static final File TEXT_DICT = new File("../app/models/cmudict-en-us.dict");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static BinaryDictionary build(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryDictionaryWriter.write(DictionaryParser.parse(new StringReader(text)), out);
+        return new BinaryDictionary(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    @Test
+    public void lookupFoldsAlternatePronunciations() throws Exception {
+        BinaryDictionary dict = build("to T UW\nto's T UW Z\nto(2) T IH\nwant W AA N T\n");
+
+        assertEquals(3, dict.size());
+        int to = dict.indexOf("to");
+        assertEquals(2, dict.pronunciationCount(to));
+        assertEquals("T UW", dict.pronunciation("to", 0));
+        assertEquals("T IH", dict.pronunciation("to", 1));
+        assertNull(dict.pronunciation("to", 2));
+        assertEquals("T UW Z", dict.pronunciation("to's", 0));
+
+        byte[] phones = new byte[4];
+        assertEquals(4, dict.copyPhones(dict.indexOf("want"), 0, phones, 0));
+        assertEquals("AA", dict.phoneName(phones[1]));
+    }
+
+    @Test
+    public void missingWordsAreNotFound() throws Exception {
+        BinaryDictionary dict = build("go G OW\nschool S K UW L\n");
+
+        assertEquals(-1, dict.indexOf("a"));
+        assertEquals(-1, dict.indexOf("goes"));
+        assertEquals(-1, dict.indexOf("g"));
+        assertEquals(-1, dict.indexOf("zebra"));
+        assertFalse(dict.contains(""));
+        assertTrue(dict.contains("school"));
+    }
+
+    @Test
+    public void subsetIsWrittenInTheTextFormat() throws Exception {
+        BinaryDictionary dict = build("to T UW\nto(2) T IH\nwant W AA N T\ngo G OW\n");
+
+        StringWriter out = new StringWriter();
+        List<String> missing = dict.writeSubset(Arrays.asList("want", "sea", "to"), out);
+
+        assertEquals(Arrays.asList("sea"), missing);
+        assertEquals("want W AA N T\nto T UW\nto(2) T IH\n", out.toString());
+        assertEquals(Arrays.asList("T UW", "T IH"),
+                DictionaryParser.parse(new StringReader(out.toString())).get("to"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsForeignFiles() throws Exception {
+        new BinaryDictionary(ByteBuffer.wrap(new byte[16]));
+    }
+
+    @Test
+    public void fullDictionaryConvertsWithoutLoss() throws Exception {
+        SortedMap<String, List<String>> text = DictionaryParser.parse(TEXT_DICT);
+        // as the app's writeBinaryDictionary task does
+        File file = temp.newFile("cmudict-en-us.bdic");
+        BinaryDictionaryWriter.write(text, file);
+        BinaryDictionary binary = BinaryDictionary.open(file);
+
+        assertEquals(text.size(), binary.size());
+        int index = 0;
+        for (Map.Entry<String, List<String>> entry : text.entrySet()) {
+            String word = entry.getKey();
+            assertEquals(word, binary.wordAt(index));
+            assertEquals(index, binary.indexOf(word));
+
+            List<String> prons = entry.getValue();
+            assertEquals(word, prons.size(), binary.pronunciationCount(index));
+            for (int v = 0; v < prons.size(); v++) {
+                assertEquals(word, prons.get(v), binary.pronunciation(word, v));
+            }
+            index++;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.rayworks.asrwordsrecognition.eval;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EvaluatorTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private short[] school;
+    private short[] limit;
+    private short[] unknown;
+    private StandInRecognizer.Factory engine;
+    private File manifest;
+
+    @Before
+    public void setUp() throws IOException {
+        school = noise(16000, 1);
+        limit = noise(8000, 2);
+        unknown = noise(4000, 3);
+
+        engine = new StandInRecognizer.Factory()
+                .answer(school, "i want to go to school")
+                .answer(limit, "but their is a limit");
+
+        File audio = temp.newFolder("audio");
+        writeWav(new File(audio, "school.wav"), school, 16000);
+        writeRaw(new File(audio, "limit.raw"), limit);
+        writeWav(new File(audio, "unknown.wav"), unknown, 16000);
+
+        manifest = new File(temp.getRoot(), "manifest.tsv");
+        Writer out = new OutputStreamWriter(new FileOutputStream(manifest), EvalItem.UTF_8);
+        try {
+            out.write("# audio\ttranscript\n");
+            out.write("audio/school.wav\tI want to go to school\n");
+            out.write("\n");
+            out.write("audio/limit.raw\tbut there is a limit\n");
+            out.write("audio/unknown.wav\tgo home\n");
+            out.write("audio/missing.wav\tnot there\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void manifestPathsResolveAgainstItsDirectory() throws IOException {
+        List<EvalItem> items = EvalItem.readManifest(manifest);
+
+        assertEquals(4, items.size());
+        assertEquals("audio/school.wav", items.get(0).getId());
+        assertEquals(new File(temp.getRoot(), "audio/school.wav"), items.get(0).getAudio());
+        assertEquals("I want to go to school", items.get(0).getReference());
+
+        EvalAudio raw = EvalAudio.read(items.get(1).getAudio());
+        assertEquals(EvalAudio.RAW_SAMPLE_RATE, raw.getSampleRate());
+        assertArrayEquals(limit, raw.getSamples());
+        assertEquals(0.5, raw.getDurationSeconds(), 1e-9);
+    }
+
+    @Test
+    public void scoresTheCorpusAcrossWorkers() throws IOException {
+        EvalReport report =
+                new Evaluator(engine).setParallelism(3).evaluate(EvalItem.readManifest(manifest));
+
+        List<UtteranceResult> results = report.getResults();
+        assertEquals(4, results.size());
+        assertEquals("audio/school.wav", results.get(0).getItem().getId());
+        assertEquals(0, results.get(0).getAlignment().getErrors());
+        assertEquals(1, results.get(1).getAlignment().getSubstitutions());
+        assertEquals(2, results.get(2).getAlignment().getDeletions());
+        assertNull(results.get(2).getError());
+        assertNotNull(results.get(3).getError());
+
+        // 1 substitution + 2 + 2 deletions over 6 + 5 + 2 + 2 reference words
+        assertEquals(15, report.getReferenceWords());
+        assertEquals(5.0 / 15, report.getWordErrorRate(), 1e-9);
+        assertEquals(0.75, report.getSentenceErrorRate(), 1e-9);
+        assertEquals(1, report.getFailures());
+        assertEquals(1.75, report.getAudioSeconds(), 1e-9);
+        assertTrue(report.getRealTimeFactor() > 0);
+        assertTrue(report.getLatencyMillis(50) <= report.getLatencyMillis(95));
+        assertTrue(report.getLatencyMillis(95) <= report.getLatencyMillis(99));
+    }
+
+    @Test
+    public void everyWorkerGetsItsOwnRecognizer() throws IOException {
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+        BatchRecognizer.Factory counting =
+                new BatchRecognizer.Factory() {
+                    @Override
+                    public BatchRecognizer create() throws Exception {
+                        created.incrementAndGet();
+                        final BatchRecognizer delegate = engine.create();
+                        return new BatchRecognizer() {
+                            @Override
+                            public String decode(short[] samples, int sampleRate)
+                                    throws Exception {
+                                return delegate.decode(samples, sampleRate);
+                            }
+
+                            @Override
+                            public void close() {
+                                closed.incrementAndGet();
+                            }
+                        };
+                    }
+                };
+
+        EvalReport report =
+                new Evaluator(counting).setParallelism(8).evaluate(EvalItem.readManifest(manifest));
+
+        assertEquals(4, report.getResults().size());
+        assertEquals(4, created.get());
+        assertEquals(4, closed.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void recognizerThatCannotBeCreatedFailsTheRun() throws IOException {
+        new Evaluator(
+                        new BatchRecognizer.Factory() {
+                            @Override
+                            public BatchRecognizer create() throws Exception {
+                                throw new IOException("no model");
+                            }
+                        })
+                .evaluate(EvalItem.readManifest(manifest));
+    }
+
+    @Test
+    public void reportIsJson() throws IOException {
+        EvalReport report =
+                new Evaluator(engine).setParallelism(1).evaluate(EvalItem.readManifest(manifest));
+        String json = report.toJson();
+
+        assertTrue(json, json.startsWith("{\n  \"utterances\": 4,\n  \"referenceWords\": 15,"));
+        assertTrue(json, json.contains("\"wer\": 0.333333"));
+        assertTrue(json, json.contains("\"p95\": "));
+        assertTrue(json, json.contains("{\n"
+                + "          \"op\": \"S\",\n"
+                + "          \"ref\": \"there\",\n"
+                + "          \"hyp\": \"their\"\n"
+                + "        }"));
+        assertTrue(json, json.contains("\"hyp\": null"));
+        assertTrue(json, json.trim().endsWith("]\n}"));
+
+        EvalReport empty = new Evaluator(engine).evaluate(Collections.<EvalItem>emptyList());
+        assertTrue(empty.toJson(), empty.toJson().contains("\"wer\": null"));
+    }
+
+    private static short[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) random.nextGaussian();
+        }
+        return samples;
+    }
+
+    private static void writeRaw(File file, short[] samples) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            for (short sample : samples) {
+                out.writeShort(Short.reverseBytes(sample));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeWav(File file, short[] samples, int sampleRate) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeBytes("RIFF");
+            out.writeInt(Integer.reverseBytes(36 + 2 * samples.length));
+            out.writeBytes("WAVEfmt ");
+            out.writeInt(Integer.reverseBytes(16));
+            out.writeShort(Short.reverseBytes((short) 1));
+            out.writeShort(Short.reverseBytes((short) 1));
+            out.writeInt(Integer.reverseBytes(sampleRate));
+            out.writeInt(Integer.reverseBytes(2 * sampleRate));
+            out.writeShort(Short.reverseBytes((short) 2));
+            out.writeShort(Short.reverseBytes((short) 16));
+            out.writeBytes("data");
+            out.writeInt(Integer.reverseBytes(2 * samples.length));
+            for (short sample : samples) {
+                out.writeShort(Short.reverseBytes(sample));
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.rayworks.asrwordsrecognition.eval;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WordAlignmentTest {
+
+    @Test
+    public void countsEachKindOfError() {
+        WordAlignment alignment =
+                WordAlignment.of("i want to go to school", "i want go to the school too");
+
+        assertEquals(6, alignment.getReferenceLength());
+        assertEquals(0, alignment.getSubstitutions());
+        assertEquals(1, alignment.getDeletions());
+        assertEquals(2, alignment.getInsertions());
+        assertEquals(3.0 / 6, alignment.getWordErrorRate(), 1e-9);
+        assertEquals("CCDCCICI", operations(alignment));
+    }
+
+    @Test
+    public void prefersSubstitutionsOverDeletePlusInsert() {
+        WordAlignment alignment = WordAlignment.of("but there is a limit", "but their is a limb");
+
+        assertEquals("CSCCS", operations(alignment));
+        List<WordAlignment.Step> steps = alignment.getSteps();
+        assertEquals("there", steps.get(1).getReference());
+        assertEquals("their", steps.get(1).getHypothesis());
+    }
+
+    @Test
+    public void emptySidesAreAllDeletionsOrInsertions() {
+        WordAlignment deleted = WordAlignment.of("go to school", "");
+        assertEquals("DDD", operations(deleted));
+        assertNull(deleted.getSteps().get(0).getHypothesis());
+        assertEquals(1.0, deleted.getWordErrorRate(), 1e-9);
+
+        WordAlignment inserted = WordAlignment.of("", "go home");
+        assertEquals("II", operations(inserted));
+        assertEquals(2.0, inserted.getWordErrorRate(), 1e-9);
+    }
+
+    @Test
+    public void normalizationDropsMarkersFillersAndAlternates() {
+        assertArrayEquals(
+                new String[] {"i", "read", "it"},
+                WordAlignment.normalize("<s> I <sil> read(2) [noise] ++breath++ IT </s>"));
+        assertEquals(0, WordAlignment.normalize("   ").length);
+        assertEquals(0, WordAlignment.of("I read it", "<s> i read(2) it").getErrors());
+    }
+
+    private static String operations(WordAlignment alignment) {
+        StringBuilder ops = new StringBuilder();
+        for (WordAlignment.Step step : alignment.getSteps()) {
+            ops.append(step.getOperation());
+        }
+        return ops.toString();
+    }
+}
@@ -0,0 +1,274 @@
+package com.rayworks.asrwordsrecognition.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SessionJournalTest {
+
+    private static final long T0 = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /** Records of the same size, a second apart, on lesson sentences 0 to 6. */
+    private static SessionRecord record(int i) {
+        return new SessionRecord(T0 + i * 1000L, String.format(Locale.US, "hypothesis %03d", i))
+                .setScore(-i)
+                .setTarget(i % 7, "sentence " + (i % 7), i % 3)
+                .setTimings(1200 + i, 300, 80)
+                .setAudio(String.format(Locale.US, "capture-%03d.rpz", i));
+    }
+
+    private static void appendAll(SessionJournal journal, int from, int to)
+            throws InterruptedException {
+        for (int i = from; i < to; i++) {
+            assertTrue(journal.append(record(i)));
+        }
+        assertTrue(journal.flush());
+    }
+
+    /** Checks that {@code records} are the ones appended from {@code from} on, in order. */
+    private static void assertRecords(int from, List<SessionRecord> records) {
+        for (int i = 0; i < records.size(); i++) {
+            SessionRecord expected = record(from + i);
+            SessionRecord actual = records.get(i);
+            assertEquals(from + i, actual.getSequence());
+            assertEquals(expected.getTimeMillis(), actual.getTimeMillis());
+            assertEquals(expected.getHypothesis(), actual.getHypothesis());
+            assertEquals(expected.getScore(), actual.getScore());
+            assertEquals(expected.getTarget(), actual.getTarget());
+            assertEquals(expected.getSentence(), actual.getSentence());
+            assertEquals(expected.getErrors(), actual.getErrors());
+            assertEquals(expected.getAudioMillis(), actual.getAudioMillis());
+            assertEquals(expected.getAudio(), actual.getAudio());
+        }
+    }
+
+    private List<File> dataFiles(File dir) {
+        List<File> files = new ArrayList<>();
+        for (String name : dir.list()) {
+            if (JournalSegment.parseSequence(name) >= 0) {
+                files.add(new File(dir, name));
+            }
+        }
+        File[] sorted = files.toArray(new File[files.size()]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+    @Test
+    public void recordsAreReadBackBySequenceTimeAndSentence() throws Exception {
+        SessionJournal journal = new SessionJournal(temp.getRoot());
+        journal.open();
+        appendAll(journal, 0, 50);
+
+        assertEquals(50, journal.getEndSequence());
+        assertRecords(0, journal.read(0, 100));
+        assertRecords(45, journal.read(45, 100));
+        assertRecords(10, journal.read(10, 5));
+        assertEquals(5, journal.read(10, 5).size());
+
+        assertRecords(20, journal.readBetween(T0 + 20000, T0 + 30000));
+        assertEquals(10, journal.readBetween(T0 + 19500, T0 + 29500).size());
+
+        List<SessionRecord> attempts = journal.readTarget(3, 4);
+        assertEquals(4, attempts.size());
+        assertEquals(24, attempts.get(0).getSequence());
+        assertEquals(45, attempts.get(3).getSequence());
+        assertEquals(7, journal.countTarget(3));
+
+        // nothing recognized, no target
+        journal.append(new SessionRecord(T0 + 60000, null));
+        assertTrue(journal.flush());
+        SessionRecord empty = journal.read(50, 1).get(0);
+        assertNull(empty.getHypothesis());
+        assertNull(empty.getSentence());
+        assertNull(empty.getAudio());
+        assertEquals(SessionRecord.NONE, empty.getTarget());
+        assertEquals(SessionRecord.NONE, empty.getAudioMillis());
+        journal.close();
+    }
+
+    @Test
+    public void groupCommitSharesTheSyncs() throws Exception {
+        SessionJournal grouped = new SessionJournal(new File(temp.getRoot(), "grouped"));
+        grouped.open();
+        appendAll(grouped, 0, 500);
+        assertTrue("commits " + grouped.getCommits(), grouped.getCommits() < 500);
+        grouped.close();
+
+        SessionJournal each = new SessionJournal(new File(temp.getRoot(), "each"))
+                .setMaxBatch(1);
+        each.open();
+        appendAll(each, 0, 100);
+        assertEquals(100, each.getCommits());
+        each.close();
+    }
+
+    @Test
+    public void segmentsRotateAndSurviveReopening() throws Exception {
+        File dir = temp.getRoot();
+        SessionJournal journal = new SessionJournal(dir).setSegmentRecords(8);
+        journal.open();
+        appendAll(journal, 0, 30);
+        journal.close();
+        // 8 records per index; the last one, with 6, is still open
+        assertEquals(4, dataFiles(dir).size());
+
+        journal = new SessionJournal(dir).setSegmentRecords(8);
+        journal.open();
+        assertRecords(0, journal.read(0, 100));
+        assertEquals(30, journal.read(0, 100).size());
+        appendAll(journal, 30, 40);
+        assertRecords(0, journal.read(0, 100));
+        assertEquals(40, journal.getEndSequence());
+        assertEquals(5, journal.countTarget(6));
+        journal.close();
+
+        // segments by size rather than count
+        File sized = new File(dir, "sized");
+        journal = new SessionJournal(sized).setMaxSegmentBytes(1000);
+        journal.open();
+        appendAll(journal, 0, 40);
+        assertRecords(0, journal.read(0, 100));
+        journal.close();
+        List<File> files = dataFiles(sized);
+        assertTrue(files.size() > 2);
+        for (File file : files.subList(0, files.size() - 1)) {
+            // past the limit by one record at most
+            assertTrue(file.length() >= 1000 && file.length() < 1200);
+        }
+    }
+
+    @Test
+    public void aTornOrCorruptTailIsCutOnReopening() throws Exception {
+        File dir = temp.getRoot();
+        SessionJournal journal = new SessionJournal(dir);
+        journal.open();
+        appendAll(journal, 0, 20);
+        journal.close();
+
+        File data = dataFiles(dir).get(0);
+        long complete = data.length();
+        long recordBytes = complete / 20;
+        RandomAccessFile file = new RandomAccessFile(data, "rw");
+        try {
+            // the last record was half written when the process died
+            file.setLength(complete - recordBytes / 2);
+        } finally {
+            file.close();
+        }
+
+        journal = new SessionJournal(dir);
+        journal.open();
+        assertEquals(19, journal.getEndSequence());
+        assertRecords(0, journal.read(0, 100));
+        assertEquals(complete - recordBytes, data.length());
+        // the sequence carries on after the last intact record
+        appendAll(journal, 19, 25);
+        assertRecords(0, journal.read(0, 100));
+        assertEquals(25, journal.read(0, 100).size());
+        journal.close();
+
+        // a flipped byte in the 11th record loses it and the ones after
+        file = new RandomAccessFile(data, "rw");
+        try {
+            file.seek(10 * recordBytes + 30);
+            int value = file.read();
+            file.seek(10 * recordBytes + 30);
+            file.write(value ^ 0x40);
+        } finally {
+            file.close();
+        }
+        journal = new SessionJournal(dir);
+        journal.open();
+        assertEquals(10, journal.getEndSequence());
+        assertRecords(0, journal.read(0, 100));
+        assertEquals(10 * recordBytes, data.length());
+        journal.close();
+    }
+
+    @Test
+    public void garbageAfterTheLastRecordIsCut() throws Exception {
+        File dir = temp.getRoot();
+        SessionJournal journal = new SessionJournal(dir);
+        journal.open();
+        appendAll(journal, 0, 5);
+        journal.close();
+
+        File data = dataFiles(dir).get(0);
+        long complete = data.length();
+        RandomAccessFile file = new RandomAccessFile(data, "rw");
+        try {
+            // preallocated, never written blocks read as zeroes
+            file.setLength(complete + 4096);
+        } finally {
+            file.close();
+        }
+        journal = new SessionJournal(dir);
+        journal.open();
+        assertEquals(5, journal.getEndSequence());
+        assertEquals(complete, data.length());
+        journal.close();
+    }
+
+    private long limit;
+
+    /** Writes 100 records, ten per segment, and reopens the journal with a size limit. */
+    private SessionJournal reopenWithin(File dir, long acknowledged, double segments)
+            throws IOException, InterruptedException {
+        SessionJournal journal = new SessionJournal(dir).setSegmentRecords(10);
+        journal.open();
+        appendAll(journal, 0, 100);
+        journal.close();
+        long segmentBytes = 0;
+        for (String name : dir.list()) {
+            if (name.startsWith(JournalSegment.PREFIX + String.format(Locale.US, "%019d", 0))) {
+                segmentBytes += new File(dir, name).length();
+            }
+        }
+
+        limit = (long) (segments * segmentBytes);
+        journal = new SessionJournal(dir).setSegmentRecords(10).setMaxBytes(limit);
+        journal.acknowledge(acknowledged);
+        journal.open();
+        return journal;
+    }
+
+    @Test
+    public void compactionKeepsTheUnsyncedRecordsItHasRoomFor() throws Exception {
+        File dir = new File(temp.getRoot(), "roomy");
+        SessionJournal journal = reopenWithin(dir, 35, 6.9);
+        // the synced segments went, the one with the first unsynced record was rewritten
+        assertEquals(35, journal.getFirstSequence());
+        assertEquals(0, journal.getDroppedRecords());
+        assertRecords(35, journal.read(0, 100));
+        assertEquals(65, journal.read(0, 100).size());
+        assertEquals(35, journal.readTarget(0, 100).get(0).getSequence());
+        assertTrue(new File(dir, "journal-0000000000000000035.log").isFile());
+        journal.close();
+
+        dir = new File(temp.getRoot(), "tight");
+        journal = reopenWithin(dir, 35, 4.5);
+        long first = journal.getFirstSequence();
+        assertTrue(first > 35);
+        assertEquals(first - 35, journal.getDroppedRecords());
+        assertTrue(journal.getDiskBytes() <= limit);
+        assertRecords((int) first, journal.read(0, 100));
+        assertEquals(100 - first, journal.read(0, 100).size());
+        journal.close();
+    }
+}
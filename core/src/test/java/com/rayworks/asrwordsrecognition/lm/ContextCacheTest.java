@@ -0,0 +1,67 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContextCacheTest {
+
+    private static final File BUNDLED_LM = new File("../app/src/main/assets/sync/6805.lm");
+
+    @Test
+    public void agreesWithTheModelThroughEvictions() throws Exception {
+        NgramModel model = NgramModel.load(BUNDLED_LM);
+        // far fewer entries than distinct n-grams, so entries are evicted all the time
+        ContextCache cache = new ContextCache(model, 7);
+
+        Random random = new Random(16);
+        int[] sequence = new int[3];
+        for (int i = 0; i < 20000; i++) {
+            int length = 2 + random.nextInt(2);
+            for (int j = 0; j < length; j++) {
+                // now and then a word outside the vocabulary
+                sequence[j] = random.nextInt(model.vocabularySize() + 1) - 1;
+            }
+            assertEquals(model.logProb(sequence, 0, length),
+                    cache.logProb(sequence, 0, length), 0f);
+        }
+        assertEquals(7, cache.size());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() throws Exception {
+        NgramModel model = NgramModel.load(BUNDLED_LM);
+        ContextCache cache = new ContextCache(model, 2);
+        int[] iWant = model.toIds("i want");
+        int[] wantTo = model.toIds("want to");
+        int[] goTo = model.toIds("go to");
+
+        cache.logProb(iWant, 1, 2);
+        cache.logProb(wantTo, 1, 2);
+        cache.logProb(iWant, 1, 2);
+        // evicts "want to", the older of the two
+        cache.logProb(goTo, 1, 2);
+        assertEquals(1, cache.getHits());
+
+        cache.logProb(iWant, 1, 2);
+        assertEquals(2, cache.getHits());
+        cache.logProb(wantTo, 1, 2);
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void bigramsAndTrigramsOfTheSameWordsAreDistinct() throws Exception {
+        NgramModel model = NgramModel.load(BUNDLED_LM);
+        ContextCache cache = new ContextCache(model, 16);
+        // word 0 in front of a bigram packs to the same bits as the bigram alone
+        int[] trigram = {0, model.wordId("want"), model.wordId("to")};
+
+        assertEquals(model.logProb(trigram, 1, 2), cache.logProb(trigram, 1, 2), 0f);
+        assertEquals(model.logProb(trigram, 0, 3), cache.logProb(trigram, 0, 3), 0f);
+        assertEquals(0, cache.getHits());
+    }
+}
@@ -0,0 +1,69 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalLmTest {
+
+    private static final File CORPUS = new File("../app/src/main/assets/sync/lm_based_corpus.txt");
+    private static final String[] ADDED = {"we can see the sea", "i want to see the school"};
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void addedSentencesGiveTheModelOfTheWholeCorpus() throws Exception {
+        IncrementalLm lm = new IncrementalLm().setTempDir(temp.getRoot());
+        assertEquals(2, lm.addCorpus(CORPUS));
+        StringWriter base = new StringWriter();
+        lm.write(base);
+        for (String sentence : ADDED) {
+            assertTrue(lm.addSentence(sentence));
+        }
+        StringWriter updated = new StringWriter();
+        lm.write(updated);
+
+        File corpus = temp.newFile("corpus.txt");
+        Writer out = new OutputStreamWriter(new FileOutputStream(corpus), "UTF-8");
+        try {
+            out.write("but there is a limit\ni want to go to school\n");
+            for (String sentence : ADDED) {
+                out.write(sentence + "\n");
+            }
+        } finally {
+            out.close();
+        }
+        StringWriter compiled = new StringWriter();
+        new QuickLmCompiler().setTempDir(temp.getRoot()).compile(corpus, compiled);
+
+        // the new words sort in between the old ones, moving their IDs
+        assertEquals(compiled.toString(), updated.toString());
+        StringWriter bundled = new StringWriter();
+        new QuickLmCompiler().setTempDir(temp.getRoot()).compile(CORPUS, bundled);
+        assertEquals(bundled.toString(), base.toString());
+    }
+
+    @Test
+    public void blankSentencesCountNothing() {
+        IncrementalLm lm = new IncrementalLm();
+        assertFalse(lm.addSentence("  "));
+        assertTrue(lm.addSentence("Go  to School"));
+
+        assertEquals(1, lm.getSentenceCount());
+        assertEquals(Arrays.asList("go", "school", "to"), lm.getWords());
+        assertTrue(lm.contains("school"));
+        assertFalse(lm.contains("School"));
+    }
+}
@@ -0,0 +1,218 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NgramModelTest {
+
+    private static final File BUNDLED_LM = new File("../app/src/main/assets/sync/6805.lm");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void scoresBundledModel() throws Exception {
+        NgramModel model = NgramModel.load(BUNDLED_LM);
+
+        assertEquals(3, model.order());
+        assertEquals(12, model.vocabularySize());
+        assertEquals(13, model.count(2));
+        assertEquals(11, model.count(3));
+
+        assertEquals(-0.3010f, logProb(model, "i", "want"), 1e-4f);
+        assertEquals(-0.3010f, logProb(model, "i", "want", "to"), 1e-4f);
+        // backs off from "a limit school" through "limit school" to the unigram
+        assertEquals(0.0f - 0.2711f - 1.4771f, logProb(model, "a", "limit", "school"), 1e-4f);
+        assertEquals(NgramModel.UNKNOWN_LOG_PROB, logProb(model, "to", "mars"), 0f);
+
+        double expected = Math.pow(10, (0.6021 + 6 * 0.3010) / 7);
+        assertEquals(expected, model.perplexity("I want to go to school"), 1e-3);
+        assertTrue(model.perplexity("school to go want i") > expected);
+    }
+
+    @Test
+    public void matchesReferenceBackoffOnCompiledModel() throws Exception {
+        File arpa = compileSyntheticModel();
+        NgramModel model = NgramModel.load(arpa);
+        Reference reference = new Reference(read(arpa));
+
+        Random random = new Random(1);
+        int[] sequence = new int[3];
+        for (int i = 0; i < 20000; i++) {
+            for (int j = 0; j < sequence.length; j++) {
+                sequence[j] = random.nextInt(model.vocabularySize() + 1) - 1;
+            }
+            int length = 1 + random.nextInt(3);
+            int offset = sequence.length - length;
+            assertEquals(
+                    reference.logProb(model, sequence, offset, length),
+                    model.logProb(sequence, offset, length),
+                    1e-4f);
+        }
+    }
+
+    @Test
+    public void snapshotScoresLikeTheTextModel() throws Exception {
+        NgramModel text = NgramModel.load(compileSyntheticModel());
+        File snapshot = temp.newFile("model.bin");
+        text.save(snapshot);
+        NgramModel mapped = NgramModel.open(snapshot);
+
+        assertEquals(text.vocabularySize(), mapped.vocabularySize());
+        for (int id = 0; id < text.vocabularySize(); id++) {
+            assertEquals(id, mapped.wordId(text.word(id)));
+        }
+
+        Random random = new Random(2);
+        int[] sequence = new int[3];
+        for (int i = 0; i < 5000; i++) {
+            for (int j = 0; j < sequence.length; j++) {
+                sequence[j] = random.nextInt(text.vocabularySize());
+            }
+            assertEquals(text.logProb(sequence, 0, 3), mapped.logProb(sequence, 0, 3), 0f);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMissingContext() throws Exception {
+        String arpa = "\\data\\\nngram 1=2\nngram 2=1\n\n\\1-grams:\n-1 a\n-1 b\n\n"
+                + "\\2-grams:\n-1 a c\n\n\\end\\\n";
+        ArpaReader.read(new StringReader(arpa));
+    }
+
+    @Test
+    public void lookupDoesNotAllocate() throws Exception {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+
+        NgramModel model = NgramModel.load(BUNDLED_LM);
+        int[] sentence = model.toIds("but there is a limit to school");
+        double sink = 0;
+        for (int i = 0; i < 20000; i++) {
+            sink += model.sentenceLogProb(sentence, sentence.length) + model.wordId("limit");
+        }
+
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 20000; i++) {
+            sink += model.sentenceLogProb(sentence, sentence.length) + model.wordId("limit");
+        }
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(sink != 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static float logProb(NgramModel model, String... words) {
+        int[] ids = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            ids[i] = model.wordId(words[i]);
+        }
+        return model.logProb(ids, 0, ids.length);
+    }
+
+    private File compileSyntheticModel() throws IOException {
+        String[] words = {"i", "want", "to", "go", "school", "but", "there", "is", "a", "limit"};
+        Random random = new Random(3);
+        File corpus = temp.newFile("corpus.txt");
+        Writer out = new OutputStreamWriter(new FileOutputStream(corpus), "UTF-8");
+        try {
+            for (int s = 0; s < 400; s++) {
+                for (int i = 0, n = 2 + random.nextInt(6); i < n; i++) {
+                    out.write((i == 0 ? "" : " ") + words[random.nextInt(words.length)]);
+                }
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+
+        File arpa = temp.newFile("model.lm");
+        new QuickLmCompiler().setTempDir(temp.getRoot()).compile(corpus, arpa);
+        return arpa;
+    }
+
+    private static String read(File file) throws IOException {
+        Scanner scanner = new Scanner(file, "UTF-8").useDelimiter("\\A");
+        try {
+            return scanner.next();
+        } finally {
+            scanner.close();
+        }
+    }
+
+    /** Textbook backoff over string-keyed maps, used as the oracle. */
+    private static final class Reference {
+        final Map<String, Float> probs = new HashMap<>();
+        final Map<String, Float> backoffs = new HashMap<>();
+
+        Reference(String arpa) {
+            int order = 0;
+            for (String line : arpa.split("\n")) {
+                line = line.trim();
+                if (line.matches("\\\\\\d-grams:")) {
+                    order = line.charAt(1) - '0';
+                } else if (order > 0 && !line.isEmpty() && !line.startsWith("\\")) {
+                    String[] fields = line.split(" ");
+                    StringBuilder key = new StringBuilder();
+                    for (int i = 1; i <= order; i++) {
+                        key.append(i > 1 ? " " : "").append(fields[i]);
+                    }
+                    probs.put(key.toString(), Float.parseFloat(fields[0]));
+                    if (fields.length > order + 1) {
+                        backoffs.put(key.toString(), Float.parseFloat(fields[order + 1]));
+                    }
+                }
+            }
+        }
+
+        float logProb(NgramModel model, int[] sequence, int offset, int length) {
+            if (sequence[offset + length - 1] < 0) {
+                return NgramModel.UNKNOWN_LOG_PROB;
+            }
+            String[] words = new String[length];
+            for (int i = 0; i < length; i++) {
+                int id = sequence[offset + i];
+                words[i] = id < 0 ? "<unknown>" : model.word(id);
+            }
+            return logProb(words, 0);
+        }
+
+        private float logProb(String[] words, int from) {
+            String ngram = join(words, from, words.length);
+            Float prob = probs.get(ngram);
+            if (prob != null) {
+                return prob;
+            }
+            Float backoff = backoffs.get(join(words, from, words.length - 1));
+            return (backoff == null ? 0f : backoff) + logProb(words, from + 1);
+        }
+
+        private static String join(String[] words, int from, int to) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                builder.append(i > from ? " " : "").append(words[i]);
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.rayworks.asrwordsrecognition.lm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuickLmCompilerTest {
+
+    private static final File CORPUS = new File("../app/src/main/assets/sync/lm_based_corpus.txt");
+    private static final File BUNDLED_LM = new File("../app/src/main/assets/sync/6805.lm");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void reproducesBundledModel() throws Exception {
+        StringWriter out = new StringWriter();
+        int sentences = new QuickLmCompiler().setTempDir(temp.getRoot()).compile(CORPUS, out);
+
+        assertEquals(2, sentences);
+        assertEquals(modelSection(read(BUNDLED_LM)), modelSection(out.toString()));
+        assertTrue(out.toString().contains("corpus of 2 sentences and 12 words"));
+    }
+
+    @Test
+    public void spillingRunsDoesNotChangeTheModel() throws Exception {
+        File corpus = syntheticCorpus(3000, 42);
+
+        StringWriter inMemory = new StringWriter();
+        new QuickLmCompiler().setTempDir(temp.getRoot()).compile(corpus, inMemory);
+
+        StringWriter spilled = new StringWriter();
+        new QuickLmCompiler()
+                .setTempDir(temp.getRoot())
+                .setParallelism(3)
+                .setBatchSize(700)
+                .setMaxEntriesInMemory(100)
+                .compile(corpus, spilled);
+
+        assertEquals(inMemory.toString(), spilled.toString());
+        assertEquals("only the corpus should be left behind", 1, temp.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void estimatingStaysWithinTheBudget() throws Exception {
+        File corpus = syntheticCorpus(3000, 7);
+        StringWriter inMemory = new StringWriter();
+        new QuickLmCompiler().setTempDir(temp.getRoot()).compile(corpus, inMemory);
+
+        List<String[]> lines = new ArrayList<>();
+        Set<String> words = new TreeSet<>(Arrays.asList(
+                Vocabulary.SENTENCE_START, Vocabulary.SENTENCE_END));
+        Scanner in = new Scanner(corpus, "UTF-8");
+        try {
+            while (in.hasNextLine()) {
+                String[] line = in.nextLine().trim().split("\\s+");
+                lines.add(line);
+                words.addAll(Arrays.asList(line));
+            }
+        } finally {
+            in.close();
+        }
+        Vocabulary vocabulary = new Vocabulary(words);
+        List<int[]> sentences = new ArrayList<>();
+        for (String[] line : lines) {
+            int[] ids = new int[line.length + 2];
+            ids[0] = vocabulary.id(Vocabulary.SENTENCE_START);
+            for (int i = 0; i < line.length; i++) {
+                ids[i + 1] = vocabulary.id(line[i]);
+            }
+            ids[ids.length - 1] = vocabulary.id(Vocabulary.SENTENCE_END);
+            sentences.add(ids);
+        }
+
+        // far fewer entries than distinct bigrams, let alone trigrams
+        int budget = 50;
+        NgramCounter counter =
+                new NgramCounter(vocabulary.size(), null, 1, budget, temp.getRoot());
+        StringWriter spilled = new StringWriter();
+        try {
+            counter.count(sentences);
+            Estimator estimator = new Estimator(vocabulary, counter,
+                    QuickLmCompiler.DEFAULT_DISCOUNT_MASS, budget, temp.getRoot());
+            estimator.write(sentences.size(), spilled);
+            assertTrue(estimator.spilledRuns() > 0);
+        } finally {
+            counter.close();
+        }
+
+        assertEquals(inMemory.toString(), spilled.toString());
+        assertEquals("only the corpus should be left behind", 1, temp.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void formatsLogProbabilitiesLikeQuickLm() {
+        assertEquals("-0.3010", log10(0.5));
+        assertEquals("0.0000", log10(1.0));
+        assertEquals("0.0000", log10(0.99999));
+        assertEquals("-1.1761", log10(2.0 / 30));
+        assertEquals("-0.0969", log10(0.8));
+        assertEquals("-12.0000", log10(1e-12));
+    }
+
+    private static String log10(double probability) {
+        StringBuilder builder = new StringBuilder();
+        QuickLmCompiler.appendLog10(builder, probability);
+        return builder.toString();
+    }
+
+    private File syntheticCorpus(int sentences, long seed) throws IOException {
+        String[] words = {"i", "want", "to", "go", "school", "but", "there", "is", "a", "limit",
+                "we", "can", "not", "see", "the", "sea"};
+        Random random = new Random(seed);
+        File corpus = temp.newFile("corpus.txt");
+        Writer out = new OutputStreamWriter(new FileOutputStream(corpus), "UTF-8");
+        try {
+            for (int s = 0; s < sentences; s++) {
+                int length = 2 + random.nextInt(8);
+                for (int i = 0; i < length; i++) {
+                    out.write(i == 0 ? "" : " ");
+                    out.write(words[random.nextInt(words.length)]);
+                }
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        return corpus;
+    }
+
+    private static String modelSection(String arpa) {
+        return arpa.substring(arpa.indexOf("\\data\\")).trim();
+    }
+
+    private static String read(File file) throws IOException {
+        Scanner scanner = new Scanner(file, "UTF-8").useDelimiter("\\A");
+        try {
+            return scanner.next();
+        } finally {
+            scanner.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.rayworks.asrwordsrecognition.match;
+
+import com.rayworks.asrwordsrecognition.eval.WordAlignment;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SentenceMatcherTest {
+
+    private static final String[] LESSONS = {
+            "but there is a limit",
+            "i want to go to school",
+            "I want to go to school",
+            "she wants to go to the park",
+            "",
+            "there is a school in the park",
+    };
+
+    /** Sentences of up to 10 words from a small vocabulary, so that they share many bigrams. */
+    private static List<String> corpus(Random random, int sentences, int vocabulary) {
+        List<String> corpus = new ArrayList<>(sentences);
+        StringBuilder sentence = new StringBuilder();
+        for (int s = 0; s < sentences; s++) {
+            sentence.setLength(0);
+            int length = 1 + random.nextInt(10);
+            for (int i = 0; i < length; i++) {
+                // skewed towards the first words, as real text is
+                int word = (int) (vocabulary * Math.pow(random.nextDouble(), 2));
+                sentence.append(i == 0 ? "" : " ").append('w').append(word);
+            }
+            corpus.add(sentence.toString());
+        }
+        return corpus;
+    }
+
+    /** Up to {@code edits} random substitutions, deletions and insertions. */
+    private static String garble(Random random, String sentence, int edits, int vocabulary) {
+        List<String> words = new ArrayList<>(Arrays.asList(sentence.split(" ")));
+        for (int e = random.nextInt(edits + 1); e > 0; e--) {
+            int at = random.nextInt(words.size() + 1);
+            String word = random.nextInt(8) == 0 ? "oov" : "w" + random.nextInt(vocabulary);
+            switch (random.nextInt(3)) {
+                case 0:
+                    if (at < words.size()) {
+                        words.set(at, word);
+                    }
+                    break;
+                case 1:
+                    if (at < words.size() && words.size() > 1) {
+                        words.remove(at);
+                    }
+                    break;
+                default:
+                    words.add(at, word);
+            }
+        }
+        StringBuilder garbled = new StringBuilder();
+        for (String word : words) {
+            garbled.append(garbled.length() == 0 ? "" : " ").append(word);
+        }
+        return garbled.toString();
+    }
+
+    /** Compares the hypothesis with every sentence, as the matcher promises to behave. */
+    private static int bruteForce(SentenceIndex index, String hypothesis, int maxDistance) {
+        int queryLength = WordAlignment.normalize(hypothesis).length;
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int s = 0; s < index.size(); s++) {
+            WordAlignment alignment = WordAlignment.of(index.sentence(s), hypothesis);
+            int distance = alignment.getErrors();
+            int longer = Math.max(alignment.getReferenceLength(), queryLength);
+            if (queryLength > 0 && distance <= maxDistance && 2 * distance <= longer
+                    && distance < bestDistance) {
+                best = s;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void findsTheClosestSentenceWithItsErrors() {
+        SentenceIndex index = new SentenceIndex(Arrays.asList(LESSONS));
+        SentenceMatcher matcher = new SentenceMatcher(index);
+
+        // normalized and without repeats
+        assertEquals(4, index.size());
+        SentenceMatcher.Match match = matcher.match("<s> I want go to the school </s>");
+        assertNotNull(match);
+        assertEquals("i want to go to school", match.getSentence());
+        assertEquals(2, match.getDistance());
+        assertEquals(1, match.getAlignment().getDeletions());
+        assertEquals(1, match.getAlignment().getInsertions());
+        assertEquals(0, match.getAlignment().getSubstitutions());
+
+        assertTrue(matcher.match("but there is a limit").isExact());
+        assertEquals("there is a school in the park",
+                matcher.match("there is a school in a park").getSentence());
+    }
+
+    @Test
+    public void findsNothingBeyondHalfTheWords() {
+        SentenceMatcher matcher = new SentenceMatcher(new SentenceIndex(Arrays.asList(LESSONS)));
+
+        assertNull(matcher.match(""));
+        assertNull(matcher.match("[noise]"));
+        assertNull(matcher.match("completely unrelated words here"));
+        // three errors in six words is still a match, unless the limit is lower
+        assertEquals(3, matcher.match("i want to run to the work").getDistance());
+        assertNull(matcher.setMaxDistance(2).match("i want to run to the work"));
+    }
+
+    @Test
+    public void bandedDistanceMatchesTheFullAlignment() {
+        Random random = new Random(7);
+        int[] previous = new int[16];
+        int[] current = new int[16];
+        for (int trial = 0; trial < 5000; trial++) {
+            int[] a = new int[random.nextInt(12)];
+            int[] b = new int[random.nextInt(12)];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = random.nextInt(4);
+            }
+            for (int i = 0; i < b.length; i++) {
+                b[i] = random.nextInt(4);
+            }
+            int full = WordAlignment.of(text(a), text(b)).getErrors();
+            int bound = random.nextInt(8);
+            int banded = SentenceMatcher.distance(a, b, bound, previous, current);
+            if (full <= bound) {
+                assertEquals(full, banded);
+            } else {
+                assertTrue(banded > bound);
+            }
+        }
+    }
+
+    private static String text(int[] words) {
+        StringBuilder text = new StringBuilder();
+        for (int word : words) {
+            text.append(" w").append(word);
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void agreesWithComparingEverySentence() {
+        Random random = new Random(42);
+        int vocabulary = 60;
+        SentenceIndex index = new SentenceIndex(corpus(random, 3000, vocabulary));
+        SentenceMatcher matcher = new SentenceMatcher(index);
+        SentenceMatcher limited = new SentenceMatcher(index).setMaxDistance(1);
+
+        for (int q = 0; q < 300; q++) {
+            String hypothesis = q % 10 == 0
+                    ? corpus(random, 1, vocabulary).get(0)
+                    : garble(random, index.sentence(random.nextInt(index.size())), 4, vocabulary);
+
+            SentenceMatcher.Match match = matcher.match(hypothesis);
+            int expected = bruteForce(index, hypothesis, Integer.MAX_VALUE);
+            assertEquals(hypothesis, expected, match == null ? -1 : match.getIndex());
+            if (match != null) {
+                assertEquals(match.getAlignment().getErrors(), match.getDistance());
+                assertTrue(matcher.getLastCandidates() < index.size());
+            }
+
+            match = limited.match(hypothesis);
+            expected = bruteForce(index, hypothesis, 1);
+            assertEquals(hypothesis, expected, match == null ? -1 : match.getIndex());
+        }
+    }
+}
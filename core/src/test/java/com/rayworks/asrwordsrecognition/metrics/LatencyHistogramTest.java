@@ -0,0 +1,147 @@
+package com.rayworks.asrwordsrecognition.metrics;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsTileTheRangeWithoutGaps() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(15, LatencyHistogram.bucketOf(15));
+        long expectedLower = 0;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS - 1; bucket++) {
+            long lower = LatencyHistogram.lowerBound(bucket);
+            long width = LatencyHistogram.width(bucket);
+            assertEquals(expectedLower, lower);
+            assertEquals(bucket, LatencyHistogram.bucketOf(lower));
+            assertEquals(bucket, LatencyHistogram.bucketOf(lower + width - 1));
+            // never wider than a sixteenth of its values
+            assertTrue(width == 1 || width * LatencyHistogram.SUB_BUCKETS <= lower);
+            expectedLower = lower + width;
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreWithinTheBucketResolution() {
+        Random random = new Random(3);
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        long[] values = new long[100000];
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            // log-normal around 20 ms, like decoder latencies
+            values[i] = Math.round(Math.exp(Math.log(20000) + random.nextGaussian()));
+            histogram.recordMicros(values[i]);
+            sum += values[i];
+        }
+        Arrays.sort(values);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals((double) sum / values.length, snapshot.getMean(), 1e-6);
+        assertEquals(values[values.length - 1], snapshot.getMax());
+        for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = snapshot.getValueAtPercentile(percentile);
+            assertEquals("p" + percentile, exact, estimate, exact / 16.0 + 1);
+        }
+    }
+
+    @Test
+    public void smallAndHugeValuesAndEmptyHistograms() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        LatencyHistogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.getCount());
+        assertTrue(Double.isNaN(empty.getMean()));
+        assertEquals(0, empty.getValueAtPercentile(99));
+
+        histogram.recordMicros(7);
+        histogram.recordMicros(-5);
+        histogram.recordNanos(2999);
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(1));
+        assertEquals(2, histogram.snapshot().getValueAtPercentile(50));
+        assertEquals(7, histogram.snapshot().getValueAtPercentile(100));
+
+        // beyond the last bucket the maximum is still exact
+        histogram.recordMicros(1L << 50);
+        assertEquals(1L << 50, histogram.snapshot().getMax());
+        assertEquals(1L << 50, histogram.snapshot().getValueAtPercentile(100));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram("test");
+        final int threads = 8;
+        final int perThread = 50000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int base = t * 1000;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.recordMicros(base + i % 1000);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(threads * perThread, snapshot.getCount());
+        // every thread records its 1000 values 50 times, each sum is 1000 * base + 499500
+        long sum = 0;
+        for (int t = 0; t < threads; t++) {
+            sum += (perThread / 1000) * (1000L * t * 1000 + 499500);
+        }
+        assertEquals((double) sum / snapshot.getCount(), snapshot.getMean(), 1e-9);
+        assertEquals((threads - 1) * 1000 + 999, snapshot.getMax());
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        RealTimeFactor factor = new RealTimeFactor("test");
+        record(histogram, factor);
+
+        long before = allocations.getThreadAllocatedBytes(thread);
+        record(histogram, factor);
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(200000, histogram.snapshot().getCount());
+        assertEquals(0.5, factor.get(), 1e-9);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void record(LatencyHistogram histogram, RealTimeFactor factor) {
+        for (int i = 0; i < 100000; i++) {
+            histogram.recordNanos(i * 997L);
+            factor.record(640, 16000, 20000000);
+        }
+    }
+}
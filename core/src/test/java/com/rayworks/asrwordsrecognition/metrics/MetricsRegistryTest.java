@@ -0,0 +1,117 @@
+package com.rayworks.asrwordsrecognition.metrics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsRegistryTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void reportLinesHaveAStableFormat() {
+        MetricsRegistry registry = new MetricsRegistry();
+        LatencyHistogram setup = registry.histogram("setup");
+        assertSame(setup, registry.histogram("setup"));
+        registry.histogram("idle");
+        setup.recordMicros(1000);
+        setup.recordMicros(3000);
+        registry.realTimeFactor("decode").record(16000, 16000, 250000000);
+        registry.recordMemory("after_models", 1024, 2048);
+
+        List<String> lines = registry.report(42);
+
+        assertEquals(4, lines.size());
+        // 1000 lies in [992, 1024), the middle of 3000's bucket is capped by the maximum
+        assertEquals("t=42 histogram setup count=2 mean_us=2000.0 p50_us=1007 p90_us=3000"
+                + " p99_us=3000 max_us=3000", lines.get(0));
+        assertEquals("t=42 histogram idle count=0 mean_us=nan p50_us=0 p90_us=0 p99_us=0"
+                + " max_us=0", lines.get(1));
+        assertEquals("t=42 rtf decode audio_s=1.000 processing_s=0.250 rtf=0.250",
+                lines.get(2));
+        assertTrue(lines.get(3), lines.get(3).matches(
+                "t=42 memory after_models java_bytes=1024 native_bytes=2048 at=\\d+"));
+    }
+
+    @Test
+    public void fileSinkRollsOverAndKeepsTheNewest() throws IOException {
+        File file = new File(temp.getRoot(), "metrics/metrics.log");
+        RollingFileSink sink = new RollingFileSink(file).setMaxBytes(100).setMaxBackups(2);
+        for (int i = 0; i < 10; i++) {
+            // 60 bytes a report, so every second report rolls the file
+            sink.write(Arrays.asList(line(i, 'a'), line(i, 'b')));
+        }
+
+        assertEquals(Arrays.asList(line(8, 'a'), line(8, 'b'), line(9, 'a'), line(9, 'b')),
+                read(file));
+        assertEquals(line(6, 'a'), read(new File(file.getPath() + ".1")).get(0));
+        assertEquals(line(4, 'a'), read(new File(file.getPath() + ".2")).get(0));
+        assertFalse(new File(file.getPath() + ".3").exists());
+    }
+
+    @Test
+    public void reporterWritesToEverySinkDespiteFailures() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.histogram("stop").recordMicros(5);
+        final List<String> received = new ArrayList<>();
+        MetricsSink failing = new MetricsSink() {
+            @Override
+            public void write(List<String> lines) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        MetricsSink collecting = new MetricsSink() {
+            @Override
+            public void write(List<String> lines) {
+                received.addAll(lines);
+            }
+        };
+
+        MetricsReporter reporter = new MetricsReporter(registry, failing, collecting);
+        reporter.report();
+
+        assertEquals(1, received.size());
+        assertTrue(received.get(0), received.get(0).contains(" histogram stop count=1 "));
+        assertEquals("disk full", reporter.getLastError().getMessage());
+
+        // stopping a reporter that never started does not report
+        reporter.stop();
+        assertEquals(1, received.size());
+        assertEquals(Collections.<String>emptyList(), new MetricsRegistry().report(0));
+    }
+
+    private static String line(int report, char kind) {
+        return String.format("report %02d %c %s", report, kind, "..................");
+    }
+
+    private static List<String> read(File file) throws IOException {
+        BufferedReader in =
+                new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            in.close();
+        }
+    }
+}
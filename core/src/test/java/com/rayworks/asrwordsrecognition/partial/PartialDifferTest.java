@@ -0,0 +1,84 @@
+package com.rayworks.asrwordsrecognition.partial;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PartialDifferTest {
+
+    @Test
+    public void replayedHypothesesSplitIntoStablePrefixAndTail() {
+        List<String> updates =
+                replay(
+                        "",
+                        "i",
+                        "i",
+                        "i want",
+                        "i want two",
+                        "i  want two ",
+                        "i want to go",
+                        "i want to go to",
+                        "i want to go to school");
+
+        assertEquals(
+                Arrays.asList(
+                        "[|i]",
+                        "[i |want]",
+                        "[i want |two]",
+                        "[i want |to go]",
+                        "[i want to go |to]",
+                        "[i want to go to |school]"),
+                updates);
+    }
+
+    @Test
+    public void revisionsCanShrinkTheStablePrefix() {
+        PartialDiffer differ = new PartialDiffer();
+        differ.diff("go to the school");
+        PartialUpdate update = differ.diff("go to");
+
+        assertEquals("go to", update.getText());
+        assertEquals(2, update.getStableWords());
+        assertEquals("go to", update.getStableText());
+        assertEquals("", update.getChangingText());
+
+        update = differ.diff("no");
+        assertEquals(0, update.getStableWords());
+        assertEquals("", update.getStableText());
+        assertEquals(1, update.getWordCount());
+    }
+
+    @Test
+    public void finalResultIsStableEvenIfUnchanged() {
+        PartialDiffer differ = new PartialDiffer();
+        differ.diff("but there");
+        differ.diff("but there is a");
+        PartialUpdate last = differ.finish("but there is a");
+
+        assertTrue(last.isFinal());
+        assertEquals("but there is a", last.getStableText());
+        assertEquals(4, last.getStableWords());
+
+        differ.reset();
+        assertEquals("[|but]", differ.diff("but").toString());
+        assertNull(differ.diff(" but\t"));
+    }
+
+    private static List<String> replay(String... hypotheses) {
+        PartialDiffer differ = new PartialDiffer();
+        List<String> updates = new ArrayList<>();
+        for (String hypothesis : hypotheses) {
+            PartialUpdate update = differ.diff(hypothesis);
+            if (update != null) {
+                updates.add(update.toString());
+            }
+        }
+        return updates;
+    }
+}
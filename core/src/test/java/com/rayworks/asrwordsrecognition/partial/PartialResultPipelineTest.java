@@ -0,0 +1,130 @@
+package com.rayworks.asrwordsrecognition.partial;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PartialResultPipelineTest {
+
+    private static final long MS = 1000000L;
+
+    private final ManualExecutor worker = new ManualExecutor();
+    private final PartialResultPipeline pipeline = new PartialResultPipeline(worker);
+
+    @Test
+    public void partialsBetweenFramesAreCoalesced() {
+        pipeline.startUtterance(0);
+        pipeline.submitPartial("i", 40 * MS);
+        pipeline.submitPartial("i want", 80 * MS);
+        pipeline.submitPartial("i want two", 120 * MS);
+        assertNull(pipeline.poll());
+
+        // one task diffs only the newest hypothesis
+        assertEquals(1, worker.runAll());
+        PartialUpdate update = pipeline.poll();
+        assertEquals("[|i want two]", update.toString());
+        assertNull(pipeline.poll());
+
+        pipeline.submitPartial("i want to go", 160 * MS);
+        worker.runAll();
+        pipeline.submitPartial("i want to go to", 200 * MS);
+        worker.runAll();
+        // the display missed a frame; it sees the newest diff only
+        assertEquals("[i want to go |to]", pipeline.poll().toString());
+    }
+
+    @Test
+    public void duplicatesNeverReachTheWorker() {
+        pipeline.startUtterance(0);
+        pipeline.submitPartial(null, 10 * MS);
+        pipeline.submitPartial("go", 20 * MS);
+        worker.runAll();
+        pipeline.poll();
+
+        pipeline.submitPartial("go", 30 * MS);
+        pipeline.submitPartial("go", 40 * MS);
+        assertEquals(0, worker.runAll());
+
+        // same words, different spacing: diffed but not published
+        pipeline.submitPartial("go ", 50 * MS);
+        assertEquals(1, worker.runAll());
+        assertNull(pipeline.poll());
+    }
+
+    @Test
+    public void finalReplacesPendingPartialsAndEndsTheUtterance() {
+        pipeline.startUtterance(0);
+        pipeline.submitPartial("", 40 * MS);
+        pipeline.submitPartial("but there", 300 * MS);
+        worker.runAll();
+        pipeline.submitPartial("but there is", 340 * MS);
+        pipeline.submitFinal("but there is a limit", 500 * MS);
+        pipeline.submitPartial("late", 520 * MS);
+        worker.runAll();
+
+        PartialUpdate update = pipeline.poll();
+        assertTrue(update.isFinal());
+        assertEquals("but there is a limit", update.getStableText());
+        assertNull(pipeline.poll());
+
+        assertEquals(300 * MS, pipeline.getTimeToFirstPartialNanos());
+        assertEquals(160 * MS, pipeline.getPartialToFinalNanos());
+    }
+
+    @Test
+    public void newUtteranceDropsTheStaleOne() {
+        pipeline.startUtterance(0);
+        pipeline.submitPartial("go home", 100 * MS);
+        worker.runAll();
+        pipeline.submitPartial("go home now", 140 * MS);
+
+        pipeline.startUtterance(1000 * MS);
+        assertNull(pipeline.poll());
+        assertEquals(-1, pipeline.getTimeToFirstPartialNanos());
+        worker.runAll();
+        assertNull(pipeline.poll());
+
+        // the diff starts over rather than continuing from "go home"
+        pipeline.submitPartial("go", 1200 * MS);
+        worker.runAll();
+        assertEquals("[|go]", pipeline.poll().toString());
+        assertEquals(200 * MS, pipeline.getTimeToFirstPartialNanos());
+
+        pipeline.submitFinal("", 1300 * MS);
+        worker.runAll();
+        assertEquals("", pipeline.poll().getText());
+    }
+
+    @Test
+    public void nothingIsAcceptedOutsideAnUtterance() {
+        pipeline.submitPartial("hello", 0);
+        pipeline.submitFinal("hello", 0);
+        assertEquals(0, worker.runAll());
+        assertEquals(-1, pipeline.getPartialToFinalNanos());
+    }
+
+    private static final class ManualExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        int runAll() {
+            int count = 0;
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+                count++;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.rayworks.asrwordsrecognition.pool;
+
+import com.rayworks.asrwordsrecognition.eval.BatchRecognizer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DecoderPoolTest {
+
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final BatchRecognizer.Factory factory = new BatchRecognizer.Factory() {
+        @Override
+        public BatchRecognizer create() {
+            created.incrementAndGet();
+            return new BatchRecognizer() {
+                @Override
+                public String decode(short[] samples, int sampleRate) {
+                    return Thread.currentThread().getName();
+                }
+
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+        }
+    };
+    private DecoderPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static DecoderPool.Job<String> waitFor(
+            final CountDownLatch release, final AtomicInteger running, final AtomicInteger peak) {
+        return new DecoderPool.Job<String>() {
+            @Override
+            public String run(BatchRecognizer recognizer) throws Exception {
+                int now = running.incrementAndGet();
+                while (peak.get() < now && !peak.compareAndSet(peak.get(), now)) {
+                    Thread.yield();
+                }
+                release.await();
+                running.decrementAndGet();
+                return recognizer.decode(new short[0], 16000);
+            }
+        };
+    }
+
+    @Test
+    public void jobsRunConcurrentlyOnAtMostTheSizeOfThePool() throws Exception {
+        pool = new DecoderPool(factory, 3);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(pool.submit(waitFor(release, running, peak)));
+        }
+        while (running.get() < 3) {
+            Thread.sleep(1);
+        }
+        assertEquals(3, pool.getWorkerCount());
+        assertEquals(3, pool.getQueuedJobs());
+
+        release.countDown();
+        for (Future<String> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS).startsWith("decoder-pool-"));
+        }
+        assertEquals(3, peak.get());
+        assertEquals(3, created.get());
+        assertEquals(0, closed.get());
+    }
+
+    @Test
+    public void leaseWaitsForARecognizerToBeReleased() throws Exception {
+        pool = new DecoderPool(factory, 1);
+        DecoderPool.Lease first = pool.acquire();
+        final BatchRecognizer recognizer = first.getRecognizer();
+        final CountDownLatch leased = new CountDownLatch(1);
+        Thread waiting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    DecoderPool.Lease second = pool.acquire();
+                    assertSame(recognizer, second.getRecognizer());
+                    leased.countDown();
+                    second.release();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        waiting.start();
+
+        assertFalse(leased.await(100, TimeUnit.MILLISECONDS));
+        first.release();
+        first.release();
+        assertTrue(leased.await(5, TimeUnit.SECONDS));
+        waiting.join();
+        assertEquals(1, created.get());
+        assertEquals(1, pool.getIdleCount());
+
+        // a recognizer in a bad state is replaced
+        DecoderPool.Lease third = pool.acquire();
+        third.discard();
+        assertEquals(0, pool.getSize());
+        assertEquals(1, closed.get());
+        pool.acquire().release();
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void idleWorkerStealsTheFollowUpsOfABusyOne() throws Exception {
+        pool = new DecoderPool(factory, 2);
+        final CountDownLatch followUpsDone = new CountDownLatch(10);
+        final List<String> threads = new ArrayList<>();
+        final AtomicInteger busy = new AtomicInteger();
+        Future<String> parent = pool.submit(new DecoderPool.Job<String>() {
+            @Override
+            public String run(BatchRecognizer recognizer) throws Exception {
+                busy.incrementAndGet();
+                for (int i = 0; i < 10; i++) {
+                    pool.submit(new DecoderPool.Job<Void>() {
+                        @Override
+                        public Void run(BatchRecognizer recognizer) {
+                            synchronized (threads) {
+                                threads.add(Thread.currentThread().getName());
+                            }
+                            followUpsDone.countDown();
+                            return null;
+                        }
+                    });
+                }
+                // the follow-ups are queued behind this job on its own worker
+                assertTrue(followUpsDone.await(5, TimeUnit.SECONDS));
+                return Thread.currentThread().getName();
+            }
+        });
+        while (busy.get() == 0) {
+            Thread.sleep(1);
+        }
+        Future<String> other = pool.submit(new DecoderPool.Job<String>() {
+            @Override
+            public String run(BatchRecognizer recognizer) {
+                return Thread.currentThread().getName();
+            }
+        });
+
+        String stealer = other.get(5, TimeUnit.SECONDS);
+        String owner = parent.get(5, TimeUnit.SECONDS);
+        assertFalse(owner.equals(stealer));
+        assertEquals(10, threads.size());
+        for (String thread : threads) {
+            assertEquals(stealer, thread);
+        }
+    }
+
+    @Test
+    public void idleRecognizersAndWorkersGoAwayDownToTheMinimum() throws Exception {
+        pool = new DecoderPool(factory, 4).setMinSize(1)
+                .setIdleTimeout(50, TimeUnit.MILLISECONDS);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(pool.submit(waitFor(release, running, peak)));
+        }
+        while (running.get() < 3) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Future<String> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((pool.getSize() > 1 || pool.getWorkerCount() > 1)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, pool.getSize());
+        assertEquals(1, pool.getWorkerCount());
+        assertEquals(2, closed.get());
+
+        pool.trim(0);
+        assertEquals(1, pool.getSize());
+    }
+
+    @Test
+    public void recognizerThatCannotBeCreatedFailsTheJob() throws Exception {
+        pool = new DecoderPool(new BatchRecognizer.Factory() {
+            @Override
+            public BatchRecognizer create() throws Exception {
+                throw new IOException("no model");
+            }
+        }, 2);
+        Future<String> result = pool.submit(waitFor(new CountDownLatch(0),
+                new AtomicInteger(), new AtomicInteger()));
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("no model", e.getCause().getMessage());
+        }
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void shutdownCancelsWaitingJobsAndClosesRecognizers() throws Exception {
+        pool = new DecoderPool(factory, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Future<String> first = pool.submit(waitFor(release, running, peak));
+        Future<String> second = pool.submit(waitFor(release, running, peak));
+        while (running.get() < 1) {
+            Thread.sleep(1);
+        }
+
+        pool.shutdown();
+        assertTrue(second.isCancelled());
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (closed.get() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, closed.get());
+        assertEquals(0, pool.getSize());
+    }
+}
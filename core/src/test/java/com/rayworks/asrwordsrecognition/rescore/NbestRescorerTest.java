@@ -0,0 +1,127 @@
+package com.rayworks.asrwordsrecognition.rescore;
+
+import com.rayworks.asrwordsrecognition.lm.NgramModel;
+import com.rayworks.asrwordsrecognition.match.SentenceIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NbestRescorerTest {
+
+    private static final File BUNDLED_LM = new File("../app/src/main/assets/sync/6805.lm");
+    // one log10 unit in pocketsphinx scores
+    private static final int LOG10 = (int) Math.round(1 / NbestRescorer.SPHINX_LOG10_PER_UNIT);
+
+    private NgramModel model;
+
+    @Before
+    public void loadModel() throws IOException {
+        model = NgramModel.load(BUNDLED_LM);
+    }
+
+    @Test
+    public void languageModelOverturnsAClosePath() {
+        List<NbestRescorer.Candidate> nbest = Arrays.asList(
+                new NbestRescorer.Candidate("<s> i want two go to school </s>", -100 * LOG10),
+                new NbestRescorer.Candidate("<s> i want to go to school </s>", -101 * LOG10));
+
+        NbestRescorer.Result result = new NbestRescorer(model).rescore(nbest);
+        assertEquals(1, result.getIndex());
+        assertEquals("i want to go to school", result.getText());
+        assertFalse(result.isFallBack());
+    }
+
+    @Test
+    public void expectedSentenceBreaksTies() {
+        // both sentences of the corpus, equally likely under the model
+        List<NbestRescorer.Candidate> nbest = Arrays.asList(
+                new NbestRescorer.Candidate("but there is a limit", -50 * LOG10),
+                new NbestRescorer.Candidate("i want to go to school", -52 * LOG10));
+        NbestRescorer rescorer = new NbestRescorer(model);
+        assertEquals(0, rescorer.rescore(nbest).getIndex());
+
+        rescorer.setExpectedSentences(Collections.singletonList("I want to go to school."));
+        assertEquals(1, rescorer.rescore(nbest).getIndex());
+    }
+
+    @Test
+    public void closestOfTheLessonsSentencesGivesTheBonus() {
+        List<String> lesson = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            lesson.add("this is sentence number " + i);
+        }
+        lesson.add("I want to go to school");
+        NbestRescorer rescorer = new NbestRescorer(model)
+                .setLmWeight(0)
+                .setExpectedSentences(new SentenceIndex(lesson));
+
+        // one word error in six: five sixths of the bonus of 20
+        assertEquals(1, rescorer.rescore(Arrays.asList(
+                new NbestRescorer.Candidate("but there is a limit", -50 * LOG10),
+                new NbestRescorer.Candidate("i want to go to a school", -66 * LOG10)))
+                .getIndex());
+        assertEquals(0, rescorer.rescore(Arrays.asList(
+                new NbestRescorer.Candidate("but there is a limit", -50 * LOG10),
+                new NbestRescorer.Candidate("i want to go to a school", -67 * LOG10)))
+                .getIndex());
+    }
+
+    @Test
+    public void fillersAndAlternatePronunciationsAreIgnored() {
+        List<NbestRescorer.Candidate> nbest = Arrays.asList(
+                new NbestRescorer.Candidate("<s> i want <sil> to(2) go [noise] to school", -10),
+                new NbestRescorer.Candidate("i want to go to school", -5));
+
+        NbestRescorer.Result result = new NbestRescorer(model).rescore(nbest);
+        // the same words; the second path is not scored again
+        assertEquals(0, result.getIndex());
+        assertEquals("i want to go to school", result.getText());
+    }
+
+    @Test
+    public void sharedPrefixesHitTheCache() {
+        List<NbestRescorer.Candidate> nbest = Arrays.asList(
+                new NbestRescorer.Candidate("i want to go to school", 0),
+                new NbestRescorer.Candidate("i want to go to a school", 0),
+                new NbestRescorer.Candidate("i want to go to the school", 0));
+        NbestRescorer rescorer = new NbestRescorer(model);
+        rescorer.rescore(nbest);
+
+        // <s> i, <s> i want, i want to, want to go, to go to are looked up once
+        assertEquals(10, rescorer.getCache().getHits());
+        long misses = rescorer.getCache().getMisses();
+        rescorer.rescore(nbest);
+        assertEquals(misses, rescorer.getCache().getMisses());
+    }
+
+    @Test
+    public void overBudgetKeepsTheDecodersBest() {
+        List<NbestRescorer.Candidate> nbest = Arrays.asList(
+                new NbestRescorer.Candidate("i want two go to school", -100 * LOG10),
+                new NbestRescorer.Candidate("i want to go to school", -101 * LOG10));
+
+        NbestRescorer.Result result = new NbestRescorer(model).setBudgetNanos(0).rescore(nbest);
+        assertTrue(result.isFallBack());
+        assertEquals(0, result.getIndex());
+        assertEquals("i want two go to school", result.getText());
+        assertTrue(Double.isNaN(result.getScore()));
+    }
+
+    @Test
+    public void emptyListHasNoResult() {
+        assertNull(new NbestRescorer(model).rescore(
+                Collections.<NbestRescorer.Candidate>emptyList()));
+    }
+}
@@ -0,0 +1,184 @@
+package com.rayworks.asrwordsrecognition.search;
+
+import com.rayworks.asrwordsrecognition.dict.BinaryDictionary;
+import com.rayworks.asrwordsrecognition.dict.BinaryDictionaryWriter;
+import com.rayworks.asrwordsrecognition.dict.DictionaryParser;
+import com.rayworks.asrwordsrecognition.lm.NgramModel;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LanguageModelUpdaterTest {
+
+    private static final File SYNC_ASSETS = new File("../app/src/main/assets/sync");
+    private static final File CORPUS = new File(SYNC_ASSETS, "lm_based_corpus.txt");
+    private static final File BASE_MODEL = new File(SYNC_ASSETS, "6805.lm");
+    private static final File FULL_DICTIONARY = new File("../app/models/cmudict-en-us.dict");
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final List<String> compiled = new ArrayList<>();
+    private final List<String> released = new ArrayList<>();
+    private final List<String> events = new ArrayList<>();
+    private String failing;
+    private final SearchRegistry registry = new SearchRegistry(new SearchBackend() {
+        @Override
+        public void compile(SearchSpec spec) throws Exception {
+            if (spec.getName().equals(failing)) {
+                throw new Exception("cannot build " + spec.getName());
+            }
+            compiled.add(spec.getName());
+        }
+
+        @Override
+        public void release(SearchSpec spec) {
+            released.add(spec.getName());
+        }
+    }, DIRECT);
+    private BinaryDictionary pronunciations;
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        registry.declare(SearchSpec.ngram("ngram", BASE_MODEL));
+        // the app build writes the binary dictionary; so does the test
+        File binary = temp.newFile("cmudict-en-us.bdic");
+        BinaryDictionaryWriter.write(DictionaryParser.parse(FULL_DICTIONARY), binary);
+        pronunciations = BinaryDictionary.open(binary);
+        dir = new File(temp.getRoot(), "lm");
+    }
+
+    private LanguageModelUpdater updater() {
+        LanguageModelUpdater updater = new LanguageModelUpdater(
+                "ngram", BASE_MODEL, dir, pronunciations, registry, DIRECT);
+        updater.setListener(new LanguageModelUpdater.Listener() {
+            @Override
+            public void onSwapped(int version, File model) {
+                events.add("v" + version + " " + model.getName());
+            }
+
+            @Override
+            public void onUpdateFailed(Exception error) {
+                events.add(error.getMessage());
+            }
+        });
+        updater.restore(CORPUS);
+        return updater;
+    }
+
+    @Test
+    public void newSentenceIsSwappedInWithItsWords() throws Exception {
+        LanguageModelUpdater updater = updater();
+        updater.addSentences(Collections.singletonList("We can see the sea"));
+
+        assertEquals(Arrays.asList("v1 ngram-v1.lm"), events);
+        assertEquals(1, updater.getActiveVersion());
+        assertEquals("ngram_v1", registry.acquire("ngram"));
+        registry.release();
+        assertEquals(Arrays.asList("ngram", "ngram_v1"), compiled);
+
+        NgramModel model = NgramModel.load(new File(dir, "ngram-v1.lm"));
+        assertTrue(model.wordId("sea") >= 0);
+        assertTrue(model.wordId("limit") >= 0);
+        assertEquals(Arrays.asList("S IY"),
+                DictionaryParser.parse(new File(dir, "ngram-v1.dict")).get("sea"));
+    }
+
+    @Test
+    public void wordsWithoutPronunciationAreRejected() throws Exception {
+        LanguageModelUpdater updater = updater();
+        updater.addSentences(Arrays.asList("go to school", "go to qqzx"));
+
+        assertEquals(Arrays.asList("No pronunciation for [qqzx]"), events);
+        assertEquals(0, updater.getActiveVersion());
+        assertEquals("ngram", registry.acquire("ngram"));
+        registry.release();
+        assertFalse(new File(dir, LanguageModelUpdater.JOURNAL).exists());
+    }
+
+    @Test
+    public void previousVersionIsKeptForRollback() throws Exception {
+        LanguageModelUpdater updater = updater();
+        updater.addSentences(Collections.singletonList("we can see the sea"));
+        updater.addSentences(Collections.singletonList("the sea is there"));
+        updater.addSentences(Collections.singletonList("i can go there"));
+
+        // only the active version and the one before it are left
+        assertEquals(Arrays.asList("ngram_v1"), released);
+        assertFalse(registry.isDeclared("ngram_v1"));
+        assertFalse(new File(dir, "ngram-v1.lm").exists());
+
+        assertTrue(updater.rollback());
+        assertEquals(2, updater.getActiveVersion());
+        assertEquals("ngram_v2", registry.acquire("ngram"));
+        registry.release();
+        // and forward again
+        assertTrue(updater.rollback());
+        assertEquals("ngram_v3", registry.resolve("ngram"));
+    }
+
+    @Test
+    public void failedBuildLeavesNoVersionBehind() throws Exception {
+        LanguageModelUpdater updater = updater();
+        failing = "ngram_v1";
+        updater.addSentences(Collections.singletonList("we can see the sea"));
+
+        assertEquals(Arrays.asList("cannot build ngram_v1"), events);
+        assertEquals(0, updater.getActiveVersion());
+        assertEquals("ngram", registry.resolve("ngram"));
+        assertFalse(registry.isDeclared("ngram_v1"));
+        assertFalse(new File(dir, "ngram-v1.lm").exists());
+        assertFalse(new File(dir, "ngram-v1.dict").exists());
+
+        // the next update takes the version, and the sentences of the failed one
+        failing = null;
+        updater.addSentences(Collections.singletonList("the sea is there"));
+        assertEquals("v1 ngram-v1.lm", events.get(1));
+        assertEquals("ngram_v1", registry.resolve("ngram"));
+        assertTrue(NgramModel.load(new File(dir, "ngram-v1.lm")).wordId("see") >= 0);
+    }
+
+    @Test
+    public void journaledSentencesAreRestored() throws Exception {
+        updater().addSentences(Collections.singletonList("we can see the sea"));
+        events.clear();
+
+        LanguageModelUpdater restarted = updater();
+        assertEquals(Arrays.asList("v1 ngram-v1.lm"), events);
+        assertTrue(NgramModel.load(new File(dir, "ngram-v1.lm")).wordId("sea") >= 0);
+        assertEquals(1, restarted.getActiveVersion());
+        assertTrue(restarted.rollback());
+        assertEquals("ngram", registry.resolve("ngram"));
+    }
+
+    @Test
+    public void staleVersionsOfAnEarlierRunAreDeleted() throws Exception {
+        assertTrue(dir.mkdirs());
+        assertTrue(new File(dir, "ngram-v7.lm").createNewFile());
+
+        updater();
+        assertFalse(new File(dir, "ngram-v7.lm").exists());
+        assertTrue(events.isEmpty());
+    }
+}
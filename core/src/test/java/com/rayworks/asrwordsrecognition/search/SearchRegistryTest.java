@@ -0,0 +1,297 @@
+package com.rayworks.asrwordsrecognition.search;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SearchRegistryTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+    private static final long IDLE = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final RecordingBackend backend = new RecordingBackend();
+    private final ManualExecutor worker = new ManualExecutor();
+    private final SearchRegistry registry = new SearchRegistry(backend, worker);
+
+    @Test
+    public void declaredSearchesAreBuiltByPriority() {
+        registry.declare(SearchSpec.ngram("lesson1", new File("lesson1.lm"))
+                .setPriority(SearchSpec.PRIORITY_LOW));
+        registry.declare(SearchSpec.keyphrase("wakeup", "go to school"));
+        registry.declare(SearchSpec.ngram("lesson2", new File("lesson2.lm"))
+                .setPriority(SearchSpec.PRIORITY_LOW));
+        assertTrue(backend.compiled.isEmpty());
+
+        // one task drains the queue
+        assertEquals(1, worker.runAll());
+        assertEquals(Arrays.asList("wakeup", "lesson1", "lesson2"), backend.compiled);
+        assertTrue(registry.isCompiled("lesson2"));
+        assertEquals(Arrays.asList("lesson1", "wakeup", "lesson2"), registry.getNames());
+    }
+
+    @Test
+    public void lazySearchesWaitForUseOrPrefetch() throws Exception {
+        registry.declare(SearchSpec.ngram("lesson1", new File("lesson1.lm")).setLazy(true));
+        registry.declare(SearchSpec.ngram("lesson2", new File("lesson2.lm")).setLazy(true));
+        assertEquals(0, worker.runAll());
+
+        registry.prefetch("lesson2");
+        worker.runAll();
+        assertEquals(Arrays.asList("lesson2"), backend.compiled);
+
+        // a search needed before its turn is built by the thread that needs it
+        registry.acquire("lesson1");
+        registry.release();
+        assertEquals(Arrays.asList("lesson2", "lesson1"), backend.compiled);
+
+        registry.acquire("lesson1");
+        registry.release();
+        assertEquals(2, backend.compiled.size());
+    }
+
+    @Test
+    public void idleSearchesAreEvictedAndRebuilt() throws Exception {
+        registry.declare(SearchSpec.ngram("default", new File("6805.lm")).setPinned(true));
+        registry.declare(SearchSpec.ngram("lesson1", new File("lesson1.lm")));
+        registry.declare(SearchSpec.ngram("lesson2", new File("lesson2.lm")));
+        worker.runAll();
+        Thread.sleep(200);
+
+        registry.acquire("lesson2");
+        registry.release();
+        // only the search used recently survives, and the pinned one
+        assertEquals(1, registry.evictIdle(IDLE, System.nanoTime()));
+        assertEquals(Arrays.asList("lesson1"), backend.released);
+        assertFalse(registry.isCompiled("lesson1"));
+        assertTrue(registry.isCompiled("lesson2"));
+
+        assertEquals(1, registry.evictIdle(0, System.nanoTime()));
+        assertTrue(registry.isCompiled("default"));
+
+        backend.compiled.clear();
+        registry.acquire("lesson1");
+        registry.release();
+        assertEquals(Arrays.asList("lesson1"), backend.compiled);
+    }
+
+    @Test
+    public void searchInUseIsNotEvicted() throws Exception {
+        registry.declare(SearchSpec.ngram("lesson1", new File("lesson1.lm")));
+        worker.runAll();
+
+        registry.acquire("lesson1");
+        try {
+            assertEquals(0, registry.evictIdle(0, System.nanoTime() + MINUTE));
+        } finally {
+            registry.release();
+        }
+    }
+
+    @Test
+    public void failedBuildIsRetriedOnUse() throws Exception {
+        backend.failing = "lesson1";
+        registry.declare(SearchSpec.ngram("lesson1", new File("missing.lm")));
+        worker.runAll();
+        assertFalse(registry.isCompiled("lesson1"));
+        assertEquals("cannot build lesson1", registry.getLastError().getMessage());
+
+        try {
+            registry.acquire("lesson1");
+            fail();
+        } catch (Exception expected) {
+            assertEquals("cannot build lesson1", expected.getMessage());
+        }
+
+        // the decoder was not kept by the failed acquire
+        backend.failing = null;
+        registry.acquire("lesson1");
+        registry.release();
+        assertTrue(registry.isCompiled("lesson1"));
+    }
+
+    @Test
+    public void redirectedSearchDecodesWithItsTarget() throws Exception {
+        registry.declare(SearchSpec.ngram("default", new File("6805.lm")).setLazy(true));
+        registry.declare(SearchSpec.ngram("default_v1", new File("v1.lm")).setLazy(true));
+        registry.compileNow("default_v1");
+        assertEquals(Arrays.asList("default_v1"), backend.compiled);
+
+        registry.redirect("default", "default_v1");
+        assertEquals("default_v1", registry.acquire("default"));
+        registry.release();
+        // the target of a redirect is in use for as long as it is one
+        assertEquals(0, registry.evictIdle(0, System.nanoTime() + MINUTE));
+
+        registry.redirect("default", null);
+        assertEquals("default", registry.acquire("default"));
+        registry.release();
+        assertEquals(Arrays.asList("default_v1", "default"), backend.compiled);
+    }
+
+    @Test
+    public void removedSearchIsReleased() throws Exception {
+        registry.declare(SearchSpec.ngram("default", new File("6805.lm")));
+        registry.declare(SearchSpec.ngram("default_v1", new File("v1.lm")));
+        worker.runAll();
+        registry.redirect("default", "default_v1");
+
+        registry.remove("default_v1");
+        assertFalse(registry.isDeclared("default_v1"));
+        assertEquals("default", registry.resolve("default"));
+        assertTrue(backend.released.isEmpty());
+        worker.runAll();
+        assertEquals(Arrays.asList("default_v1"), backend.released);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void undeclaredSearchIsRejected() throws Exception {
+        registry.acquire("wakeup");
+    }
+
+    @Test
+    public void backgroundBuildWaitsForTheUtterance() throws Exception {
+        final SearchRegistry threaded =
+                new SearchRegistry(backend, new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        new Thread(command).start();
+                    }
+                });
+        threaded.declare(SearchSpec.ngram("default", new File("6805.lm")).setLazy(true));
+        threaded.acquire("default");
+
+        final CountDownLatch built = new CountDownLatch(1);
+        backend.onCompile = new Runnable() {
+            @Override
+            public void run() {
+                built.countDown();
+            }
+        };
+        threaded.declare(SearchSpec.ngram("lesson1", new File("lesson1.lm")));
+        // the decoder is busy with the utterance
+        assertFalse(built.await(100, TimeUnit.MILLISECONDS));
+
+        threaded.release();
+        assertTrue(built.await(5, TimeUnit.SECONDS));
+        assertSame(null, threaded.getLastError());
+    }
+
+    @Test
+    public void waitingForASlowBuildCanBeInterrupted() throws Exception {
+        registry.declare(SearchSpec.ngram("default", new File("6805.lm")).setLazy(true));
+        registry.declare(SearchSpec.ngram("lesson1", new File("lesson1.lm")).setLazy(true));
+        registry.compileNow("default");
+
+        final CountDownLatch building = new CountDownLatch(1);
+        final CountDownLatch finishBuild = new CountDownLatch(1);
+        backend.onCompile = new Runnable() {
+            @Override
+            public void run() {
+                building.countDown();
+                try {
+                    finishBuild.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Thread builder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    registry.compileNow("lesson1");
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        builder.start();
+        assertTrue(building.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch gaveUp = new CountDownLatch(1);
+        Thread decoding = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    registry.acquire("default");
+                    registry.release();
+                } catch (InterruptedException e) {
+                    gaveUp.countDown();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        decoding.start();
+        // the utterance waits behind the build
+        assertFalse(gaveUp.await(100, TimeUnit.MILLISECONDS));
+
+        decoding.interrupt();
+        assertTrue(gaveUp.await(5, TimeUnit.SECONDS));
+        // long before the build is done
+        assertTrue(builder.isAlive());
+
+        finishBuild.countDown();
+        builder.join(5000);
+        assertTrue(registry.isCompiled("lesson1"));
+        // the decoder was not kept by the interrupted acquire
+        registry.acquire("default");
+        registry.release();
+    }
+
+    private static final class RecordingBackend implements SearchBackend {
+        final List<String> compiled = new ArrayList<>();
+        final List<String> released = new ArrayList<>();
+        volatile String failing;
+        volatile Runnable onCompile;
+
+        @Override
+        public synchronized void compile(SearchSpec spec) throws Exception {
+            if (spec.getName().equals(failing)) {
+                throw new Exception("cannot build " + spec.getName());
+            }
+            compiled.add(spec.getName());
+            if (onCompile != null) {
+                onCompile.run();
+            }
+        }
+
+        @Override
+        public synchronized void release(SearchSpec spec) {
+            released.add(spec.getName());
+        }
+    }
+
+    private static final class ManualExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        int runAll() {
+            int count = 0;
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+                count++;
+            }
+            return count;
+        }
+    }
+}
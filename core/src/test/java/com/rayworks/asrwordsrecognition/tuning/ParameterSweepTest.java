@@ -0,0 +1,179 @@
+package com.rayworks.asrwordsrecognition.tuning;
+
+import com.rayworks.asrwordsrecognition.eval.BatchRecognizer;
+import com.rayworks.asrwordsrecognition.eval.EvalItem;
+import com.rayworks.asrwordsrecognition.eval.StandInRecognizer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParameterSweepTest {
+
+    private static final String[] TRANSCRIPTS = {
+            "i want to go home", "she likes the red car", "we play in the park"};
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final StandInRecognizer.Factory answers = new StandInRecognizer.Factory();
+    private final List<EvalItem> items = new ArrayList<>();
+
+    /**
+     * Stands in for a decoder where {@code -ds} skips frames and {@code -beam} prunes: every
+     * frame skipped saves time and loses the last word, a narrow beam takes a third of the time
+     * of a wide one and loses one more.
+     */
+    private final TunableEngine engine = new TunableEngine() {
+        @Override
+        public BatchRecognizer.Factory configure(Map<String, String> options) {
+            final int ds = Integer.parseInt(options.get("-ds"));
+            final boolean wide = "wide".equals(options.get("-beam"));
+            return new BatchRecognizer.Factory() {
+                @Override
+                public BatchRecognizer create() {
+                    final BatchRecognizer words = answers.create();
+                    return new BatchRecognizer() {
+                        @Override
+                        public String decode(short[] samples, int sampleRate) throws Exception {
+                            // 60 ms per second of audio for the fastest wide setting
+                            Thread.sleep((wide ? 180 : 60) * samples.length / sampleRate / ds);
+                            List<String> hypothesis = new ArrayList<>(
+                                    Arrays.asList(words.decode(samples, sampleRate).split(" ")));
+                            int lost = ds - 1 + (wide ? 0 : 1);
+                            return join(hypothesis.subList(0, hypothesis.size() - lost));
+                        }
+
+                        @Override
+                        public void close() {
+                            words.close();
+                        }
+                    };
+                }
+            };
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < TRANSCRIPTS.length; i++) {
+            short[] samples = noise(16000, i);
+            answers.answer(samples, TRANSCRIPTS[i]);
+            File audio = temp.newFile(i + ".raw");
+            writeRaw(audio, samples);
+            items.add(new EvalItem(audio.getName(), audio, TRANSCRIPTS[i]));
+        }
+    }
+
+    private static String join(List<String> words) {
+        StringBuilder text = new StringBuilder();
+        for (String word : words) {
+            text.append(text.length() == 0 ? "" : " ").append(word);
+        }
+        return text.toString();
+    }
+
+    private static Map<String, String> options(String ds, String beam) {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("-ds", ds);
+        options.put("-beam", beam);
+        return options;
+    }
+
+    @Test
+    public void gridVisitsEveryCombinationInOrder() {
+        ParameterGrid grid = new ParameterGrid()
+                .add("-ds", "1", "2", "3")
+                .add("-beam", "narrow", "wide")
+                .add("-topn", "4");
+        List<Map<String, String>> points = grid.points();
+
+        assertEquals(6, grid.size());
+        assertEquals(6, points.size());
+        assertEquals("{-ds=1, -beam=narrow, -topn=4}", points.get(0).toString());
+        assertEquals("{-ds=1, -beam=wide, -topn=4}", points.get(1).toString());
+        assertEquals("{-ds=3, -beam=wide, -topn=4}", points.get(5).toString());
+        assertEquals(1, new ParameterGrid().points().size());
+    }
+
+    @Test
+    public void sweepScoresEveryCombinationAndKeepsTheFront() throws IOException {
+        ParameterGrid grid = new ParameterGrid()
+                .add("-ds", "1", "2", "3")
+                .add("-beam", "narrow", "wide");
+        List<SweepPoint> points = new ParameterSweep(engine, items).run(grid);
+
+        assertEquals(6, points.size());
+        double[] wer = {0.2, 0, 0.4, 0.2, 0.6, 0.4};
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(grid.points().get(i), points.get(i).getOptions());
+            assertEquals(wer[i], points.get(i).getWordErrorRate(), 1e-9);
+        }
+        // measured, so only roughly what the stand-in sleeps
+        assertTrue(points.get(1).getRealTimeFactor() > 0.17);
+        assertTrue(points.get(4).getRealTimeFactor() < points.get(2).getRealTimeFactor());
+
+        List<SweepPoint> front = ParameterSweep.paretoFront(points);
+        assertEquals(Arrays.asList(points.get(4), points.get(2), points.get(0), points.get(1)),
+                front);
+    }
+
+    @Test
+    public void frontDropsPointsBeatenOnBothScores() {
+        List<SweepPoint> points = Arrays.asList(
+                point("slow", 0.05, 0.5),
+                point("accurate", 0.02, 0.4),
+                point("fast", 0.2, 0.1),
+                point("tie", 0.2, 0.1),
+                point("worse", 0.3, 0.2),
+                point("fastest", 0.4, 0.05));
+
+        List<String> names = new ArrayList<>();
+        for (SweepPoint point : ParameterSweep.paretoFront(points)) {
+            names.add(point.getOptions().get("name"));
+        }
+        assertEquals(Arrays.asList("fastest", "fast", "accurate"), names);
+        assertEquals(Collections.<SweepPoint>emptyList(),
+                ParameterSweep.paretoFront(Collections.<SweepPoint>emptyList()));
+    }
+
+    static SweepPoint point(String name, double wer, double rtf) {
+        return new SweepPoint(Collections.singletonMap("name", name), wer, rtf, rtf * 1000);
+    }
+
+    private static short[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (1000 * random.nextGaussian());
+        }
+        return samples;
+    }
+
+    private static void writeRaw(File file, short[] samples) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            for (short sample : samples) {
+                out.writeShort(Short.reverseBytes(sample));
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.rayworks.asrwordsrecognition.tuning;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.rayworks.asrwordsrecognition.tuning.ParameterSweepTest.point;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProfileSetTest {
+
+    private static final List<SweepPoint> FRONT = Arrays.asList(
+            point("fastest", 0.6, 0.02),
+            point("fast", 0.4, 0.03),
+            point("balanced", 0.2, 0.06),
+            point("accurate", 0, 0.18));
+
+    private static ProfileSet tune() {
+        Map<String, Double> classes = new LinkedHashMap<>();
+        classes.put("ancient", 0.01);
+        classes.putAll(ProfileSet.DEVICE_CLASSES);
+        return ProfileSet.fromSweep(FRONT, 1000, 0.5, classes);
+    }
+
+    @Test
+    public void eachClassGetsTheMostAccuratePointItCanAfford() {
+        List<DecoderProfile> profiles = tune().getProfiles();
+
+        assertEquals(4, profiles.size());
+        // too slow for any of them
+        assertEquals("ancient", profiles.get(0).getName());
+        assertEquals("fastest", profiles.get(0).getOptions().get("name"));
+        // 0.03 at a tenth of the speed is 0.3, 0.06 would be 0.6
+        assertEquals("low", profiles.get(1).getName());
+        assertEquals(100, profiles.get(1).getMinScore(), 1e-9);
+        assertEquals("fast", profiles.get(1).getOptions().get("name"));
+        assertEquals(0.4, profiles.get(1).getWordErrorRate(), 1e-9);
+        assertEquals(0.03, profiles.get(1).getRealTimeFactor(), 1e-9);
+        assertEquals("balanced", profiles.get(2).getOptions().get("name"));
+        assertEquals("accurate", profiles.get(3).getOptions().get("name"));
+    }
+
+    @Test
+    public void devicesGetTheFastestClassTheyReach() {
+        ProfileSet profiles = tune();
+
+        assertEquals("ancient", profiles.select(1).getName());
+        assertEquals("low", profiles.select(100).getName());
+        assertEquals("low", profiles.select(249).getName());
+        assertEquals("mid", profiles.select(250).getName());
+        assertEquals("high", profiles.select(1e6).getName());
+    }
+
+    @Test
+    public void profilesSurviveWritingAndReading() throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("-ds", "2");
+        options.put("-beam", "1e-48");
+        ProfileSet written = new ProfileSet(5200, Arrays.asList(
+                new DecoderProfile("high", 2600, new LinkedHashMap<String, String>(),
+                        Double.NaN, Double.NaN),
+                new DecoderProfile("low", 520, options, 0.125, 0.0425)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        written.write(out);
+        ProfileSet read = ProfileSet.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(5200, read.getReferenceScore(), 0);
+        assertEquals(2, read.getProfiles().size());
+        DecoderProfile low = read.getProfiles().get(0);
+        assertEquals("low", low.getName());
+        assertEquals(520, low.getMinScore(), 0);
+        assertEquals(0.125, low.getWordErrorRate(), 0);
+        assertEquals(0.0425, low.getRealTimeFactor(), 0);
+        assertEquals(options, low.getOptions());
+        DecoderProfile high = read.getProfiles().get(1);
+        assertTrue(high.getOptions().isEmpty());
+        assertTrue(Double.isNaN(high.getWordErrorRate()));
+    }
+
+    @Test(expected = IOException.class)
+    public void aProfileWithoutItsScoreIsRejected() throws IOException {
+        ProfileSet.read(new ByteArrayInputStream(
+                "reference.score=1000\nprofiles=low\nlow.wer=0.1\n".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void benchmarkScoresTheDevice() {
+        double score = new DeviceBenchmark().measure(40);
+        assertTrue(String.valueOf(score), score > 0 && !Double.isInfinite(score));
+    }
+}